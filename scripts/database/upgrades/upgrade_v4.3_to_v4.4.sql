@@ -0,0 +1,23 @@
+-- Fill the daily download counts (downloadcount table, DownloadCount.java)
+-- from the guestbook responses saved so far. The table is created by the
+-- application; run this after deploying it, while no downloads are being
+-- recorded (it replaces whatever is in the table).
+DELETE FROM downloadcount;
+INSERT INTO downloadcount (dataset_id, datafile_id, countdate, downloadcount)
+SELECT dataset_id, datafile_id, cast(responsetime as date), count(*)
+FROM guestbookresponse
+WHERE responsetime IS NOT NULL
+GROUP BY dataset_id, datafile_id, cast(responsetime as date);
+
+-- The post-publish stage of a dataset locked after publishing
+-- (DatasetLock.java).
+ALTER TABLE datasetlock ADD COLUMN publishstage VARCHAR(255);
+
+-- Notifications waiting to be emailed (UserNotification.java); the ones
+-- saved so far have been emailed already, or never will be.
+ALTER TABLE usernotification ADD COLUMN emailqueued BOOLEAN;
+UPDATE usernotification SET emailqueued = false;
+
+-- Lists the files of a version a page at a time, by label
+-- (DataFileServiceBean.findFileMetadataPage).
+CREATE INDEX index_filemetadata_datasetversion_id_label_id ON filemetadata (datasetversion_id, label, id);
@@ -7,22 +7,18 @@
 package edu.harvard.iq.dataverse;
 
 import edu.harvard.iq.dataverse.authorization.Permission;
-import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.search.SolrSearchResult;
 import edu.harvard.iq.dataverse.search.SortBy;
 import edu.harvard.iq.dataverse.util.FileSortFieldAndOrder;
-import java.sql.Timestamp;
+import edu.harvard.iq.dataverse.util.LruCache;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -47,12 +43,24 @@ import javax.persistence.TypedQuery;
 public class DataFileServiceBean implements java.io.Serializable {
     
     private static final Logger logger = Logger.getLogger(DataFileServiceBean.class.getCanonicalName());
+    
+    /**
+     * Counts of the (matching) files of versions, see
+     * {@link #countFileMetadatas(edu.harvard.iq.dataverse.DatasetVersion, edu.harvard.iq.dataverse.FileMetadataFilter)}.
+     */
+    private static final LruCache<String, CachedFileCount> fileCountCache = new LruCache<>();
+    static {
+        fileCountCache.setMaxSize(1000);
+    }
+    private static final long FILE_COUNT_TTL_MILLIS = 10 * 60 * 1000;
     @EJB
     DatasetServiceBean datasetService;
     @EJB
     PermissionServiceBean permissionService;
     @EJB
     UserServiceBean userService; 
+    @EJB
+    ProjectionServiceBean projectionService;
 
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
@@ -169,67 +177,186 @@ public class DataFileServiceBean implements java.io.Serializable {
         return query.getResultList();
     }
     
-    public List<FileMetadata> findFileMetadataByDatasetVersionIdLabelSearchTerm(Long datasetVersionId, String searchTerm, String userSuppliedSortField, String userSuppliedSortOrder){
-        FileSortFieldAndOrder sortFieldAndOrder = new FileSortFieldAndOrder(userSuppliedSortField, userSuppliedSortOrder);
-
-        String sortField = sortFieldAndOrder.getSortField();
-        String sortOrder = sortFieldAndOrder.getSortOrder();
-        String searchClause = "";
-        if(searchTerm != null && !searchTerm.isEmpty()){
-            searchClause = " and  (lower(o.label) like '%" + searchTerm.toLowerCase() + "%' or lower(o.description) like '%" + searchTerm.toLowerCase() + "%')";
-        }
-        
-        String queryString = "select o from FileMetadata o where o.datasetVersion.id = :datasetVersionId"
-                + searchClause
-                + " order by o." + sortField + " " + sortOrder;
-        TypedQuery query = em.createQuery(queryString, FileMetadata.class); 
+    /**
+     * The ids of the files of a version that match {@code filter}, e.g. to
+     * select the matching ones among files already loaded.
+     */
+    public List<Long> findFileMetadataIds(Long datasetVersionId, FileMetadataFilter filter) {
+        TypedQuery<Long> query = em.createQuery("select o.id from FileMetadata o where o.datasetVersion.id = :datasetVersionId"
+                + filterClause(filter), Long.class);
         query.setParameter("datasetVersionId", datasetVersionId);
-        
+        setFilterParameters(query, filter);
         return query.getResultList();
     }
     
-    public List<Integer> findFileMetadataIdsByDatasetVersionIdLabelSearchTerm(Long datasetVersionId, String searchTerm, String userSuppliedSortField, String userSuppliedSortOrder){
-        FileSortFieldAndOrder sortFieldAndOrder = new FileSortFieldAndOrder(userSuppliedSortField, userSuppliedSortOrder);
-
-        String sortField = sortFieldAndOrder.getSortField();
-        String sortOrder = sortFieldAndOrder.getSortOrder();
-        String searchClause = "";
-        if(searchTerm != null && !searchTerm.isEmpty()){
-            searchClause = " and  (lower(o.label) like '%" + searchTerm.toLowerCase() + "%' or lower(o.description) like '%" + searchTerm.toLowerCase() + "%')";
+    /**
+     * The files of a version that match {@code filter}, in the order of
+     * {@link DatasetVersion#getFileMetadatas()}.
+     */
+    public List<FileMetadata> findFileMetadatas(Long datasetVersionId, FileMetadataFilter filter) {
+        return findFileMetadataPage(datasetVersionId, filter, null, null, 0);
+    }
+    
+    /**
+     * A page of the files of a version that match {@code filter}, in the
+     * order of {@link DatasetVersion#getFileMetadatas()} (with the id to keep
+     * files with the same label in the same order from one page to the next).
+     * 
+     * The page starts right after the file with {@code afterLabel} and
+     * {@code afterId}, the last one of the previous page, rather than at an
+     * offset: the database seeks to it on the (version, label, id) index
+     * instead of reading and skipping all the files before it, so the last
+     * page of a large version is as fast as the first one.
+     * 
+     * @param afterLabel The label of the last file of the previous page, or
+     * {@code null} for the first page.
+     * @param afterId The id of the last file of the previous page.
+     * @param maxResults At most this many files; 0 for all of them.
+     */
+    public List<FileMetadata> findFileMetadataPage(Long datasetVersionId, FileMetadataFilter filter, String afterLabel, Long afterId, int maxResults) {
+        TypedQuery<FileMetadata> query = em.createQuery("select o from FileMetadata o where o.datasetVersion.id = :datasetVersionId"
+                + filterClause(filter)
+                + keysetClause(afterLabel)
+                + " order by o.label, o.id", FileMetadata.class);
+        setPageParameters(query, datasetVersionId, filter, afterLabel, afterId, maxResults);
+        return query.getResultList();
+    }
+    
+    /**
+     * Same as {@link #findFileMetadataPage(java.lang.Long, edu.harvard.iq.dataverse.FileMetadataFilter, java.lang.String, java.lang.Long, int)},
+     * but only what a listing shows of each file is read, with two more
+     * queries for the categories and tags of the whole page.
+     */
+    public List<FileMetadataSummary> findFileMetadataSummaries(Long datasetVersionId, FileMetadataFilter filter, String afterLabel, Long afterId, int maxResults) {
+        TypedQuery<FileMetadataSummary> query = em.createQuery("select new edu.harvard.iq.dataverse.FileMetadataSummary("
+                + "o.id, f.id, o.label, o.description, o.restricted, f.contentType, f.filesize, f.md5)"
+                + " from FileMetadata o join o.dataFile f where o.datasetVersion.id = :datasetVersionId"
+                + filterClause(filter)
+                + keysetClause(afterLabel)
+                + " order by o.label, o.id", FileMetadataSummary.class);
+        setPageParameters(query, datasetVersionId, filter, afterLabel, afterId, maxResults);
+        List<FileMetadataSummary> summaries = query.getResultList();
+        if (summaries.isEmpty()) {
+            return summaries;
+        }
+        
+        Map<Long, FileMetadataSummary> byFileMetadataId = new HashMap<>();
+        Map<Long, FileMetadataSummary> byDataFileId = new HashMap<>();
+        for (FileMetadataSummary summary : summaries) {
+            byFileMetadataId.put(summary.getFileMetadataId(), summary);
+            byDataFileId.put(summary.getDataFileId(), summary);
+        }
+        List<Object[]> categories = em.createQuery("select o.id, c.name from FileMetadata o join o.fileCategories c where o.id in :ids order by c.name", Object[].class)
+                .setParameter("ids", new ArrayList<>(byFileMetadataId.keySet()))
+                .getResultList();
+        for (Object[] row : categories) {
+            byFileMetadataId.get((Long) row[0]).getCategoryNames().add((String) row[1]);
+        }
+        List<DataFileTag> tags = em.createQuery("select t from DataFileTag t where t.dataFile.id in :ids order by t.type", DataFileTag.class)
+                .setParameter("ids", new ArrayList<>(byDataFileId.keySet()))
+                .getResultList();
+        for (DataFileTag tag : tags) {
+            byDataFileId.get(tag.getDataFile().getId()).getTagLabels().add(tag.getTypeLabel());
+        }
+        return summaries;
+    }
+    
+    /**
+     * @return The label of a file of the version, to continue a listing
+     * after it, or {@code null} if the version has no such file.
+     */
+    public String findFileMetadataLabel(Long datasetVersionId, Long fileMetadataId) {
+        List<String> labels = em.createQuery("select o.label from FileMetadata o where o.id = :id and o.datasetVersion.id = :datasetVersionId", String.class)
+                .setParameter("id", fileMetadataId)
+                .setParameter("datasetVersionId", datasetVersionId)
+                .getResultList();
+        return labels.isEmpty() ? null : labels.get(0);
+    }
+    
+    public Long findCountByDatasetVersionId(Long datasetVersionId){
+        return (Long) em.createNativeQuery("select count(*)  from FileMetadata fmd "
+                + " where fmd.datasetVersion_id = ?1")
+                .setParameter(1, datasetVersionId)
+                .getSingleResult();
+    }
+    
+    /**
+     * How many files of the version match {@code filter}. The counts are
+     * cached: a new count is taken when the version has been updated since
+     * (see {@link DatasetVersion#getLastUpdateTime()}), or after
+     * {@link #FILE_COUNT_TTL_MILLIS}, for changes that do not update the
+     * version (e.g. the tags of files that are also in a later version).
+     */
+    public long countFileMetadatas(DatasetVersion datasetVersion, FileMetadataFilter filter) {
+        Date lastUpdateTime = datasetVersion.getLastUpdateTime();
+        String key = datasetVersion.getId() + "|" + ((lastUpdateTime != null) ? lastUpdateTime.getTime() : "") + "|" + filter;
+        CachedFileCount cached = fileCountCache.get(key);
+        if (cached != null && System.currentTimeMillis() - cached.created <= FILE_COUNT_TTL_MILLIS) {
+            return cached.count;
         }
+        TypedQuery<Long> query = em.createQuery("select count(o) from FileMetadata o where o.datasetVersion.id = :datasetVersionId"
+                + filterClause(filter), Long.class);
+        query.setParameter("datasetVersionId", datasetVersion.getId());
+        setFilterParameters(query, filter);
+        long count = query.getSingleResult();
+        fileCountCache.put(key, new CachedFileCount(count));
+        return count;
+    }
+    
+    private static class CachedFileCount {
         
-        Query query = em.createNativeQuery("select o.id from FileMetadata o where o.datasetVersion_id = "  + datasetVersionId
-                + searchClause
-                + " order by o." + sortField + " " + sortOrder);
-        //System.out.print(query.toString());
+        final long count;
+        final long created = System.currentTimeMillis();
         
-        return query.getResultList();
+        CachedFileCount(long count) {
+            this.count = count;
+        }
     }
-        
     
-    public List<FileMetadata> findFileMetadataByDatasetVersionIdLazy(Long datasetVersionId, int maxResults, String userSuppliedSortField, String userSuppliedSortOrder, int firstResult) {
-        FileSortFieldAndOrder sortFieldAndOrder = new FileSortFieldAndOrder(userSuppliedSortField, userSuppliedSortOrder);
-        String sortField = sortFieldAndOrder.getSortField();
-        String sortOrder = sortFieldAndOrder.getSortOrder();
-
-        if (maxResults < 0) {
-            // return all results if user asks for negative number of results
-            maxResults = 0;
+    private static String filterClause(FileMetadataFilter filter) {
+        StringBuilder clause = new StringBuilder();
+        if (filter.getSearchTerm() != null) {
+            clause.append(" and (lower(o.label) like :searchTerm escape '\\' or lower(o.description) like :searchTerm escape '\\')");
         }
-        TypedQuery query = em.createQuery("select o from FileMetadata o where o.datasetVersion.id = :datasetVersionId order by o." + sortField + " " + sortOrder, FileMetadata.class);
-        query.setParameter("datasetVersionId", datasetVersionId);
-        query.setMaxResults(maxResults);
-
-        query.setFirstResult(firstResult);
-
-        List retList = query.getResultList();
-        return retList;
+        if (filter.getCategoryName() != null) {
+            clause.append(" and exists (select c from FileMetadata m join m.fileCategories c where m.id = o.id and c.name = :categoryName)");
+        }
+        if (filter.getTagType() != null) {
+            clause.append(" and exists (select t from DataFileTag t where t.dataFile = o.dataFile and t.type = :tagType)");
+        }
+        return clause.toString();
     }
     
-    public Long findCountByDatasetVersionId(Long datasetVersionId){
-        return (Long) em.createNativeQuery("select count(*)  from FileMetadata fmd "
-                + " where fmd.datasetVersion_id = " + datasetVersionId
-                + ";").getSingleResult();
+    private static void setFilterParameters(Query query, FileMetadataFilter filter) {
+        if (filter.getSearchTerm() != null) {
+            String escaped = filter.getSearchTerm().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+            query.setParameter("searchTerm", "%" + escaped + "%");
+        }
+        if (filter.getCategoryName() != null) {
+            query.setParameter("categoryName", filter.getCategoryName());
+        }
+        if (filter.getTagType() != null) {
+            query.setParameter("tagType", filter.getTagType());
+        }
+    }
+    
+    private static String keysetClause(String afterLabel) {
+        if (afterLabel == null) {
+            return "";
+        }
+        return " and (o.label > :afterLabel or (o.label = :afterLabel and o.id > :afterId))";
+    }
+    
+    private static void setPageParameters(Query query, Long datasetVersionId, FileMetadataFilter filter, String afterLabel, Long afterId, int maxResults) {
+        query.setParameter("datasetVersionId", datasetVersionId);
+        setFilterParameters(query, filter);
+        if (afterLabel != null) {
+            query.setParameter("afterLabel", afterLabel);
+            query.setParameter("afterId", afterId);
+        }
+        if (maxResults > 0) {
+            query.setMaxResults(maxResults);
+        }
     }
 
     public FileMetadata findFileMetadataByFileAndVersionId(Long dataFileId, Long datasetVersionId) {
@@ -248,453 +375,18 @@ public class DataFileServiceBean implements java.io.Serializable {
         return (FileMetadata) query.getSingleResult();
     }
 
+    /**
+     * @return The file, read with native queries rather than JPA; detached,
+     * with only what is needed to show it (see {@link ProjectionServiceBean}),
+     * or {@code null}.
+     */
     public DataFile findCheapAndEasy(Long id) {
-        DataFile dataFile = null;
-
-        Object[] result = null;
-
         try {
-            result = (Object[]) em.createNativeQuery("SELECT t0.ID, t0.CREATEDATE, t0.INDEXTIME, t0.MODIFICATIONTIME, t0.PERMISSIONINDEXTIME, t0.PERMISSIONMODIFICATIONTIME, t0.PUBLICATIONDATE, t0.CREATOR_ID, t0.RELEASEUSER_ID, t0.PREVIEWIMAGEAVAILABLE, t1.CONTENTTYPE, t1.FILESYSTEMNAME, t1.FILESIZE, t1.INGESTSTATUS, t1.MD5, t1.RESTRICTED, t3.ID, t3.AUTHORITY, t3.IDENTIFIER FROM DVOBJECT t0, DATAFILE t1, DVOBJECT t2, DATASET t3 WHERE ((t0.ID = " + id + ") AND (t0.OWNER_ID = t2.ID) AND (t2.ID = t3.ID) AND (t1.ID = t0.ID))").getSingleResult();
+            return projectionService.findDataFile(id);
         } catch (Exception ex) {
+            logger.log(Level.FINE, "could not read file " + id, ex);
             return null;
         }
-
-        if (result == null) {
-            return null;
-        }
-
-        Integer file_id = (Integer) result[0];
-
-        dataFile = new DataFile();
-
-        dataFile.setId(file_id.longValue());
-
-        Timestamp createDate = (Timestamp) result[1];
-        Timestamp indexTime = (Timestamp) result[2];
-        Timestamp modificationTime = (Timestamp) result[3];
-        Timestamp permissionIndexTime = (Timestamp) result[4];
-        Timestamp permissionModificationTime = (Timestamp) result[5];
-        Timestamp publicationDate = (Timestamp) result[6];
-
-        dataFile.setCreateDate(createDate);
-        dataFile.setIndexTime(indexTime);
-        dataFile.setModificationTime(modificationTime);
-        dataFile.setPermissionIndexTime(permissionIndexTime);
-        dataFile.setPermissionModificationTime(permissionModificationTime);
-        dataFile.setPublicationDate(publicationDate);
-
-        // no support for users yet!
-        // (no need to - so far? -- L.A. 4.2.2) 
-        /*
-         Long creatorId = (Long) result[7];
-         if (creatorId != null) {
-         AuthenticatedUser creator = userMap.get(creatorId);
-         if (creator == null) {
-         creator = userService.find(creatorId);
-         if (creator != null) {
-         userMap.put(creatorId, creator);
-         }
-         }
-         if (creator != null) {
-         dataFile.setCreator(creator);
-         }
-         }
-
-         Long releaseUserId = (Long) result[8];
-         if (releaseUserId != null) {
-         AuthenticatedUser releaseUser = userMap.get(releaseUserId);
-         if (releaseUser == null) {
-         releaseUser = userService.find(releaseUserId);
-         if (releaseUser != null) {
-         userMap.put(releaseUserId, releaseUser);
-         }
-         }
-         if (releaseUser != null) {
-         dataFile.setReleaseUser(releaseUser);
-         }
-         }
-         */
-        Boolean previewAvailable = (Boolean) result[9];
-        if (previewAvailable != null) {
-            dataFile.setPreviewImageAvailable(previewAvailable);
-        }
-        
-        String contentType = (String) result[10];
-        
-        if (contentType != null) {
-            dataFile.setContentType(contentType);
-        }
-
-        String storageIdentifier = (String) result[11];
-
-        if (storageIdentifier != null) {
-            dataFile.setStorageIdentifier(storageIdentifier);
-        }
-
-        Long fileSize = (Long) result[12];
-
-        if (fileSize != null) {
-            dataFile.setFilesize(fileSize);
-        }
-
-        if (result[13] != null) {
-            String ingestStatusString = (String) result[13];
-            dataFile.setIngestStatus(ingestStatusString.charAt(0));
-        }
-
-        String md5 = (String) result[14];
-
-        if (md5 != null) {
-            dataFile.setmd5(md5);
-        }
-
-        Boolean restricted = (Boolean) result[15];
-        if (restricted != null) {
-            dataFile.setRestricted(restricted);
-        }
-        
-
-        Dataset owner = new Dataset();
-
-        
-        // TODO: check for nulls
-        owner.setId((Long)result[16]);
-        owner.setAuthority((String)result[17]);
-        owner.setIdentifier((String)result[18]);
-                
-        dataFile.setOwner(owner);
-
-        // look up data table; but only if content type indicates it's tabular data:
-        
-        if (MIME_TYPE_TAB.equalsIgnoreCase(contentType)) {
-            Object[] dtResult = null;
-            try {
-                dtResult = (Object[]) em.createNativeQuery("SELECT ID, UNF, CASEQUANTITY, VARQUANTITY, ORIGINALFILEFORMAT FROM dataTable WHERE DATAFILE_ID = " + id).getSingleResult();
-            } catch (Exception ex) {
-                dtResult = null;
-            }
-        
-            if (dtResult != null) {
-                DataTable dataTable = new DataTable(); 
-
-                dataTable.setId(((Integer)dtResult[0]).longValue());
-            
-                dataTable.setUnf((String)dtResult[1]);
-            
-                dataTable.setCaseQuantity((Long)dtResult[2]);
-            
-                dataTable.setVarQuantity((Long)dtResult[3]);
-            
-                dataTable.setOriginalFileFormat((String)dtResult[4]);
-                
-                dataTable.setDataFile(dataFile);
-                dataFile.setDataTable(dataTable);
-            }
-        }
-        
-        return dataFile;
-    }
-    /* 
-     * This is an experimental method for populating the versions of 
-     * the datafile with the filemetadatas, optimized for making as few db 
-     * queries as possible. 
-     * It should only be used to retrieve filemetadata for the DatasetPage!
-     * It is not guaranteed to adequately perform anywhere else. 
-    */
-    public void findFileMetadataOptimizedExperimental(Dataset owner) {
-        findFileMetadataOptimizedExperimental(owner, null);
-    }
-    public void findFileMetadataOptimizedExperimental(Dataset owner, DatasetVersion requestedVersion) {
-        List<DataFile> dataFiles = new ArrayList<>();
-        List<DataTable> dataTables = new ArrayList<>();
-        //List<FileMetadata> retList = new ArrayList<>(); 
-        
-        // TODO: 
-        //  replace these maps with simple lists and run binary search on them. -- 4.2.1
-        
-        Map<Long, AuthenticatedUser> userMap = new HashMap<>(); 
-        Map<Long, Integer> filesMap = new HashMap<>();
-        Map<Long, Integer> datatableMap = new HashMap<>();
-        Map<Long, Integer> categoryMap = new HashMap<>();
-        Map<Long, Set<Integer>> fileTagMap = new HashMap<>();
-        
-        List<String> fileTagLabels = DataFileTag.listTags();
-        
-        
-        int i = 0; 
-        
-        List<Object[]> dataTableResults = em.createNativeQuery("SELECT t0.ID, t0.DATAFILE_ID, t0.UNF, t0.CASEQUANTITY, t0.VARQUANTITY, t0.ORIGINALFILEFORMAT FROM dataTable t0, dataFile t1, dvObject t2 WHERE ((t0.DATAFILE_ID = t1.ID) AND (t1.ID = t2.ID) AND (t2.OWNER_ID = " + owner.getId() + "))").getResultList();
-        
-        for (Object[] result : dataTableResults) {
-            DataTable dataTable = new DataTable(); 
-            Long fileId = (Long)result[1];
-
-            dataTable.setId(((Integer)result[0]).longValue());
-            
-            dataTable.setUnf((String)result[2]);
-            
-            dataTable.setCaseQuantity((Long)result[3]);
-            
-            dataTable.setVarQuantity((Long)result[4]);
-            
-            dataTable.setOriginalFileFormat((String)result[5]);
-            
-            dataTables.add(dataTable);
-            datatableMap.put(fileId, i++);
-            
-        }
-        dataTableResults = null; 
-        
-        logger.fine("Retrieved "+dataTables.size()+" DataTable objects.");
-        
-        i = 0; 
-        List<Object[]> dataTagsResults = em.createNativeQuery("SELECT t0.DATAFILE_ID, t0.TYPE FROM DataFileTag t0, dvObject t1 WHERE (t1.ID = t0.DATAFILE_ID) AND (t1.OWNER_ID="+ owner.getId() + ")").getResultList();
-        for (Object[] result : dataTagsResults) {
-            Long datafile_id = (Long) result[0];
-            Integer tagtype_id = (Integer) result[1];
-            if (fileTagMap.get(datafile_id) == null) {
-                fileTagMap.put(datafile_id, new HashSet<Integer>());
-            }
-            fileTagMap.get(datafile_id).add(tagtype_id);
-            i++; 
-        }
-        dataTagsResults = null;
-        
-        logger.fine("Retrieved "+i+" data tags.");
-        
-        i = 0; 
-        
-        List<Object[]> fileResults = em.createNativeQuery("SELECT t0.ID, t0.CREATEDATE, t0.INDEXTIME, t0.MODIFICATIONTIME, t0.PERMISSIONINDEXTIME, t0.PERMISSIONMODIFICATIONTIME, t0.PUBLICATIONDATE, t0.CREATOR_ID, t0.RELEASEUSER_ID, t1.CONTENTTYPE, t1.FILESYSTEMNAME, t1.FILESIZE, t1.INGESTSTATUS, t1.MD5, t1.RESTRICTED FROM DVOBJECT t0, DATAFILE t1 WHERE ((t0.OWNER_ID = " + owner.getId() + ") AND ((t1.ID = t0.ID) AND (t0.DTYPE = 'DataFile')))").getResultList(); 
-    
-        for (Object[] result : fileResults) {
-            Integer file_id = (Integer) result[0];
-            
-            DataFile dataFile = new DataFile();
-            
-            dataFile.setId(file_id.longValue());
-            
-            Timestamp createDate = (Timestamp) result[1];
-            Timestamp indexTime = (Timestamp) result[2];
-            Timestamp modificationTime = (Timestamp) result[3];
-            Timestamp permissionIndexTime = (Timestamp) result[4];
-            Timestamp permissionModificationTime = (Timestamp) result[5];
-            Timestamp publicationDate = (Timestamp) result[6];
-            
-            dataFile.setCreateDate(createDate);
-            dataFile.setIndexTime(indexTime);
-            dataFile.setModificationTime(modificationTime);
-            dataFile.setPermissionIndexTime(permissionIndexTime);
-            dataFile.setPermissionModificationTime(permissionModificationTime);
-            dataFile.setPublicationDate(publicationDate);
-            
-            Long creatorId = (Long) result[7]; 
-            if (creatorId != null) {
-                AuthenticatedUser creator = userMap.get(creatorId);
-                if (creator == null) {
-                    creator = userService.find(creatorId);
-                    if (creator != null) {
-                        userMap.put(creatorId, creator);
-                    }
-                }
-                if (creator != null) {
-                    dataFile.setCreator(creator);
-                }
-            }
-            
-            dataFile.setOwner(owner);
-            
-            Long releaseUserId = (Long) result[8]; 
-            if (releaseUserId != null) {
-                AuthenticatedUser releaseUser = userMap.get(releaseUserId);
-                if (releaseUser == null) {
-                    releaseUser = userService.find(releaseUserId);
-                    if (releaseUser != null) {
-                        userMap.put(releaseUserId, releaseUser);
-                    }
-                }
-                if (releaseUser != null) {
-                    dataFile.setReleaseUser(releaseUser);
-                }
-            }
-            
-            String contentType = (String) result[9]; 
-            
-            if (contentType != null) {
-                dataFile.setContentType(contentType);
-            }
-            
-            String storageIdentifier = (String) result[10];
-            
-            if (storageIdentifier != null) {
-                dataFile.setStorageIdentifier(storageIdentifier);
-            }
-            
-            Long fileSize = (Long) result[11];
-            
-            if (fileSize != null) {
-                dataFile.setFilesize(fileSize);
-            }
-            
-            if (result[12] != null) {
-                String ingestStatusString = (String) result[12];
-                dataFile.setIngestStatus(ingestStatusString.charAt(0));
-            }
-            
-            String md5 = (String) result[13]; 
-            
-            if (md5 != null) {
-                dataFile.setmd5(md5);
-            }
-            
-            Boolean restricted = (Boolean) result[14];
-            if (restricted != null) {
-                dataFile.setRestricted(restricted);
-            }
-            
-            // TODO: 
-            // - if ingest status is "bad", look up the ingest report; 
-            // - is it a dedicated thumbnail for the dataset? (do we ever need that info?? - not on the dataset page, I don't think...)
-            
-            // Is this a tabular file? 
-            
-            if (datatableMap.get(dataFile.getId()) != null) {
-                dataTables.get(datatableMap.get(dataFile.getId())).setDataFile(dataFile);
-                dataFile.setDataTable(dataTables.get(datatableMap.get(dataFile.getId())));
-                
-            }            
-
-            if (fileTagMap.get(dataFile.getId()) != null) {
-                for (Integer tag_id : fileTagMap.get(dataFile.getId())) {
-                    DataFileTag tag = new DataFileTag();
-                    tag.setTypeByLabel(fileTagLabels.get(tag_id));
-                    tag.setDataFile(dataFile);
-                    dataFile.addTag(tag);
-                }
-            }            
-            dataFile.setFileAccessRequesters(retrieveFileAccessRequesters(dataFile));              
-            dataFiles.add(dataFile);
-            filesMap.put(dataFile.getId(), i++);
-        } 
-        
-        owner.setFiles(dataFiles);
-        fileResults = null; 
-        
-        logger.fine("Retrieved and cached "+i+" datafiles.");
-
-        i = 0; 
-        for (DataFileCategory fileCategory : owner.getCategories()) {
-            //logger.fine("category: id="+fileCategory.getId());
-            categoryMap.put(fileCategory.getId(), i++);
-        }
-        
-        logger.fine("Retreived "+i+" file categories attached to the dataset.");
-        
-        if (requestedVersion != null) {
-            requestedVersion.setFileMetadatas(retrieveFileMetadataForVersion(owner, requestedVersion, filesMap, categoryMap));
-        } else {
-            for (DatasetVersion version : owner.getVersions()) {
-                version.setFileMetadatas(retrieveFileMetadataForVersion(owner, version, filesMap, categoryMap));
-                logger.fine("Retrieved "+version.getFileMetadatas().size()+" filemetadatas for the version "+version.getId());
-            }
-        }
-    }
-    
-     private List<AuthenticatedUser> retrieveFileAccessRequesters(DataFile fileIn){
-        List<AuthenticatedUser> retList = new ArrayList<>();
-        
-        List<Object> requesters  = em.createNativeQuery("select authenticated_user_id from fileaccessrequests where datafile_id = "+fileIn.getId()).getResultList();
-        
-        for (Object userIdObj : requesters){
-            Long userId = (Long) userIdObj;
-            AuthenticatedUser user = userService.find(userId);
-            if (user != null){
-                retList.add(user);
-            }
-        }
-        
-        return retList;
-    }
-    
-    private List<FileMetadata> retrieveFileMetadataForVersion(Dataset dataset, DatasetVersion version, Map<Long, Integer> filesMap, Map<Long, Integer> categoryMap) {
-        List<FileMetadata> retList = new ArrayList<>();
-        Map<Long, Set<Long>> categoryMetaMap = new HashMap<>();
-        
-        List<Object[]> categoryResults = em.createNativeQuery("select t0.filecategories_id, t0.filemetadatas_id from filemetadata_datafilecategory t0, filemetadata t1 where (t0.filemetadatas_id = t1.id) AND (t1.datasetversion_id = "+version.getId()+")").getResultList();
-        int i = 0;
-        for (Object[] result : categoryResults) {
-            Long category_id = (Long) result[0];
-            Long filemeta_id = (Long) result[1];
-            if (categoryMetaMap.get(filemeta_id) == null) {
-                categoryMetaMap.put(filemeta_id, new HashSet<Long>());
-            }
-            categoryMetaMap.get(filemeta_id).add(category_id);
-            i++;
-        }
-        logger.fine("Retrieved and mapped "+i+" file categories attached to files in the version "+version.getId());
-        categoryResults = null;
-        
-        List<Object[]> metadataResults = em.createNativeQuery("select id, datafile_id, DESCRIPTION, LABEL, RESTRICTED from FileMetadata where datasetversion_id = "+version.getId()).getResultList();
-        
-        for (Object[] result : metadataResults) {
-            Integer filemeta_id = (Integer) result[0];
-            
-            if (filemeta_id == null) {
-                continue;
-            }
-            
-            Long file_id = (Long) result[1];
-            if (file_id == null) {
-                continue;
-            }
-            
-            Integer file_list_id = filesMap.get(file_id);
-            if (file_list_id == null) {
-                continue;
-            }
-            FileMetadata fileMetadata = new FileMetadata();
-            fileMetadata.setId(filemeta_id.longValue());
-            fileMetadata.setCategories(new LinkedList<DataFileCategory>());
-
-            if (categoryMetaMap.get(fileMetadata.getId()) != null) {
-                for (Long cat_id : categoryMetaMap.get(fileMetadata.getId())) {
-                    if (categoryMap.get(cat_id) != null) {
-                        fileMetadata.getCategories().add(dataset.getCategories().get(categoryMap.get(cat_id)));
-                    }
-                }
-            }
-
-            fileMetadata.setDatasetVersion(version);
-            
-            fileMetadata.setDataFile(dataset.getFiles().get(file_list_id));
-            
-            String description = (String) result[2]; 
-            
-            if (description != null) {
-                fileMetadata.setDescription(description);
-            }
-            
-            String label = (String) result[3];
-            
-            if (label != null) {
-                fileMetadata.setLabel(label);
-            }
-                        
-            Boolean restricted = (Boolean) result[4];
-            if (restricted != null) {
-                fileMetadata.setRestricted(restricted);
-            }
-            
-            retList.add(fileMetadata);
-        }
-        
-        metadataResults = null;
-        
-        logger.fine("Retrieved "+retList.size()+" file metadatas for version "+version.getId()+" (inside the retrieveFileMetadataForVersion method).");
-                
-        
-        Collections.sort(retList, FileMetadata.compareByLabel);
-        
-        return retList; 
     }
     
     public List<DataFile> findIngestsInProgress() {
@@ -1191,5 +883,26 @@ public class DataFileServiceBean implements java.io.Serializable {
     public void populateFileSearchCard(SolrSearchResult solrSearchResult) {
         solrSearchResult.setEntity(this.findCheapAndEasy(solrSearchResult.getEntityId()));
     }
+
+    /**
+     * Same as {@link #populateFileSearchCard(edu.harvard.iq.dataverse.search.SolrSearchResult)},
+     * for a page of results at once.
+     */
+    public void populateFileSearchCards(List<SolrSearchResult> solrSearchResults) {
+        List<Long> ids = new ArrayList<>();
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            ids.add(solrSearchResult.getEntityId());
+        }
+        Map<Long, DataFile> dataFiles;
+        try {
+            dataFiles = projectionService.findDataFiles(ids);
+        } catch (Exception ex) {
+            logger.log(Level.FINE, "could not read the files of the search results", ex);
+            dataFiles = Collections.emptyMap();
+        }
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            solrSearchResult.setEntity(dataFiles.get(solrSearchResult.getEntityId()));
+        }
+    }
         
 }
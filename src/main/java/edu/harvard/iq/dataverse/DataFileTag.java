@@ -120,6 +120,14 @@ public class DataFileTag implements Serializable {
         this.type = tagtype; 
     }
     
+    /**
+     * @return The tag type with the label (as shown on the dataset page), or
+     * {@code null} if there is none.
+     */
+    public static TagType findTypeByLabel(String label) {
+        return TagLabelToTypes.get(label);
+    }
+    
     public String getTypeLabel() {
         if (this.type != null) {
             return TagTypeToLabels.get(this.type);
@@ -24,6 +24,8 @@ import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import java.util.Date;
 import java.io.Serializable;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -43,6 +45,16 @@ import javax.persistence.TemporalType;
 @Table(indexes = {@Index(columnList="user_id"), @Index(columnList="dataset_id")})
 public class DatasetLock implements Serializable {
     private static final long serialVersionUID = 1L;
+
+    /**
+     * The stages of the work done in the background after a dataset has been
+     * published, in order.
+     *
+     * @see PostPublishWorker
+     */
+    public enum PublishStage {
+        REGISTER_PID, NOTIFY, INDEX
+    }
     
     public DatasetLock() {
     }
@@ -65,6 +77,13 @@ public class DatasetLock implements Serializable {
 
     private String info;
 
+    /**
+     * The post-publish stage the dataset is in, if it is locked because it
+     * has just been published; {@code null} for other locks.
+     */
+    @Enumerated(EnumType.STRING)
+    private PublishStage publishStage;
+
     public Long getId() {
         return id;
     }
@@ -107,6 +126,14 @@ public class DatasetLock implements Serializable {
     public void setInfo(String info) {
         this.info = info;
     }
+
+    public PublishStage getPublishStage() {
+        return publishStage;
+    }
+
+    public void setPublishStage(PublishStage publishStage) {
+        this.publishStage = publishStage;
+    }
     
     
     @Override
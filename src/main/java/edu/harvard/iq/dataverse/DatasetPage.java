@@ -46,6 +46,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -82,7 +83,6 @@ import javax.faces.component.UIInput;
 import javax.faces.context.ExternalContext;
 import org.primefaces.component.tabview.TabView;
 import org.primefaces.event.TabChangeEvent;
-import org.primefaces.model.LazyDataModel;
 import org.primefaces.model.SortOrder;
 
 /**
@@ -113,6 +113,8 @@ public class DatasetPage implements java.io.Serializable {
     @EJB
     DataFileServiceBean datafileService;
     @EJB
+    ProjectionServiceBean projectionService;
+    @EJB
     PermissionServiceBean permissionService;
     @EJB
     DataverseServiceBean dataverseService;
@@ -220,16 +222,6 @@ public class DatasetPage implements java.io.Serializable {
     private String fileSortField;
     private String fileSortOrder;
 
-    private LazyFileMetadataDataModel lazyModel;
-
-    public LazyFileMetadataDataModel getLazyModel() {
-        return lazyModel;
-    }
-
-    public void setLazyModel(LazyFileMetadataDataModel lazyModel) {
-        this.lazyModel = lazyModel;
-    }
-    
     private String fileLabelSearchTerm;
 
     public String getFileLabelSearchTerm() {
@@ -240,6 +232,39 @@ public class DatasetPage implements java.io.Serializable {
         this.fileLabelSearchTerm = fileLabelSearchTerm;
     }
     
+    private String fileCategoryFilter;
+
+    public String getFileCategoryFilter() {
+        return fileCategoryFilter;
+    }
+
+    public void setFileCategoryFilter(String fileCategoryFilter) {
+        this.fileCategoryFilter = fileCategoryFilter;
+    }
+
+    private String fileTagFilter;
+
+    public String getFileTagFilter() {
+        return fileTagFilter;
+    }
+
+    public void setFileTagFilter(String fileTagFilter) {
+        this.fileTagFilter = fileTagFilter;
+    }
+
+    /**
+     * @return The files to list, according to the search term and the
+     * category and tag to filter on (an unknown tag is ignored).
+     */
+    private FileMetadataFilter getFileMetadataFilter() {
+        try {
+            return FileMetadataFilter.create(fileLabelSearchTerm, fileCategoryFilter, fileTagFilter);
+        } catch (IllegalArgumentException iae) {
+            logger.fine(iae.getMessage());
+            return FileMetadataFilter.create(fileLabelSearchTerm, fileCategoryFilter, null);
+        }
+    }
+    
     private List<FileMetadata> fileMetadatasSearch;
     
     public List<FileMetadata> getFileMetadatasSearch() {
@@ -252,10 +277,11 @@ public class DatasetPage implements java.io.Serializable {
     
     public void updateFileSearch(){  
         logger.info("updading file search list");
+        FileMetadataFilter filter = getFileMetadataFilter();
         if (readOnly) {
-            this.fileMetadatasSearch = selectFileMetadatasForDisplay(this.fileLabelSearchTerm); 
+            this.fileMetadatasSearch = selectFileMetadatasForDisplay(filter); 
         } else {
-            this.fileMetadatasSearch = datafileService.findFileMetadataByDatasetVersionIdLabelSearchTerm(workingVersion.getId(), this.fileLabelSearchTerm, "", "");
+            this.fileMetadatasSearch = datafileService.findFileMetadatas(workingVersion.getId(), filter);
         }
     }
     
@@ -273,15 +299,11 @@ public class DatasetPage implements java.io.Serializable {
         setNumberOfFilesToShow(new Long(fileMetadatasSearch.size()));
     }
     
-    private List<FileMetadata> selectFileMetadatasForDisplay(String searchTerm) {
+    private List<FileMetadata> selectFileMetadatasForDisplay(FileMetadataFilter filter) {
         Set<Long> searchResultsIdSet = null; 
         
-        if (searchTerm != null && !searchTerm.equals("")) {
-            List<Integer> searchResultsIdList = datafileService.findFileMetadataIdsByDatasetVersionIdLabelSearchTerm(workingVersion.getId(), searchTerm, "", "");
-            searchResultsIdSet = new HashSet<>();
-            for (Integer id : searchResultsIdList) {
-                searchResultsIdSet.add(id.longValue());
-            }
+        if (!filter.isEmpty()) {
+            searchResultsIdSet = new HashSet<>(datafileService.findFileMetadataIds(workingVersion.getId(), filter));
         }
         
         List<FileMetadata> retList = new ArrayList<>(); 
@@ -1486,10 +1508,10 @@ public class DatasetPage implements java.io.Serializable {
                 readOnly = false;
                 fileMetadatasSearch = workingVersion.getFileMetadatasSorted();
             } else {
-                // an attempt to retreive both the filemetadatas and datafiles early on, so that 
-                // we don't have to do so later (possibly, many more times than necessary):
-           
-                datafileService.findFileMetadataOptimizedExperimental(dataset);
+                // retrieve the filemetadatas and datafiles early on, in a few
+                // queries, so that we don't have to do so later (possibly, many
+                // more times than necessary):
+                workingVersion.setFileMetadatas(projectionService.findFileMetadatas(workingVersion));
                 fileMetadatasSearch = workingVersion.getFileMetadatas();
             }
             
@@ -1498,13 +1520,14 @@ public class DatasetPage implements java.io.Serializable {
             datasetNextMinorVersion = this.dataset.getNextMinorVersionString();
             datasetVersionUI = datasetVersionUI.initDatasetVersionUI(workingVersion, false);
             updateDatasetFieldInputLevels();
-            displayCitation = dataset.getCitation(true, workingVersion);
+            displayCitation = PublishedVersionCache.getInstance().getCitation(workingVersion, true);
             setExistReleasedVersion(resetExistRealeaseVersion());
                         //moving setVersionTabList to tab change event
             //setVersionTabList(resetVersionTabList());
             //setReleasedVersionTabList(resetReleasedVersionTabList());
-            //SEK - lazymodel may be needed for datascroller in future release
-            // lazyModel = new LazyFileMetadataDataModel(workingVersion.getId(), datafileService );
+            if (!getFileMetadataFilter().isEmpty()) {
+                updateFileSearch();
+            }
             // populate MapLayerMetadata
             this.loadMapLayerMetadataLookup();  // A DataFile may have a related MapLayerMetadata object
 
@@ -1844,7 +1867,7 @@ public class DatasetPage implements java.io.Serializable {
             setReleasedVersionTabList(resetReleasedVersionTabList());
         } else {
             releasedVersionTabList = new ArrayList();
-            versionTabList = new ArrayList();
+            setVersionTabList(new ArrayList());
             if(this.activeTabIndex == 0) {
                  init();
             }          
@@ -2047,9 +2070,7 @@ public class DatasetPage implements java.io.Serializable {
                     for (AuthenticatedUser au : authUsers) {
                         editUsers.remove(au);
                     }
-                    for (AuthenticatedUser au : editUsers) {
-                        userNotificationService.sendNotification(au, new Timestamp(new Date().getTime()), UserNotification.Type.PUBLISHEDDS, dataset.getLatestVersion().getId());
-                    }
+                    userNotificationService.sendNotifications(editUsers, new Timestamp(new Date().getTime()), UserNotification.Type.PUBLISHEDDS, dataset.getLatestVersion().getId());
                 }
             } catch (CommandException ex) {
                 
@@ -2133,13 +2154,13 @@ public class DatasetPage implements java.io.Serializable {
 
 
         if (readOnly) {
-            datafileService.findFileMetadataOptimizedExperimental(dataset);
+            workingVersion.setFileMetadatas(projectionService.findFileMetadatas(workingVersion));
             fileMetadatasSearch = workingVersion.getFileMetadatas();
         } else {
             fileMetadatasSearch = workingVersion.getFileMetadatasSorted();
         }
 
-        displayCitation = dataset.getCitation(false, workingVersion);
+        displayCitation = PublishedVersionCache.getInstance().getCitation(workingVersion, false);
         stateChanged = false;
     }
     
@@ -2935,6 +2956,22 @@ public class DatasetPage implements java.io.Serializable {
     public void setVersionTabList(List<DatasetVersion> versionTabList) {
         
         this.versionTabList = versionTabList;
+        this.defaultVersionDifferences.clear();
+    }
+
+    /**
+     * The differences shown for each version of the versions tab, worked out
+     * once per version while the tab list lasts (they are asked for several
+     * times per row). The list, and these, are rebuilt whenever the tab is
+     * shown again.
+     */
+    private final Map<DatasetVersion, DatasetVersionDifference> defaultVersionDifferences = new IdentityHashMap<>();
+
+    public DatasetVersionDifference getDefaultVersionDifference(DatasetVersion version) {
+        if (!defaultVersionDifferences.containsKey(version)) {
+            defaultVersionDifferences.put(version, version.getDefaultVersionDifference());
+        }
+        return defaultVersionDifferences.get(version);
     }
 
     private List<DatasetVersion> releasedVersionTabList = new ArrayList();
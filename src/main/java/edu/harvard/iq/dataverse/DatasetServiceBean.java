@@ -16,6 +16,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -80,6 +81,18 @@ public class DatasetServiceBean implements java.io.Serializable {
         return findByOwnerId(ownerId, false);
     }
     
+    /**
+     * The direct child datasets of all the given dataverses, in one query.
+     */
+    public List<Dataset> findByOwnerIds(Collection<Long> ownerIds) {
+        if (ownerIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return em.createQuery("select object(o) from Dataset as o where o.owner.id in :ownerIds order by o.id", Dataset.class)
+                .setParameter("ownerIds", ownerIds)
+                .getResultList();
+    }
+
     public List<Dataset> findPublishedByOwnerId(Long ownerId) {
         return findByOwnerId(ownerId, true);
     }    
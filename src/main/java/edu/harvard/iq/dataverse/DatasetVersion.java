@@ -476,18 +476,16 @@ public class DatasetVersion implements Serializable {
             if (this.getFileMetadatas().size() != this.getDataset().getReleasedVersion().getFileMetadatas().size()){
                 return false;
             } else {
-                List <DataFile> current = new ArrayList();
-                List <DataFile> previous = new ArrayList();
-                for (FileMetadata fmdc : this.getFileMetadatas()){
-                    current.add(fmdc.getDataFile());
-                }
+                Set<DataFile> previous = new HashSet<>();
                 for (FileMetadata fmdc : this.getDataset().getReleasedVersion().getFileMetadatas()){
                     previous.add(fmdc.getDataFile());
                 }
-                for (DataFile fmd: current){
-                    previous.remove(fmd);
+                for (FileMetadata fmdc : this.getFileMetadatas()){
+                    if (!previous.contains(fmdc.getDataFile())) {
+                        return false;
+                    }
                 }
-                return previous.isEmpty();                
+                return true;
             }           
         }
         return true;
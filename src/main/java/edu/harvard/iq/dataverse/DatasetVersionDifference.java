@@ -4,7 +4,12 @@ import edu.harvard.iq.dataverse.util.StringUtil;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.apache.commons.lang.StringUtils;
 import java.util.ResourceBundle;
 
@@ -16,7 +21,9 @@ public class DatasetVersionDifference {
 
     private DatasetVersion newVersion;
     private DatasetVersion originalVersion;
-    private List<List> detailDataByBlock = new ArrayList<>();
+    // built from changedFields when first asked for
+    private List<List> detailDataByBlock;
+    private final List<DatasetField[]> changedFields = new ArrayList<>();
     private List<datasetFileDifferenceItem> datasetFilesDiffList;
     private List<FileMetadata> addedFiles = new ArrayList();
     private List<FileMetadata> removedFiles = new ArrayList();
@@ -30,36 +37,33 @@ public class DatasetVersionDifference {
         setOriginalVersion(originalVersion);
         setNewVersion(newVersion);
         //Compare Data
+        // fields (and files, below) are matched by type (id) through a map,
+        // the first match winning as it did when searching the list
+        Map<DatasetFieldType, DatasetField> newFieldsByType = new HashMap<>();
+        for (DatasetField dsfn : newVersion.getDatasetFields()) {
+            if (!newFieldsByType.containsKey(dsfn.getDatasetFieldType())) {
+                newFieldsByType.put(dsfn.getDatasetFieldType(), dsfn);
+            }
+        }
+        Set<DatasetFieldType> originalFieldTypes = new HashSet<>();
         for (DatasetField dsfo : originalVersion.getDatasetFields()) {
-            boolean deleted = true;
-            for (DatasetField dsfn : newVersion.getDatasetFields()) {
-                if (dsfo.getDatasetFieldType().equals(dsfn.getDatasetFieldType())) {
-                    deleted = false;
-                    if (dsfo.getDatasetFieldType().isPrimitive()) {
-                        if (!dsfo.getDatasetFieldType().getFieldType().equals("email")) {
-                            compareValues(dsfo, dsfn, false);
-                        }
-                    } else {
-                        compareValues(dsfo, dsfn, true);
+            originalFieldTypes.add(dsfo.getDatasetFieldType());
+            DatasetField dsfn = newFieldsByType.get(dsfo.getDatasetFieldType());
+            if (dsfn != null) {
+                if (dsfo.getDatasetFieldType().isPrimitive()) {
+                    if (!dsfo.getDatasetFieldType().getFieldType().equals("email")) {
+                        compareValues(dsfo, dsfn, false);
                     }
-                    break; //if found go to next dataset field
+                } else {
+                    compareValues(dsfo, dsfn, true);
                 }
-            }
-            if (deleted && !dsfo.isEmpty()) {
+            } else if (!dsfo.isEmpty()) {
                 updateBlockSummary(dsfo, 0, dsfo.getDatasetFieldValues().size(), 0);
                 addToSummary(dsfo, null);
             }
         }
         for (DatasetField dsfn : newVersion.getDatasetFields()) {
-            boolean added = true;
-            for (DatasetField dsfo : originalVersion.getDatasetFields()) {
-                if (dsfo.getDatasetFieldType().equals(dsfn.getDatasetFieldType())) {
-                    added = false;
-                    break;
-                }
-            }
-
-            if (added && !dsfn.isEmpty()) {
+            if (!originalFieldTypes.contains(dsfn.getDatasetFieldType()) && !dsfn.isEmpty()) {
                 if (dsfn.getDatasetFieldType().isPrimitive()){
                    updateBlockSummary(dsfn, dsfn.getDatasetFieldValues().size(), 0, 0);
                 } else {
@@ -69,39 +73,60 @@ public class DatasetVersionDifference {
             }
         }
 
-        for (FileMetadata fmdo : originalVersion.getFileMetadatas()) {
-            boolean deleted = true;
-            for (FileMetadata fmdn : newVersion.getFileMetadatas()) {
-                if (fmdo.getDataFile().equals(fmdn.getDataFile())) {
-                    deleted = false;
-                    if (!compareFileMetadatas(fmdo, fmdn)) {
-                        changedFileMetadata.add(fmdo);
-                        changedFileMetadata.add(fmdn);
-                    }
-                    break;
-                }
+        Map<Long, FileMetadata> newFileMetadatasByFileId = new HashMap<>();
+        for (FileMetadata fmdn : newVersion.getFileMetadatas()) {
+            if (!newFileMetadatasByFileId.containsKey(fmdn.getDataFile().getId())) {
+                newFileMetadatasByFileId.put(fmdn.getDataFile().getId(), fmdn);
             }
-            if (deleted) {
+        }
+        Set<Long> originalFileIds = new HashSet<>();
+        for (FileMetadata fmdo : originalVersion.getFileMetadatas()) {
+            originalFileIds.add(fmdo.getDataFile().getId());
+            FileMetadata fmdn = newFileMetadatasByFileId.get(fmdo.getDataFile().getId());
+            if (fmdn == null) {
                 removedFiles.add(fmdo);
+            } else if (!compareFileMetadatas(fmdo, fmdn)) {
+                changedFileMetadata.add(fmdo);
+                changedFileMetadata.add(fmdn);
             }
         }
         for (FileMetadata fmdn : newVersion.getFileMetadatas()) {
-            boolean added = true;
-            for (FileMetadata fmdo : originalVersion.getFileMetadatas()) {
-                if (fmdo.getDataFile().equals(fmdn.getDataFile())) {
-                    added = false;
-                    break;
-                }
-            }
-            if (added) {
+            if (!originalFileIds.contains(fmdn.getDataFile().getId())) {
                 addedFiles.add(fmdn);
             }
         }
-        initDatasetFilesDifferencesList();
 
-        //Sort within blocks by datasetfieldtype dispaly order then....
-        //sort via metadatablock order - citation first...
-        for (List blockList : detailDataByBlock) {
+        getTermsDifferences();
+    }
+    
+    /**
+     * The changed fields grouped by metadata block, sorted within blocks by
+     * datasetfieldtype display order, then via metadatablock order - citation
+     * first.
+     */
+    private List<List> buildDetailDataByBlock() {
+        Map<MetadataBlock, List<DatasetField[]>> fieldsByBlock = new LinkedHashMap<>();
+        for (DatasetField[] changedField : changedFields) {
+            DatasetField dsfo = changedField[0];
+            DatasetField dsfn = changedField[1];
+            if (dsfo == null) {
+                dsfo = new DatasetField();
+                dsfo.setDatasetFieldType(dsfn.getDatasetFieldType());
+            }
+            if (dsfn == null) {
+                dsfn = new DatasetField();
+                dsfn.setDatasetFieldType(dsfo.getDatasetFieldType());
+            }
+            MetadataBlock block = dsfo.getDatasetFieldType().getMetadataBlock();
+            List<DatasetField[]> blockList = fieldsByBlock.get(block);
+            if (blockList == null) {
+                blockList = new ArrayList<>();
+                fieldsByBlock.put(block, blockList);
+            }
+            addToList(blockList, dsfo, dsfn);
+        }
+        List<List> detailData = new ArrayList<>();
+        for (List<DatasetField[]> blockList : fieldsByBlock.values()) {
             Collections.sort(blockList, new Comparator<DatasetField[]>() {
                 public int compare(DatasetField[] l1, DatasetField[] l2) {
                     DatasetField dsfa = l1[0];  //(DatasetField[]) l1.get(0);
@@ -111,8 +136,9 @@ public class DatasetVersionDifference {
                     return Integer.valueOf(a).compareTo(Integer.valueOf(b));
                 }
             });
+            detailData.add(blockList);
         }
-        Collections.sort(detailDataByBlock, new Comparator<List>() {
+        Collections.sort(detailData, new Comparator<List>() {
             public int compare(List l1, List l2) {
                 DatasetField dsfa[] = (DatasetField[]) l1.get(0);
                 DatasetField dsfb[] = (DatasetField[]) l2.get(0);
@@ -121,11 +147,9 @@ public class DatasetVersionDifference {
                 return Integer.valueOf(a).compareTo(Integer.valueOf(b));
             }
         });
-        getTermsDifferences();
+        return detailData;
     }
-    
 
-    
     private void getTermsDifferences() {
 
         changedTermsAccess = new ArrayList();
@@ -380,27 +404,7 @@ public class DatasetVersionDifference {
     }
 
     private void addToSummary(DatasetField dsfo, DatasetField dsfn) {
-        if (dsfo == null) {
-            dsfo = new DatasetField();
-            dsfo.setDatasetFieldType(dsfn.getDatasetFieldType());
-        }
-        if (dsfn == null) {
-            dsfn = new DatasetField();
-            dsfn.setDatasetFieldType(dsfo.getDatasetFieldType());
-        }
-        boolean addedToAll = false;
-        for (List blockList : detailDataByBlock) {
-            DatasetField dsft[] = (DatasetField[]) blockList.get(0);
-            if (dsft[0].getDatasetFieldType().getMetadataBlock().equals(dsfo.getDatasetFieldType().getMetadataBlock())) {
-                addToList(blockList, dsfo, dsfn);
-                addedToAll = true;
-            }
-        }
-        if (!addedToAll) {
-            List<DatasetField[]> newList = new ArrayList<>();
-            addToList(newList, dsfo, dsfn);
-            detailDataByBlock.add(newList);
-        }
+        addToList(changedFields, dsfo, dsfn);
     }
 
     private void updateBlockSummary(DatasetField dsf, int added, int deleted, int changed) {
@@ -562,6 +566,9 @@ public class DatasetVersionDifference {
     }
 
     public List<List> getDetailDataByBlock() {
+        if (detailDataByBlock == null) {
+            detailDataByBlock = buildDetailDataByBlock();
+        }
         return detailDataByBlock;
     }
 
@@ -656,10 +663,15 @@ public class DatasetVersionDifference {
         int i = 0;
         int j = 0;
 
+        // sorted copies, so that the order of the files in the versions
+        // themselves is left alone
+        List<FileMetadata> originalFileMetadatas = new ArrayList<>(originalVersion.getFileMetadatas());
+        List<FileMetadata> newFileMetadatas = new ArrayList<>(newVersion.getFileMetadatas());
+
         FileMetadata fm1;
         FileMetadata fm2;
         
-           Collections.sort(originalVersion.getFileMetadatas(), new Comparator<FileMetadata>() {
+           Collections.sort(originalFileMetadatas, new Comparator<FileMetadata>() {
                 public int compare(FileMetadata l1, FileMetadata l2) {
                     FileMetadata fm1 = l1;  //(DatasetField[]) l1.get(0);
                     FileMetadata fm2 = l2;
@@ -681,7 +693,7 @@ public class DatasetVersionDifference {
            // version differences, this should be OK. 
            //   -- L.A. Aug. 2014
            
-            Collections.sort(newVersion.getFileMetadatas(), new Comparator<FileMetadata>() {
+            Collections.sort(newFileMetadatas, new Comparator<FileMetadata>() {
                 public int compare(FileMetadata l1, FileMetadata l2) {
                     FileMetadata fm1 = l1;  //(DatasetField[]) l1.get(0);
                     FileMetadata fm2 = l2;
@@ -699,10 +711,10 @@ public class DatasetVersionDifference {
                 }
             });
 
-        while (i < originalVersion.getFileMetadatas().size()
-                && j < newVersion.getFileMetadatas().size()) {
-            fm1 = originalVersion.getFileMetadatas().get(i);
-            fm2 = newVersion.getFileMetadatas().get(j);
+        while (i < originalFileMetadatas.size()
+                && j < newFileMetadatas.size()) {
+            fm1 = originalFileMetadatas.get(i);
+            fm2 = newFileMetadatas.get(j);
 
             if (fm2.getDataFile().getId() != null && fm1.getDataFile().getId().compareTo(fm2.getDataFile().getId()) == 0) {
                 // The 2 versions share the same study file;
@@ -736,8 +748,8 @@ public class DatasetVersionDifference {
         // We've reached the end of at least one file list.
         // Whatever files are left on either of the 2 lists are automatically "different"
         // between the 2 versions.
-        while (i < originalVersion.getFileMetadatas().size()) {
-            fm1 = originalVersion.getFileMetadatas().get(i);
+        while (i < originalFileMetadatas.size()) {
+            fm1 = originalFileMetadatas.get(i);
             datasetFileDifferenceItem fdi = selectFileMetadataDiffs(fm1, null);
             fdi.setFileId(fm1.getDataFile().getId().toString());
             fdi.setFileMD5(fm1.getDataFile().getmd5());
@@ -746,8 +758,8 @@ public class DatasetVersionDifference {
             i++;
         }
 
-        while (j < newVersion.getFileMetadatas().size()) {
-            fm2 = newVersion.getFileMetadatas().get(j);
+        while (j < newFileMetadatas.size()) {
+            fm2 = newFileMetadatas.get(j);
             datasetFileDifferenceItem fdi = selectFileMetadataDiffs(null, fm2);
             if (fm2.getDataFile().getId() != null) {
                 fdi.setFileId(fm2.getDataFile().getId().toString());
@@ -1143,6 +1155,9 @@ public class DatasetVersionDifference {
     }
 
     public List<datasetFileDifferenceItem> getDatasetFilesDiffList() {
+        if (datasetFilesDiffList == null) {
+            initDatasetFilesDifferencesList();
+        }
         return datasetFilesDiffList;
     }
 
@@ -1151,6 +1166,7 @@ public class DatasetVersionDifference {
     }
 
     public String getNoFileDifferencesFoundLabel() {
+        getDatasetFilesDiffList();
         return noFileDifferencesFoundLabel;
     }
 
@@ -9,7 +9,9 @@ import edu.harvard.iq.dataverse.DatasetVersion.VersionState;
 import edu.harvard.iq.dataverse.search.SolrSearchResult;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -136,6 +138,21 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
         }                
     } // end RetrieveDatasetVersionResponse
     
+    /**
+     * Just what is needed to index the permissions of the files of the given
+     * versions, without loading the file metadata and files themselves.
+     *
+     * @return One row per file: dataset version id, file id and label.
+     */
+    public List<Object[]> findFileIdsAndLabels(Collection<Long> datasetVersionIds) {
+        if (datasetVersionIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return em.createQuery("SELECT fm.datasetVersion.id, fm.dataFile.id, fm.label FROM FileMetadata fm WHERE fm.datasetVersion.id IN :datasetVersionIds", Object[].class)
+                .setParameter("datasetVersionIds", datasetVersionIds)
+                .getResultList();
+    }
+
     public DatasetVersion find(Object pk) {
         return (DatasetVersion) em.find(DatasetVersion.class, pk);
     }
@@ -765,16 +782,16 @@ public class DatasetVersionServiceBean implements java.io.Serializable {
         
         try {
             if (datasetId != null) {
-                searchResult = (Object[]) em.createNativeQuery("SELECT t0.VERSIONSTATE, t1.ALIAS, t2.THUMBNAILFILE_ID FROM DATASETVERSION t0, DATAVERSE t1, DATASET t2 WHERE t0.ID = " 
-                        + datasetVersionId 
-                        + " AND t1.ID = " 
-                        + dataverseId
-                        + " AND t2.ID = "
-                        + datasetId).getSingleResult()
-                        
-                        ;
+                searchResult = (Object[]) em.createNativeQuery("SELECT t0.VERSIONSTATE, t1.ALIAS, t2.THUMBNAILFILE_ID FROM DATASETVERSION t0, DATAVERSE t1, DATASET t2 WHERE t0.ID = ?1 AND t1.ID = ?2 AND t2.ID = ?3")
+                        .setParameter(1, datasetVersionId)
+                        .setParameter(2, dataverseId)
+                        .setParameter(3, datasetId)
+                        .getSingleResult();
             } else {
-                searchResult = (Object[]) em.createNativeQuery("SELECT t0.VERSIONSTATE, t1.ALIAS FROM DATASETVERSION t0, DATAVERSE t1 WHERE t0.ID = " + datasetVersionId + " AND t1.ID = " + dataverseId).getSingleResult();
+                searchResult = (Object[]) em.createNativeQuery("SELECT t0.VERSIONSTATE, t1.ALIAS FROM DATASETVERSION t0, DATAVERSE t1 WHERE t0.ID = ?1 AND t1.ID = ?2")
+                        .setParameter(1, datasetVersionId)
+                        .setParameter(2, dataverseId)
+                        .getSingleResult();
             }
         } catch (Exception ex) {
             return;
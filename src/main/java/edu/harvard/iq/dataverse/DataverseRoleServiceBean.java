@@ -5,21 +5,25 @@ import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.RoleAssignee;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.authorization.RoleAssignmentSet;
+import edu.harvard.iq.dataverse.mydata.MyDataFinder;
 import edu.harvard.iq.dataverse.search.IndexAsync;
 import edu.harvard.iq.dataverse.search.IndexResponse;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Named;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 /**
  *
@@ -38,8 +42,10 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     @EJB IndexServiceBean indexService;   
     @EJB SolrIndexServiceBean solrIndexService;
     @EJB IndexAsync indexAsync;
+    @Resource TransactionSynchronizationRegistry transactionRegistry;
 
 	public DataverseRole save( DataverseRole aRole ) {
+            MyDataFinder.assignmentsCache.invalidateAllAfterCommit(transactionRegistry);
 		if ( aRole.getId() == null ) {
 			em.persist(aRole);
                     /**
@@ -66,6 +72,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
 		} else {
 			assignment = em.merge( assignment );
 		}
+            MyDataFinder.assignmentsCache.invalidateAfterCommit(transactionRegistry, assignment.getAssigneeIdentifier());
             /**
              * @todo update permissionModificationTime here.
              */
@@ -94,6 +101,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
 		em.createNamedQuery("DataverseRole.deleteById", DataverseRole.class)
 				.setParameter("id", id)
 				.executeUpdate();
+            MyDataFinder.assignmentsCache.invalidateAllAfterCommit(transactionRegistry);
 	}
 	
 	public List<DataverseRole> findByOwnerId( Long ownerId ) {
@@ -125,6 +133,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
 			em.refresh(role);
 		}
 		em.refresh(assignee);
+            MyDataFinder.assignmentsCache.invalidateAfterCommit(transactionRegistry, assignee.getIdentifier());
 	}
 	
 	public void revoke( RoleAssignment ra ) {
@@ -132,6 +141,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
 			ra = em.merge(ra);
 		}
 		em.remove(ra);
+            MyDataFinder.assignmentsCache.invalidateAfterCommit(transactionRegistry, ra.getAssigneeIdentifier());
             /**
              * @todo update permissionModificationTime here.
              */
@@ -225,6 +235,22 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
 		return query.getResultList();
 	}
 	
+	/**
+	 * Retrieves the role assignments defined directly on any of the given
+	 * objects, in a single query. No traversal on the containment hierarchy
+	 * is done.
+	 * @param definitionPointIds ids of the objects where the roles are defined.
+	 * @return the role assignments, roles included.
+	 */
+	public List<RoleAssignment> directRoleAssignments( Collection<Long> definitionPointIds ) {
+		if ( definitionPointIds.isEmpty() ) {
+			return new ArrayList<>();
+		}
+		return em.createNamedQuery("RoleAssignment.listByDefinitionPointIds", RoleAssignment.class)
+				.setParameter("definitionPointIds", definitionPointIds)
+				.getResultList();
+	}
+	
 	/**
 	 * Get all the available roles in a given dataverse, mapped by the
 	 * dataverse that defines them. Map entries are ordered by reversed hierarchy 
@@ -16,6 +16,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -124,6 +125,18 @@ public class DataverseServiceBean implements java.io.Serializable {
         return query.getResultList();
     }
     
+    /**
+     * The direct child dataverses of all the given dataverses, in one query.
+     */
+    public List<Dataverse> findByOwnerIds(Collection<Long> ownerIds) {
+        if (ownerIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return em.createQuery("select object(o) from Dataverse as o where o.owner.id in :ownerIds order by o.id", Dataverse.class)
+                .setParameter("ownerIds", ownerIds)
+                .getResultList();
+    }
+
     public List<Dataverse> findPublishedByOwnerId(Long ownerId) {
         Query query = em.createQuery("select object(o) from Dataverse as o where o.owner.id =:ownerId and o.publicationDate is not null order by o.name");
         query.setParameter("ownerId", ownerId);
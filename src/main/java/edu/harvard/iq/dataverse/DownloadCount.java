@@ -0,0 +1,91 @@
+package edu.harvard.iq.dataverse;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * The number of downloads (guestbook responses) of a file on a day, kept up
+ * to date as the responses are saved, so that the download counts shown on
+ * the pages are sums over this small table rather than counts over all the
+ * guestbook responses. There may be more than one row for the same file and
+ * day; they add up.
+ *
+ * @see GuestbookResponseServiceBean#saveAll(java.util.List)
+ */
+@Entity
+@Table(indexes = {
+    @Index(columnList = "datafile_id"),
+    @Index(columnList = "dataset_id"),
+    @Index(columnList = "countDate")
+})
+public class DownloadCount implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "dataset_id", nullable = false)
+    private Long datasetId;
+
+    @Column(name = "datafile_id", nullable = false)
+    private Long dataFileId;
+
+    @Temporal(value = TemporalType.DATE)
+    @Column(nullable = false)
+    private Date countDate;
+
+    @Column(nullable = false)
+    private long downloadCount;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getDatasetId() {
+        return datasetId;
+    }
+
+    public void setDatasetId(Long datasetId) {
+        this.datasetId = datasetId;
+    }
+
+    public Long getDataFileId() {
+        return dataFileId;
+    }
+
+    public void setDataFileId(Long dataFileId) {
+        this.dataFileId = dataFileId;
+    }
+
+    public Date getCountDate() {
+        return countDate;
+    }
+
+    public void setCountDate(Date countDate) {
+        this.countDate = countDate;
+    }
+
+    public long getDownloadCount() {
+        return downloadCount;
+    }
+
+    public void setDownloadCount(long downloadCount) {
+        this.downloadCount = downloadCount;
+    }
+
+}
@@ -2,12 +2,16 @@ package edu.harvard.iq.dataverse;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import static javax.ejb.TransactionAttributeType.REQUIRES_NEW;
@@ -100,6 +104,20 @@ public class DvObjectServiceBean implements java.io.Serializable {
         return numRowsUpdated;
     }
 
+    /**
+     * Sets the permission index time of many objects with a single update,
+     * rather than merging them one by one.
+     */
+    public int updatePermissionIndexTimes(Collection<Long> dvObjectIds) {
+        if (dvObjectIds.isEmpty()) {
+            return 0;
+        }
+        Query updatePermissionIndexTimes = em.createQuery("UPDATE DvObject o SET o.permissionIndexTime = :permissionIndexTime WHERE o.id IN :dvObjectIds");
+        updatePermissionIndexTimes.setParameter("permissionIndexTime", new Timestamp(new Date().getTime()));
+        updatePermissionIndexTimes.setParameter("dvObjectIds", dvObjectIds);
+        return updatePermissionIndexTimes.executeUpdate();
+    }
+
     public int clearIndexTimes(long dvObjectId) {
         Query clearIndexTimes = em.createQuery("UPDATE DvObject o SET o.indexTime = NULL, o.permissionIndexTime = NULL WHERE o.id =:dvObjectId");
         clearIndexTimes.setParameter("dvObjectId", dvObjectId);
@@ -167,6 +185,25 @@ public class DvObjectServiceBean implements java.io.Serializable {
         
     }
     
+    /**
+     * Same as {@link #getDvObjectInfoForMyData(java.util.List)}, run on a
+     * container thread so that MyData can issue independent queries side by
+     * side.
+     */
+    @Asynchronous
+    public Future<List<Object[]>> getDvObjectInfoForMyDataAsync(List<Long> dvObjectIdList){
+        return new AsyncResult<>(getDvObjectInfoForMyData(dvObjectIdList));
+    }
+
+    /**
+     * Same as {@link #getDvObjectInfoByParentIdForMyData(java.util.List)}, run
+     * on a container thread.
+     */
+    @Asynchronous
+    public Future<List<Object[]>> getDvObjectInfoByParentIdForMyDataAsync(List<Long> dvObjectParentIdList){
+        return new AsyncResult<>(getDvObjectInfoByParentIdForMyData(dvObjectParentIdList));
+    }
+
     /**
      * Used to exclude Harvested Data from the Mydata page
      * 
@@ -6,6 +6,7 @@ import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.groups.impl.explicit.ExplicitGroupServiceBean;
 import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinUserServiceBean;
+import edu.harvard.iq.dataverse.engine.CommandMetrics;
 import edu.harvard.iq.dataverse.engine.DataverseEngine;
 import edu.harvard.iq.dataverse.engine.command.Command;
 import edu.harvard.iq.dataverse.engine.command.CommandContext;
@@ -27,6 +28,8 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.Set;
@@ -132,6 +135,9 @@ public class EjbDataverseEngine {
     @EJB
     AuthenticationServiceBean authentication;
 
+    @EJB
+    PostPublishServiceBean postPublish;
+
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
 
@@ -140,6 +146,16 @@ public class EjbDataverseEngine {
 
     private CommandContext ctxt;
 
+    /**
+     * The commands being executed by the current thread, innermost first.
+     */
+    private static final ThreadLocal<Deque<String>> RUNNING_COMMANDS = new ThreadLocal<Deque<String>>() {
+        @Override
+        protected Deque<String> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
     @TransactionAttribute(REQUIRES_NEW)
     public <R> R submitInNewTransaction(Command<R> aCommand) throws CommandException {
         return submit(aCommand);
@@ -149,6 +165,20 @@ public class EjbDataverseEngine {
 
         final ActionLogRecord logRec = new ActionLogRecord(ActionLogRecord.ActionType.Command, aCommand.getClass().getCanonicalName());
 
+        // for the command metrics
+        final String commandName = aCommand.getClass().getName();
+        Deque<String> runningCommands = RUNNING_COMMANDS.get();
+        final boolean nested = !runningCommands.isEmpty();
+        if ( nested ) {
+            CommandMetrics.getInstance().recordNestedSubmit(runningCommands.peek());
+        }
+        runningCommands.push(commandName);
+        int permissionChecks = 0;
+        long permissionNanos = 0;
+        boolean executed = false;
+        long executeNanos = 0;
+        boolean succeeded = false;
+
         try {
             logRec.setUserIdentifier( aCommand.getRequest().getUser().getIdentifier() );
             
@@ -162,6 +192,7 @@ public class EjbDataverseEngine {
             
             Map<String, DvObject> affectedDvObjects = aCommand.getAffectedDvObjects();
             logRec.setInfo( describe(affectedDvObjects) );
+            long permissionStart = System.nanoTime();
             for (Map.Entry<String, ? extends Set<Permission>> pair : requiredMap.entrySet()) {
                 String dvName = pair.getKey();
                 if (!affectedDvObjects.containsKey(dvName)) {
@@ -171,9 +202,11 @@ public class EjbDataverseEngine {
 
                 Set<Permission> granted = (dvo != null) ? permissionService.permissionsFor(dvReq, dvo)
                         : EnumSet.allOf(Permission.class);
+                permissionChecks++;
                 Set<Permission> required = requiredMap.get(dvName);
                 
                 if (!granted.containsAll(required)) {
+                    permissionNanos = System.nanoTime() - permissionStart;
                     required.removeAll(granted);
                     logRec.setActionResult(ActionLogRecord.Result.PermissionError);
                     throw new PermissionException("Can't execute command " + aCommand
@@ -184,12 +217,19 @@ public class EjbDataverseEngine {
                             required, dvo);
                 }
             }
+            permissionNanos = System.nanoTime() - permissionStart;
+            executed = true;
+            long executeStart = System.nanoTime();
             try {
-                return aCommand.execute(getContext());
+                R result = aCommand.execute(getContext());
+                succeeded = true;
+                return result;
                 
             } catch ( EJBException ejbe ) {
                 logRec.setActionResult(ActionLogRecord.Result.InternalError);                
                 throw new CommandException("Command " + aCommand.toString() + " failed: " + ejbe.getMessage(), ejbe.getCausedByException(), aCommand);
+            } finally {
+                executeNanos = System.nanoTime() - executeStart;
             }
             
         } catch ( RuntimeException re ) {
@@ -220,6 +260,12 @@ public class EjbDataverseEngine {
             }
             logRec.setEndTime( new java.util.Date() );
             logSvc.log(logRec);
+            
+            runningCommands.pop();
+            if ( runningCommands.isEmpty() ) {
+                RUNNING_COMMANDS.remove();
+            }
+            CommandMetrics.getInstance().record(commandName, nested, permissionChecks, permissionNanos, executed, executeNanos, !succeeded);
         }
     }
 
@@ -381,6 +427,11 @@ public class EjbDataverseEngine {
                     return authentication;
                 } 
                 
+                @Override
+                public PostPublishServiceBean postPublish() {
+                    return postPublish;
+                }
+                
             };
         }
 
@@ -31,7 +31,7 @@ import javax.validation.constraints.Pattern;
  *
  * @author skraffmiller
  */
-@Table(indexes = {@Index(columnList="datafile_id"), @Index(columnList="datasetversion_id")} )
+@Table(indexes = {@Index(columnList="datafile_id"), @Index(columnList="datasetversion_id"), @Index(columnList="datasetversion_id, label, id")} )
 @Entity
 public class FileMetadata implements Serializable {
     private static final long serialVersionUID = 1L;
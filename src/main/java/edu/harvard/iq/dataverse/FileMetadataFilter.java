@@ -0,0 +1,85 @@
+package edu.harvard.iq.dataverse;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Which files of a version to list: those whose label or description contain
+ * a search term, that are in a category, and/or that have a tag. Empty
+ * criteria match every file. The filter is applied by the database, see
+ * {@link DataFileServiceBean#findFileMetadataSummaries(java.lang.Long, edu.harvard.iq.dataverse.FileMetadataFilter, java.lang.String, java.lang.Long, int)}.
+ */
+public class FileMetadataFilter implements Serializable {
+
+    public static final FileMetadataFilter NONE = new FileMetadataFilter(null, null, null);
+
+    private final String searchTerm;
+    private final String categoryName;
+    private final DataFileTag.TagType tagType;
+
+    public FileMetadataFilter(String searchTerm, String categoryName, DataFileTag.TagType tagType) {
+        this.searchTerm = isBlank(searchTerm) ? null : searchTerm.trim().toLowerCase();
+        this.categoryName = isBlank(categoryName) ? null : categoryName.trim();
+        this.tagType = tagType;
+    }
+
+    /**
+     * @param tagLabel A tag as shown on the dataset page, e.g. "Time Series".
+     * @throws IllegalArgumentException if there is no such tag.
+     */
+    public static FileMetadataFilter create(String searchTerm, String categoryName, String tagLabel) {
+        DataFileTag.TagType tagType = null;
+        if (!isBlank(tagLabel)) {
+            tagType = DataFileTag.findTypeByLabel(tagLabel.trim());
+            if (tagType == null) {
+                throw new IllegalArgumentException("Unknown DataFile Tag: " + tagLabel);
+            }
+        }
+        return new FileMetadataFilter(searchTerm, categoryName, tagType);
+    }
+
+    /**
+     * @return The search term, in lower case.
+     */
+    public String getSearchTerm() {
+        return searchTerm;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public DataFileTag.TagType getTagType() {
+        return tagType;
+    }
+
+    public boolean isEmpty() {
+        return searchTerm == null && categoryName == null && tagType == null;
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(searchTerm, categoryName, tagType);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof FileMetadataFilter)) {
+            return false;
+        }
+        FileMetadataFilter other = (FileMetadataFilter) obj;
+        return Objects.equals(searchTerm, other.searchTerm)
+                && Objects.equals(categoryName, other.categoryName)
+                && tagType == other.tagType;
+    }
+
+    @Override
+    public String toString() {
+        return "[FileMetadataFilter searchTerm:" + searchTerm + " category:" + categoryName + " tag:" + tagType + "]";
+    }
+
+}
@@ -0,0 +1,81 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What a listing of the files of a version shows about a file, read straight
+ * from the database without loading the {@link FileMetadata} and
+ * {@link DataFile} entities (and all they are related to).
+ *
+ * @see DataFileServiceBean#findFileMetadataSummaries(java.lang.Long, edu.harvard.iq.dataverse.FileMetadataFilter, java.lang.String, java.lang.Long, int)
+ */
+public class FileMetadataSummary {
+
+    private final Long fileMetadataId;
+    private final Long dataFileId;
+    private final String label;
+    private final String description;
+    private final boolean restricted;
+    private final String contentType;
+    private final Long filesize;
+    private final String md5;
+    private final List<String> categoryNames = new ArrayList<>();
+    private final List<String> tagLabels = new ArrayList<>();
+
+    /**
+     * Used by the JPQL constructor expression of the listing query.
+     */
+    public FileMetadataSummary(Long fileMetadataId, Long dataFileId, String label, String description,
+            boolean restricted, String contentType, Long filesize, String md5) {
+        this.fileMetadataId = fileMetadataId;
+        this.dataFileId = dataFileId;
+        this.label = label;
+        this.description = description;
+        this.restricted = restricted;
+        this.contentType = contentType;
+        this.filesize = filesize;
+        this.md5 = md5;
+    }
+
+    public Long getFileMetadataId() {
+        return fileMetadataId;
+    }
+
+    public Long getDataFileId() {
+        return dataFileId;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public boolean isRestricted() {
+        return restricted;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Long getFilesize() {
+        return filesize;
+    }
+
+    public String getMd5() {
+        return md5;
+    }
+
+    public List<String> getCategoryNames() {
+        return categoryNames;
+    }
+
+    public List<String> getTagLabels() {
+        return tagLabels;
+    }
+
+}
@@ -10,9 +10,14 @@ import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
@@ -33,6 +38,9 @@ public class GuestbookResponseServiceBean {
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
 
+    @EJB
+    GuestbookResponseWriter guestbookResponseWriter;
+
     public List<GuestbookResponse> findAll() {
         return em.createQuery("select object(o) from GuestbookResponse as o order by o.responseTime desc", GuestbookResponse.class).getResultList();
     }
@@ -98,21 +106,13 @@ public class GuestbookResponseServiceBean {
     }
 
     public Long findCount30Days(Long dataverseId) {
-        String beginTime;
-        String endTime;
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.DAY_OF_YEAR, -30);
-        beginTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(cal.getTime());  // Use yesterday as default value
-        cal.add(Calendar.DAY_OF_YEAR, 31);
-        endTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(cal.getTime());
-        String queryString = "select count(o.id) from GuestbookResponse as o  ";
+        String queryString = "select cast(coalesce(sum(o.downloadcount), 0) as bigint) from DownloadCount o ";
         if (dataverseId != null) {
             queryString += ", DvObject v where o.dataset_id = v.id and v.owner_id = " + dataverseId + " and ";
         } else {
             queryString += " where ";
         }
-        queryString += " o.responseTime >='" + beginTime + "'";
-        queryString += " and o.responseTime<='" + endTime + "'";
+        queryString += " o.countdate >= current_date - 30";
         Query query = em.createNativeQuery(queryString);
         return (Long) query.getSingleResult();
     }
@@ -124,9 +124,9 @@ public class GuestbookResponseServiceBean {
     public Long findCountAll(Long dataverseId) {
         String queryString = "";
         if (dataverseId != null) {
-            queryString = "select count(o.id) from GuestbookResponse  o,  DvObject v, where o.dataset_id = v.id and v.owner_id = " + dataverseId + " ";
+            queryString = "select cast(coalesce(sum(o.downloadcount), 0) as bigint) from DownloadCount o, DvObject v where o.dataset_id = v.id and v.owner_id = " + dataverseId + " ";
         } else {
-            queryString = "select count(o.id) from GuestbookResponse  o ";
+            queryString = "select cast(coalesce(sum(o.downloadcount), 0) as bigint) from DownloadCount o ";
         }
 
         Query query = em.createNativeQuery(queryString);
@@ -353,28 +353,100 @@ public class GuestbookResponseServiceBean {
         return em.find(GuestbookResponse.class, id);
     }
 
+    /**
+     * Records a download: a copy of the response (the page may go on
+     * changing the original, e.g. for the next file of a multiple download)
+     * is saved in the background by the {@link GuestbookResponseWriter}.
+     */
+    public void record(GuestbookResponse guestbookResponse) {
+        GuestbookResponse copy = new GuestbookResponse(guestbookResponse);
+        copy.setDataFile(guestbookResponse.getDataFile());
+        copy.setDownloadtype(guestbookResponse.getDownloadtype());
+        if (copy.getResponseTime() == null) {
+            copy.setResponseTime(new Date());
+        }
+        if (!guestbookResponseWriter.enqueue(copy)) {
+            save(copy);
+        }
+    }
+
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void save(GuestbookResponse guestbookResponse) {
         em.persist(guestbookResponse);
+        incrementDownloadCounts(Collections.singletonList(guestbookResponse));
+    }
+
+    /**
+     * Saves the responses, and adds them to the download counts, in one
+     * transaction.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void saveAll(List<GuestbookResponse> guestbookResponses) {
+        for (GuestbookResponse guestbookResponse : guestbookResponses) {
+            em.persist(guestbookResponse);
+        }
+        incrementDownloadCounts(guestbookResponses);
+    }
+
+    private void incrementDownloadCounts(List<GuestbookResponse> guestbookResponses) {
+        for (DownloadCount count : countDownloads(guestbookResponses)) {
+            int updated = em.createNativeQuery("update DownloadCount set downloadcount = downloadcount + ?1 where datafile_id = ?2 and countdate = ?3")
+                    .setParameter(1, count.getDownloadCount())
+                    .setParameter(2, count.getDataFileId())
+                    .setParameter(3, new java.sql.Date(count.getCountDate().getTime()))
+                    .executeUpdate();
+            if (updated == 0) {
+                em.persist(count);
+            }
+        }
+    }
+
+    /**
+     * @return The number of responses per file and day.
+     */
+    static Collection<DownloadCount> countDownloads(List<GuestbookResponse> guestbookResponses) {
+        Map<String, DownloadCount> counts = new LinkedHashMap<>();
+        Calendar cal = Calendar.getInstance();
+        for (GuestbookResponse guestbookResponse : guestbookResponses) {
+            cal.setTime(guestbookResponse.getResponseTime());
+            cal.set(Calendar.HOUR_OF_DAY, 0);
+            cal.set(Calendar.MINUTE, 0);
+            cal.set(Calendar.SECOND, 0);
+            cal.set(Calendar.MILLISECOND, 0);
+            Long dataFileId = guestbookResponse.getDataFile().getId();
+            String key = dataFileId + "/" + cal.getTimeInMillis();
+            DownloadCount count = counts.get(key);
+            if (count == null) {
+                count = new DownloadCount();
+                count.setDataFileId(dataFileId);
+                count.setDatasetId(guestbookResponse.getDataset().getId());
+                count.setCountDate(cal.getTime());
+                counts.put(key, count);
+            }
+            count.setDownloadCount(count.getDownloadCount() + 1);
+        }
+        return counts.values();
     }
     
     
     public Long getCountGuestbookResponsesByDataFileId(Long dataFileId) {
-        // datafile id is null, will return 0
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.datafile_id  = " + dataFileId);
+        if (dataFileId == null) {
+            return 0L;
+        }
+        Query query = em.createNativeQuery("select cast(coalesce(sum(o.downloadcount), 0) as bigint) from DownloadCount o where o.datafile_id = " + dataFileId);
         return (Long) query.getSingleResult();
     }
     
     public Long getCountGuestbookResponsesByDatasetId(Long datasetId) {
-        // dataset id is null, will return 0        
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId);
+        if (datasetId == null) {
+            return 0L;
+        }
+        Query query = em.createNativeQuery("select cast(coalesce(sum(o.downloadcount), 0) as bigint) from DownloadCount o where o.dataset_id = " + datasetId);
         return (Long) query.getSingleResult();
     }    
 
     public Long getCountOfAllGuestbookResponses() {
-        // dataset id is null, will return 0        
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o;");
-        return (Long) query.getSingleResult();
+        return findCountAll();
     }
     
 }
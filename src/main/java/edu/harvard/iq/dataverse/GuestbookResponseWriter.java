@@ -0,0 +1,79 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.BatchingEntityWriter;
+import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+/**
+ * Saves the guestbook responses recorded for downloads in the background,
+ * every {@link SystemConfig#getGuestbookResponseFlushIntervalMillis()}
+ * milliseconds, in batches of up to {@link #BATCH_SIZE} responses per
+ * transaction, together with the matching {@link DownloadCount}s.
+ *
+ * @see GuestbookResponseServiceBean#record(GuestbookResponse)
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class GuestbookResponseWriter extends BatchingEntityWriter<GuestbookResponse> {
+
+    private static final Logger logger = Logger.getLogger(GuestbookResponseWriter.class.getCanonicalName());
+
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final int BATCH_SIZE = 200;
+
+    @EJB
+    SystemConfig systemConfig;
+
+    @EJB
+    GuestbookResponseServiceBean guestbookResponseService;
+
+    public GuestbookResponseWriter() {
+        super("guestbook responses", QUEUE_CAPACITY, BATCH_SIZE);
+    }
+
+    @Override
+    protected long getFlushIntervalMillis() {
+        return systemConfig.getGuestbookResponseFlushIntervalMillis();
+    }
+
+    /**
+     * Saves the batch in one transaction, or the responses one by one if the
+     * batch fails.
+     */
+    @Override
+    protected void persist(List<GuestbookResponse> batch) {
+        try {
+            guestbookResponseService.saveAll(batch);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Could not save a batch of " + batch.size() + " guestbook responses, saving them one by one", e);
+            saveEach(batch);
+        }
+    }
+
+    private void saveEach(List<GuestbookResponse> batch) {
+        for (GuestbookResponse guestbookResponse : batch) {
+            // ids may have been assigned by the failed, rolled back batch
+            guestbookResponse.setId(null);
+            for (CustomQuestionResponse customQuestionResponse : guestbookResponse.getCustomQuestionResponses()) {
+                customQuestionResponse.setId(null);
+            }
+            try {
+                guestbookResponseService.save(guestbookResponse);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Could not save the guestbook response for file " + guestbookResponse.getDataFile().getId(), e);
+            }
+        }
+    }
+
+}
@@ -299,9 +299,38 @@ public class MailServiceBean implements java.io.Serializable {
         return "";
     }
 
-    private String getMessageTextBasedOnNotification(UserNotification userNotification, Object targetObject){       
+    private String getMessageTextBasedOnNotification(UserNotification userNotification, Object targetObject){
+        String notificationText = getNotificationText(userNotification, targetObject);
+        if (notificationText.isEmpty()) {
+            return "";
+        }
+        return ResourceBundle.getBundle("Bundle").getString("notification.email.greeting") + notificationText;
+    }
+
+    /**
+     * The subject and text of the email for the notification, without the
+     * greeting and closing, for {@link NotificationMailer} to send.
+     *
+     * @return {@code null} if there is nothing to send.
+     */
+    public NotificationDigest.Item getNotificationEmailItem(UserNotification notification) {
+        Object objectOfNotification = getObjectOfNotification(notification);
+        if (objectOfNotification == null) {
+            logger.warning("Skipping " + notification.getType() + " notification, because no valid Object was found");
+            return null;
+        }
+        String text = getNotificationText(notification, objectOfNotification);
+        String subject = getSubjectTextBasedOnNotification(notification);
+        if (text.isEmpty() || subject.isEmpty()) {
+            logger.warning("Skipping " + notification.getType() + " notification, because couldn't get valid message");
+            return null;
+        }
+        return new NotificationDigest.Item(notification.getId(), subject, text);
+    }
+
+    private String getNotificationText(UserNotification userNotification, Object targetObject) {
         
-        String messageText = ResourceBundle.getBundle("Bundle").getString("notification.email.greeting");
+        String messageText = "";
         DatasetVersion version = null;
         Dataset dataset = null;
         DvObject dvObj = null;
@@ -337,9 +337,7 @@ public class ManageFilePermissionsPage implements java.io.Serializable {
             }
 
             if (sendNotification) {
-                for (AuthenticatedUser au : roleAssigneeService.getExplicitUsers(roleAssignee)) {
-                    userNotificationService.sendNotification(au, new Timestamp(new Date().getTime()), UserNotification.Type.GRANTFILEACCESS, dataset.getId());                
-                }
+                userNotificationService.sendNotifications(roleAssigneeService.getExplicitUsers(roleAssignee), new Timestamp(new Date().getTime()), UserNotification.Type.GRANTFILEACCESS, dataset.getId());
              }
         }
         
@@ -384,12 +384,14 @@ public class ManagePermissionsPage implements java.io.Serializable {
         } else if (ra instanceof ExplicitGroup) {
             ExplicitGroup eg = (ExplicitGroup) ra;
             Set<String> explicitGroupMembers = eg.getContainedRoleAssgineeIdentifiers();
+            List<AuthenticatedUser> members = new ArrayList<>();
             for (String id : explicitGroupMembers) {
                 RoleAssignee explicitGroupMember = roleAssigneeService.getRoleAssignee(id);
                 if (explicitGroupMember instanceof AuthenticatedUser) {
-                    userNotificationService.sendNotification((AuthenticatedUser) explicitGroupMember, new Timestamp(new Date().getTime()), type, dvObject.getId());
+                    members.add((AuthenticatedUser) explicitGroupMember);
                 }
             }
+            userNotificationService.sendNotifications(members, new Timestamp(new Date().getTime()), type, dvObject.getId());
         }
     }
 
@@ -8,14 +8,14 @@ package edu.harvard.iq.dataverse;
 
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.User;
+import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
 import edu.harvard.iq.dataverse.dataaccess.DataFileIO;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
-import java.nio.file.Path;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
@@ -163,26 +163,11 @@ public class MapLayerMetadataServiceBean {
         try {
             DataFileIO dataAccess = df.getAccessObject();
 
-            if (dataAccess == null || !dataAccess.isLocalFile()) {
-                return false;
-            }
-            // Get the parent directory
-            //
-            Path fileDirname = dataAccess.getFileSystemPath().getParent();
-            if (fileDirname == null){
-                logger.warning("DataFile directory has null path.  Directory path: " + dataAccess.getFileSystemPath().toString());
+            if (dataAccess == null) {
                 return false;
             }
         
-            // Verify that the directory exists
-            //
-            File fileDirectory = new File(fileDirname.normalize().toString());
-            if (!(fileDirectory.isDirectory())){
-                logger.warning("DataFile directory is not actuall a directory.  Directory path: " + fileDirectory.toString());
-                return false;            
-            }
-        
-            /* Iterate through directory and delete any ".img" files for this DataFile
+            /* Delete any ".img" aux objects for this DataFile
            
                 Example:
                 Datafile name: 14a5e4abf7d-e7eebfb6474d
@@ -191,16 +176,13 @@ public class MapLayerMetadataServiceBean {
                     14a5e4abf7d-e7eebfb6474d.img.thumb64
                     14a5e4abf7d-e7eebfb6474d.img.thumb400
             */
-            String iconBaseFilename = dataAccess.getFileSystemPath().toString() +  ".img";
-        
-            for (File singleFile : fileDirectory.listFiles()) {
-                if (singleFile.toString().startsWith(iconBaseFilename)) {
-                    //logger.info("file found: " + singleFile.toString());
-                    singleFile.delete();
-                    //results.add(file.getName());
+            for (String auxItemTag : dataAccess.listAuxObjects()) {
+                if (auxItemTag.startsWith("img")) {
+                    dataAccess.deleteAuxObject(auxItemTag);
                 }
             }
         } catch (IOException ioEx) {
+            logger.warning("Failed to delete the older map images of DataFile " + df.getId() + ": " + ioEx.getMessage());
             return false; 
         }
                 
@@ -256,12 +238,10 @@ public class MapLayerMetadataServiceBean {
             dataAccess = null;
         }
 
-        if (dataAccess == null || !dataAccess.isLocalFile()) {
+        if (dataAccess == null) {
             return false;
         }
-        String destinationFile = dataAccess.getFileSystemPath().toString() +  ".img";
-        logger.info("destinationFile: getFileSystemLocation()" + dataAccess.getFileSystemPath().toString());
-        logger.info("destinationFile: " + destinationFile);
+        logger.info("destination: " + dataAccess.getStorageLocation() + ".img");
         
         URL url = new URL(imageUrl);
         logger.info("retrieve url : " + imageUrl);
@@ -280,16 +260,16 @@ public class MapLayerMetadataServiceBean {
             
         }
         
+        // (saved as the "img" aux object of the file, by whichever storage 
+        // driver the file is stored with)
         OutputStream os = null;
         
         try{
             logger.info("try to start OutputStream");
-            os = new FileOutputStream(destinationFile);
+            os = Channels.newOutputStream((WritableByteChannel) dataAccess.openAuxChannel("img", DataAccessOption.WRITE_ACCESS));
         } catch (Exception ex){
             logger.warning("Error when retrieving map icon image. Exception: " + ex.getMessage());
-            if (os!=null){
-                try { os.close(); } catch (IOException ignore) {}
-            }
+            try { is.close(); } catch (IOException ignore) {}
             return false;
         }
         
@@ -297,13 +277,15 @@ public class MapLayerMetadataServiceBean {
         int length;
 
         logger.info("Writing file...");
-        while ((length = is.read(b)) != -1) {
-            os.write(b, 0, length);
+        try {
+            while ((length = is.read(b)) != -1) {
+                os.write(b, 0, length);
+            }
+        } finally {
+            logger.info("Closing streams...");
+            is.close();
+            os.close();
         }
-
-        logger.info("Closing streams...");
-        is.close();
-        os.close();
         
         logger.info("Done");
         return true;
@@ -0,0 +1,95 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.BundleUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The notifications of one user that are emailed together: a single
+ * notification gets the email it always did, several get one email listing
+ * them all.
+ *
+ * @see NotificationMailer
+ */
+public class NotificationDigest {
+
+    /**
+     * What the email of a single notification says.
+     */
+    public static class Item {
+
+        private final Long notificationId;
+        private final String subject;
+        private final String text;
+
+        public Item(Long notificationId, String subject, String text) {
+            this.notificationId = notificationId;
+            this.subject = subject;
+            this.text = text;
+        }
+
+        public Long getNotificationId() {
+            return notificationId;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    private final String emailAddress;
+    private final List<Item> items = new ArrayList<>();
+
+    public NotificationDigest(String emailAddress) {
+        this.emailAddress = emailAddress;
+    }
+
+    public void add(Item item) {
+        items.add(item);
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public String getEmailAddress() {
+        return emailAddress;
+    }
+
+    public List<Long> getNotificationIds() {
+        List<Long> ids = new ArrayList<>(items.size());
+        for (Item item : items) {
+            ids.add(item.getNotificationId());
+        }
+        return ids;
+    }
+
+    public String getSubject() {
+        if (items.size() == 1) {
+            return items.get(0).getSubject();
+        }
+        return BundleUtil.getStringFromBundle("notification.email.digest.subject", Arrays.asList(String.valueOf(items.size())));
+    }
+
+    /**
+     * @return The text of the email, greeting and closing included.
+     */
+    public String getText() {
+        StringBuilder text = new StringBuilder(BundleUtil.getStringFromBundle("notification.email.greeting"));
+        if (items.size() == 1) {
+            text.append(items.get(0).getText());
+        } else {
+            text.append(BundleUtil.getStringFromBundle("notification.email.digest.intro", Arrays.asList(String.valueOf(items.size()))));
+            for (Item item : items) {
+                text.append("\n\n- ").append(item.getText());
+            }
+        }
+        return text.append(BundleUtil.getStringFromBundle("notification.email.closing")).toString();
+    }
+
+}
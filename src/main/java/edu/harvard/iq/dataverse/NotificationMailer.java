@@ -0,0 +1,196 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
+import edu.harvard.iq.dataverse.util.MailUtil;
+import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Emails the queued {@link UserNotification}s in the background, every
+ * {@link SystemConfig#getNotificationMailIntervalSeconds()} seconds. The
+ * notifications of a user queued in between are sent in one email (see
+ * {@link NotificationDigest}); at most
+ * {@link SystemConfig#getNotificationMailRateLimit()} emails are sent per
+ * run, over a single SMTP connection, and the rest are left for the next
+ * run.
+ *
+ * @see UserNotificationServiceBean#sendNotification(AuthenticatedUser, java.sql.Timestamp, UserNotification.Type, java.lang.Long)
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class NotificationMailer {
+
+    private static final Logger logger = Logger.getLogger(NotificationMailer.class.getCanonicalName());
+
+    /**
+     * How many queued notifications are read per email the mailer may send,
+     * so that most of the users read get all of theirs in one email.
+     */
+    private static final int NOTIFICATIONS_PER_EMAIL = 10;
+
+    @Resource(name = "mail/notifyMailSession")
+    Session session;
+
+    @Resource
+    TimerService timerService;
+
+    @EJB
+    UserNotificationServiceBean userNotificationService;
+
+    @EJB
+    MailServiceBean mailService;
+
+    @EJB
+    SettingsServiceBean settingsService;
+
+    @EJB
+    SystemConfig systemConfig;
+
+    // one run at a time, so that nothing is sent twice
+    private final ReentrantLock runLock = new ReentrantLock();
+
+    @PostConstruct
+    public void init() {
+        long interval = systemConfig.getNotificationMailIntervalSeconds() * 1000;
+        logger.fine("emailing notifications every " + interval + " ms");
+        timerService.createIntervalTimer(interval, interval, new TimerConfig("NotificationMailer", false));
+    }
+
+    @Timeout
+    public void send(Timer timer) {
+        if (!runLock.tryLock()) {
+            return;
+        }
+        try {
+            send();
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    private void send() {
+        int maxEmails = systemConfig.getNotificationMailRateLimit();
+        List<UserNotification> queued = userNotificationService.findEmailQueued(maxEmails * NOTIFICATIONS_PER_EMAIL);
+        if (queued.isEmpty()) {
+            return;
+        }
+
+        List<Long> skipped = new ArrayList<>();
+        Map<Long, NotificationDigest> digests = new LinkedHashMap<>();
+        for (UserNotification notification : queued) {
+            NotificationDigest digest = digests.get(notification.getUser().getId());
+            if (digest == null) {
+                if (digests.size() == maxEmails) {
+                    // left for the next run
+                    break;
+                }
+                digest = new NotificationDigest(getEmailAddress(notification.getUser()));
+                digests.put(notification.getUser().getId(), digest);
+            }
+            NotificationDigest.Item item = null;
+            if (digest.getEmailAddress() != null) {
+                try {
+                    item = mailService.getNotificationEmailItem(notification);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Could not write the email of notification " + notification.getId(), e);
+                }
+            }
+            if (item != null) {
+                digest.add(item);
+            } else {
+                skipped.add(notification.getId());
+            }
+        }
+        userNotificationService.dequeueEmails(skipped, false);
+
+        InternetAddress systemAddress = MailUtil.parseSystemAddress(settingsService.getValueForKey(SettingsServiceBean.Key.SystemEmail));
+        if (systemAddress == null) {
+            for (NotificationDigest digest : digests.values()) {
+                userNotificationService.dequeueEmails(digest.getNotificationIds(), false);
+            }
+            return;
+        }
+
+        int sent = 0;
+        Transport transport = null;
+        try {
+            for (NotificationDigest digest : digests.values()) {
+                if (digest.isEmpty()) {
+                    continue;
+                }
+                if (transport == null) {
+                    transport = session.getTransport();
+                    transport.connect();
+                }
+                boolean emailed = false;
+                try {
+                    Message msg = new MimeMessage(session);
+                    msg.setFrom(systemAddress);
+                    msg.setSentDate(new Date());
+                    msg.setRecipients(Message.RecipientType.TO, InternetAddress.parse(digest.getEmailAddress(), false));
+                    msg.setSubject(digest.getSubject());
+                    msg.setText(digest.getText());
+                    msg.saveChanges();
+                    transport.sendMessage(msg, msg.getAllRecipients());
+                    emailed = true;
+                    sent++;
+                } catch (SendFailedException | AddressException e) {
+                    // this address won't do; the others may
+                    logger.warning("Failed to send mail to " + digest.getEmailAddress() + ": " + e.getMessage());
+                }
+                userNotificationService.dequeueEmails(digest.getNotificationIds(), emailed);
+            }
+        } catch (MessagingException me) {
+            // the connection failed; the ones not sent stay queued
+            logger.log(Level.WARNING, "Failed to send notification emails, will try again", me);
+        } finally {
+            if (transport != null) {
+                try {
+                    transport.close();
+                } catch (MessagingException me) {
+                    logger.log(Level.FINE, "Failed to close the mail connection", me);
+                }
+            }
+        }
+        logger.fine("sent " + sent + " notification emails");
+    }
+
+    private static String getEmailAddress(AuthenticatedUser user) {
+        if (user.getDisplayInfo() != null) {
+            return user.getDisplayInfo().getEmailAddress();
+        }
+        return null;
+    }
+
+}
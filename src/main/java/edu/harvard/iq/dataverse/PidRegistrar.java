@@ -0,0 +1,33 @@
+package edu.harvard.iq.dataverse;
+
+/**
+ * The calls made to the service of a dataset's persistent identifier (EZID,
+ * DataCite, the IISH handle service) when the dataset is published.
+ *
+ * @see PostPublishServiceBean#reservePid(edu.harvard.iq.dataverse.Dataset)
+ * @see PostPublishServiceBean#registerPid(java.lang.Long)
+ */
+public interface PidRegistrar {
+
+    /**
+     * Registers the identifier of the dataset.
+     *
+     * @return {@code false} if the identifier is already in use.
+     * @throws Exception if the identifier could not be registered.
+     */
+    boolean createIdentifier(Dataset dataset) throws Exception;
+
+    /**
+     * @return An identifier for the dataset not in use yet, to replace one
+     * that is.
+     */
+    String generateIdentifier(Dataset dataset);
+
+    /**
+     * Makes the identifier of the dataset public.
+     *
+     * @throws Exception if it could not.
+     */
+    void publicizeIdentifier(Dataset dataset) throws Exception;
+
+}
@@ -0,0 +1,414 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.DatasetLock.PublishStage;
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.search.IndexResponse;
+import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.search.IndexUtil;
+import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
+import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.inject.Named;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * The work of publishing a dataset that is done in the background, once
+ * {@link edu.harvard.iq.dataverse.engine.command.impl.PublishDatasetCommand}
+ * has released the version and locked the dataset: registering the
+ * persistent identifier, notifying the users who may download the files,
+ * and indexing. Each stage runs in a transaction of its own, which also
+ * moves the {@link DatasetLock} of the dataset on to the next stage (the
+ * last one removes it), so that {@link PostPublishWorker} can resume the
+ * stages where they were interrupted.
+ *
+ * @see DatasetLock.PublishStage
+ */
+@Stateless
+@Named
+public class PostPublishServiceBean {
+
+    private static final Logger logger = Logger.getLogger(PostPublishServiceBean.class.getCanonicalName());
+
+    /**
+     * The most definition points looked up in one query.
+     */
+    private static final int ROLE_ASSIGNMENT_QUERY_SIZE = 1000;
+
+    @EJB
+    PostPublishWorker worker;
+
+    @EJB
+    DatasetServiceBean datasetService;
+
+    @EJB
+    DOIEZIdServiceBean doiEZId;
+
+    @EJB
+    DOIDataCiteServiceBean doiDataCite;
+
+    @EJB
+    PidServiceBean pidWebservice;
+
+    @EJB
+    SettingsServiceBean settingsService;
+
+    @EJB
+    DataverseRoleServiceBean roleService;
+
+    @EJB
+    RoleAssigneeServiceBean roleAssigneeService;
+
+    @EJB
+    UserNotificationServiceBean notificationService;
+
+    @EJB
+    IndexServiceBean indexService;
+
+    @EJB
+    SolrIndexServiceBean solrIndexService;
+
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    /**
+     * Locks the just published dataset for the post-publish stages, which
+     * start once the current transaction has committed.
+     *
+     * @param dataset The published dataset, as merged in the current
+     * transaction.
+     * @param user The user who published it.
+     */
+    public void schedule(Dataset dataset, AuthenticatedUser user) {
+        AuthenticatedUser lockUser = em.find(AuthenticatedUser.class, user.getId());
+        DatasetLock lock = new DatasetLock();
+        lock.setDataset(dataset);
+        lock.setUser(lockUser);
+        lock.setStartTime(new Date());
+        lock.setPublishStage(PublishStage.REGISTER_PID);
+        lock.setInfo(describe(PublishStage.REGISTER_PID));
+        if (lockUser.getDatasetLocks() == null) {
+            lockUser.setDatasetLocks(new ArrayList<DatasetLock>());
+        }
+        lockUser.getDatasetLocks().add(lock);
+        dataset.setDatasetLock(lock);
+        em.persist(lock);
+
+        final Long datasetId = dataset.getId();
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    worker.start(datasetId);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The ids of the datasets locked for post-publish stages.
+     */
+    public List<Long> findPending() {
+        return em.createQuery("SELECT l.dataset.id FROM DatasetLock l WHERE l.publishStage IS NOT NULL", Long.class)
+                .getResultList();
+    }
+
+    /**
+     * @return The post-publish stage the dataset is in, or {@code null} if it
+     * is not in any.
+     */
+    public PublishStage findStage(Long datasetId) {
+        Dataset dataset = em.find(Dataset.class, datasetId);
+        if (dataset == null || dataset.getDatasetLock() == null) {
+            return null;
+        }
+        return dataset.getDatasetLock().getPublishStage();
+    }
+
+    /**
+     * Shows how the post-publish stages of the dataset are going in its lock.
+     */
+    public void updateInfo(Long datasetId, String info) {
+        Dataset dataset = em.find(Dataset.class, datasetId);
+        if (dataset != null && dataset.getDatasetLock() != null) {
+            dataset.getDatasetLock().setInfo(info);
+        }
+    }
+
+    /**
+     * Registers the identifier of a dataset about to be published, if that
+     * has not been done when it was created, replacing it if it is already in
+     * use by another dataset. To be called by the command, before the version
+     * is released: once it is public, the identifier is in its citation and
+     * exports, and must not change.
+     *
+     * @throws Exception if the identifier could not be registered; the
+     * dataset should not be published.
+     */
+    public void reservePid(Dataset dataset) throws Exception {
+        PidRegistrar registrar = getPidRegistrar(dataset);
+        if (registrar != null) {
+            reservePid(dataset, registrar);
+        }
+    }
+
+    static void reservePid(Dataset dataset, PidRegistrar registrar) throws Exception {
+        if (dataset.getGlobalIdCreateTime() != null) {
+            return;
+        }
+        if (!registrar.createIdentifier(dataset)) {
+            dataset.setIdentifier(registrar.generateIdentifier(dataset));
+            if (!registrar.createIdentifier(dataset)) {
+                throw new Exception("The identifier " + dataset.getGlobalId() + " is already in use by another dataset.");
+            }
+        }
+        dataset.setGlobalIdCreateTime(new Timestamp(new Date().getTime()));
+    }
+
+    /**
+     * {@link PublishStage#REGISTER_PID}: makes the identifier of the dataset
+     * public. It has been registered before the release (see
+     * {@link #reservePid(edu.harvard.iq.dataverse.Dataset)}); if it has not,
+     * it is registered now, but never replaced.
+     *
+     * @throws Exception if the identifier service failed, or the identifier
+     * is in use by another dataset; the stage fails, and the error is shown
+     * in the lock of the dataset.
+     */
+    public void registerPid(Long datasetId) throws Exception {
+        Dataset dataset = em.find(Dataset.class, datasetId);
+        PidRegistrar registrar = getPidRegistrar(dataset);
+        if (registrar != null) {
+            registerPid(dataset, registrar);
+        }
+        advance(dataset, PublishStage.NOTIFY);
+    }
+
+    static void registerPid(Dataset dataset, PidRegistrar registrar) throws Exception {
+        if (dataset.getGlobalIdCreateTime() == null) {
+            if (!registrar.createIdentifier(dataset)) {
+                throw new Exception("The identifier " + dataset.getGlobalId() + " of this published dataset is already in use by another dataset.");
+            }
+            dataset.setGlobalIdCreateTime(new Timestamp(new Date().getTime()));
+        }
+        registrar.publicizeIdentifier(dataset);
+    }
+
+    /**
+     * {@link PublishStage#NOTIFY}: tells the users who may download the
+     * files of the dataset that they can, now that it is published. Each
+     * user gets one notification for the dataset, if this is its first
+     * release, and one for the newly published files; the role assignments
+     * on all of them are read with a few queries.
+     */
+    public void sendNotifications(Long datasetId) {
+        Dataset dataset = em.find(Dataset.class, datasetId);
+        DatasetVersion released = dataset.getReleasedVersion();
+        if (released != null && released.getReleaseTime() != null) {
+            // the command gives the dataset and its new files the release time of the version
+            Timestamp releaseTime = new Timestamp(released.getReleaseTime().getTime());
+            List<Long> definitionPointIds = new ArrayList<>();
+            if (dataset.getPublicationDate() != null && dataset.getPublicationDate().getTime() == releaseTime.getTime()) {
+                definitionPointIds.add(datasetId);
+            }
+            definitionPointIds.addAll(em.createQuery("SELECT f.id FROM DataFile f WHERE f.owner.id=:datasetId AND f.publicationDate=:releaseTime", Long.class)
+                    .setParameter("datasetId", datasetId)
+                    .setParameter("releaseTime", releaseTime)
+                    .getResultList());
+
+            Set<AuthenticatedUser> datasetUsers = new LinkedHashSet<>();
+            Set<AuthenticatedUser> fileUsers = new LinkedHashSet<>();
+            Map<String, List<AuthenticatedUser>> explicitUsers = new HashMap<>();
+            for (int i = 0; i < definitionPointIds.size(); i += ROLE_ASSIGNMENT_QUERY_SIZE) {
+                List<Long> ids = definitionPointIds.subList(i, Math.min(i + ROLE_ASSIGNMENT_QUERY_SIZE, definitionPointIds.size()));
+                for (RoleAssignment ra : roleService.directRoleAssignments(ids)) {
+                    if (!ra.getRole().permissions().contains(Permission.DownloadFile)) {
+                        continue;
+                    }
+                    List<AuthenticatedUser> users = explicitUsers.get(ra.getAssigneeIdentifier());
+                    if (users == null) {
+                        users = roleAssigneeService.getExplicitUsers(roleAssigneeService.getRoleAssignee(ra.getAssigneeIdentifier()));
+                        explicitUsers.put(ra.getAssigneeIdentifier(), users);
+                    }
+                    if (ra.getDefinitionPoint().getId().equals(datasetId)) {
+                        datasetUsers.addAll(users);
+                    } else {
+                        fileUsers.addAll(users);
+                    }
+                }
+            }
+            Timestamp now = new Timestamp(new Date().getTime());
+            notificationService.sendNotifications(datasetUsers, now, UserNotification.Type.ASSIGNROLE, datasetId);
+            notificationService.sendNotifications(fileUsers, now, UserNotification.Type.GRANTFILEACCESS, datasetId);
+            logger.fine("notified " + datasetUsers.size() + " + " + fileUsers.size() + " users of the release of dataset " + datasetId);
+        }
+        advance(dataset, PublishStage.INDEX);
+    }
+
+    /**
+     * {@link PublishStage#INDEX}: indexes the dataset, its permissions, and
+     * the dataverses above it if it has subjects (the command adds them to
+     * the subjects of those dataverses); then unlocks the dataset.
+     *
+     * @throws Exception if Solr could not be updated; the stage should be
+     * tried again.
+     */
+    public void index(Long datasetId) throws Exception {
+        Dataset dataset = em.find(Dataset.class, datasetId);
+        DatasetVersion released = dataset.getReleasedVersion();
+        if (released != null && hasSubject(released)) {
+            for (Dataverse dv = dataset.getOwner(); dv != null; dv = dv.getOwner()) {
+                checkIndexed("dataverse " + dv.getAlias(), indexService.indexDataverse(dv).get());
+            }
+        }
+        boolean doNormalSolrDocCleanUp = true;
+        checkIndexed("the dataset", indexService.indexDataset(dataset, doNormalSolrDocCleanUp).get());
+        IndexResponse permissionsResponse = solrIndexService.indexPermissionsForOneDvObject(dataset);
+        if (permissionsResponse.isFailed()) {
+            throw new Exception("The permissions of the dataset could not be indexed: " + permissionsResponse.getMessage());
+        }
+        advance(dataset, null);
+    }
+
+    /**
+     * The indexing methods report a Solr failure in their result.
+     */
+    static void checkIndexed(String what, String indexResult) throws Exception {
+        String failure = IndexUtil.findFailure(indexResult);
+        if (failure != null) {
+            throw new Exception("Could not index " + what + ". " + failure);
+        }
+    }
+
+    /**
+     * @return How to register the identifier of the dataset, or {@code null}
+     * if it is not registered on publishing.
+     */
+    PidRegistrar getPidRegistrar(final Dataset dataset) {
+        String nonNullDefaultIfKeyNotFound = "";
+        String doiProvider = settingsService.getValueForKey(SettingsServiceBean.Key.DoiProvider, nonNullDefaultIfKeyNotFound);
+        String protocol = dataset.getProtocol();
+        if (protocol.equals("doi") && doiProvider.equals("EZID")) {
+            return new DatasetPidRegistrar() {
+                @Override
+                public boolean createIdentifier(Dataset dataset) throws Exception {
+                    String doiRetString = doiEZId.createIdentifier(dataset);
+                    if (doiRetString.contains(dataset.getIdentifier())) {
+                        return true;
+                    } else if (doiRetString.contains("identifier already exists")) {
+                        return false;
+                    }
+                    throw new Exception("EZID did not register the identifier: " + doiRetString);
+                }
+
+                @Override
+                public void publicizeIdentifier(Dataset dataset) throws Exception {
+                    if (!doiEZId.publicizeIdentifier(dataset)) {
+                        throw new Exception("EZID did not make the identifier public");
+                    }
+                }
+            };
+        } else if (protocol.equals("doi") && doiProvider.equals("DataCite")) {
+            return new DatasetPidRegistrar() {
+                @Override
+                public boolean createIdentifier(Dataset dataset) throws Exception {
+                    // refused by the command
+                    throw new Exception("DataCite identifiers are registered when the dataset is created");
+                }
+
+                @Override
+                public void publicizeIdentifier(Dataset dataset) throws Exception {
+                    doiDataCite.publicizeIdentifier(dataset);
+                }
+            };
+        } else if (protocol.equals("hdl") && doiProvider.equals("IISH")) {
+            return new DatasetPidRegistrar() {
+                @Override
+                public boolean createIdentifier(Dataset dataset) {
+                    return !pidWebservice.pidExists(dataset);
+                }
+
+                @Override
+                public void publicizeIdentifier(Dataset dataset) {
+                    pidWebservice.publicizeIdentifier(dataset);
+                }
+            };
+        }
+        return null;
+    }
+
+    /**
+     * Moves the dataset on to the next stage, or unlocks it when
+     * {@code next} is {@code null}.
+     */
+    private void advance(Dataset dataset, PublishStage next) {
+        DatasetLock lock = dataset.getDatasetLock();
+        if (lock == null) {
+            return;
+        }
+        if (next != null) {
+            lock.setPublishStage(next);
+            lock.setInfo(describe(next));
+        } else {
+            dataset.setDatasetLock(null);
+            if (lock.getUser() != null && lock.getUser().getDatasetLocks() != null) {
+                lock.getUser().getDatasetLocks().remove(lock);
+            }
+            em.remove(lock);
+        }
+    }
+
+    private static boolean hasSubject(DatasetVersion version) {
+        for (DatasetField dsf : version.getDatasetFields()) {
+            if (dsf.getDatasetFieldType().getName().equals(DatasetFieldConstant.subject)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String describe(PublishStage stage) {
+        switch (stage) {
+            case REGISTER_PID:
+                return "Publishing: registering the persistent identifier.";
+            case NOTIFY:
+                return "Publishing: sending notifications.";
+            default:
+                return "Publishing: indexing.";
+        }
+    }
+
+    /**
+     * Generates new identifiers the way new datasets get them.
+     */
+    private abstract class DatasetPidRegistrar implements PidRegistrar {
+
+        @Override
+        public String generateIdentifier(Dataset dataset) {
+            return datasetService.generateIdentifierSequence(dataset.getProtocol(), dataset.getAuthority(), dataset.getDoiSeparator());
+        }
+    }
+
+}
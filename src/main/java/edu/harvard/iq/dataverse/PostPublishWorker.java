@@ -0,0 +1,155 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.DatasetLock.PublishStage;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+/**
+ * Runs the post-publish stages of published datasets in the background, one
+ * after the other, each in its own transaction (the worker's methods run
+ * outside of container transactions). A stage that fails is tried
+ * {@link #MAX_ATTEMPTS} times, each retry scheduled on a single action
+ * timer, waiting longer after each attempt; if it still fails, the dataset
+ * stays locked in that stage, with the error in the info of its lock, until
+ * the stages are resumed: every
+ * {@link #RESUME_INTERVAL_MILLIS} milliseconds, which also picks up the
+ * datasets whose stages were interrupted by a restart.
+ *
+ * @see PostPublishServiceBean
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class PostPublishWorker {
+
+    private static final Logger logger = Logger.getLogger(PostPublishWorker.class.getCanonicalName());
+
+    static final int MAX_ATTEMPTS = 5;
+    static final long FIRST_RETRY_DELAY_MILLIS = 2000;
+    static final long RESUME_INTERVAL_MILLIS = 15 * 60 * 1000;
+
+    @Resource
+    TimerService timerService;
+
+    @EJB
+    PostPublishServiceBean postPublishService;
+
+    // the datasets whose stages are running, so that they are not run twice at once
+    private final Set<Long> running = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    // the failed attempts at the current stage of the datasets with a retry scheduled
+    private final Map<Long, Integer> attempts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        timerService.createIntervalTimer(60 * 1000, RESUME_INTERVAL_MILLIS, new TimerConfig(null, false));
+    }
+
+    /**
+     * Runs the post-publish stages of the dataset right away, on a timer
+     * thread.
+     */
+    public void start(Long datasetId) {
+        timerService.createSingleActionTimer(0, new TimerConfig(datasetId, false));
+    }
+
+    @Timeout
+    public void run(Timer timer) {
+        if (timer.getInfo() instanceof Long) {
+            run((Long) timer.getInfo());
+        } else {
+            for (Long datasetId : postPublishService.findPending()) {
+                if (!attempts.containsKey(datasetId)) {
+                    // (the others have a retry scheduled)
+                    run(datasetId);
+                }
+            }
+        }
+    }
+
+    void run(Long datasetId) {
+        if (!running.add(datasetId)) {
+            return;
+        }
+        try {
+            PublishStage stage = postPublishService.findStage(datasetId);
+            while (stage != null) {
+                if (!runStage(datasetId, stage)) {
+                    return;
+                }
+                attempts.remove(datasetId);
+                stage = postPublishService.findStage(datasetId);
+            }
+            logger.fine("post-publish stages of dataset " + datasetId + " done");
+        } finally {
+            running.remove(datasetId);
+        }
+    }
+
+    /**
+     * Runs the stage once. If it fails, the attempt is counted and, unless
+     * it was the last one, the next is scheduled on a timer; the timer thread
+     * is not held up waiting for it.
+     *
+     * @return {@code false} if the stage failed.
+     */
+    private boolean runStage(Long datasetId, PublishStage stage) {
+        try {
+            switch (stage) {
+                case REGISTER_PID:
+                    postPublishService.registerPid(datasetId);
+                    break;
+                case NOTIFY:
+                    postPublishService.sendNotifications(datasetId);
+                    break;
+                case INDEX:
+                    postPublishService.index(datasetId);
+                    break;
+            }
+            return true;
+        } catch (Exception e) {
+            Integer failed = attempts.get(datasetId);
+            int attempt = (failed == null) ? 1 : failed + 1;
+            logger.log(Level.WARNING, "Post-publish stage " + stage + " of dataset " + datasetId + " failed (attempt " + attempt + ")", e);
+            if (attempt >= MAX_ATTEMPTS) {
+                // the periodic resume tries it again, counting from the start
+                attempts.remove(datasetId);
+                postPublishService.updateInfo(datasetId, PostPublishServiceBean.describe(stage)
+                        + " Failed " + attempt + " times, will be tried again later: " + e.getMessage());
+                return false;
+            }
+            attempts.put(datasetId, attempt);
+            postPublishService.updateInfo(datasetId, PostPublishServiceBean.describe(stage)
+                    + " Failed " + attempt + " times, trying again: " + e.getMessage());
+            timerService.createSingleActionTimer(retryDelayMillis(attempt), new TimerConfig(datasetId, false));
+            return false;
+        }
+    }
+
+    /**
+     * @return How long to wait after the {@code attempt}th failed attempt:
+     * twice as long as after the one before.
+     */
+    static long retryDelayMillis(int attempt) {
+        return FIRST_RETRY_DELAY_MILLIS << (attempt - 1);
+    }
+
+}
@@ -0,0 +1,192 @@
+package edu.harvard.iq.dataverse;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Maps a run of columns of a native query row onto a new, detached and only
+ * partially filled entity: what is needed to list and show files and
+ * versions, without the cost of loading the entities (and everything they
+ * are related to) through JPA.
+ *
+ * The columns are selected with the table aliases given for each projection
+ * ({@code dvo}/{@code df} for the dvobject and datafile of a file,
+ * {@code dt}, {@code fm} and {@code dv}), so that several projections can be
+ * read from one row:
+ * <pre>
+ * "SELECT " + Projection.DATA_FILE.getColumns() + ", " + Projection.DATA_TABLE.getColumns() + " FROM ..."
+ * </pre>
+ * and mapped with {@code DATA_FILE.map(row, 0)} and
+ * {@code DATA_TABLE.map(row, DATA_FILE.getWidth())}.
+ *
+ * @param <T> The entity the columns are mapped onto.
+ * @see ProjectionServiceBean
+ */
+public abstract class Projection<T> {
+
+    /**
+     * A file ({@code dvo}: dvobject, {@code df}: datafile); the users and
+     * the owner are not set.
+     */
+    public static final Projection<DataFile> DATA_FILE = new Projection<DataFile>(
+            "dvo.ID, dvo.CREATEDATE, dvo.INDEXTIME, dvo.MODIFICATIONTIME, dvo.PERMISSIONINDEXTIME, dvo.PERMISSIONMODIFICATIONTIME, dvo.PUBLICATIONDATE, "
+            + "dvo.PREVIEWIMAGEAVAILABLE, df.CONTENTTYPE, df.FILESYSTEMNAME, df.FILESIZE, df.INGESTSTATUS, df.MD5, df.RESTRICTED") {
+        @Override
+        public DataFile map(Object[] row, int offset) {
+            DataFile dataFile = new DataFile();
+            dataFile.setId(toLong(row[offset]));
+            dataFile.setCreateDate(toTimestamp(row[offset + 1]));
+            dataFile.setIndexTime(toTimestamp(row[offset + 2]));
+            dataFile.setModificationTime(toTimestamp(row[offset + 3]));
+            dataFile.setPermissionIndexTime(toTimestamp(row[offset + 4]));
+            dataFile.setPermissionModificationTime(toTimestamp(row[offset + 5]));
+            dataFile.setPublicationDate(toTimestamp(row[offset + 6]));
+            if (row[offset + 7] != null) {
+                dataFile.setPreviewImageAvailable((Boolean) row[offset + 7]);
+            }
+            if (row[offset + 8] != null) {
+                dataFile.setContentType((String) row[offset + 8]);
+            }
+            if (row[offset + 9] != null) {
+                dataFile.setStorageIdentifier((String) row[offset + 9]);
+            }
+            if (row[offset + 10] != null) {
+                dataFile.setFilesize(toLong(row[offset + 10]));
+            }
+            if (row[offset + 11] != null && !row[offset + 11].toString().isEmpty()) {
+                dataFile.setIngestStatus(row[offset + 11].toString().charAt(0));
+            }
+            if (row[offset + 12] != null) {
+                dataFile.setmd5((String) row[offset + 12]);
+            }
+            if (row[offset + 13] != null) {
+                dataFile.setRestricted((Boolean) row[offset + 13]);
+            }
+            return dataFile;
+        }
+    };
+
+    /**
+     * The users of a file ({@code dvo}), to be looked up separately.
+     */
+    public static final Projection<Long[]> DATA_FILE_USERS = new Projection<Long[]>("dvo.CREATOR_ID, dvo.RELEASEUSER_ID") {
+        @Override
+        public Long[] map(Object[] row, int offset) {
+            return new Long[]{toLong(row[offset]), toLong(row[offset + 1])};
+        }
+    };
+
+    /**
+     * The tabular data of a file ({@code dt}); the file is not set.
+     */
+    public static final Projection<DataTable> DATA_TABLE = new Projection<DataTable>(
+            "dt.ID, dt.UNF, dt.CASEQUANTITY, dt.VARQUANTITY, dt.ORIGINALFILEFORMAT") {
+        @Override
+        public DataTable map(Object[] row, int offset) {
+            DataTable dataTable = new DataTable();
+            dataTable.setId(toLong(row[offset]));
+            dataTable.setUnf((String) row[offset + 1]);
+            dataTable.setCaseQuantity(toLong(row[offset + 2]));
+            dataTable.setVarQuantity(toLong(row[offset + 3]));
+            dataTable.setOriginalFileFormat((String) row[offset + 4]);
+            return dataTable;
+        }
+    };
+
+    /**
+     * The metadata of a file in a version ({@code fm}); the version, the file
+     * and the categories are not set.
+     */
+    public static final Projection<FileMetadata> FILE_METADATA = new Projection<FileMetadata>(
+            "fm.ID, fm.LABEL, fm.DESCRIPTION, fm.RESTRICTED, fm.VERSION") {
+        @Override
+        public FileMetadata map(Object[] row, int offset) {
+            FileMetadata fileMetadata = new FileMetadata();
+            fileMetadata.setId(toLong(row[offset]));
+            if (row[offset + 1] != null) {
+                fileMetadata.setLabel((String) row[offset + 1]);
+            }
+            if (row[offset + 2] != null) {
+                fileMetadata.setDescription((String) row[offset + 2]);
+            }
+            if (row[offset + 3] != null) {
+                fileMetadata.setRestricted((Boolean) row[offset + 3]);
+            }
+            fileMetadata.setVersion(toLong(row[offset + 4]));
+            return fileMetadata;
+        }
+    };
+
+    /**
+     * A version of a dataset ({@code dv}), without its metadata and files;
+     * the dataset is not set.
+     */
+    public static final Projection<DatasetVersion> DATASET_VERSION = new Projection<DatasetVersion>(
+            "dv.ID, dv.VERSIONNUMBER, dv.MINORVERSIONNUMBER, dv.VERSIONSTATE, dv.CREATETIME, dv.LASTUPDATETIME, dv.RELEASETIME, dv.ARCHIVETIME, dv.VERSIONNOTE, dv.UNF, dv.VERSION") {
+        @Override
+        public DatasetVersion map(Object[] row, int offset) {
+            DatasetVersion version = new DatasetVersion();
+            version.setId(toLong(row[offset]));
+            version.setVersionNumber(toLong(row[offset + 1]));
+            version.setMinorVersionNumber(toLong(row[offset + 2]));
+            if (row[offset + 3] != null) {
+                version.setVersionState(DatasetVersion.VersionState.valueOf((String) row[offset + 3]));
+            }
+            version.setCreateTime(toTimestamp(row[offset + 4]));
+            version.setLastUpdateTime(toTimestamp(row[offset + 5]));
+            version.setReleaseTime(toTimestamp(row[offset + 6]));
+            version.setArchiveTime(toTimestamp(row[offset + 7]));
+            version.setVersionNote((String) row[offset + 8]);
+            version.setUNF((String) row[offset + 9]);
+            version.setVersion(toLong(row[offset + 10]));
+            return version;
+        }
+    };
+
+    private final String columns;
+    private final int width;
+
+    protected Projection(String columns) {
+        this.columns = columns;
+        this.width = columns.split(",").length;
+    }
+
+    /**
+     * @return The select list of the columns, with the aliases of the
+     * projection.
+     */
+    public String getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return The number of columns, i.e. the offset of the next projection
+     * read from the same row.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @param row A row of a query selecting {@link #getColumns()}.
+     * @param offset The index of the first column of the projection in the
+     * row.
+     */
+    public abstract T map(Object[] row, int offset);
+
+    /**
+     * The driver returns {@code integer} id columns as {@link Integer}s and
+     * {@code bigint} ones as {@link Long}s.
+     */
+    static Long toLong(Object value) {
+        return (value == null) ? null : ((Number) value).longValue();
+    }
+
+    static Timestamp toTimestamp(Object value) {
+        if (value == null || value instanceof Timestamp) {
+            return (Timestamp) value;
+        }
+        return new Timestamp(((Date) value).getTime());
+    }
+
+}
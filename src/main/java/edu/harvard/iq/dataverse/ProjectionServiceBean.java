@@ -0,0 +1,357 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.inject.Named;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+/**
+ * Reads files, their metadata and tabular data, and versions with native
+ * queries, mapped with {@link Projection}s onto detached entities. Much
+ * faster than loading them through JPA, for pages and lists that only show
+ * them; the objects returned are not managed and must not be merged.
+ *
+ * What is read for the files of a released version is cached for a short
+ * while, see {@link ReleasedVersionCache}.
+ */
+@Stateless
+@Named
+public class ProjectionServiceBean implements java.io.Serializable {
+
+    private static final Logger logger = Logger.getLogger(ProjectionServiceBean.class.getCanonicalName());
+
+    public static final ReleasedVersionCache releasedVersionCache = new ReleasedVersionCache(500);
+
+    /**
+     * Ids per {@code IN} list.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String VERSION_FILES_QUERY = "SELECT " + Projection.FILE_METADATA.getColumns()
+            + ", " + Projection.DATA_FILE.getColumns()
+            + ", " + Projection.DATA_FILE_USERS.getColumns()
+            + ", " + Projection.DATA_TABLE.getColumns()
+            + " FROM FILEMETADATA fm JOIN DVOBJECT dvo ON dvo.ID = fm.DATAFILE_ID JOIN DATAFILE df ON df.ID = dvo.ID"
+            + " LEFT JOIN DATATABLE dt ON dt.DATAFILE_ID = df.ID"
+            + " WHERE fm.DATASETVERSION_ID = ?1";
+    private static final String VERSION_TAGS_QUERY = "SELECT t.DATAFILE_ID, t.TYPE"
+            + " FROM DATAFILETAG t JOIN FILEMETADATA fm ON fm.DATAFILE_ID = t.DATAFILE_ID"
+            + " WHERE fm.DATASETVERSION_ID = ?1";
+    private static final String VERSION_CATEGORIES_QUERY = "SELECT fc.FILEMETADATAS_ID, c.ID, c.NAME"
+            + " FROM FILEMETADATA_DATAFILECATEGORY fc JOIN DATAFILECATEGORY c ON c.ID = fc.FILECATEGORIES_ID"
+            + " JOIN FILEMETADATA fm ON fm.ID = fc.FILEMETADATAS_ID"
+            + " WHERE fm.DATASETVERSION_ID = ?1";
+    private static final String VERSION_ACCESS_REQUESTS_QUERY = "SELECT r.DATAFILE_ID, r.AUTHENTICATED_USER_ID"
+            + " FROM FILEACCESSREQUESTS r JOIN FILEMETADATA fm ON fm.DATAFILE_ID = r.DATAFILE_ID"
+            + " WHERE fm.DATASETVERSION_ID = ?1";
+
+    @EJB
+    UserServiceBean userService;
+
+    @EJB
+    SystemConfig systemConfig;
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    /**
+     * @return The file, with its tabular data and (the id and the global id
+     * of) the dataset it is in, or {@code null} if there is no such file.
+     */
+    public DataFile findDataFile(Long id) {
+        return findDataFiles(Collections.singletonList(id)).get(id);
+    }
+
+    /**
+     * Same as {@link #findDataFile(java.lang.Long)}, for many files, with
+     * a query per {@value #BATCH_SIZE} files (and one for their tabular data)
+     * rather than per file.
+     *
+     * @return The files found, by id.
+     */
+    public Map<Long, DataFile> findDataFiles(Collection<Long> ids) {
+        List<Long> idList = new ArrayList<>(new LinkedHashSet<>(ids));
+        idList.remove(null);
+        Map<Long, DataFile> dataFiles = new LinkedHashMap<>();
+        Map<Long, Dataset> owners = new HashMap<>();
+        for (int from = 0; from < idList.size(); from += BATCH_SIZE) {
+            List<Long> batch = idList.subList(from, Math.min(from + BATCH_SIZE, idList.size()));
+
+            Query query = em.createNativeQuery("SELECT " + Projection.DATA_FILE.getColumns() + ", ds.ID, ds.PROTOCOL, ds.AUTHORITY, ds.IDENTIFIER"
+                    + " FROM DVOBJECT dvo JOIN DATAFILE df ON df.ID = dvo.ID JOIN DATASET ds ON ds.ID = dvo.OWNER_ID"
+                    + " WHERE dvo.ID IN (" + placeholders(batch.size()) + ")");
+            setParameters(query, batch);
+            for (Object[] row : (List<Object[]>) query.getResultList()) {
+                DataFile dataFile = Projection.DATA_FILE.map(row, 0);
+                int offset = Projection.DATA_FILE.getWidth();
+                Long datasetId = Projection.toLong(row[offset]);
+                Dataset owner = owners.get(datasetId);
+                if (owner == null) {
+                    owner = new Dataset();
+                    owner.setId(datasetId);
+                    owner.setProtocol((String) row[offset + 1]);
+                    owner.setAuthority((String) row[offset + 2]);
+                    owner.setIdentifier((String) row[offset + 3]);
+                    owners.put(datasetId, owner);
+                }
+                dataFile.setOwner(owner);
+                dataFiles.put(dataFile.getId(), dataFile);
+            }
+
+            query = em.createNativeQuery("SELECT dt.DATAFILE_ID, " + Projection.DATA_TABLE.getColumns()
+                    + " FROM DATATABLE dt WHERE dt.DATAFILE_ID IN (" + placeholders(batch.size()) + ")");
+            setParameters(query, batch);
+            for (Object[] row : (List<Object[]>) query.getResultList()) {
+                DataFile dataFile = dataFiles.get(Projection.toLong(row[0]));
+                if (dataFile != null && dataFile.getDataTable() == null) {
+                    DataTable dataTable = Projection.DATA_TABLE.map(row, 1);
+                    dataTable.setDataFile(dataFile);
+                    dataFile.setDataTable(dataTable);
+                }
+            }
+        }
+        return dataFiles;
+    }
+
+    /**
+     * @return The version, without its metadata and files, in a dataset of
+     * which only the id is set; {@code null} if there is no such version.
+     */
+    public DatasetVersion findDatasetVersion(Long id) {
+        Query query = em.createNativeQuery("SELECT " + Projection.DATASET_VERSION.getColumns() + ", dv.DATASET_ID"
+                + " FROM DATASETVERSION dv WHERE dv.ID = ?1");
+        query.setParameter(1, id);
+        List<Object[]> rows = query.getResultList();
+        if (rows.isEmpty()) {
+            return null;
+        }
+        DatasetVersion version = Projection.DATASET_VERSION.map(rows.get(0), 0);
+        Dataset dataset = new Dataset();
+        dataset.setId(Projection.toLong(rows.get(0)[Projection.DATASET_VERSION.getWidth()]));
+        version.setDataset(dataset);
+        return version;
+    }
+
+    /**
+     * The files of the version, with their tabular data, tags, categories,
+     * users and access requests, in five queries whatever the number of
+     * files. The files of released versions are cached.
+     *
+     * @param version A version with its dataset; the categories of the files
+     * are taken from the dataset if it has them, so that they are the same
+     * objects.
+     * @return The files, in the order of {@link DatasetVersion#getFileMetadatas()}.
+     */
+    public List<FileMetadata> findFileMetadatas(DatasetVersion version) {
+        return findFileMetadatas(version, true);
+    }
+
+    private List<FileMetadata> findFileMetadatas(DatasetVersion version, boolean useCache) {
+        Dataset dataset = version.getDataset();
+        long ttlMillis = systemConfig.getReleasedVersionCacheTtlSeconds() * 1000;
+        boolean cached = useCache && ttlMillis > 0 && version.isReleased() && dataset != null;
+        long generation = cached ? releasedVersionCache.currentGeneration(dataset.getId()) : 0;
+
+        List<Object[]> fileRows = findVersionRows(version, VERSION_FILES_QUERY, cached, ttlMillis, generation);
+        List<Object[]> tagRows = findVersionRows(version, VERSION_TAGS_QUERY, cached, ttlMillis, generation);
+        List<Object[]> categoryRows = findVersionRows(version, VERSION_CATEGORIES_QUERY, cached, ttlMillis, generation);
+        // these change at any time
+        List<Object[]> accessRequestRows = findVersionRows(version, VERSION_ACCESS_REQUESTS_QUERY, false, 0, 0);
+
+        Map<Long, AuthenticatedUser> users = new HashMap<>();
+        Map<Long, DataFile> dataFiles = new HashMap<>();
+        Map<Long, FileMetadata> fileMetadatas = new LinkedHashMap<>();
+        int dataFileOffset = Projection.FILE_METADATA.getWidth();
+        int usersOffset = dataFileOffset + Projection.DATA_FILE.getWidth();
+        int dataTableOffset = usersOffset + Projection.DATA_FILE_USERS.getWidth();
+        for (Object[] row : fileRows) {
+            FileMetadata fileMetadata = Projection.FILE_METADATA.map(row, 0);
+            if (fileMetadatas.containsKey(fileMetadata.getId())) {
+                // a file with more than one data table
+                continue;
+            }
+            DataFile dataFile = Projection.DATA_FILE.map(row, dataFileOffset);
+            dataFile.setOwner(dataset);
+            Long[] userIds = Projection.DATA_FILE_USERS.map(row, usersOffset);
+            dataFile.setCreator(findUser(userIds[0], users));
+            dataFile.setReleaseUser(findUser(userIds[1], users));
+            if (row[dataTableOffset] != null) {
+                DataTable dataTable = Projection.DATA_TABLE.map(row, dataTableOffset);
+                dataTable.setDataFile(dataFile);
+                dataFile.setDataTable(dataTable);
+            }
+            List<FileMetadata> ofFile = new ArrayList<>();
+            ofFile.add(fileMetadata);
+            dataFile.setFileMetadatas(ofFile);
+            dataFile.setFileAccessRequesters(new ArrayList<AuthenticatedUser>());
+
+            fileMetadata.setDataFile(dataFile);
+            fileMetadata.setDatasetVersion(version);
+            fileMetadata.setCategories(new LinkedList<DataFileCategory>());
+            dataFiles.put(dataFile.getId(), dataFile);
+            fileMetadatas.put(fileMetadata.getId(), fileMetadata);
+        }
+
+        DataFileTag.TagType[] tagTypes = DataFileTag.TagType.values();
+        for (Object[] row : tagRows) {
+            DataFile dataFile = dataFiles.get(Projection.toLong(row[0]));
+            int ordinal = ((Number) row[1]).intValue();
+            if (dataFile != null && ordinal >= 0 && ordinal < tagTypes.length) {
+                DataFileTag tag = new DataFileTag();
+                tag.setType(tagTypes[ordinal]);
+                tag.setDataFile(dataFile);
+                dataFile.addTag(tag);
+            }
+        }
+
+        Map<Long, DataFileCategory> categories = new HashMap<>();
+        if (dataset != null && dataset.getCategories() != null) {
+            for (DataFileCategory category : dataset.getCategories()) {
+                categories.put(category.getId(), category);
+            }
+        }
+        for (Object[] row : categoryRows) {
+            FileMetadata fileMetadata = fileMetadatas.get(Projection.toLong(row[0]));
+            if (fileMetadata == null) {
+                continue;
+            }
+            Long categoryId = Projection.toLong(row[1]);
+            DataFileCategory category = categories.get(categoryId);
+            if (category == null) {
+                category = new DataFileCategory();
+                category.setId(categoryId);
+                category.setName((String) row[2]);
+                category.setDataset(dataset);
+                categories.put(categoryId, category);
+            }
+            fileMetadata.getCategories().add(category);
+        }
+
+        for (Object[] row : accessRequestRows) {
+            DataFile dataFile = dataFiles.get(Projection.toLong(row[0]));
+            AuthenticatedUser user = findUser(Projection.toLong(row[1]), users);
+            if (dataFile != null && user != null) {
+                dataFile.getFileAccessRequesters().add(user);
+            }
+        }
+
+        List<FileMetadata> retList = new ArrayList<>(fileMetadatas.values());
+        Collections.sort(retList, FileMetadata.compareByLabel);
+        logger.fine("Retrieved " + retList.size() + " file metadatas for version " + version.getId() + (cached ? " (cacheable)" : ""));
+        return retList;
+    }
+
+    /**
+     * Times loading the files of a version with their tabular data, tags and
+     * categories through JPA, and with {@link #findFileMetadatas(edu.harvard.iq.dataverse.DatasetVersion)}
+     * with and without the cache; the best of {@code runs} runs each.
+     *
+     * @return The times in milliseconds, by path, and the number of files;
+     * {@code null} if there is no such version.
+     */
+    public Map<String, Long> benchmarkFileMetadatas(Long datasetVersionId, int runs) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        DatasetVersion projected = findDatasetVersion(datasetVersionId);
+        if (projected == null) {
+            return null;
+        }
+        long best = Long.MAX_VALUE;
+        long files = 0;
+        for (int i = 0; i < runs; i++) {
+            em.clear();
+            long start = System.nanoTime();
+            DatasetVersion version = em.find(DatasetVersion.class, datasetVersionId);
+            files = 0;
+            for (FileMetadata fileMetadata : version.getFileMetadatas()) {
+                DataFile dataFile = fileMetadata.getDataFile();
+                dataFile.getDataTable();
+                dataFile.getTags().size();
+                dataFile.getFileAccessRequesters().size();
+                fileMetadata.getCategories().size();
+                files++;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        result.put("files", files);
+        result.put("jpa", best / 1000000);
+
+        best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            findFileMetadatas(projected, false);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        result.put("native", best / 1000000);
+
+        if (projected.isReleased()) {
+            findFileMetadatas(projected, true);
+            best = Long.MAX_VALUE;
+            for (int i = 0; i < runs; i++) {
+                long start = System.nanoTime();
+                findFileMetadatas(projected, true);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            result.put("nativeCached", best / 1000000);
+        }
+        return result;
+    }
+
+    private List<Object[]> findVersionRows(DatasetVersion version, String sql, boolean cached, long ttlMillis, long generation) {
+        Long datasetId = cached ? version.getDataset().getId() : null;
+        if (cached) {
+            List<Object[]> rows = releasedVersionCache.get(datasetId, version.getId(), sql, ttlMillis);
+            if (rows != null) {
+                return rows;
+            }
+        }
+        Query query = em.createNativeQuery(sql);
+        query.setParameter(1, version.getId());
+        List<Object[]> rows = query.getResultList();
+        if (cached) {
+            releasedVersionCache.put(datasetId, version.getId(), sql, generation, rows);
+        }
+        return rows;
+    }
+
+    private AuthenticatedUser findUser(Long id, Map<Long, AuthenticatedUser> users) {
+        if (id == null) {
+            return null;
+        }
+        if (!users.containsKey(id)) {
+            users.put(id, userService.find(id));
+        }
+        return users.get(id);
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            if (i > 1) {
+                sb.append(", ");
+            }
+            sb.append('?').append(i);
+        }
+        return sb.toString();
+    }
+
+    private static void setParameters(Query query, List<Long> values) {
+        for (int i = 0; i < values.size(); i++) {
+            query.setParameter(i + 1, values.get(i));
+        }
+    }
+
+}
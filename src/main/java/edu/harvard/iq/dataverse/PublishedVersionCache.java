@@ -0,0 +1,283 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.json.JsonPrinter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.json.JsonObject;
+
+/**
+ * What is built from a published (released or deaccessioned) version on
+ * every view of it, i.e. its citations and its JSON, kept in memory once
+ * built: a published version only changes when it is deaccessioned or its
+ * metadata is updated, and both change its state or its last update time,
+ * which are checked on every use, as is the field the citation date is taken
+ * from. The entries of a dataset are also dropped whenever the dataset is
+ * reindexed, which it is after every change.
+ *
+ * The cache is bounded by the (estimated) memory its entries take, set in
+ * megabytes with the {@value #SIZE_PROPERTY} JVM option; the least recently
+ * used entries are dropped first.
+ *
+ * Draft versions, and versions not saved yet, are never cached: the methods
+ * then simply build what is asked for.
+ */
+public class PublishedVersionCache {
+
+    private static final Logger logger = Logger.getLogger(PublishedVersionCache.class.getCanonicalName());
+
+    static final String SIZE_PROPERTY = "dataverse.publishedVersionCache.sizeMB";
+    static final long DEFAULT_SIZE_MB = 64;
+
+    /**
+     * Estimated memory taken by an entry, besides what it holds.
+     */
+    static final long ENTRY_OVERHEAD_BYTES = 200;
+
+    private static final PublishedVersionCache INSTANCE = new PublishedVersionCache(maxBytesFromProperty());
+
+    enum Artifact {
+        CITATION, ONLINE_CITATION, JSON
+    }
+
+    // access ordered, so the least recently used entries come first
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long bytes;
+
+    private final ConcurrentMap<Long, AtomicLong> generationsByDatasetId = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    PublishedVersionCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static PublishedVersionCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return What {@link DatasetVersion#getCitation(boolean)} returns.
+     */
+    public String getCitation(DatasetVersion version, boolean isOnlineVersion) {
+        Artifact artifact = isOnlineVersion ? Artifact.ONLINE_CITATION : Artifact.CITATION;
+        if (!isCacheable(version)) {
+            return version.getCitation(isOnlineVersion);
+        }
+        long generation = currentGeneration(version.getDataset().getId());
+        String citation = (String) get(version, artifact);
+        if (citation == null) {
+            citation = version.getCitation(isOnlineVersion);
+            put(version, generation, artifact, citation, 2L * citation.length());
+        }
+        return citation;
+    }
+
+    /**
+     * @return What {@link JsonPrinter#jsonWithoutFiles(edu.harvard.iq.dataverse.DatasetVersion)}
+     * builds.
+     */
+    public JsonObject getJsonWithoutFiles(DatasetVersion version) {
+        if (!isCacheable(version)) {
+            return JsonPrinter.jsonWithoutFiles(version).build();
+        }
+        long generation = currentGeneration(version.getDataset().getId());
+        JsonObject json = (JsonObject) get(version, Artifact.JSON);
+        if (json == null) {
+            json = JsonPrinter.jsonWithoutFiles(version).build();
+            put(version, generation, Artifact.JSON, json, 2L * json.toString().length());
+        }
+        return json;
+    }
+
+    boolean isCacheable(DatasetVersion version) {
+        return maxBytes > 0
+                && version.getId() != null
+                && version.getDataset() != null && version.getDataset().getId() != null
+                && (version.isReleased() || version.isDeaccessioned());
+    }
+
+    /**
+     * @return The artifact of the version, or {@code null} if it has not
+     * been built yet, or was built from the version as it was before it
+     * changed.
+     */
+    synchronized Object get(DatasetVersion version, Artifact artifact) {
+        Entry entry = entries.get(version.getId());
+        if (entry != null && !entry.isOf(version, currentGeneration(version.getDataset().getId()))) {
+            remove(version.getId());
+            entry = null;
+        }
+        Object value = (entry == null) ? null : entry.artifacts[artifact.ordinal()];
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * @param generation The generation of the dataset before the artifact
+     * was built; if the dataset has been reindexed since, the artifact may
+     * be out of date, and is not kept.
+     * @param weight The estimated memory taken by the artifact, in bytes.
+     */
+    synchronized void put(DatasetVersion version, long generation, Artifact artifact, Object value, long weight) {
+        Long datasetId = version.getDataset().getId();
+        if (generation != currentGeneration(datasetId)) {
+            logger.fine("dataset " + datasetId + " changed while version " + version.getId() + " was being built; not caching");
+            return;
+        }
+        Entry entry = entries.get(version.getId());
+        if (entry == null || !entry.isOf(version, generation)) {
+            remove(version.getId());
+            entry = new Entry(version, generation);
+            entries.put(version.getId(), entry);
+            entry.bytes = ENTRY_OVERHEAD_BYTES;
+            bytes += entry.bytes;
+        }
+        if (entry.artifacts[artifact.ordinal()] == null) {
+            entry.artifacts[artifact.ordinal()] = value;
+            entry.bytes += weight;
+            bytes += weight;
+        }
+        shrinkToMaxBytes();
+    }
+
+    private long currentGeneration(Long datasetId) {
+        AtomicLong generation = generationsByDatasetId.get(datasetId);
+        return epoch.get() + ((generation != null) ? generation.get() : 0);
+    }
+
+    /**
+     * Drops what was built from the versions of the dataset.
+     */
+    public void invalidate(Long datasetId) {
+        if (datasetId == null) {
+            return;
+        }
+        AtomicLong generation = generationsByDatasetId.get(datasetId);
+        if (generation == null) {
+            AtomicLong fresh = new AtomicLong();
+            generation = generationsByDatasetId.putIfAbsent(datasetId, fresh);
+            if (generation == null) {
+                generation = fresh;
+            }
+        }
+        generation.incrementAndGet();
+        synchronized (this) {
+            Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next().getValue();
+                if (datasetId.equals(entry.datasetId)) {
+                    bytes -= entry.bytes;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        synchronized (this) {
+            entries.clear();
+            bytes = 0;
+        }
+        logger.fine("published version cache cleared");
+    }
+
+    public synchronized long size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The estimated memory taken by the cache, in bytes.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void remove(Long versionId) {
+        Entry entry = entries.remove(versionId);
+        if (entry != null) {
+            bytes -= entry.bytes;
+        }
+    }
+
+    private void shrinkToMaxBytes() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    private static long maxBytesFromProperty() {
+        String sizeMB = System.getProperty(SIZE_PROPERTY);
+        if (sizeMB != null) {
+            try {
+                return Long.parseLong(sizeMB.trim()) * 1024 * 1024;
+            } catch (NumberFormatException nfe) {
+                logger.warning("Invalid value for " + SIZE_PROPERTY + ": " + sizeMB + "; using " + DEFAULT_SIZE_MB);
+            }
+        }
+        return DEFAULT_SIZE_MB * 1024 * 1024;
+    }
+
+    private static class Entry {
+
+        final Long datasetId;
+        final long lastUpdateTime;
+        final DatasetVersion.VersionState versionState;
+        final Long citationDateFieldTypeId;
+        final long generation;
+        final Object[] artifacts = new Object[Artifact.values().length];
+        long bytes;
+
+        Entry(DatasetVersion version, long generation) {
+            this.datasetId = version.getDataset().getId();
+            this.lastUpdateTime = lastUpdateTime(version);
+            this.versionState = version.getVersionState();
+            this.citationDateFieldTypeId = citationDateFieldTypeId(version);
+            this.generation = generation;
+        }
+
+        boolean isOf(DatasetVersion version, long currentGeneration) {
+            return generation == currentGeneration
+                    && lastUpdateTime == lastUpdateTime(version)
+                    && versionState == version.getVersionState()
+                    && Objects.equals(citationDateFieldTypeId, citationDateFieldTypeId(version));
+        }
+
+        private static Long citationDateFieldTypeId(DatasetVersion version) {
+            DatasetFieldType citationDateFieldType = version.getDataset().getCitationDateDatasetFieldType();
+            return (citationDateFieldType == null) ? null : citationDateFieldType.getId();
+        }
+
+        private static long lastUpdateTime(DatasetVersion version) {
+            return (version.getLastUpdateTime() == null) ? 0 : version.getLastUpdateTime().getTime();
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.LruCache;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A short lived cache of the rows read by {@link ProjectionServiceBean} for
+ * the files of released versions. The rows, not the objects built from them,
+ * are kept, so that every caller gets objects of its own to change.
+ *
+ * A released version does not change, but some of what is read with it does
+ * (the tags of its files are shared with the later versions, for instance):
+ * the entries are kept for a limited time only, and those of a dataset are
+ * dropped at once whenever the dataset is reindexed, which it is after every
+ * change.
+ */
+public class ReleasedVersionCache {
+
+    private static final Logger logger = Logger.getLogger(ReleasedVersionCache.class.getCanonicalName());
+
+    private final LruCache<String, Entry> cache = new LruCache<>();
+    private final ConcurrentMap<Long, AtomicLong> generationsByDatasetId = new ConcurrentHashMap<>();
+    /**
+     * Bumped when the whole cache is cleared; added to every per dataset
+     * generation.
+     */
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ReleasedVersionCache(long maxSize) {
+        cache.setMaxSize(maxSize);
+    }
+
+    /**
+     * To be called <em>before</em> querying the database; the value is
+     * passed back to {@link #put(java.lang.Long, java.lang.Long, java.lang.String, long, java.util.List)}.
+     */
+    public long currentGeneration(Long datasetId) {
+        AtomicLong generation = generationsByDatasetId.get(datasetId);
+        return epoch.get() + ((generation != null) ? generation.get() : 0);
+    }
+
+    /**
+     * @param query Names the query the rows were read with.
+     * @return The cached rows, or {@code null} if there are none, they are
+     * older than {@code ttlMillis}, or they have been invalidated.
+     */
+    public List<Object[]> get(Long datasetId, Long versionId, String query, long ttlMillis) {
+        String key = versionId + "|" + query;
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.created > ttlMillis
+                || entry.generation != currentGeneration(datasetId)) {
+            cache.invalidate(key);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.rows;
+    }
+
+    public void put(Long datasetId, Long versionId, String query, long generation, List<Object[]> rows) {
+        if (generation != currentGeneration(datasetId)) {
+            logger.fine("dataset " + datasetId + " changed while version " + versionId + " was loading; not caching");
+            return;
+        }
+        cache.put(versionId + "|" + query, new Entry(generation, rows));
+    }
+
+    /**
+     * Drops the cached rows of all the versions of the dataset.
+     */
+    public void invalidate(Long datasetId) {
+        if (datasetId == null) {
+            return;
+        }
+        AtomicLong generation = generationsByDatasetId.get(datasetId);
+        if (generation == null) {
+            AtomicLong fresh = new AtomicLong();
+            generation = generationsByDatasetId.putIfAbsent(datasetId, fresh);
+            if (generation == null) {
+                generation = fresh;
+            }
+        }
+        generation.incrementAndGet();
+    }
+
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        cache.invalidate();
+        logger.fine("released version cache cleared");
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static class Entry {
+
+        final long generation;
+        final long created = System.currentTimeMillis();
+        final List<Object[]> rows;
+
+        Entry(long generation, List<Object[]> rows) {
+            this.generation = generation;
+            this.rows = rows;
+        }
+    }
+
+}
@@ -240,6 +240,43 @@ public class RoleAssigneeServiceBean {
     }
     
     
+    /**
+     * Same as {@link #getRoleIdsFor(java.lang.String, java.util.List)}, also
+     * returning the roles on the owners of the objects in
+     * {@code ownedDvObjectIdList}, in the same query. (MyData: the dataverses
+     * of the datasets of files.)
+     */
+    public List<Object[]> getRoleIdsFor(String roleAssigneeIdentifier, List<Long> dvObjectIdList, List<Long> ownedDvObjectIdList){
+
+        if ((ownedDvObjectIdList==null)||(ownedDvObjectIdList.isEmpty())){
+            return getRoleIdsFor(roleAssigneeIdentifier, dvObjectIdList);
+        }
+        if (roleAssigneeIdentifier==null){
+            return null;
+        }
+        if ((dvObjectIdList==null)||(dvObjectIdList.isEmpty())){
+            return null;
+        }
+        roleAssigneeIdentifier = roleAssigneeIdentifier.replaceAll("\\s","");   // remove spaces from string
+        List<String> userGroups = getUserGroups(roleAssigneeIdentifier.replace("@", ""));      
+        
+        String identifierClause = " WHERE r.assigneeIdentifier= '" + roleAssigneeIdentifier + "'";
+        if (userGroups != null && !userGroups.isEmpty()){
+            identifierClause = getGroupIdentifierClause(roleAssigneeIdentifier, userGroups);
+        } 
+        
+        String qstr = "SELECT r.definitionpoint_id, r.role_id";
+        qstr += " FROM RoleAssignment r";
+        qstr += identifierClause;
+        qstr += " AND (r.definitionpoint_id IN (" + StringUtils.join(dvObjectIdList, ",") + ")";
+        qstr += " OR r.definitionpoint_id IN (SELECT dv.owner_id FROM dvobject dv WHERE dv.id IN (" + StringUtils.join(ownedDvObjectIdList, ",") + ")))";
+        qstr += ";";
+
+        return em.createNativeQuery(qstr)
+                        .getResultList();
+        
+    }
+    
     private String getDvObjectIdListClause(List<Long> dvObjectIdList){
         if (dvObjectIdList == null){
             return "";
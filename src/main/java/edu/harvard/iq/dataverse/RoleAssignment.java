@@ -37,6 +37,8 @@ import javax.persistence.UniqueConstraint;
 				 query = "SELECT r FROM RoleAssignment r WHERE r.assigneeIdentifier=:assigneeIdentifier" ),
 	@NamedQuery( name  = "RoleAssignment.listByDefinitionPointId",
 				 query = "SELECT r FROM RoleAssignment r WHERE r.definitionPoint.id=:definitionPointId" ),
+	@NamedQuery( name  = "RoleAssignment.listByDefinitionPointIds",
+				 query = "SELECT r FROM RoleAssignment r JOIN FETCH r.role WHERE r.definitionPoint.id IN :definitionPointIds" ),
 	@NamedQuery( name  = "RoleAssignment.listByRoleId",
 				 query = "SELECT r FROM RoleAssignment r WHERE r.role=:roleId" ),
 	@NamedQuery( name  = "RoleAssignment.deleteByAssigneeIdentifier_RoleIdDefinition_PointId",
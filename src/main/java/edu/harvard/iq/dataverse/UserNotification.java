@@ -53,6 +53,12 @@ public class UserNotification implements Serializable {
     
     private boolean emailed;
 
+    /**
+     * Whether the notification is waiting to be emailed by the
+     * {@link NotificationMailer}.
+     */
+    private boolean emailQueued;
+
     public Long getId() {
         return id;
     }
@@ -129,6 +135,14 @@ public class UserNotification implements Serializable {
         this.emailed = emailed;
     }    
     
+    public boolean isEmailQueued() {
+        return emailQueued;
+    }
+
+    public void setEmailQueued(boolean emailQueued) {
+        this.emailQueued = emailQueued;
+    }
+
     public String getRoleString() {
         return roleString;
     }
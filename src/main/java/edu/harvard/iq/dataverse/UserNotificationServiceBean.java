@@ -9,15 +9,17 @@ package edu.harvard.iq.dataverse;
 import edu.harvard.iq.dataverse.UserNotification.Type;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.logging.Logger;
-import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Named;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import org.apache.commons.lang.StringUtils;
 
 /**
  *
@@ -29,8 +31,11 @@ public class UserNotificationServiceBean {
 
     private static final Logger logger = Logger.getLogger(UserNotificationServiceBean.class.getCanonicalName());
 
-    @EJB
-    MailServiceBean mailService;
+    /**
+     * The most users notified with one insert.
+     */
+    private static final int INSERT_BATCH_SIZE = 1000;
+
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
     
@@ -65,6 +70,31 @@ public class UserNotificationServiceBean {
         return query.getResultList();
     }
     
+    /**
+     * @return Notifications waiting to be emailed, those of the same user
+     * together, oldest first.
+     */
+    public List<UserNotification> findEmailQueued(int maxResults) {
+        return em.createQuery("select object(o) from UserNotification as o where o.emailQueued = 'true' order by o.user.id, o.id", UserNotification.class)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    /**
+     * Takes the notifications off the email queue.
+     *
+     * @param emailed Whether they were emailed.
+     */
+    public void dequeueEmails(Collection<Long> notificationIds, boolean emailed) {
+        if (notificationIds.isEmpty()) {
+            return;
+        }
+        em.createQuery("update UserNotification o set o.emailQueued = false, o.emailed = :emailed where o.id in :ids")
+                .setParameter("emailed", emailed)
+                .setParameter("ids", notificationIds)
+                .executeUpdate();
+    }
+
     public UserNotification find(Object pk) {
         return em.find(UserNotification.class, pk);
     }
@@ -77,6 +107,10 @@ public class UserNotificationServiceBean {
         em.remove(em.merge(userNotification));
     }
     
+    /**
+     * Saves the notification, and queues it to be emailed by the
+     * {@link NotificationMailer}.
+     */
     public void sendNotification(AuthenticatedUser dataverseUser, Timestamp sendDate, Type type, Long objectId) {
         
         UserNotification userNotification = new UserNotification();
@@ -84,13 +118,29 @@ public class UserNotificationServiceBean {
         userNotification.setSendDate(sendDate);
         userNotification.setType(type);
         userNotification.setObjectId(objectId);
-        if (mailService.sendNotificationEmail(userNotification)) {
-            logger.fine("email was sent");
-            userNotification.setEmailed(true);
-            save(userNotification);
-        } else {
-            logger.fine("email was not sent");
-            save(userNotification);
+        userNotification.setEmailQueued(true);
+        save(userNotification);
+    }
+
+    /**
+     * Does what {@link #sendNotification(AuthenticatedUser, Timestamp, Type, Long)}
+     * does for each of the users, with an insert per
+     * {@link #INSERT_BATCH_SIZE} users.
+     */
+    public void sendNotifications(Collection<AuthenticatedUser> users, Timestamp sendDate, Type type, Long objectId) {
+        List<Long> userIds = new ArrayList<>(users.size());
+        for (AuthenticatedUser au : users) {
+            userIds.add(au.getId());
+        }
+        for (int i = 0; i < userIds.size(); i += INSERT_BATCH_SIZE) {
+            List<Long> batch = userIds.subList(i, Math.min(i + INSERT_BATCH_SIZE, userIds.size()));
+            int inserted = em.createNativeQuery("INSERT INTO usernotification (user_id, senddate, readnotification, type, objectid, emailed, emailqueued)"
+                    + " SELECT id, ?, false, ?, ?, false, true FROM authenticateduser WHERE id IN (" + StringUtils.join(batch, ",") + ")")
+                    .setParameter(1, sendDate)
+                    .setParameter(2, type.ordinal())
+                    .setParameter(3, objectId)
+                    .executeUpdate();
+            logger.fine("queued " + inserted + " " + type + " notifications");
         }
     }
 }
@@ -1,11 +1,10 @@
 package edu.harvard.iq.dataverse.actionlogging;
 
 import java.util.Date;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
 
 /**
  * A service bean that persists {@link ActionLogRecord}s to the DB.
@@ -14,14 +13,16 @@ import javax.persistence.PersistenceContext;
 @Stateless
 public class ActionLogServiceBean {
     
-    @PersistenceContext(unitName = "VDCNet-ejbPU")
-    private EntityManager em;
+    @EJB
+    ActionLogWriter writer;
     
     /**
-     * Log the record. Set default values.
+     * Log the record. Set default values. The record is written to the DB
+     * asynchronously, by the {@link ActionLogWriter}, independently of the
+     * caller's transaction.
      * @param rec 
      */
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public void log( ActionLogRecord rec ) {
         if ( rec.getEndTime() == null ) {
             rec.setEndTime( new Date() );
@@ -30,6 +31,8 @@ public class ActionLogServiceBean {
                 && rec.getActionType() != ActionLogRecord.ActionType.Command ) {
             rec.setActionResult(ActionLogRecord.Result.OK);
         }
-        em.persist(rec);
+        if ( ! writer.enqueue(rec) ) {
+            writer.write(rec);
+        }
     }
 }
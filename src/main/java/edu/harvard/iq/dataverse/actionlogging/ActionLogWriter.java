@@ -0,0 +1,155 @@
+package edu.harvard.iq.dataverse.actionlogging;
+
+import edu.harvard.iq.dataverse.util.BatchingEntityWriter;
+import edu.harvard.iq.dataverse.util.SystemConfig;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJB;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.sql.DataSource;
+
+/**
+ * Writes {@link ActionLogRecord}s to the DB in the background, every
+ * {@link SystemConfig#getActionLogFlushIntervalMillis()} milliseconds, with
+ * JDBC batch inserts, a single local transaction per batch (the writer's
+ * methods run outside of container transactions). Records that cannot be
+ * queued are written right away by {@link #write(ActionLogRecord)}.
+ *
+ * @see ActionLogServiceBean#log(ActionLogRecord)
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class ActionLogWriter extends BatchingEntityWriter<ActionLogRecord> {
+
+    private static final Logger logger = Logger.getLogger(ActionLogWriter.class.getCanonicalName());
+
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final int BATCH_SIZE = 500;
+
+    private static final String INSERT = "INSERT INTO actionlogrecord"
+            + " (id, starttime, endtime, actionresult, useridentifier, actiontype, actionsubtype, info)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Resource(lookup = "jdbc/VDCNetDS")
+    DataSource dataSource;
+
+    @EJB
+    SystemConfig systemConfig;
+
+    public ActionLogWriter() {
+        super("action log records", QUEUE_CAPACITY, BATCH_SIZE);
+    }
+
+    @Override
+    protected long getFlushIntervalMillis() {
+        return systemConfig.getActionLogFlushIntervalMillis();
+    }
+
+    /**
+     * Writes the record at once, in its own (local) transaction.
+     */
+    public void write(ActionLogRecord rec) {
+        List<ActionLogRecord> batch = new ArrayList<>(1);
+        batch.add(rec);
+        insert(batch);
+    }
+
+    /**
+     * Inserts the batch in a single local transaction, or the records one by
+     * one if the batch fails.
+     */
+    @Override
+    protected void persist(List<ActionLogRecord> batch) {
+        insert(batch);
+    }
+
+    private void insert(List<ActionLogRecord> batch) {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                for (ActionLogRecord rec : batch) {
+                    bind(insert, rec);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.commit();
+            } catch (BatchUpdateException bue) {
+                connection.rollback();
+                logger.log(Level.WARNING, "Batch insert of " + batch.size() + " action log records failed, inserting them one by one", bue);
+                insertEach(connection, batch);
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException sqle) {
+            logger.log(Level.SEVERE, "Could not write " + batch.size() + " action log records", sqle);
+        }
+    }
+
+    private void insertEach(Connection connection, List<ActionLogRecord> batch) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+            for (ActionLogRecord rec : batch) {
+                try {
+                    bind(insert, rec);
+                    insert.executeUpdate();
+                    connection.commit();
+                } catch (SQLException sqle) {
+                    connection.rollback();
+                    logger.log(Level.SEVERE, "Could not write action log record " + rec, sqle);
+                }
+            }
+        }
+    }
+
+    private void bind(PreparedStatement insert, ActionLogRecord rec) throws SQLException {
+        // what ActionLogRecord.prepresist() does for JPA
+        if (rec.getId() == null) {
+            rec.setId(UUID.randomUUID().toString());
+        }
+        insert.setString(1, rec.getId());
+        setTimestamp(insert, 2, rec.getStartTime());
+        setTimestamp(insert, 3, rec.getEndTime());
+        insert.setString(4, rec.getActionResult() == null ? null : rec.getActionResult().name());
+        insert.setString(5, truncate(rec.getUserIdentifier(), 255));
+        insert.setString(6, rec.getActionType() == null ? null : rec.getActionType().name());
+        insert.setString(7, truncate(rec.getActionSubType(), 255));
+        insert.setString(8, truncate(rec.getInfo(), 1024));
+    }
+
+    private static void setTimestamp(PreparedStatement insert, int index, Date date) throws SQLException {
+        if (date == null) {
+            insert.setNull(index, Types.TIMESTAMP);
+        } else {
+            insert.setTimestamp(index, new Timestamp(date.getTime()));
+        }
+    }
+
+    /*
+     * A value longer than its column would fail the whole batch.
+     */
+    private static String truncate(String value, int length) {
+        if (value == null || value.length() <= length) {
+            return value;
+        }
+        return value.substring(0, length);
+    }
+
+}
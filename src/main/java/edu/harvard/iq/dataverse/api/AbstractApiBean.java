@@ -1,5 +1,6 @@
 package edu.harvard.iq.dataverse.api;
 
+import edu.harvard.iq.dataverse.DataFileServiceBean;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetFieldServiceBean;
 import edu.harvard.iq.dataverse.DatasetFieldType;
@@ -9,6 +10,8 @@ import edu.harvard.iq.dataverse.DataverseRoleServiceBean;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.EjbDataverseEngine;
+import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.FileMetadataFilter;
 import edu.harvard.iq.dataverse.MetadataBlock;
 import edu.harvard.iq.dataverse.MetadataBlockServiceBean;
 import edu.harvard.iq.dataverse.PermissionServiceBean;
@@ -29,10 +32,14 @@ import edu.harvard.iq.dataverse.engine.command.exception.PermissionException;
 import edu.harvard.iq.dataverse.search.savedsearch.SavedSearchServiceBean;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.json.JsonParser;
+import edu.harvard.iq.dataverse.util.json.JsonStreamPrinter;
 import edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder;
 import edu.harvard.iq.dataverse.validation.BeanValidationServiceBean;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.URI;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,13 +51,16 @@ import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
 import javax.json.JsonValue;
 import javax.json.JsonValue.ValueType;
+import javax.json.stream.JsonGenerator;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 /**
  * Base class for API beans
@@ -169,6 +179,9 @@ public abstract class AbstractApiBean {
     @EJB
     protected SavedSearchServiceBean savedSearchSvc;
 
+    @EJB
+    protected DataFileServiceBean fileSvc;
+
 	@PersistenceContext(unitName = "VDCNet-ejbPU")
 	protected EntityManager em;
     
@@ -374,12 +387,60 @@ public abstract class AbstractApiBean {
             .add("data", value).build() ).build();
     }
     
+    /**
+     * Writes the {@code data} of a successful response, see
+     * {@link #okStreamingResponse(JsonDataWriter)}.
+     */
+    protected interface JsonDataWriter {
+        /**
+         * @param generator Positioned inside the response object: the data
+         * has to be written under the name {@code "data"}.
+         * @param printer Writes versions and files, fetching the files from
+         * the database a page at a time.
+         */
+        void writeData( JsonGenerator generator, JsonStreamPrinter printer );
+    }
+    
+    /**
+     * Like {@link #okResponse(JsonObjectBuilder)}, but the data is written
+     * straight to the response, so large responses are not built in memory
+     * first. The output is the same.
+     */
+    protected Response okStreamingResponse( final JsonDataWriter dataWriter ) {
+        StreamingOutput stream = new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException, WebApplicationException {
+                JsonGenerator generator = Json.createGenerator(output);
+                generator.writeStartObject()
+                        .write("status", "OK");
+                dataWriter.writeData(generator, new JsonStreamPrinter(new JsonStreamPrinter.FileMetadataPages() {
+                    @Override
+                    public List<FileMetadata> getPage(Long datasetVersionId, String afterLabel, Long afterId, int maxResults) {
+                        return fileSvc.findFileMetadataPage(datasetVersionId, FileMetadataFilter.NONE, afterLabel, afterId, maxResults);
+                    }
+                }));
+                generator.writeEnd();
+                generator.close();
+            }
+        };
+        return Response.ok(stream, MediaType.APPLICATION_JSON_TYPE).build();
+    }
+    
     protected Response accepted() {
         return Response.accepted()
                 .entity(Json.createObjectBuilder()
                         .add("status", "OK").build()
                 ).build();
     }
+
+    protected Response accepted( JsonObjectBuilder bld ) {
+        return Response.accepted()
+                .entity(Json.createObjectBuilder()
+                        .add("status", "OK")
+                        .add("data", bld).build()
+                ).type(MediaType.APPLICATION_JSON)
+                .build();
+    }
     
     protected JsonParser jsonParser() {
         return jsonParserRef.get();
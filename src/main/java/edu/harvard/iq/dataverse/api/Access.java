@@ -23,7 +23,6 @@ import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.GuestUser;
 import edu.harvard.iq.dataverse.dataaccess.DataFileIO;
 import edu.harvard.iq.dataverse.dataaccess.DataFileZipper;
-import edu.harvard.iq.dataverse.dataaccess.FileAccessIO;
 import edu.harvard.iq.dataverse.dataaccess.OptionalAccessService;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
@@ -167,7 +166,7 @@ public class Access extends AbstractApiBean {
     @Path("datafile/{fileId}")
     @GET
     @Produces({ "application/xml" })
-    public DownloadInstance datafile(@PathParam("fileId") Long fileId, @QueryParam("key") String apiToken, @Context UriInfo uriInfo, @Context HttpHeaders headers, @Context HttpServletResponse response) /*throws NotFoundException, ServiceUnavailableException, PermissionDeniedException, AuthorizationRequiredException*/ {                
+    public Response datafile(@PathParam("fileId") Long fileId, @QueryParam("key") String apiToken, @Context UriInfo uriInfo, @Context HttpHeaders headers, @Context HttpServletResponse response) /*throws NotFoundException, ServiceUnavailableException, PermissionDeniedException, AuthorizationRequiredException*/ {                
 
         DataFile df = dataFileService.find(fileId);
         
@@ -265,11 +264,93 @@ public class Access extends AbstractApiBean {
          */
         response.setHeader("Access-Control-Allow-Origin", "*");
                 
+        /* 
+         * Byte ranges: (straight downloads of non-tabular files only - 
+         * the tabular files are served with the variable header added, 
+         * and the conversions are produced on the fly)
+         */
+        if (downloadInstance.getConversionParam() == null && !df.isTabularData()) {
+            long[] range = parseRange(headers.getHeaderString("Range"), df.getFilesize());
+            
+            if (range != null) {
+                if (range[0] >= df.getFilesize()) {
+                    throw new WebApplicationException(Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header("Content-Range", "bytes */" + df.getFilesize())
+                            .build());
+                }
+                downloadInstance.setRange(range[0], range[1]);
+                return Response.status(Response.Status.PARTIAL_CONTENT)
+                        .entity(downloadInstance)
+                        .header("Accept-Ranges", "bytes")
+                        .build();
+            }
+            
+            return Response.ok(downloadInstance).header("Accept-Ranges", "bytes").build();
+        }
+        
         /* 
          * Provide some browser-friendly headers: (?)
          */
         //return retValue; 
-        return downloadInstance;
+        return Response.ok(downloadInstance).build();
+    }
+    
+    /**
+     * Parses the HTTP "Range:" header of a request for a file of the size 
+     * given: "bytes=<first>-<last>", "bytes=<first>-", or "bytes=-<suffix 
+     * length>". 
+     * 
+     * @return The first byte and the number of bytes of the range; the 
+     * first byte is past the end of the file if the range can not be 
+     * satisfied. Or null, if the header is absent, malformed, or asks 
+     * for multiple ranges: the whole file is served then.
+     */
+    static long[] parseRange(String rangeHeader, long fileSize) {
+        if (rangeHeader == null || fileSize < 0) {
+            return null;
+        }
+        
+        String rangeSpec = rangeHeader.trim();
+        if (!rangeSpec.startsWith("bytes=")) {
+            return null;
+        }
+        rangeSpec = rangeSpec.substring("bytes=".length()).trim();
+        
+        if (!rangeSpec.matches("[0-9]*-[0-9]*") || rangeSpec.equals("-")) {
+            return null;
+        }
+        
+        String firstByte = rangeSpec.substring(0, rangeSpec.indexOf('-'));
+        String lastByte = rangeSpec.substring(rangeSpec.indexOf('-') + 1);
+        
+        try {
+            if (firstByte.equals("")) {
+                long suffixLength = Long.parseLong(lastByte);
+                if (suffixLength == 0 || fileSize == 0) {
+                    return new long[]{fileSize, 0};
+                }
+                long start = Math.max(0, fileSize - suffixLength);
+                return new long[]{start, fileSize - start};
+            }
+            
+            long start = Long.parseLong(firstByte);
+            if (start >= fileSize) {
+                return new long[]{start, 0};
+            }
+            
+            long end = fileSize - 1;
+            if (!lastByte.equals("")) {
+                end = Long.parseLong(lastByte);
+                if (end < start) {
+                    return null;
+                }
+                end = Math.min(end, fileSize - 1);
+            }
+            return new long[]{start, end - start + 1};
+        } catch (NumberFormatException nfe) {
+            // (too many digits)
+            return null;
+        }
     }
     
     
@@ -593,7 +674,8 @@ public class Access extends AbstractApiBean {
         
         
         
-        DataFile df = dataFileService.find(fileId);
+        // read without JPA: only the content type and the location of the file are needed
+        DataFile df = dataFileService.findCheapAndEasy(fileId);
         
         if (df == null) {
             logger.warning("Preview: datafile service could not locate a DataFile object for id "+fileId+"!");
@@ -604,14 +686,14 @@ public class Access extends AbstractApiBean {
         
         try {
             DataFileIO dataAccess = df.getAccessObject();
-            if (dataAccess != null && dataAccess.isLocalFile()) {
+            if (dataAccess != null) {
                 dataAccess.open();
 
                 if ("application/pdf".equalsIgnoreCase(df.getContentType())
                         || df.isImage()
                         || "application/zipped-shapefile".equalsIgnoreCase(df.getContentType())) {
 
-                    thumbnailDataAccess = ImageThumbConverter.getImageThumb((FileAccessIO) dataAccess, 48);
+                    thumbnailDataAccess = ImageThumbConverter.getImageThumb(dataAccess, 48);
                 }
             }
         } catch (IOException ioEx) {
@@ -652,10 +734,10 @@ public class Access extends AbstractApiBean {
         
                 try {
                     DataFileIO dataAccess = logoDataFile.getAccessObject();
-                    if (dataAccess != null && dataAccess.isLocalFile()) {
+                    if (dataAccess != null) {
                         dataAccess.open();
 
-                        thumbnailDataAccess = ImageThumbConverter.getImageThumb((FileAccessIO) dataAccess, 48);
+                        thumbnailDataAccess = ImageThumbConverter.getImageThumb(dataAccess, 48);
                     }
                 } catch (IOException ioEx) {
                     thumbnailDataAccess = null; 
@@ -775,10 +857,10 @@ public class Access extends AbstractApiBean {
 
                     try {
                         DataFileIO dataAccess = dataFile.getAccessObject();
-                        if (dataAccess != null && dataAccess.isLocalFile()) {
+                        if (dataAccess != null) {
                             dataAccess.open();
 
-                            thumbnailDataAccess = ImageThumbConverter.getImageThumb((FileAccessIO) dataAccess, 48);
+                            thumbnailDataAccess = ImageThumbConverter.getImageThumb(dataAccess, 48);
                         }
                     } catch (IOException ioEx) {
                         thumbnailDataAccess = null;
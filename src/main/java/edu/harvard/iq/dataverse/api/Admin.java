@@ -1,14 +1,19 @@
 package edu.harvard.iq.dataverse.api;
 
 import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.ProjectionServiceBean;
+import edu.harvard.iq.dataverse.PublishedVersionCache;
+import edu.harvard.iq.dataverse.ReleasedVersionCache;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
 import edu.harvard.iq.dataverse.api.dto.RoleDTO;
+import edu.harvard.iq.dataverse.authorization.ApiTokenCache;
 import edu.harvard.iq.dataverse.authorization.AuthenticationProvider;
 import edu.harvard.iq.dataverse.authorization.exceptions.AuthenticationProviderFactoryNotFoundException;
 import edu.harvard.iq.dataverse.authorization.exceptions.AuthorizationSetupException;
 import edu.harvard.iq.dataverse.authorization.providers.AuthenticationProviderFactory;
 import edu.harvard.iq.dataverse.authorization.providers.AuthenticationProviderRow;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.engine.CommandMetrics;
 import edu.harvard.iq.dataverse.engine.command.impl.PublishDataverseCommand;
 import edu.harvard.iq.dataverse.settings.Setting;
 import javax.json.Json;
@@ -20,12 +25,15 @@ import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
 import static edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder.jsonObjectBuilder;
 import static edu.harvard.iq.dataverse.util.json.JsonPrinter.*;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
@@ -41,6 +49,9 @@ public class Admin extends AbstractApiBean {
     
     private static final Logger logger = Logger.getLogger(Admin.class.getName());
     
+    @EJB
+    ProjectionServiceBean projectionSvc;
+    
     @Path("settings")
     @GET
     public Response listAllSettings() {
@@ -76,6 +87,107 @@ public class Admin extends AbstractApiBean {
         return okResponse("Setting " + name +  " deleted.");
     }
     
+    /**
+     * @return The request counts, latencies and response sizes of the API
+     * resource methods, for Prometheus to scrape.
+     */
+    @Path("metrics")
+    @GET
+    @Produces("text/plain; version=0.0.4")
+    public Response showApiMetrics() {
+        return Response.ok(ApiMetrics.getInstance().toPrometheusText()).build();
+    }
+    
+    /**
+     * @return How long the commands took since the server started (or since
+     * the metrics were last cleared), the most costly ones first.
+     */
+    @Path("commandMetrics")
+    @GET
+    public Response showCommandMetrics() {
+        return okResponse(CommandMetrics.getInstance().toJson());
+    }
+    
+    @Path("commandMetrics")
+    @DELETE
+    public Response clearCommandMetrics() {
+        CommandMetrics.getInstance().clear();
+        return okResponse("Command metrics cleared.");
+    }
+    
+    @Path("apiTokenCache")
+    @GET
+    public Response showApiTokenCache() {
+        ApiTokenCache cache = authSvc.getApiTokenCache();
+        return okResponse( jsonObjectBuilder()
+                .add("timeToLiveSeconds", cache.getTimeToLiveMillis() / 1000)
+                .add("size", cache.getSize())
+                .add("hits", cache.getHits())
+                .add("misses", cache.getMisses())
+                .add("hitRate", cache.getHitRate()) );
+    }
+    
+    @Path("apiTokenCache")
+    @DELETE
+    public Response clearApiTokenCache() {
+        authSvc.getApiTokenCache().clear();
+        return okResponse("API token cache cleared.");
+    }
+    
+    @Path("releasedVersionCache")
+    @GET
+    public Response showReleasedVersionCache() {
+        ReleasedVersionCache cache = ProjectionServiceBean.releasedVersionCache;
+        return okResponse( jsonObjectBuilder()
+                .add("size", cache.size())
+                .add("hits", cache.getHits())
+                .add("misses", cache.getMisses()) );
+    }
+    
+    @Path("releasedVersionCache")
+    @DELETE
+    public Response clearReleasedVersionCache() {
+        ProjectionServiceBean.releasedVersionCache.invalidateAll();
+        return okResponse("Released version cache cleared.");
+    }
+    
+    @Path("publishedVersionCache")
+    @GET
+    public Response showPublishedVersionCache() {
+        PublishedVersionCache cache = PublishedVersionCache.getInstance();
+        return okResponse( jsonObjectBuilder()
+                .add("size", cache.size())
+                .add("bytes", cache.getBytes())
+                .add("maxBytes", cache.getMaxBytes())
+                .add("hits", cache.getHits())
+                .add("misses", cache.getMisses()) );
+    }
+    
+    @Path("publishedVersionCache")
+    @DELETE
+    public Response clearPublishedVersionCache() {
+        PublishedVersionCache.getInstance().invalidateAll();
+        return okResponse("Published version cache cleared.");
+    }
+    
+    /**
+     * @return How long loading the files of the version takes through JPA
+     * and with native queries, in milliseconds.
+     */
+    @Path("benchmark/fileMetadatas/{versionId}")
+    @GET
+    public Response benchmarkFileMetadatas( @PathParam("versionId") Long versionId, @QueryParam("runs") Integer runs ) {
+        Map<String, Long> times = projectionSvc.benchmarkFileMetadatas(versionId, (runs == null || runs < 1) ? 5 : Math.min(runs, 100));
+        if ( times == null ) {
+            return notFound("Dataset version " + versionId + " not found");
+        }
+        JsonObjectBuilder bld = jsonObjectBuilder();
+        for ( Map.Entry<String, Long> time : times.entrySet() ) {
+            bld.add(time.getKey(), time.getValue());
+        }
+        return okResponse(bld);
+    }
+    
     @Path("authenticationProviderFactories")
     @GET
     public Response listAuthProviderFactories() {
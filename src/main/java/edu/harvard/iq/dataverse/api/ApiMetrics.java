@@ -0,0 +1,177 @@
+package edu.harvard.iq.dataverse.api;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counts, latencies and response sizes of the API, per resource
+ * method, as recorded by {@link ApiMetricsFilter}. They are kept since the
+ * application started, and shown in the Prometheus text format by
+ * {@code api/admin/metrics}.
+ *
+ * @see <a href="https://prometheus.io/docs/instrumenting/exposition_formats/">Prometheus exposition formats</a>
+ */
+public class ApiMetrics {
+
+    /**
+     * The upper bounds of the latency histogram buckets, in seconds (the
+     * Prometheus client defaults).
+     */
+    static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final ApiMetrics INSTANCE = new ApiMetrics();
+
+    private final ConcurrentMap<Endpoint, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+    ApiMetrics() {
+    }
+
+    public static ApiMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param resource The resource class, e.g. {@code Datasets}.
+     * @param method The resource method, e.g. {@code getVersion}.
+     * @param httpMethod The HTTP method, e.g. {@code GET}.
+     * @param status The HTTP status of the response.
+     * @param nanos How long the request took, including writing out the
+     * response.
+     * @param bytes The size of the response body.
+     */
+    public void record(String resource, String method, String httpMethod, int status, long nanos, long bytes) {
+        Endpoint endpoint = new Endpoint(resource, method, httpMethod);
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        if (metrics == null) {
+            EndpointMetrics created = new EndpointMetrics();
+            metrics = endpoints.putIfAbsent(endpoint, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        metrics.record(status, nanos, bytes);
+    }
+
+    /**
+     * @return All the metrics, in the Prometheus text format (version 0.0.4).
+     */
+    public String toPrometheusText() {
+        // sorted, so that the output is stable
+        Map<String, EndpointMetrics> sorted = new TreeMap<>();
+        for (Map.Entry<Endpoint, EndpointMetrics> e : endpoints.entrySet()) {
+            sorted.put(e.getKey().labels(), e.getValue());
+        }
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("# HELP dataverse_api_requests_total Number of API requests, by resource method and response status.\n");
+        sb.append("# TYPE dataverse_api_requests_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> e : sorted.entrySet()) {
+            for (Map.Entry<Integer, LongAdder> status : new TreeMap<>(e.getValue().statuses).entrySet()) {
+                sb.append("dataverse_api_requests_total{").append(e.getKey())
+                        .append(",status=\"").append(status.getKey()).append("\"} ")
+                        .append(status.getValue().sum()).append('\n');
+            }
+        }
+
+        sb.append("# HELP dataverse_api_request_duration_seconds Time taken to handle API requests, including writing the response.\n");
+        sb.append("# TYPE dataverse_api_request_duration_seconds histogram\n");
+        for (Map.Entry<String, EndpointMetrics> e : sorted.entrySet()) {
+            EndpointMetrics metrics = e.getValue();
+            // read the count first: the buckets may be a little ahead of it, never behind
+            long count = metrics.count.sum();
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += metrics.buckets.get(i);
+                sb.append("dataverse_api_request_duration_seconds_bucket{").append(e.getKey())
+                        .append(",le=\"").append(BUCKETS[i]).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            sb.append("dataverse_api_request_duration_seconds_bucket{").append(e.getKey())
+                    .append(",le=\"+Inf\"} ").append(Math.max(count, cumulative)).append('\n');
+            sb.append("dataverse_api_request_duration_seconds_sum{").append(e.getKey()).append("} ")
+                    .append(metrics.nanos.sum() / 1e9).append('\n');
+            sb.append("dataverse_api_request_duration_seconds_count{").append(e.getKey()).append("} ")
+                    .append(Math.max(count, cumulative)).append('\n');
+        }
+
+        sb.append("# HELP dataverse_api_response_bytes_total Bytes written in API response bodies.\n");
+        sb.append("# TYPE dataverse_api_response_bytes_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> e : sorted.entrySet()) {
+            sb.append("dataverse_api_response_bytes_total{").append(e.getKey()).append("} ")
+                    .append(e.getValue().bytes.sum()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static class Endpoint {
+
+        final String resource;
+        final String method;
+        final String httpMethod;
+
+        Endpoint(String resource, String method, String httpMethod) {
+            this.resource = resource;
+            this.method = method;
+            this.httpMethod = httpMethod;
+        }
+
+        String labels() {
+            return "resource=\"" + escape(resource) + "\",method=\"" + escape(method) + "\",http_method=\"" + escape(httpMethod) + "\"";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Endpoint)) {
+                return false;
+            }
+            Endpoint other = (Endpoint) o;
+            return resource.equals(other.resource) && method.equals(other.method) && httpMethod.equals(other.httpMethod);
+        }
+
+        @Override
+        public int hashCode() {
+            return (resource.hashCode() * 31 + method.hashCode()) * 31 + httpMethod.hashCode();
+        }
+    }
+
+    private static class EndpointMetrics {
+
+        final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        // requests per bucket, not cumulative; the ones slower than the last bucket only count
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length);
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+
+        void record(int status, long requestNanos, long responseBytes) {
+            LongAdder statusCount = statuses.get(status);
+            if (statusCount == null) {
+                LongAdder created = new LongAdder();
+                statusCount = statuses.putIfAbsent(status, created);
+                if (statusCount == null) {
+                    statusCount = created;
+                }
+            }
+            statusCount.increment();
+            double seconds = requestNanos / 1e9;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                if (seconds <= BUCKETS[i]) {
+                    buckets.incrementAndGet(i);
+                    break;
+                }
+            }
+            nanos.add(requestNanos);
+            bytes.add(responseBytes);
+            count.increment();
+        }
+    }
+
+}
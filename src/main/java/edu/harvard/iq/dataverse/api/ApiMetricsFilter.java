@@ -0,0 +1,106 @@
+package edu.harvard.iq.dataverse.api;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Times every API request and records it in {@link ApiMetrics}, under the
+ * resource method that handled it. A request with a response body is
+ * recorded once the body has been written out, so that downloads are timed
+ * (and counted) in full.
+ */
+@Provider
+@PreMatching
+public class ApiMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    private static final String START_PROPERTY = ApiMetricsFilter.class.getName() + ".start";
+    private static final String STATUS_PROPERTY = ApiMetricsFilter.class.getName() + ".status";
+    private static final String RESOURCE_PROPERTY = ApiMetricsFilter.class.getName() + ".resource";
+    private static final String METHOD_PROPERTY = ApiMetricsFilter.class.getName() + ".method";
+    private static final String HTTP_METHOD_PROPERTY = ApiMetricsFilter.class.getName() + ".httpMethod";
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        requestContext.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+        Long start = (Long) requestContext.getProperty(START_PROPERTY);
+        if (start == null) {
+            return;
+        }
+        String resource = "unmatched";
+        String method = "unmatched";
+        if (resourceInfo != null && resourceInfo.getResourceClass() != null) {
+            resource = resourceInfo.getResourceClass().getSimpleName();
+            method = resourceInfo.getResourceMethod().getName();
+        }
+        if (responseContext.hasEntity()) {
+            // recorded by aroundWriteTo(), after the body has been written
+            requestContext.setProperty(STATUS_PROPERTY, responseContext.getStatus());
+            requestContext.setProperty(RESOURCE_PROPERTY, resource);
+            requestContext.setProperty(METHOD_PROPERTY, method);
+            requestContext.setProperty(HTTP_METHOD_PROPERTY, requestContext.getMethod());
+        } else {
+            ApiMetrics.getInstance().record(resource, method, requestContext.getMethod(), responseContext.getStatus(), System.nanoTime() - start, 0);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        Long start = (Long) context.getProperty(START_PROPERTY);
+        Integer status = (Integer) context.getProperty(STATUS_PROPERTY);
+        if (start == null || status == null) {
+            context.proceed();
+            return;
+        }
+        CountingOutputStream out = new CountingOutputStream(context.getOutputStream());
+        context.setOutputStream(out);
+        try {
+            context.proceed();
+        } finally {
+            ApiMetrics.getInstance().record((String) context.getProperty(RESOURCE_PROPERTY),
+                    (String) context.getProperty(METHOD_PROPERTY),
+                    (String) context.getProperty(HTTP_METHOD_PROPERTY),
+                    status, System.nanoTime() - start, out.count);
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+}
@@ -7,6 +7,7 @@ import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.MetadataBlockServiceBean;
 
+import edu.harvard.iq.dataverse.api.imports.BatchImportJob;
 import edu.harvard.iq.dataverse.api.imports.ImportException;
 import edu.harvard.iq.dataverse.api.imports.ImportUtil.ImportType;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
@@ -16,10 +17,13 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
 import javax.json.JsonObjectBuilder;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
@@ -143,12 +147,47 @@ public class BatchImport extends AbstractApiBean {
                     return errorResponse(Response.Status.NOT_FOUND, "Can't find dataverse with identifier='" + parentIdtf + "'");
                 }
             }
-            batchService.processFilePath(fileDir, parentIdtf, dataverseRequest, owner, importType, createDV);
+            BatchImportJob job = batchService.createJob(fileDir, importType);
+            batchService.processFilePath(job, fileDir, parentIdtf, dataverseRequest, owner, importType, createDV);
+            return this.accepted(job.toJson());
 
         } catch (ImportException e) {
             return this.errorResponse(Response.Status.BAD_REQUEST, "Import Exception, " + e.getMessage());
         }
-        return this.accepted();
+    }
+
+    /**
+     * @return The progress of the batch imports started since the last
+     * restart.
+     */
+    @GET
+    @Path("jobs")
+    public Response listJobs(@QueryParam("key") String apiKey) {
+        try {
+            findAuthenticatedUserOrDie();
+        } catch (WrappedResponse wr) {
+            return wr.getResponse();
+        }
+        JsonArrayBuilder jobs = Json.createArrayBuilder();
+        for (BatchImportJob job : batchService.findAllJobs()) {
+            jobs.add(job.toJson());
+        }
+        return okResponse(jobs);
+    }
+
+    @GET
+    @Path("jobs/{id}")
+    public Response getJob(@PathParam("id") long id, @QueryParam("key") String apiKey) {
+        try {
+            findAuthenticatedUserOrDie();
+        } catch (WrappedResponse wr) {
+            return wr.getResponse();
+        }
+        BatchImportJob job = batchService.findJob(id);
+        if (job == null) {
+            return errorResponse(Response.Status.NOT_FOUND, "Can't find batch import job " + id);
+        }
+        return okResponse(job.toJson());
     }
 
 }
@@ -1,91 +1,280 @@
 package edu.harvard.iq.dataverse.api;
 
 import edu.harvard.iq.dataverse.api.imports.ImportServiceBean;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
+import edu.harvard.iq.dataverse.api.imports.BatchImportJob;
+import edu.harvard.iq.dataverse.api.imports.ImportCheckpoint;
 import edu.harvard.iq.dataverse.api.imports.ImportException;
 import edu.harvard.iq.dataverse.api.imports.ImportUtil;
-import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
+import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
-import javax.json.Json;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
 
 /**
  * EJB for kicking off big batch jobs asynchronously from the REST API  (BatchImport.java)
+ *
+ * The files of a batch import are imported in groups of
+ * {@link SystemConfig#getBatchImportGroupSize()} files per dataverse, each
+ * group in one transaction, with up to
+ * {@link SystemConfig#getBatchImportThreads()} groups being imported at the
+ * same time. The datasets imported in groups are indexed once all the files
+ * have been imported (the ones imported one by one are indexed as they are).
+ * The files imported so far are recorded in an {@link ImportCheckpoint}, so
+ * an import that is started again on the same directory skips them, and
+ * tries the ones that failed again.
+ *
  * @author ellenk
  */
 @Stateless
 public class BatchServiceBean {
  private static final Logger logger = Logger.getLogger(BatchServiceBean.class.getCanonicalName());
 
+    // the jobs shown by api/batch/jobs, the oldest finished ones dropped first
+    private static final int MAX_JOBS = 50;
+    private static final Map<Long, BatchImportJob> jobs = new LinkedHashMap<>();
+    private static final AtomicLong jobIds = new AtomicLong();
+
     @EJB
     DataverseServiceBean dataverseService;
     @EJB
     ImportServiceBean importService;
-    
+    @EJB
+    DatasetServiceBean datasetService;
+    @EJB
+    IndexServiceBean indexService;
+    @EJB
+    SystemConfig systemConfig;
+
+    public BatchImportJob createJob(String fileDir, ImportUtil.ImportType importType) {
+        BatchImportJob job = new BatchImportJob(jobIds.incrementAndGet(), fileDir, importType);
+        synchronized (jobs) {
+            Iterator<BatchImportJob> oldest = jobs.values().iterator();
+            while (jobs.size() >= MAX_JOBS && oldest.hasNext()) {
+                BatchImportJob.State state = oldest.next().getState();
+                if (state == BatchImportJob.State.DONE || state == BatchImportJob.State.FAILED) {
+                    oldest.remove();
+                }
+            }
+            jobs.put(job.getId(), job);
+        }
+        return job;
+    }
+
+    public BatchImportJob findJob(long id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
 
+    public List<BatchImportJob> findAllJobs() {
+        synchronized (jobs) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    /*
+     * Runs outside of a transaction: every group of files is imported in a
+     * transaction of its own.
+     */
     @Asynchronous
-    public void processFilePath(String fileDir, String parentIdtf, DataverseRequest dataverseRequest, Dataverse owner, ImportUtil.ImportType importType, Boolean createDV)  {
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void processFilePath(BatchImportJob job, String fileDir, String parentIdtf, DataverseRequest dataverseRequest, Dataverse owner, ImportUtil.ImportType importType, Boolean createDV)  {
         logger.info("BEGIN IMPORT");
         PrintWriter validationLog = null;
         PrintWriter cleanupLog = null;
         try {
-        JsonArrayBuilder status = Json.createArrayBuilder();
         Date timestamp = new Date();
-        
+
         SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss");
-        
+
         validationLog = new PrintWriter(new FileWriter( "../logs/validationLog"+  formatter.format(timestamp)+".txt"));
         cleanupLog = new PrintWriter(new FileWriter( "../logs/cleanupLog"+  formatter.format(timestamp)+".txt"));
         File dir = new File(fileDir);
         if (dir.isDirectory()) {
+            ImportCheckpoint checkpoint = ImportCheckpoint.open(dir);
+            List<FileGroup> groups = new ArrayList<>();
+            int groupSize = systemConfig.getBatchImportGroupSize();
+            List<File> topLevelFiles = new ArrayList<>();
             for (File file : dir.listFiles()) {
                 if (!file.isHidden()) {
                     if (file.isDirectory()) {
                         try {
-                            status.add(handleDirectory(dataverseRequest, file, importType, validationLog, cleanupLog, createDV));
+                            addGroups(groups, findOrCreateOwner(dataverseRequest, file, createDV), listFiles(file), groupSize, checkpoint);
                         } catch (ImportException e) {
                             logger.log(Level.SEVERE, "Exception in handleDirectory() for "+ file.getName(),e);
+                            validationLog.println(e.getMessage());
                         }
                     } else {
-                        try {
-                            status.add(importService.handleFile(dataverseRequest, owner, file, importType, validationLog, cleanupLog));
-                        } catch(ImportException e) {
-                             logger.log(Level.SEVERE, "Exception in handleFile() for "+ file.getName(),e);
-                        }
-
+                        topLevelFiles.add(file);
                     }
                 }
             }
-        } else {
-            status.add(importService.handleFile(dataverseRequest, owner, dir, importType, validationLog, cleanupLog));
+            addGroups(groups, owner, topLevelFiles, groupSize, checkpoint);
+            int total = checkpoint.getNumberProcessed();
+            for (FileGroup group : groups) {
+                total += group.files.size();
+            }
+            job.setTotal(total);
+            job.setSkipped(checkpoint.getNumberProcessed());
+
+            job.setState(BatchImportJob.State.IMPORTING);
+            List<Long> datasetIds = new ArrayList<>();
+            importGroups(job, groups, dataverseRequest, importType, validationLog, cleanupLog, checkpoint, datasetIds);
+
+            job.setState(BatchImportJob.State.INDEXING);
+            indexDatasets(datasetIds);
 
+            if (job.getFailed() == 0) {
+                checkpoint.delete();
+            }
+        } else {
+            job.setTotal(1);
+            job.setState(BatchImportJob.State.IMPORTING);
+            countResult(job, importService.handleFile(dataverseRequest, owner, dir, importType, validationLog, cleanupLog));
         }
+        job.setState(BatchImportJob.State.DONE);
         }
         catch(Exception e) {
                 logger.log(Level.SEVERE, "Exception in processFilePath()", e);
+                job.setMessage(e.getMessage());
+                job.setState(BatchImportJob.State.FAILED);
         } finally {
-            validationLog.close();
-            cleanupLog.close();
+            if (validationLog != null) {
+                validationLog.close();
+            }
+            if (cleanupLog != null) {
+                cleanupLog.close();
+            }
         }
         logger.info("END IMPORT");
 
     }
 
-    public JsonArrayBuilder handleDirectory(DataverseRequest dataverseRequest, File dir, ImportUtil.ImportType importType, PrintWriter validationLog, PrintWriter cleanupLog, Boolean createDV) throws ImportException{
-        JsonArrayBuilder status = Json.createArrayBuilder();
+    /**
+     * Imports the groups, keeping up to
+     * {@link SystemConfig#getBatchImportThreads()} of them in progress at a
+     * time (on the container's asynchronous EJB threads), and records them in
+     * the checkpoint as they finish. A group that can't be imported as a
+     * whole is imported again one file at a time.
+     *
+     * @param datasetIds Gets the ids of the datasets imported in groups,
+     * which are not indexed yet.
+     */
+    private void importGroups(BatchImportJob job, List<FileGroup> groups, DataverseRequest dataverseRequest, ImportUtil.ImportType importType, PrintWriter validationLog, PrintWriter cleanupLog, ImportCheckpoint checkpoint, List<Long> datasetIds) throws IOException, InterruptedException {
+        int threads = systemConfig.getBatchImportThreads();
+        Deque<FileGroup> inProgress = new ArrayDeque<>(threads);
+        for (FileGroup group : groups) {
+            if (inProgress.size() >= threads) {
+                finishGroup(job, inProgress.removeFirst(), dataverseRequest, importType, validationLog, cleanupLog, checkpoint, datasetIds);
+            }
+            group.result = importService.handleFileGroup(dataverseRequest, group.owner, group.files, importType, cleanupLog);
+            inProgress.addLast(group);
+        }
+        while (!inProgress.isEmpty()) {
+            finishGroup(job, inProgress.removeFirst(), dataverseRequest, importType, validationLog, cleanupLog, checkpoint, datasetIds);
+        }
+    }
+
+    /**
+     * Only the files that were imported are recorded in the checkpoint, so
+     * that the failed ones are tried again when the import is resumed.
+     */
+    private void finishGroup(BatchImportJob job, FileGroup group, DataverseRequest dataverseRequest, ImportUtil.ImportType importType, PrintWriter validationLog, PrintWriter cleanupLog, ImportCheckpoint checkpoint, List<Long> datasetIds) throws IOException, InterruptedException {
+        try {
+            JsonArray statuses = group.result.get().build();
+            for (JsonValue status : statuses) {
+                datasetIds.add(((JsonObject) status).getJsonNumber("datasetId").longValue());
+            }
+            job.addProcessed(group.files.size());
+            checkpoint.record(group.files);
+        } catch (ExecutionException e) {
+            logger.log(Level.INFO, "Group import into " + group.owner.getAlias() + " failed, importing its files one by one: {0}", e.getCause().getMessage());
+            List<File> imported = new ArrayList<>();
+            for (File file : group.files) {
+                try {
+                    if (countResult(job, importService.handleFile(dataverseRequest, group.owner, file, importType, validationLog, cleanupLog))) {
+                        imported.add(file);
+                    }
+                } catch (ImportException | IOException | RuntimeException ex) {
+                    logger.log(Level.SEVERE, "Exception in handleFile() for " + file.getName(), ex);
+                    job.addFailed(1);
+                }
+            }
+            checkpoint.record(imported);
+        }
+    }
+
+    /*
+     * handleFile() reports a failed import with a "message" only; an
+     * imported file has the "datasetId" of its dataset in the status too.
+     *
+     * @return Whether the file was imported.
+     */
+    private static boolean countResult(BatchImportJob job, JsonObjectBuilder fileStatus) {
+        JsonObject status = fileStatus.build();
+        if (status.containsKey("datasetId")) {
+            job.addProcessed(1);
+            return true;
+        }
+        job.addFailed(1);
+        return false;
+    }
+
+    /**
+     * Indexes the datasets imported in groups, one at a time, each in its own
+     * transaction; a dataset that can't be indexed is left for the next
+     * "index all" that skips the indexed ones.
+     */
+    private void indexDatasets(List<Long> datasetIds) {
+        int count = 0;
+        for (Long datasetId : datasetIds) {
+            count++;
+            Dataset dataset = datasetService.find(datasetId);
+            if (dataset == null) {
+                continue;
+            }
+            logger.fine("indexing imported dataset " + count + " of " + datasetIds.size() + " (id=" + datasetId + ")");
+            try {
+                indexService.indexDatasetInNewTransaction(dataset);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Could not index imported dataset " + datasetId, e);
+            }
+        }
+    }
+
+    private Dataverse findOrCreateOwner(DataverseRequest dataverseRequest, File dir, Boolean createDV) throws ImportException {
         Dataverse owner = dataverseService.findByAlias(dir.getName());
         if (owner == null ) {
             if (createDV) {
@@ -95,17 +284,42 @@ public class BatchServiceBean {
                 throw new ImportException("Can't find dataverse with identifier='" + dir.getName() + "'");
             }
         }
+        return owner;
+    }
+
+    private static List<File> listFiles(File dir) {
+        List<File> files = new ArrayList<>();
         for (File file : dir.listFiles()) {
-            if (!file.isHidden()) {
-                try {
-                    JsonObjectBuilder fileStatus = importService.handleFile(dataverseRequest, owner, file, importType, validationLog, cleanupLog);
-                    status.add(fileStatus);
-                } catch (ImportException | IOException e) {
-                    status.add(Json.createObjectBuilder().add("importStatus", "Exception importing " + file.getName() + ", message = " + e.getMessage()));
-                }
+            if (!file.isHidden() && file.isFile()) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static void addGroups(List<FileGroup> groups, Dataverse owner, Collection<File> files, int groupSize, ImportCheckpoint checkpoint) {
+        FileGroup group = null;
+        for (File file : files) {
+            if (checkpoint.isProcessed(file)) {
+                continue;
             }
+            if (group == null || group.files.size() >= groupSize) {
+                group = new FileGroup(owner);
+                groups.add(group);
+            }
+            group.files.add(file);
+        }
+    }
+
+    private static class FileGroup {
+
+        final Dataverse owner;
+        final List<File> files = new ArrayList<>();
+        Future<JsonArrayBuilder> result;
+
+        FileGroup(Dataverse owner) {
+            this.owner = owner;
         }
-        return status;
     }
 
 }
@@ -130,7 +130,7 @@ public class BundleDownloadInstanceWriter implements MessageBodyWriter<BundleDow
                             DataFileIO accessObjectRdata
                                     = DataFileConverter.performFormatConversion(
                                             sf,
-                                            (FileAccessIO) accessObject,
+                                            accessObject,
                                             "RData", "application/x-rlang-transport");
 
                             if (accessObjectRdata != null) {
@@ -8,7 +8,10 @@ import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
+import edu.harvard.iq.dataverse.FileMetadataFilter;
+import edu.harvard.iq.dataverse.FileMetadataSummary;
 import edu.harvard.iq.dataverse.MetadataBlock;
+import edu.harvard.iq.dataverse.PublishedVersionCache;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.engine.command.Command;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
@@ -30,6 +33,7 @@ import edu.harvard.iq.dataverse.export.DDIExportServiceBean;
 import edu.harvard.iq.dataverse.export.ddi.DdiExportUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.util.json.JsonParseException;
+import edu.harvard.iq.dataverse.util.json.JsonStreamPrinter;
 import static edu.harvard.iq.dataverse.util.json.JsonPrinter.*;
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
@@ -43,6 +47,8 @@ import javax.json.Json;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.PUT;
@@ -60,6 +66,8 @@ public class Datasets extends AbstractApiBean {
     
     private static final String PERSISTENT_ID_KEY=":persistentId";
     
+    private static final int DEFAULT_FILES_PAGE_SIZE = 100;
+    
     @EJB
     DatasetServiceBean datasetService;
 
@@ -169,13 +177,19 @@ public class Datasets extends AbstractApiBean {
 	@Path("{id}/versions")
     public Response listVersions( @PathParam("id") String id ) {
         try {
-            JsonArrayBuilder bld = Json.createArrayBuilder();
-            for ( DatasetVersion dsv : execCommand(
+            final List<DatasetVersion> versions = execCommand(
                     new ListVersionsCommand(
-                            createDataverseRequest(findUserOrDie()), findDatasetOrDie(id)) ) ) {
-                bld.add( json(dsv) );
-            }
-            return okResponse( bld );
+                            createDataverseRequest(findUserOrDie()), findDatasetOrDie(id)) );
+            return okStreamingResponse(new JsonDataWriter() {
+                @Override
+                public void writeData(JsonGenerator generator, JsonStreamPrinter printer) {
+                    generator.writeStartArray("data");
+                    for ( DatasetVersion dsv : versions ) {
+                        printer.writeDatasetVersion(generator, null, dsv);
+                    }
+                    generator.writeEnd();
+                }
+            });
             
         } catch (WrappedResponse ex) {
             return ex.getResponse();
@@ -187,10 +201,17 @@ public class Datasets extends AbstractApiBean {
     public Response getVersion( @PathParam("id") String datasetId, @PathParam("versionId") String versionId) {
 		
         try {
-            DatasetVersion dsv = getDatasetVersionOrDie(createDataverseRequest(findUserOrDie()), versionId, findDatasetOrDie(datasetId));
+            final DatasetVersion dsv = getDatasetVersionOrDie(createDataverseRequest(findUserOrDie()), versionId, findDatasetOrDie(datasetId));
             
-            return (dsv == null || dsv.getId() == null) ? notFound("Dataset version not found")
-                                                        : okResponse(json(dsv));
+            if (dsv == null || dsv.getId() == null) {
+                return notFound("Dataset version not found");
+            }
+            return okStreamingResponse(new JsonDataWriter() {
+                @Override
+                public void writeData(JsonGenerator generator, JsonStreamPrinter printer) {
+                    printer.writeDatasetVersion(generator, "data", dsv);
+                }
+            });
             
         } catch (WrappedResponse ex) {
             return ex.getResponse();
@@ -203,10 +224,71 @@ public class Datasets extends AbstractApiBean {
 		
         try {
             
-            return okResponse( jsonFileMetadatas(
-                                            getDatasetVersionOrDie(createDataverseRequest(findUserOrDie()), 
+            final DatasetVersion dsv = getDatasetVersionOrDie(createDataverseRequest(findUserOrDie()), 
                                                                 versionId, 
-                                                                findDatasetOrDie(datasetId)).getFileMetadatas()));
+                                                                findDatasetOrDie(datasetId));
+            return okStreamingResponse(new JsonDataWriter() {
+                @Override
+                public void writeData(JsonGenerator generator, JsonStreamPrinter printer) {
+                    printer.writeFileMetadatas(generator, "data", dsv);
+                }
+            });
+            
+        } catch (WrappedResponse ex) {
+            return ex.getResponse();
+        }
+    }
+    
+    /**
+     * The files of a version a page at a time, optionally only those whose
+     * label or description contain {@code q}, that are in {@code category}
+     * and/or have {@code tag}. The next page starts {@code after} the
+     * (file metadata) id given as {@code next} in the previous one.
+     */
+    @GET
+	@Path("{id}/versions/{versionId}/files/page")
+    public Response getVersionFilesPage( @PathParam("id") String datasetId, @PathParam("versionId") String versionId,
+                                         @QueryParam("limit") Integer limit, @QueryParam("after") Long after,
+                                         @QueryParam("q") String searchTerm, @QueryParam("category") String category,
+                                         @QueryParam("tag") String tag ) {
+        if ( limit == null ) {
+            limit = DEFAULT_FILES_PAGE_SIZE;
+        } else if ( limit < 1 || limit > JsonStreamPrinter.PAGE_SIZE ) {
+            return badRequest("limit must be between 1 and " + JsonStreamPrinter.PAGE_SIZE);
+        }
+        FileMetadataFilter filter;
+        try {
+            filter = FileMetadataFilter.create(searchTerm, category, tag);
+        } catch ( IllegalArgumentException iae ) {
+            return badRequest(iae.getMessage());
+        }
+        
+        try {
+            DatasetVersion dsv = getDatasetVersionOrDie(createDataverseRequest(findUserOrDie()), 
+                                                        versionId, 
+                                                        findDatasetOrDie(datasetId));
+            if ( dsv == null || dsv.getId() == null ) {
+                return notFound("Dataset version not found");
+            }
+            String afterLabel = null;
+            if ( after != null ) {
+                afterLabel = fileSvc.findFileMetadataLabel(dsv.getId(), after);
+                if ( afterLabel == null ) {
+                    return badRequest("No file " + after + " in this version");
+                }
+            }
+            List<FileMetadataSummary> files = fileSvc.findFileMetadataSummaries(dsv.getId(), filter, afterLabel, after, limit);
+            JsonArrayBuilder filesArr = Json.createArrayBuilder();
+            for ( FileMetadataSummary summary : files ) {
+                filesArr.add(json(summary));
+            }
+            JsonObjectBuilder result = Json.createObjectBuilder()
+                    .add("total", fileSvc.countFileMetadatas(dsv, filter))
+                    .add("files", filesArr);
+            if ( files.size() == limit ) {
+                result.add("next", files.get(files.size() - 1).getFileMetadataId());
+            }
+            return okResponse(result);
             
         } catch (WrappedResponse ex) {
             return ex.getResponse();
@@ -218,10 +300,14 @@ public class Datasets extends AbstractApiBean {
     public Response getVersionMetadata( @PathParam("id") String datasetId, @PathParam("versionId") String versionId) {
 		
         try {
-            return okResponse(
-                    jsonByBlocks(
-                        getDatasetVersionOrDie( createDataverseRequest(findUserOrDie()), versionId, findDatasetOrDie(datasetId) )
-                                .getDatasetFields()));
+            DatasetVersion dsv = getDatasetVersionOrDie( createDataverseRequest(findUserOrDie()), versionId, findDatasetOrDie(datasetId) );
+            // the blocks are part of the (cached, if published) JSON of the version
+            JsonObject blocks = PublishedVersionCache.getInstance().getJsonWithoutFiles(dsv).getJsonObject("metadataBlocks");
+            JsonObjectBuilder blocksBld = Json.createObjectBuilder();
+            for ( Map.Entry<String, JsonValue> block : blocks.entrySet() ) {
+                blocksBld.add(block.getKey(), block.getValue());
+            }
+            return okResponse(blocksBld);
             
         } catch (WrappedResponse ex) {
             return ex.getResponse();
@@ -73,6 +73,28 @@ public class DownloadInstance {
         this.conversionParamValue = paramValue;
     }
 
+    // The byte range requested (with an HTTP "Range:" header), if any;
+    // supported on straight downloads of non-tabular files:
+    private long rangeStart = -1;
+    private long rangeLength = -1;
+
+    public long getRangeStart() {
+        return rangeStart;
+    }
+
+    public long getRangeLength() {
+        return rangeLength;
+    }
+
+    public void setRange(long rangeStart, long rangeLength) {
+        this.rangeStart = rangeStart;
+        this.rangeLength = rangeLength;
+    }
+
+    public boolean isRangeRequested() {
+        return rangeStart > -1 && rangeLength > -1;
+    }
+
     // Move this method into the DownloadInfo instead -- ?
     public Boolean isDownloadServiceSupported(String serviceArg, String serviceArgValue) {
         if (downloadInfo == null || serviceArg == null) {
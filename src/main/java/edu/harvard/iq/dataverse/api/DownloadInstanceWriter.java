@@ -66,19 +66,20 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                 
                 if (di.getConversionParam() != null) {
                     // Image Thumbnail and Tabular data conversion: 
-                    // NOTE: only supported on local files, as of 4.0.2!
+                    // (for the files stored remotely, the thumbnails and 
+                    // the converted copies are cached as aux objects)
                     
-                    if (di.getConversionParam().equals("imageThumb") && accessObject.isLocalFile()) {
+                    if (di.getConversionParam().equals("imageThumb")) {
                         if ("".equals(di.getConversionParamValue())) {
-                            accessObject = ImageThumbConverter.getImageThumb((FileAccessIO)accessObject); 
+                            accessObject = ImageThumbConverter.getImageThumb(accessObject); 
                         } else {
                             try {
                                 int size = new Integer(di.getConversionParamValue()).intValue();
                                 if (size > 0) {
-                                    accessObject = ImageThumbConverter.getImageThumb((FileAccessIO)accessObject, size);
+                                    accessObject = ImageThumbConverter.getImageThumb(accessObject, size);
                                 }
                             } catch (java.lang.NumberFormatException ex) {
-                                accessObject = ImageThumbConverter.getImageThumb((FileAccessIO)accessObject);
+                                accessObject = ImageThumbConverter.getImageThumb(accessObject);
                             }
                         }
                     }
@@ -88,7 +89,7 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                         if (di.getConversionParam().equals("noVarHeader")) {
                             accessObject.setNoVarHeader(Boolean.TRUE);
                             accessObject.setVarHeader(null);
-                        } else if (di.getConversionParam().equals("format")  && accessObject.isLocalFile()) {
+                        } else if (di.getConversionParam().equals("format")) {
                             
                             if ("original".equals(di.getConversionParamValue())) {
                                 accessObject = StoredOriginalFile.retreive(accessObject);
@@ -103,7 +104,7 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                                 accessObject = 
                                         DataFileConverter.performFormatConversion(
                                         sf, 
-                                        (FileAccessIO)accessObject, 
+                                        accessObject, 
                                         di.getConversionParamValue(), requestedMimeType);
                             } 
                         } else if (di.getConversionParam().equals("subset")) {
@@ -182,6 +183,18 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                 }
                 
                 InputStream instream = accessObject.getInputStream();
+                
+                if (di.isRangeRequested()) {
+                    // (the range of bytes requested is read from the 
+                    // storage directly - and only that range)
+                    accessObject.closeInputStream();
+                    instream = accessObject.openRange(di.getRangeStart(), di.getRangeLength());
+                    
+                    httpHeaders.add("Content-Range", "bytes " + di.getRangeStart() + "-" + (di.getRangeStart() + di.getRangeLength() - 1) + "/" + sf.getFilesize());
+                    accessObject.setSize(di.getRangeLength());
+                    accessObject.setVarHeader(null);
+                }
+                
                 if (instream != null) {
                     // headers:
                     
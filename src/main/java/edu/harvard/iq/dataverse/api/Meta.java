@@ -17,6 +17,7 @@ import edu.harvard.iq.dataverse.export.DDIExportServiceBean;
 import java.util.logging.Logger;
 import javax.ejb.EJB;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -25,6 +26,7 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.ServiceUnavailableException;
@@ -141,13 +143,29 @@ public class Meta {
     @Path("dataset/{datasetId}")
     @GET
     @Produces({"application/xml"})
-    public String dataset(@PathParam("datasetId") Long datasetId, @QueryParam("exclude") String exclude, @QueryParam("include") String include, @Context HttpHeaders header, @Context HttpServletResponse response) throws NotFoundException /*, ServiceUnavailableException, PermissionDeniedException, AuthorizationRequiredException*/ {
+    public Response dataset(@PathParam("datasetId") Long datasetId, @QueryParam("exclude") String exclude, @QueryParam("include") String include, @Context HttpHeaders header, @Context HttpServletResponse response) throws NotFoundException /*, ServiceUnavailableException, PermissionDeniedException, AuthorizationRequiredException*/ {
  
         Dataset dataset = datasetService.find(datasetId);
         if (dataset == null) {
             throw new NotFoundException();
         }
         
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        
+        if ((exclude == null || exclude.isEmpty()) && (include == null || include.isEmpty())) {
+            // the complete DDI is sent from disk once it has been saved 
+            // there (by the first export of the version, below): 
+            File cachedExport = null;
+            try {
+                cachedExport = ddiExportService.getDatasetExportFile(datasetId);
+            } catch (Exception e) {
+                throw new ServiceUnavailableException();
+            }
+            if (cachedExport != null) {
+                return Response.ok(cachedExport, "application/xml").build();
+            }
+        }
+        
         String retValue = "";
 
         ByteArrayOutputStream outStream = null;
@@ -168,9 +186,7 @@ public class Meta {
             throw new ServiceUnavailableException();
         }
 
-        response.setHeader("Access-Control-Allow-Origin", "*");
-
-        return retValue;
+        return Response.ok(retValue, "application/xml").build();
     }
     
 }
@@ -14,10 +14,13 @@ import edu.harvard.iq.dataverse.authorization.users.GuestUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.search.SearchConstants;
 import edu.harvard.iq.dataverse.search.SearchException;
+import edu.harvard.iq.dataverse.search.SearchResultHandler;
 import edu.harvard.iq.dataverse.search.SearchUtil;
 import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
 import edu.harvard.iq.dataverse.search.SortBy;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -27,10 +30,14 @@ import javax.ejb.EJB;
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import org.apache.commons.lang.StringUtils;
 
 /**
@@ -65,7 +72,8 @@ public class Search extends AbstractApiBean {
             @QueryParam("fq") final List<String> filterQueries,
             @QueryParam("show_entity_ids") boolean showEntityIds,
             @QueryParam("show_api_urls") boolean showApiUrls,
-            @QueryParam("show_my_data") boolean showMyData
+            @QueryParam("show_my_data") boolean showMyData,
+            @QueryParam("cursor") String cursor
     ) {
 
         User user;
@@ -101,6 +109,13 @@ public class Search extends AbstractApiBean {
                 return errorResponse(Response.Status.BAD_REQUEST, ex.getLocalizedMessage());
             }
 
+            if (cursor != null) {
+                if (sortField != null || sortOrder != null || paginationStart != 0 || showFacets || showMyData) {
+                    return errorResponse(Response.Status.BAD_REQUEST, "The cursor parameter can not be combined with sort, order, start, show_facets or show_my_data.");
+                }
+                return searchWithCursor(user, subtree, query, filterQueries, cursor, numResultsPerPage, showRelevance, showEntityIds, showApiUrls);
+            }
+
             // users can't change these (yet anyway)
             boolean dataRelatedToMe = showMyData; //getDataRelatedToMe();
 
@@ -188,6 +203,62 @@ public class Search extends AbstractApiBean {
         }
     }
 
+    /**
+     * Pages through the results with a cursor rather than an offset (see
+     * {@link SearchServiceBean#searchAfter}) and writes each item to the
+     * response as soon as Solr hands it over. Start with
+     * {@code cursor=*} and pass the {@code next_cursor} of every response
+     * until there is none.
+     */
+    private Response searchWithCursor(final User user, final Dataverse subtree, final String query, final List<String> filterQueries, final String cursor, final int numResultsPerPage,
+            final boolean showRelevance, final boolean showEntityIds, final boolean showApiUrls) {
+        try {
+            SearchServiceBean.decodeCursor(cursor);
+        } catch (IllegalArgumentException ex) {
+            return errorResponse(Response.Status.BAD_REQUEST, ex.getLocalizedMessage());
+        }
+        StreamingOutput stream = new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException, WebApplicationException {
+                final JsonGenerator generator = Json.createGenerator(output);
+                generator.writeStartObject()
+                        .write("status", "OK")
+                        .writeStartObject("data")
+                        .write("q", query);
+                final int[] count = new int[1];
+                String nextCursor;
+                try {
+                    nextCursor = searchService.searchAfter(user, subtree, query, filterQueries, cursor, numResultsPerPage, new SearchResultHandler() {
+                        @Override
+                        public void start(long numResultsFound) {
+                            generator.write("total_count", numResultsFound)
+                                    .write("cursor", cursor)
+                                    .writeStartArray("items");
+                        }
+
+                        @Override
+                        public void handle(SolrSearchResult solrSearchResult) {
+                            generator.write(solrSearchResult.toJsonObject(showRelevance, showEntityIds, showApiUrls));
+                            count[0]++;
+                        }
+                    });
+                } catch (SearchException ex) {
+                    logger.info("Exception running cursor search for [" + query + "] with filterQueries " + filterQueries + " and cursor [" + cursor + "]: " + ex);
+                    throw new WebApplicationException(ex, Response.Status.INTERNAL_SERVER_ERROR);
+                }
+                generator.writeEnd()
+                        .write("count_in_response", count[0]);
+                if (nextCursor != null) {
+                    generator.write("next_cursor", nextCursor);
+                }
+                generator.writeEnd()
+                        .writeEnd();
+                generator.close();
+            }
+        };
+        return Response.ok(stream, MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
     private User getUser() throws WrappedResponse {
         /**
          * @todo support searching as non-guest:
@@ -13,12 +13,15 @@ import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.impl.UpdateDatasetCommand;
 import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
+import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
@@ -48,6 +51,8 @@ public class MediaResourceManagerImpl implements MediaResourceManager {
     DataFileServiceBean dataFileService;
     @EJB
     IngestServiceBean ingestService;
+    @EJB
+    SystemConfig systemConfig;
     @Inject
     SwordAuth swordAuth;
     @Inject
@@ -231,15 +236,19 @@ public class MediaResourceManagerImpl implements MediaResourceManager {
                 throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Deposit input stream was null.");
             }
 
-            int bytesAvailableInInputStream = 0;
-            try {
-                bytesAvailableInInputStream = deposit.getInputStream().available();
-            } catch (IOException ex) {
-                throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Could not determine number of bytes available in input stream: " + ex);
-            }
+            boolean streamingDeposit = systemConfig.isSwordStreamingDeposit();
+
+            if (!streamingDeposit) {
+                int bytesAvailableInInputStream = 0;
+                try {
+                    bytesAvailableInInputStream = deposit.getInputStream().available();
+                } catch (IOException ex) {
+                    throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Could not determine number of bytes available in input stream: " + ex);
+                }
 
-            if (bytesAvailableInInputStream == 0) {
-                throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Bytes available in input stream was " + bytesAvailableInInputStream + ". Please check the file you are attempting to deposit.");
+                if (bytesAvailableInInputStream == 0) {
+                    throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Bytes available in input stream was " + bytesAvailableInInputStream + ". Please check the file you are attempting to deposit.");
+                }
             }
 
             /**
@@ -250,32 +259,36 @@ public class MediaResourceManagerImpl implements MediaResourceManager {
              */
             String guessContentTypeForMe = null;
             List<DataFile> dataFiles = new ArrayList<>();
-            try {
+            if (streamingDeposit) {
+                dataFiles = createDataFilesFromDepositStream(editVersion, deposit);
+            } else {
                 try {
-                    dataFiles = ingestService.createDataFiles(editVersion, deposit.getInputStream(), uploadedZipFilename, guessContentTypeForMe);
-                } catch (EJBException ex) {
-                    Throwable cause = ex.getCause();
-                    if (cause != null) {
-                        if (cause instanceof IllegalArgumentException) {
-                            /**
-                             * @todo should be safe to remove this catch of
-                             * EJBException and IllegalArgumentException once
-                             * this ticket is resolved:
-                             *
-                             * IllegalArgumentException: MALFORMED when
-                             * uploading certain zip files
-                             * https://github.com/IQSS/dataverse/issues/1021
-                             */
-                            throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Exception caught calling ingestService.createDataFiles. Problem with zip file, perhaps: " + cause);
+                    try {
+                        dataFiles = ingestService.createDataFiles(editVersion, deposit.getInputStream(), uploadedZipFilename, guessContentTypeForMe);
+                    } catch (EJBException ex) {
+                        Throwable cause = ex.getCause();
+                        if (cause != null) {
+                            if (cause instanceof IllegalArgumentException) {
+                                /**
+                                 * @todo should be safe to remove this catch of
+                                 * EJBException and IllegalArgumentException once
+                                 * this ticket is resolved:
+                                 *
+                                 * IllegalArgumentException: MALFORMED when
+                                 * uploading certain zip files
+                                 * https://github.com/IQSS/dataverse/issues/1021
+                                 */
+                                throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Exception caught calling ingestService.createDataFiles. Problem with zip file, perhaps: " + cause);
+                            } else {
+                                throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Exception caught calling ingestService.createDataFiles: " + cause);
+                            }
                         } else {
-                            throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Exception caught calling ingestService.createDataFiles: " + cause);
+                            throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Exception caught calling ingestService.createDataFiles. No cause: " + ex.getMessage());
                         }
-                    } else {
-                        throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Exception caught calling ingestService.createDataFiles. No cause: " + ex.getMessage());
                     }
+                } catch (IOException ex) {
+                    throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Unable to add file(s) to dataset: " + ex.getMessage());
                 }
-            } catch (IOException ex) {
-                throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Unable to add file(s) to dataset: " + ex.getMessage());
             }
             if (!dataFiles.isEmpty()) {
                 ingestService.addFiles(editVersion, dataFiles);
@@ -317,7 +330,14 @@ public class MediaResourceManagerImpl implements MediaResourceManager {
                 throw returnEarly("EJBException: " + sb.toString());
             }
 
-            ingestService.startIngestJobs(dataset, user);
+            if (streamingDeposit) {
+                // the receipt is returned right away; the types of the new
+                // files are determined, and the files ingested, in the
+                // background:
+                ingestService.detectFileTypesAndStartIngest(dataset.getId(), findIds(dataset, dataFiles), user);
+            } else {
+                ingestService.startIngestJobs(dataset, user);
+            }
 
             ReceiptGenerator receiptGenerator = new ReceiptGenerator();
             String baseUrl = urlManager.getHostnamePlusBaseUrlPath(uri);
@@ -328,6 +348,66 @@ public class MediaResourceManagerImpl implements MediaResourceManager {
         }
     }
 
+    /**
+     * Unpacks the body of the deposit as it is received, checking its size
+     * and MD5 on the way, rather than after the SWORD library has stored it;
+     * see {@link SwordConfigurationImpl#storeAndCheckBinary()}.
+     */
+    private List<DataFile> createDataFilesFromDepositStream(DatasetVersion editVersion, Deposit deposit) throws SwordError {
+        Long maxUploadInBytes = systemConfig.getMaxFileUploadSize();
+        StreamingDepositInputStream depositStream = new StreamingDepositInputStream(deposit.getInputStream(), (maxUploadInBytes == null) ? -1 : maxUploadInBytes);
+
+        List<DataFile> dataFiles;
+        try {
+            dataFiles = ingestService.createDataFilesFromZipStream(editVersion, depositStream);
+        } catch (IOException ex) {
+            throw depositStreamError(depositStream, ex);
+        }
+
+        try {
+            // whatever follows the last entry of the zip file counts in the MD5 too
+            depositStream.drain();
+        } catch (IOException ex) {
+            ingestService.discardDataFiles(editVersion, dataFiles);
+            throw depositStreamError(depositStream, ex);
+        }
+
+        if (depositStream.getBytesRead() == 0) {
+            throw new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Bytes available in input stream was 0. Please check the file you are attempting to deposit.");
+        }
+
+        if (!depositStream.matchesMd5(deposit.getMd5())) {
+            ingestService.discardDataFiles(editVersion, dataFiles);
+            throw new SwordError(UriRegistry.ERROR_CHECKSUM_MISMATCH, "The MD5 of the deposit (" + depositStream.getMd5Hex() + ") does not match the declared Content-MD5 (" + deposit.getMd5() + ").");
+        }
+
+        return dataFiles;
+    }
+
+    private SwordError depositStreamError(StreamingDepositInputStream depositStream, IOException ex) {
+        if (depositStream.isMaxBytesExceeded()) {
+            return new SwordError(UriRegistry.ERROR_MAX_UPLOAD_SIZE_EXCEEDED, ex.getMessage());
+        }
+        return new SwordError(UriRegistry.ERROR_BAD_REQUEST, "Unable to add file(s) to dataset: " + ex.getMessage());
+    }
+
+    /**
+     * @return The ids the files were given when the dataset was saved.
+     */
+    private List<Long> findIds(Dataset dataset, List<DataFile> dataFiles) {
+        Set<String> storageIdentifiers = new HashSet<>();
+        for (DataFile dataFile : dataFiles) {
+            storageIdentifiers.add(dataFile.getStorageIdentifier());
+        }
+        List<Long> ids = new ArrayList<>();
+        for (DataFile dataFile : dataset.getFiles()) {
+            if (storageIdentifiers.contains(dataFile.getStorageIdentifier())) {
+                ids.add(dataFile.getId());
+            }
+        }
+        return ids;
+    }
+
     /**
      * @todo get rid of this method
      */
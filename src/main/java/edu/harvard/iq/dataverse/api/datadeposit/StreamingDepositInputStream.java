@@ -0,0 +1,152 @@
+package edu.harvard.iq.dataverse.api.datadeposit;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The body of a SWORD deposit, read as it is received: its MD5 is computed,
+ * and its size checked against the maximum upload size, on the way, which is
+ * what the SWORD library does on a stored copy of the body otherwise (see
+ * {@link SwordConfigurationImpl#storeAndCheckBinary()}).
+ */
+public class StreamingDepositInputStream extends FilterInputStream {
+
+    private final MessageDigest md5;
+    private final long maxBytes;
+    private long bytesRead;
+    private boolean maxBytesExceeded;
+    private String md5Hex;
+
+    /**
+     * @param maxBytes The maximum size of the body, in bytes; -1 for no
+     * limit.
+     */
+    public StreamingDepositInputStream(InputStream in, long maxBytes) {
+        super(in);
+        try {
+            this.md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 is not available", ex);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkMaxBytes();
+        int b = in.read();
+        if (b != -1) {
+            update(new byte[]{(byte) b}, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkMaxBytes();
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            update(b, off, n);
+        }
+        return n;
+    }
+
+    /**
+     * Skipped bytes are read all the same, since they count in the MD5.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[8192];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads what is left of the body, so that its MD5 covers all of it.
+     */
+    public void drain() throws IOException {
+        byte[] buffer = new byte[8192];
+        while (read(buffer, 0, buffer.length) != -1) {
+        }
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return Whether the body turned out to be larger than the maximum
+     * upload size; the reads failed from then on.
+     */
+    public boolean isMaxBytesExceeded() {
+        return maxBytesExceeded;
+    }
+
+    /**
+     * @return The MD5 of what has been read, in hexadecimal; to be called
+     * once all of the body has been read.
+     */
+    public String getMd5Hex() {
+        if (md5Hex == null) {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md5.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            md5Hex = sb.toString();
+        }
+        return md5Hex;
+    }
+
+    /**
+     * @param declaredMd5 The MD5 declared by the client, if any.
+     * @return Whether what has been read matches the declared MD5; true if
+     * none was declared.
+     */
+    public boolean matchesMd5(String declaredMd5) {
+        return declaredMd5 == null || declaredMd5.trim().isEmpty()
+                || declaredMd5.trim().equalsIgnoreCase(getMd5Hex());
+    }
+
+    private void update(byte[] b, int off, int len) throws IOException {
+        bytesRead += len;
+        if (maxBytes >= 0 && bytesRead > maxBytes) {
+            maxBytesExceeded = true;
+        }
+        checkMaxBytes();
+        md5.update(b, off, len);
+    }
+
+    /**
+     * Once the maximum upload size has been exceeded, nothing more is read.
+     */
+    private void checkMaxBytes() throws IOException {
+        if (maxBytesExceeded) {
+            throw new IOException("The deposit is larger than the maximum upload size of " + maxBytes + " bytes.");
+        }
+    }
+
+}
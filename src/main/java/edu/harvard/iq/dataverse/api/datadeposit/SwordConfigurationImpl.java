@@ -79,9 +79,15 @@ public class SwordConfigurationImpl implements SwordConfiguration {
         return "Basic";
     }
 
+    /**
+     * When false (see {@link SystemConfig#isSwordStreamingDeposit()}), the
+     * SWORD library neither stores the body of a deposit nor checks its size
+     * and MD5; {@link MediaResourceManagerImpl} then reads the body as it is
+     * received, through a {@link StreamingDepositInputStream}, that does.
+     */
     @Override
     public boolean storeAndCheckBinary() {
-        return true;
+        return !systemConfig.isSwordStreamingDeposit();
     }
 
     @Override
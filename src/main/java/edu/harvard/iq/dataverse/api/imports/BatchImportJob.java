@@ -0,0 +1,102 @@
+package edu.harvard.iq.dataverse.api.imports;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * The progress of a batch import, as shown by {@code api/batch/jobs}.
+ */
+public class BatchImportJob {
+
+    public enum State {
+        QUEUED, IMPORTING, INDEXING, DONE, FAILED
+    }
+
+    private final long id;
+    private final String path;
+    private final ImportUtil.ImportType importType;
+    private final Date startTime = new Date();
+    private volatile Date endTime;
+    private volatile State state = State.QUEUED;
+    private volatile String message;
+
+    private volatile int total;
+    private volatile int skipped;
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public BatchImportJob(long id, String path, ImportUtil.ImportType importType) {
+        this.id = id;
+        this.path = path;
+        this.importType = importType;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+        if (state == State.DONE || state == State.FAILED) {
+            endTime = new Date();
+        }
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    /**
+     * @param skipped Files processed by an earlier run of the same import.
+     */
+    public void setSkipped(int skipped) {
+        this.skipped = skipped;
+    }
+
+    public void addProcessed(int count) {
+        processed.addAndGet(count);
+    }
+
+    public void addFailed(int count) {
+        failed.addAndGet(count);
+    }
+
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public JsonObjectBuilder toJson() {
+        JsonObjectBuilder job = Json.createObjectBuilder()
+                .add("id", id)
+                .add("path", path)
+                .add("importType", importType.name())
+                .add("state", state.name())
+                .add("startTime", startTime.toString())
+                .add("total", total)
+                .add("skipped", skipped)
+                .add("processed", processed.get())
+                .add("failed", failed.get());
+        if (endTime != null) {
+            job.add("endTime", endTime.toString());
+        }
+        if (message != null) {
+            job.add("message", message);
+        }
+        return job;
+    }
+
+}
@@ -0,0 +1,82 @@
+package edu.harvard.iq.dataverse.api.imports;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The files of a batch import that have been processed so far, one path per
+ * line, so that an interrupted import can be started again where it left
+ * off. A file is recorded once the transaction it was imported in has been
+ * committed (or, if it could not be imported, once that has been logged).
+ *
+ * The checkpoint of a directory is saved in that directory, as a hidden
+ * file, which the import skips.
+ */
+public class ImportCheckpoint {
+
+    public static final String CHECKPOINT_FILE_NAME = ".import-checkpoint";
+
+    private final File checkpointFile;
+    private final Set<String> processed = new HashSet<>();
+
+    private ImportCheckpoint(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * @param directory The directory being imported.
+     * @return The checkpoint of the directory, with the files recorded by the
+     * earlier runs, if any.
+     */
+    public static ImportCheckpoint open(File directory) throws IOException {
+        ImportCheckpoint checkpoint = new ImportCheckpoint(new File(directory, CHECKPOINT_FILE_NAME));
+        if (checkpoint.checkpointFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(checkpoint.checkpointFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        checkpoint.processed.add(line);
+                    }
+                }
+            }
+        }
+        return checkpoint;
+    }
+
+    public synchronized boolean isProcessed(File file) {
+        return processed.contains(file.getAbsolutePath());
+    }
+
+    public synchronized int getNumberProcessed() {
+        return processed.size();
+    }
+
+    public synchronized void record(Collection<File> files) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(checkpointFile, true), StandardCharsets.UTF_8)) {
+            for (File file : files) {
+                writer.write(file.getAbsolutePath());
+                writer.write('\n');
+                processed.add(file.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Removes the checkpoint, once the whole directory has been imported.
+     */
+    public synchronized void delete() {
+        checkpointFile.delete();
+        processed.clear();
+    }
+
+}
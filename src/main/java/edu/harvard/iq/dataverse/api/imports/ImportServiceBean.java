@@ -41,16 +41,23 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
+import static javax.ejb.TransactionAttributeType.REQUIRED;
 import static javax.ejb.TransactionAttributeType.REQUIRES_NEW;
 import javax.json.Json;
+import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
@@ -88,6 +95,9 @@ public class ImportServiceBean {
     SettingsServiceBean settingsService;
     
     @EJB ImportDDIServiceBean importDDIService;
+
+    @Resource
+    SessionContext sessionContext;
     
     /**
      * This is just a convenience method, for testing migration.  It creates 
@@ -185,10 +195,55 @@ public class ImportServiceBean {
         }
     }
 
+    /**
+     * Imports a group of files into the same dataverse, in one transaction,
+     * without indexing the new datasets. If any of the files can't be
+     * imported, nothing is, and the {@link ImportException} (wrapped in the
+     * ExecutionException of the future) tells the caller to import the files
+     * of the group one by one with
+     * {@link #handleFile(DataverseRequest, Dataverse, File, ImportType, PrintWriter, PrintWriter)}.
+     *
+     * @return The import status of each file.
+     */
+    @Asynchronous
+    @TransactionAttribute(REQUIRED)
+    public Future<JsonArrayBuilder> handleFileGroup(DataverseRequest dataverseRequest, Dataverse owner, List<File> files, ImportType importType, PrintWriter cleanupLog) throws ImportException {
+        JsonArrayBuilder status = Json.createArrayBuilder();
+        for (File file : files) {
+            String fileName = file.getParentFile().getName() + "/" + file.getName();
+            try {
+                String ddiXMLToParse = new String(Files.readAllBytes(file.toPath()));
+                JsonObjectBuilder fileStatus = doImport(dataverseRequest, owner, ddiXMLToParse, fileName, importType, cleanupLog, false);
+                fileStatus.add("file", file.getName());
+                status.add(fileStatus);
+            } catch (Exception e) {
+                sessionContext.setRollbackOnly();
+                throw new ImportException("Could not import " + fileName + " in a group of " + files.size() + " files: " + e.getMessage(), e);
+            }
+            if (sessionContext.getRollbackOnly()) {
+                // a command failed and marked the transaction, without an exception reaching us
+                throw new ImportException("Transaction rolled back while importing " + fileName + " in a group of " + files.size() + " files");
+            }
+        }
+        logger.log(Level.INFO, "completed import of {0} files into {1}", new Object[]{files.size(), owner.getAlias()});
+        return new AsyncResult<>(status);
+    }
+
     public JsonObjectBuilder doImport(DataverseRequest dataverseRequest, Dataverse owner, String xmlToParse, String fileName, ImportType importType, PrintWriter cleanupLog) throws ImportException, IOException {
+        return doImport(dataverseRequest, owner, xmlToParse, fileName, importType, cleanupLog, true);
+    }
+
+    /**
+     * @param indexDataset false to leave a new dataset out of the search
+     * index, for a batch import that indexes everything at the end.
+     * @return The status, with the "datasetId" of the dataset created or
+     * updated.
+     */
+    public JsonObjectBuilder doImport(DataverseRequest dataverseRequest, Dataverse owner, String xmlToParse, String fileName, ImportType importType, PrintWriter cleanupLog, boolean indexDataset) throws ImportException, IOException {
 
         String status = "";
         Long createdId = null;
+        Long datasetId;
         DatasetDTO dsDTO = null;
         try {
            
@@ -289,8 +344,9 @@ public class ImportServiceBean {
                         throw new ImportException("Error importing Harvested Dataset, existing dataset has " + existingDs.getVersions().size() + " versions");
                     }
                     engineSvc.submit(new DestroyDatasetCommand(existingDs, dataverseRequest));
-                    Dataset managedDs = engineSvc.submit(new CreateDatasetCommand(ds, dataverseRequest, false, importType));
+                    Dataset managedDs = engineSvc.submit(new CreateDatasetCommand(ds, dataverseRequest, false, importType, indexDataset));
                     status = " updated dataset, id=" + managedDs.getId() + ".";
+                    datasetId = managedDs.getId();
                 } else {
                     // If we are adding a new version to an existing dataset,
                     // check that the version number isn't already in the dataset
@@ -302,12 +358,14 @@ public class ImportServiceBean {
                     DatasetVersion dsv = engineSvc.submit(new CreateDatasetVersionCommand(dataverseRequest, existingDs, ds.getVersions().get(0)));
                     status = " created datasetVersion, for dataset "+ dsv.getDataset().getGlobalId();
                     createdId = dsv.getId();
+                    datasetId = dsv.getDataset().getId();
                 }
 
             } else {
-                Dataset managedDs = engineSvc.submit(new CreateDatasetCommand(ds, dataverseRequest, false, importType));
+                Dataset managedDs = engineSvc.submit(new CreateDatasetCommand(ds, dataverseRequest, false, importType, indexDataset));
                 status = " created dataset, id=" + managedDs.getId() + ".";
                 createdId = managedDs.getId();
+                datasetId = managedDs.getId();
             }
 
         } catch (JsonParseException ex) {
@@ -317,7 +375,7 @@ public class ImportServiceBean {
             logger.log(Level.INFO, "Error excuting Create dataset command: {0}", ex.getMessage());
             throw new ImportException("Error excuting dataverse command: " + ex.getMessage(), ex);
         }
-        return Json.createObjectBuilder().add("message", status);
+        return Json.createObjectBuilder().add("message", status).add("datasetId", datasetId);
     }
     
     private boolean processMigrationValidationError(DatasetFieldValue f, PrintWriter cleanupLog, String fileName) {
@@ -0,0 +1,203 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import edu.harvard.iq.dataverse.authorization.users.ApiToken;
+import edu.harvard.iq.dataverse.util.TransactionUtil;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Remembers which user an API token belongs to, for
+ * {@link AuthenticationServiceBean#lookupUser(java.lang.String)}, so that
+ * clients making many calls don't cost a token query each. Entries are kept
+ * for a fixed time, or until the token expires, whichever comes first, and
+ * are dropped once the removal or change of the token on this server is
+ * committed (dropping them earlier would let a concurrent lookup put the old
+ * token back before the change is visible).
+ *
+ * Only the id of the user is kept (the user is loaded by its primary key, so
+ * changes to the user are seen right away), and the tokens are keyed by their
+ * SHA-256 hash, so the secrets themselves are not held in memory.
+ *
+ * @see edu.harvard.iq.dataverse.util.SystemConfig#getApiTokenCacheTimeToLiveSeconds()
+ */
+public class ApiTokenCache {
+
+    private static class Entry {
+
+        final long userId;
+        final long validUntil;
+
+        Entry(long userId, long validUntil) {
+            this.userId = userId;
+            this.validUntil = validUntil;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long timeToLiveMillis;
+    private final int maxSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param timeToLiveMillis How long a token is remembered; 0 turns the
+     * cache off.
+     * @param maxSize The number of tokens remembered at most.
+     */
+    public ApiTokenCache(long timeToLiveMillis, int maxSize) {
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return The id of the user of the token, or {@code null} if the token
+     * isn't in the cache (any more).
+     */
+    public Long get(String tokenString) {
+        if (tokenString == null || timeToLiveMillis <= 0) {
+            return null;
+        }
+        String key = hash(tokenString);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.validUntil > currentTimeMillis()) {
+            hits.incrementAndGet();
+            return entry.userId;
+        }
+        if (entry != null) {
+            entries.remove(key, entry);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Remembers a valid (not disabled, not expired) token.
+     */
+    public void put(ApiToken token) {
+        if (timeToLiveMillis <= 0 || token.getTokenString() == null || token.getAuthenticatedUser() == null) {
+            return;
+        }
+        long now = currentTimeMillis();
+        long validUntil = now + timeToLiveMillis;
+        if (token.getExpireTime() != null && token.getExpireTime().getTime() < validUntil) {
+            validUntil = token.getExpireTime().getTime();
+        }
+        if (entries.size() >= maxSize) {
+            removeStale(now);
+            if (entries.size() >= maxSize) {
+                return;
+            }
+        }
+        entries.put(hash(token.getTokenString()), new Entry(token.getAuthenticatedUser().getId(), validUntil));
+    }
+
+    public void invalidate(String tokenString) {
+        if (tokenString != null) {
+            entries.remove(hash(tokenString));
+        }
+    }
+
+    /**
+     * Forgets all the tokens of a user.
+     */
+    public void invalidateUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            if (it.next().userId == userId) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * {@link #invalidate(java.lang.String)}, once the current transaction has
+     * committed.
+     */
+    public void invalidateAfterCommit(TransactionSynchronizationRegistry transactionRegistry, final String tokenString) {
+        TransactionUtil.afterCommit(transactionRegistry, new Runnable() {
+            @Override
+            public void run() {
+                invalidate(tokenString);
+            }
+        });
+    }
+
+    /**
+     * {@link #invalidateUser(java.lang.Long)}, once the current transaction
+     * has committed.
+     */
+    public void invalidateUserAfterCommit(TransactionSynchronizationRegistry transactionRegistry, final Long userId) {
+        TransactionUtil.afterCommit(transactionRegistry, new Runnable() {
+            @Override
+            public void run() {
+                invalidateUser(userId);
+            }
+        });
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The share of the lookups answered from the cache, between 0
+     * and 1.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void removeStale(long now) {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            if (it.next().validUntil <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    static String hash(String tokenString) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(tokenString.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
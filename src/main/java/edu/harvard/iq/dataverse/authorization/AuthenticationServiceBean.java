@@ -17,6 +17,7 @@ import edu.harvard.iq.dataverse.authorization.providers.echo.EchoAuthenticationP
 import edu.harvard.iq.dataverse.authorization.providers.shib.ShibAuthenticationProvider;
 import edu.harvard.iq.dataverse.authorization.users.ApiToken;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.Date;
@@ -29,6 +30,7 @@ import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Singleton;
 import javax.persistence.EntityManager;
@@ -36,6 +38,7 @@ import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 /**
  * The AuthenticationManager is responsible for registering and listing
@@ -66,12 +69,24 @@ public class AuthenticationServiceBean {
     @EJB
     UserNotificationServiceBean userNotificationService;
 
+    @EJB
+    SystemConfig systemConfig;
+
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
     
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+    
+    private static final int API_TOKEN_CACHE_SIZE = 10000;
+    
+    ApiTokenCache apiTokenCache;
+    
     @PostConstruct
     public void startup() {
         
+        apiTokenCache = new ApiTokenCache(systemConfig.getApiTokenCacheTimeToLiveSeconds() * 1000, API_TOKEN_CACHE_SIZE);
+        
         // First, set up the factories
         try {
             registerProviderFactory( new BuiltinAuthenticationProviderFactory(builtinUserServiceBean) );
@@ -182,6 +197,7 @@ public class AuthenticationServiceBean {
         if (user!=null) {
             ApiToken apiToken = findApiTokenByUser(user);
             if (apiToken != null) {
+                apiTokenCache.invalidateAfterCommit(transactionRegistry, apiToken.getTokenString());
                 em.remove(apiToken);
             }
         }
@@ -210,6 +226,7 @@ public class AuthenticationServiceBean {
         
         
         if (user!=null) {
+            apiTokenCache.invalidateUserAfterCommit(transactionRegistry, user.getId());
             ApiToken apiToken = findApiTokenByUser(user);
             if (apiToken != null) {
                 em.remove(apiToken);
@@ -337,6 +354,13 @@ public class AuthenticationServiceBean {
     }
 
     public AuthenticatedUser lookupUser( String apiToken ) {
+        Long cachedUserId = apiTokenCache.get(apiToken);
+        if ( cachedUserId != null ) {
+            AuthenticatedUser user = findByID(cachedUserId);
+            if ( user != null ) return user;
+            apiTokenCache.invalidateUser(cachedUserId);
+        }
+        
         ApiToken tkn = findApiToken(apiToken);
         if ( tkn == null ) return null;
         
@@ -348,9 +372,24 @@ public class AuthenticationServiceBean {
             }
         }
         
+        apiTokenCache.put(tkn);
         return tkn.getAuthenticatedUser();
     }
     
+    /**
+     * Forgets the cached API tokens of a user, for when the user should no
+     * longer be able to use the API with them.
+     */
+    public void invalidateApiTokens( AuthenticatedUser user ) {
+        if ( user != null ) {
+            apiTokenCache.invalidateUserAfterCommit(transactionRegistry, user.getId());
+        }
+    }
+    
+    public ApiTokenCache getApiTokenCache() {
+        return apiTokenCache;
+    }
+    
     public AuthenticatedUser save( AuthenticatedUser user ) {
         user.setModificationTime(getCurrentTimestamp());
         em.persist(user);
@@ -364,6 +403,8 @@ public class AuthenticationServiceBean {
     }
     
     public ApiToken save( ApiToken aToken ) {
+        // the token may have been disabled, or given to someone else
+        apiTokenCache.invalidateAfterCommit(transactionRegistry, aToken.getTokenString());
         if ( aToken.getId() == null ) {
             em.persist(aToken);
             return aToken;
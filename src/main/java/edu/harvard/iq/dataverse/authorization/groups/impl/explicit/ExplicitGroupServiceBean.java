@@ -4,6 +4,7 @@ import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
 import edu.harvard.iq.dataverse.authorization.RoleAssignee;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.mydata.MyDataFinder;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -11,12 +12,14 @@ import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Named;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import javax.transaction.TransactionSynchronizationRegistry;
 import org.jboss.logging.Logger;
 
 /**
@@ -34,6 +37,9 @@ public class ExplicitGroupServiceBean {
     
     @PersistenceContext(unitName = "VDCNet-ejbPU")
 	protected EntityManager em;
+    
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
 	
     ExplicitGroupProvider provider;
     
@@ -47,6 +53,8 @@ public class ExplicitGroupServiceBean {
     }
     
     public ExplicitGroup persist( ExplicitGroup g ) {
+        // the MyData page of the members includes the roles of the group
+        MyDataFinder.assignmentsCache.invalidateAllAfterCommit(transactionRegistry);
         if ( g.getId() == null ) {
             em.persist( g );
             return g;
@@ -98,6 +106,7 @@ public class ExplicitGroupServiceBean {
 
     public void removeGroup(ExplicitGroup explicitGroup) {
         em.remove( explicitGroup );
+        MyDataFinder.assignmentsCache.invalidateAllAfterCommit(transactionRegistry);
     }
     
     /**
@@ -23,6 +23,10 @@ package edu.harvard.iq.dataverse.dataaccess;
 import edu.harvard.iq.dataverse.DataFile;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
 
 /**
  *
@@ -30,10 +34,76 @@ import java.io.IOException;
  */
 
 public class DataAccess {
+    private static final Logger logger = Logger.getLogger(DataAccess.class.getCanonicalName());
+
+    // The driver of the files with no storage tag in their identifiers, and
+    // of the new files, unless another one is configured with the
+    // dataverse.files.storage-driver JVM option:
+    public static final String DEFAULT_STORAGE_DRIVER = "file";
+
+    // The storage drivers, by their tags:
+    private static final Map<String, DataAccessDriver> drivers = new ConcurrentHashMap<>();
+
+    static {
+        registerDriver(new FileAccessIO.Driver());
+        registerDriver(new S3AccessIO.Driver());
+
+        for (DataAccessDriver driver : ServiceLoader.load(DataAccessDriver.class)) {
+            logger.info("Registering storage driver " + driver.getStorageTag() + " (" + driver.getClass().getName() + ")");
+            registerDriver(driver);
+        }
+    }
+
     public DataAccess() {
 
     }
 
+    /**
+     * Registers a storage driver, replacing the one with the same tag, if any.
+     *
+     * @return The driver replaced, or null.
+     */
+    public static DataAccessDriver registerDriver(DataAccessDriver driver) {
+        return drivers.put(driver.getStorageTag(), driver);
+    }
+
+    public static DataAccessDriver getDriver(String storageTag) throws IOException {
+        DataAccessDriver driver = drivers.get(storageTag);
+        if (driver == null) {
+            throw new IOException("Unsupported storage method: " + storageTag);
+        }
+        return driver;
+    }
+
+    /**
+     * @return The driver the new files are saved with.
+     */
+    public static DataAccessDriver getDefaultDriver() throws IOException {
+        String storageTag = System.getProperty("dataverse.files.storage-driver");
+        if (storageTag == null || storageTag.equals("")) {
+            storageTag = DEFAULT_STORAGE_DRIVER;
+        }
+        return getDriver(storageTag);
+    }
+
+    /**
+     * @return The tag in the "<tag>://" prefix of the storage identifier; or
+     * "file" if there is none.
+     */
+    public static String getStorageTag(String storageIdentifier) {
+        if (storageIdentifier != null && storageIdentifier.matches("^[a-z][a-z0-9]*://.*")) {
+            return storageIdentifier.substring(0, storageIdentifier.indexOf("://"));
+        }
+        return DEFAULT_STORAGE_DRIVER;
+    }
+
+    /**
+     * @return The storage identifier for a new file, of the default driver.
+     */
+    public static String createStorageIdentifier(String fileName) throws IOException {
+        return getDefaultDriver().createStorageIdentifier(fileName);
+    }
+
     public static DataFileIO createDataAccessObject (DataFile df) throws IOException {
         return createDataAccessObject (df, null);
     }
@@ -46,18 +116,12 @@ public class DataAccess {
             throw new IOException ("createDataAccessObject: null or invalid datafile.");
         }
 
-        if (df.getStorageIdentifier().startsWith("file://")
-                || (!df.getStorageIdentifier().matches("^[a-z][a-z]*://.*"))) {
-            return new FileAccessIO (df, req);
+        DataAccessDriver driver = drivers.get(getStorageTag(df.getStorageIdentifier()));
+
+        if (driver == null) {
+            throw new IOException ("createDataAccessObject: Unsupported storage method.");
         }
-        
-        // No other storage methods are supported as of now! -- 4.0.1
-        // TODO: 
-        // This code will need to be extended with a system of looking up 
-        // available storage plugins by the storage tag embedded in the 
-        // "storage identifier". 
-        // -- L.A. 4.0.2
-        
-        throw new IOException ("createDataAccessObject: Unsupported storage method.");
-    }
-}
\ No newline at end of file
+
+        return driver.createDataAccessObject(df, req);
+    }
+}
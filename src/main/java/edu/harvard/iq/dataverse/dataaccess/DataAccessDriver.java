@@ -0,0 +1,33 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile;
+import java.io.IOException;
+
+/**
+ * A storage driver: creates the DataFileIO objects for the files stored with
+ * it, i.e. the files whose storage identifiers start with its storage tag
+ * ("s3://..."). The files with no tag in the storage identifier are the ones
+ * stored on the local filesystem, by the "file" driver.
+ *
+ * The built-in drivers are registered with DataAccess on startup; others can
+ * be listed in META-INF/services/edu.harvard.iq.dataverse.dataaccess.DataAccessDriver,
+ * or added with DataAccess.registerDriver().
+ */
+public interface DataAccessDriver {
+
+    /**
+     * @return The tag of this driver, as used in the storage identifiers,
+     * and in the dataverse.files.storage-driver JVM option.
+     */
+    public String getStorageTag();
+
+    public DataFileIO createDataAccessObject(DataFile dataFile, DataAccessRequest req) throws IOException;
+
+    /**
+     * @param fileName the name generated for a new file by the
+     * DataFileServiceBean.
+     * @return The storage identifier under which the file is saved with this
+     * driver.
+     */
+    public String createStorageIdentifier(String fileName) throws IOException;
+}
@@ -24,6 +24,7 @@ package edu.harvard.iq.dataverse.dataaccess;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import java.util.logging.Logger;
 import java.util.List; 
@@ -38,7 +39,6 @@ import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.rserve.*;
-import java.nio.file.Path;
 
 
 
@@ -63,32 +63,11 @@ public class DataFileConverter {
     public static String SERVICE_REQUEST_CONVERT = "convert";
     
     
-    public static FileAccessIO performFormatConversion (DataFile file, FileAccessIO fileDownload, String formatRequested, String formatType) {
-        if (!file.isTabularData() || !fileDownload.isLocalFile()) {
+    public static DataFileIO performFormatConversion (DataFile file, DataFileIO fileDownload, String formatRequested, String formatType) {
+        if (!file.isTabularData()) {
             return null; 
         }
         
-        Path tabFilePath = null; 
-        
-        try {
-            tabFilePath = fileDownload.getFileSystemPath();
-        } catch (IOException ioEx) {
-            return null; 
-        }
-        
-        if (tabFilePath == null) {
-            return null; 
-        }
-        
-        File tabFile = null; 
-        File formatConvertedFile = null;
-
-        String cachedFileSystemLocation = null;
-
-         // initialize the data variables list:
-
-        List<DataVariable> dataVariables = file.getDataTable().getDataVariables();
-
         // if the format requested is "D00", and it's already a TAB file,
         // we don't need to do anything:
         if (formatRequested.equals(FILE_TYPE_TAB)
@@ -97,95 +76,125 @@ public class DataFileConverter {
             return fileDownload;
         }
 
-        // We may already have a cached copy of this
-        // format:
-        cachedFileSystemLocation = tabFilePath.toString()
-                + "."
-                + formatRequested;
-
-        if (new File(cachedFileSystemLocation).exists()) {
-            formatConvertedFile = new File(cachedFileSystemLocation);
-        } else {
-                // OK, we don't have a cached copy. So we'll have to run
-            // conversion again (below). Let's have the
-            // tab-delimited file handy:
-
-            tabFile = tabFilePath.toFile();
+        // We may already have a cached copy of this format; (it is cached 
+        // as an aux object, "<storage id>.<format>", next to the file, 
+        // for all the storage drivers)
+        
+        InputStream convertedFileStream = null;
+        long convertedFileSize = 0;
+        
+        try {
+            if (fileDownload.isAuxObjectCached(formatRequested)) {
+                convertedFileSize = fileDownload.getAuxObjectSize(formatRequested);
+                convertedFileStream = fileDownload.openAuxInputStream(formatRequested);
+            }
+        } catch (IOException ioEx) {
+            dbgLog.warning("Failed to open the cached " + formatRequested + " copy of the file: " + ioEx.getMessage());
+            convertedFileStream = null;
         }
-                        
         
-        // Check if the tab file is present and run the conversion:
-
-        if (tabFile != null && (tabFile.length() > 0)) {   
-            formatConvertedFile = runFormatConversion (file, tabFile, formatRequested);
-
-            // for local files, cache the result:
-
-            if (formatConvertedFile != null &&
-                    formatConvertedFile.exists()) {
+        if (convertedFileStream == null) {
+            // OK, we don't have a cached copy. So we'll have to run
+            // conversion again (below). Let's have the
+            // tab-delimited file handy: (a temp copy of it, if the file is 
+            // not stored locally; "prep" reads the file from the storage 
+            // itself)
+            
+            File tabFile = null;
+            File tempTabFile = null;
+            File formatConvertedFile = null;
+            
+            try {
+                if (fileDownload.isLocalFile()) {
+                    tabFile = fileDownload.getFileSystemPath().toFile();
+                } else if (!"prep".equals(formatRequested)) {
+                    tempTabFile = fileDownload.copyToTempFile().toFile();
+                    tabFile = tempTabFile;
+                }
+            } catch (IOException ioEx) {
+                return null; 
+            }
+            
+            try {
+                // Check if the tab file is present and run the conversion:
+                if (tabFile == null || tabFile.length() > 0) {
+                    formatConvertedFile = runFormatConversion(file, tabFile, formatRequested);
+                }
+            } finally {
+                if (tempTabFile != null && !tempTabFile.equals(formatConvertedFile)) {
+                    tempTabFile.delete();
+                }
+            }
+            
+            if (formatConvertedFile == null || !formatConvertedFile.exists()) {
+                return null; 
+            }
 
-                try {
-                    File cachedConvertedFile = new File (cachedFileSystemLocation);
-                    FileUtil.copyFile(formatConvertedFile,cachedConvertedFile);
+            // cache the result:
+            
+            try {
+                fileDownload.savePathAsAux(formatConvertedFile.toPath(), formatRequested);
+                if (!formatConvertedFile.equals(tabFile) || tabFile == tempTabFile) {
                     formatConvertedFile.delete();
-                    formatConvertedFile = cachedConvertedFile;
-                    
-                } catch (IOException ex) {
-                    // Whatever. For whatever reason we have failed to cache
-                    // the format-converted copy of the file we just produced.
-                    // But it's not fatal. So we just carry on.
+                }
+                
+                convertedFileSize = fileDownload.getAuxObjectSize(formatRequested);
+                convertedFileStream = fileDownload.openAuxInputStream(formatRequested);
+                
+            } catch (IOException ex) {
+                // Whatever. For whatever reason we have failed to cache
+                // the format-converted copy of the file we just produced.
+                // But it's not fatal. So we just carry on, and serve the 
+                // converted file itself.
+                
+                if (formatConvertedFile.exists()) {
+                    try {
+                        convertedFileSize = formatConvertedFile.length();
+                        convertedFileStream = new FileInputStream(formatConvertedFile);
+                    } catch (IOException ioEx) {
+                        return null; 
+                    }
+                } else {
+                    return null;
                 }
             }
-
         }
 
-        // Now check the converted file: 
+        // Now serve the converted file: 
               
-        if (formatConvertedFile != null && formatConvertedFile.exists()) {
-
-            fileDownload.closeInputStream();
-            fileDownload.setSize(formatConvertedFile.length());
-
-            try {
-                fileDownload.setInputStream(new FileInputStream(formatConvertedFile));
-            } catch (IOException ex) {
-                return null; 
-            }
+        fileDownload.closeInputStream();
+        fileDownload.setSize(convertedFileSize);
+        fileDownload.setInputStream(convertedFileStream);
 
-            fileDownload.releaseConnection();
-            fileDownload.setHTTPMethod(null);
-            fileDownload.setIsLocalFile(true);
+        fileDownload.releaseConnection();
+        fileDownload.setHTTPMethod(null);
 
-            fileDownload.setMimeType(formatType);
-            String dbFileName = fileDownload.getFileName();
+        fileDownload.setMimeType(formatType);
+        String dbFileName = fileDownload.getFileName();
 
-            if (dbFileName == null || dbFileName.equals("")) {
-                dbFileName = "f" + file.getId().toString();
-            }
+        if (dbFileName == null || dbFileName.equals("")) {
+            dbFileName = "f" + file.getId().toString();
+        }
 
-            fileDownload.setFileName(generateAltFileName(formatRequested, dbFileName));
+        fileDownload.setFileName(generateAltFileName(formatRequested, dbFileName));
 
-            if (formatRequested.equals(FILE_TYPE_TAB) && (!fileDownload.noVarHeader())) {
+        if (formatRequested.equals(FILE_TYPE_TAB) && (!fileDownload.noVarHeader())) {
 
-                String varHeaderLine = null;
-                List dataVariablesList = file.getDataTable().getDataVariables();
-                //TODO://varHeaderLine = generateVariableHeader(dataVariablesList);
-                fileDownload.setVarHeader(varHeaderLine);
-            } else {
-                fileDownload.setNoVarHeader(true);
-                fileDownload.setVarHeader(null);
-                // (otherwise, since this is a subsettable file, the variable header
-                //  will be added to this R/Stata/etc. file -- which would
-                //  totally screw things up!)
-            }
+            String varHeaderLine = null;
+            List dataVariablesList = file.getDataTable().getDataVariables();
+            //TODO://varHeaderLine = generateVariableHeader(dataVariablesList);
+            fileDownload.setVarHeader(varHeaderLine);
+        } else {
+            fileDownload.setNoVarHeader(true);
+            fileDownload.setVarHeader(null);
+            // (otherwise, since this is a subsettable file, the variable header
+            //  will be added to this R/Stata/etc. file -- which would
+            //  totally screw things up!)
+        }
 
-            //TODO://setDownloadContentHeaders (fileDownload);
+        //TODO://setDownloadContentHeaders (fileDownload);
 
-           
-            return fileDownload; 
-        }
-        
-        return null; 
+        return fileDownload; 
     } // end of performformatconversion();
 
     // Method for (subsettable) file format conversion.
@@ -22,6 +22,7 @@ package edu.harvard.iq.dataverse.dataaccess;
 
 
 import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 
@@ -29,6 +30,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.Channel;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
@@ -36,6 +38,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
 
 
 import org.apache.commons.httpclient.Header;
@@ -102,7 +106,24 @@ public abstract class DataFileIO {
     
     public abstract boolean isAuxObjectCached(String auxItemTag) throws IOException; 
     
-    public abstract void backupAsAux(String auxItemTag) throws IOException; 
+    public abstract void backupAsAux(String auxItemTag) throws IOException;
+
+    // Saves a copy of a local file (a thumbnail, a format conversion, etc.)
+    // as the aux object with the tag:
+    public abstract void savePathAsAux(Path fileSystemPath, String auxItemTag) throws IOException;
+
+    // The tags of all the aux objects of this file:
+    public abstract List<String> listAuxObjects() throws IOException;
+
+    public abstract void deleteAuxObject(String auxItemTag) throws IOException;
+
+    // Ranged reads: (new as of 4.3)
+
+    // Opens a stream of the bytes of the file (object) from the offset,
+    // length bytes long - or to the end of the file, if the length is -1.
+    // This is independent of open(), and of the InputStream it sets; the
+    // stream returned is the caller's to close.
+    public abstract InputStream openRange(long offset, long length) throws IOException;
 
 
     private DataFile dataFile;
@@ -201,6 +222,129 @@ public abstract class DataFileIO {
         setSize(newFileSize);
     }
 
+    // same as copyPath() above, but for a local Path that is not needed
+    // afterwards (a temp file); if this is a local filesystem file too, the
+    // Path is moved, which is a simple rename when both are on the same
+    // filesystem:
+    public void movePath(Path fileSystemPath) throws IOException {
+        if (isLocalFile()) {
+            Path outputPath = null;
+            try {
+                outputPath = getFileSystemPath();
+            } catch (IOException ex) {
+                outputPath = null;
+            }
+            if (outputPath != null) {
+                Files.move(fileSystemPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+                setSize(outputPath.toFile().length());
+                return;
+            }
+        }
+
+        copyPath(fileSystemPath);
+        Files.deleteIfExists(fileSystemPath);
+    }
+
+    // A local copy of the file (object), in a temp file, for the code that
+    // can only work with files on the filesystem - ImageMagick, R, etc.;
+    // the temp file is the caller's to delete.
+    public Path copyToTempFile() throws IOException {
+        Path tempFile = Files.createTempFile("dataverse-", ".tmp");
+        try (InputStream rangeStream = openRange(0, -1)) {
+            Files.copy(rangeStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            Files.deleteIfExists(tempFile);
+            throw ex;
+        }
+        return tempFile;
+    }
+
+    // Same as above, for an aux object:
+    public Path copyAuxToTempFile(String auxItemTag) throws IOException {
+        Path tempFile = Files.createTempFile("dataverse-", ".tmp");
+        try (InputStream auxStream = openAuxInputStream(auxItemTag)) {
+            Files.copy(auxStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            Files.deleteIfExists(tempFile);
+            throw ex;
+        }
+        return tempFile;
+    }
+
+    public InputStream openAuxInputStream(String auxItemTag) throws IOException {
+        Channel auxChannel = openAuxChannel(auxItemTag, DataAccessOption.READ_ACCESS);
+        if (!(auxChannel instanceof ReadableByteChannel)) {
+            auxChannel.close();
+            throw new IOException("No NIO read access to the Auxiliary Object " + auxItemTag);
+        }
+        return Channels.newInputStream((ReadableByteChannel) auxChannel);
+    }
+
+    // Deletes the saved original, the thumbnails, the cached format
+    // conversions, etc.; all of them are attempted, and the first failure,
+    // if any, is thrown at the end:
+    public void deleteAllAuxObjects() throws IOException {
+        IOException failure = null;
+        for (String auxItemTag : listAuxObjects()) {
+            try {
+                deleteAuxObject(auxItemTag);
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Helper methods, for the drivers:
+
+    protected boolean isWriteAccessRequested (DataAccessOption... options) throws IOException {
+
+
+        for (DataAccessOption option: options) {
+            // In the future we may need to be able to open read-write
+            // Channels; no support, or use case for that as of now.
+
+            if (option == DataAccessOption.READ_ACCESS) {
+                return false;
+            }
+
+            if (option == DataAccessOption.WRITE_ACCESS) {
+                return true;
+            }
+        }
+
+        // By default, we open the file in read mode:
+
+        return false;
+    }
+
+    protected String generateVariableHeader(List dvs) {
+        String varHeader = null;
+
+        if (dvs != null) {
+            Iterator iter = dvs.iterator();
+            DataVariable dv;
+
+            if (iter.hasNext()) {
+                dv = (DataVariable) iter.next();
+                varHeader = dv.getName();
+            }
+
+            while (iter.hasNext()) {
+                dv = (DataVariable) iter.next();
+                varHeader = varHeader + "\t" + dv.getName();
+            }
+
+            varHeader = varHeader + "\n";
+        }
+
+        return varHeader;
+    }
+
     // getters:
     
     public Channel getChannel() {
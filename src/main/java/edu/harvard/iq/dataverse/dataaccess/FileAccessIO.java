@@ -27,24 +27,49 @@ import java.io.InputStream;
 import java.io.OutputStream; 
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-// NIO imports: 
+import java.io.FilterInputStream;
+// NIO imports:
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Iterator; 
 
 
 // Dataverse imports:
 import edu.harvard.iq.dataverse.DataFile;
-import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import java.io.FileNotFoundException;
 import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 
 public class FileAccessIO extends DataFileIO {
 
+    // The files are stored in the dataset directories, under the
+    // dataverse.files.directory; the storage identifier is the file name,
+    // with no storage tag.
+    public static class Driver implements DataAccessDriver {
+
+        @Override
+        public String getStorageTag() {
+            return DataAccess.DEFAULT_STORAGE_DRIVER;
+        }
+
+        @Override
+        public DataFileIO createDataAccessObject(DataFile dataFile, DataAccessRequest req) throws IOException {
+            return new FileAccessIO(dataFile, req);
+        }
+
+        @Override
+        public String createStorageIdentifier(String fileName) {
+            return fileName;
+        }
+    }
+
     public FileAccessIO () throws IOException {
         this(null);
     }
@@ -203,7 +228,66 @@ public class FileAccessIO extends DataFileIO {
         
         Files.move(getFileSystemPath(), auxPath, StandardCopyOption.REPLACE_EXISTING);
     }
-    
+
+    @Override
+    public void savePathAsAux(Path fileSystemPath, String auxItemTag) throws IOException {
+        Path auxPath = getAuxFilePath(auxItemTag);
+
+        Files.copy(fileSystemPath, auxPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public List<String> listAuxObjects() throws IOException {
+        // the aux files are <storage identifier>.<tag>; for example,
+        // <storage identifier>.thumb64 or <storage identifier>.RData, in
+        // the dataset directory:
+        final String baseName = this.getDataFile().getStorageIdentifier() + ".";
+
+        DirectoryStream.Filter<Path> filter = new DirectoryStream.Filter<Path>() {
+            @Override
+            public boolean accept(Path file) throws IOException {
+                return (file.getFileName() != null
+                        && file.getFileName().toString().startsWith(baseName));
+            }
+        };
+
+        List<String> auxItemTags = new ArrayList<>();
+
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(Paths.get(getDatasetDirectory()), filter)) {
+            for (Path auxPath : dirStream) {
+                auxItemTags.add(auxPath.getFileName().toString().substring(baseName.length()));
+            }
+        }
+
+        return auxItemTags;
+    }
+
+    @Override
+    public void deleteAuxObject(String auxItemTag) throws IOException {
+        Files.deleteIfExists(getAuxFilePath(auxItemTag));
+    }
+
+    @Override
+    public InputStream openRange(long offset, long length) throws IOException {
+        if (offset < 0) {
+            throw new IOException("Invalid offset " + offset);
+        }
+
+        FileChannel rangeChannel = FileChannel.open(getFileSystemPath(), StandardOpenOption.READ);
+        try {
+            rangeChannel.position(offset);
+        } catch (IOException ex) {
+            rangeChannel.close();
+            throw ex;
+        }
+
+        InputStream rangeStream = Channels.newInputStream(rangeChannel);
+        if (length < 0) {
+            return rangeStream;
+        }
+        return new RangeInputStream(rangeStream, length);
+    }
+
     @Override
     public String getStorageLocation() {
         // For a local file, the "storage location" is a complete, absolute
@@ -350,49 +434,56 @@ public class FileAccessIO extends DataFileIO {
         
         return auxPath;
     }
-    
-    private boolean isWriteAccessRequested (DataAccessOption... options) throws IOException {
 
-        
-        for (DataAccessOption option: options) {
-            // In the future we may need to be able to open read-write 
-            // Channels; no support, or use case for that as of now. 
-            
-            if (option == DataAccessOption.READ_ACCESS) {
-                return false;
-            }
+    // The stream of a range: ends after the length bytes.
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
 
-            if (option == DataAccessOption.WRITE_ACCESS) {
-                return true;
-            }
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
         }
-        
-        // By default, we open the file in read mode:
-        
-        return false; 
-    }
-    
-    private String generateVariableHeader(List dvs) {
-        String varHeader = null;
-
-        if (dvs != null) {
-            Iterator iter = dvs.iterator();
-            DataVariable dv;
 
-            if (iter.hasNext()) {
-                dv = (DataVariable) iter.next();
-                varHeader = dv.getName();
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
             }
+            return b;
+        }
 
-            while (iter.hasNext()) {
-                dv = (DataVariable) iter.next();
-                varHeader = varHeader + "\t" + dv.getName();
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
             }
+            return n;
+        }
 
-            varHeader = varHeader + "\n";
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
         }
 
-        return varHeader;
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
     }
 
 }
\ No newline at end of file
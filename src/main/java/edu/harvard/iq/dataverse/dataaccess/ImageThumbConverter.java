@@ -19,10 +19,14 @@
 */
 package edu.harvard.iq.dataverse.dataaccess;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import java.util.Iterator;
 
@@ -74,8 +78,7 @@ public class ImageThumbConverter {
             DataFileIO dataAccess = file.getAccessObject();
 
             if (!dataAccess.isLocalFile()) {
-                logger.fine("thumbnails are supported on local files only at this time.");
-                return false;
+                return generateAuxThumb(dataAccess, size);
             }
 
             logger.fine("Checking for thumbnail, file type: " + file.getContentType());
@@ -100,13 +103,34 @@ public class ImageThumbConverter {
         return false;
     }
     
-    public static FileAccessIO getImageThumb (FileAccessIO fileAccess) {
+    public static DataFileIO getImageThumb (DataFileIO fileAccess) {
         return getImageThumb (fileAccess, DEFAULT_THUMBNAIL_SIZE);
     }
     
-    public static FileAccessIO getImageThumb(FileAccessIO fileAccess, int size) {
+    public static DataFileIO getImageThumb(DataFileIO fileAccess, int size) {
         logger.fine("entering getImageThumb, size " + size);
 
+        if (!fileAccess.isLocalFile()) {
+            // the thumbnails of the files stored remotely are saved (and 
+            // served) as aux objects:
+            if (generateAuxThumb(fileAccess, size)) {
+                String thumbTag = getThumbAuxTag(fileAccess.getDataFile(), size);
+                try {
+                    long thumbSize = fileAccess.getAuxObjectSize(thumbTag);
+                    InputStream imageThumbInputStream = fileAccess.openAuxInputStream(thumbTag);
+
+                    fileAccess.closeInputStream();
+                    fileAccess.setSize(thumbSize);
+                    fileAccess.setInputStream(imageThumbInputStream);
+                    fileAccess.setMimeType("image/png");
+                    return fileAccess;
+                } catch (IOException ex) {
+                    logger.warning("getImageThumb: failed to open the thumbnail " + thumbTag + ": " + ex.getMessage());
+                }
+            }
+            return null;
+        }
+
         File imageThumbFile = getImageThumbAsFile(fileAccess, size);
 
         if (imageThumbFile != null) {
@@ -144,11 +168,11 @@ public class ImageThumbConverter {
 
         logger.fine("entering getImageThumb, size " + size);
 
-        FileAccessIO fileAccess = null;
+        DataFileIO fileAccess = null;
 
         try {
 
-            fileAccess = (FileAccessIO) file.getAccessObject();
+            fileAccess = file.getAccessObject();
         } catch (IOException ex) {
             // too bad - but not fatal
             logger.warning("getImageThumbAsBase64: Failed to obtain FileAccess object for DataFile id " + file.getId());
@@ -169,11 +193,29 @@ public class ImageThumbConverter {
 
                 return getImageAsBase64FromFile(imageThumbFile);
             }
+        } else if (fileAccess != null && generateAuxThumb(fileAccess, size)) {
+            try (InputStream imageThumbInputStream = fileAccess.openAuxInputStream(getThumbAuxTag(file, size))) {
+                return getImageAsBase64FromInputStream(imageThumbInputStream);
+            } catch (IOException ex) {
+                logger.warning("getImageThumbAsBase64: Failed to read the thumbnail of DataFile id " + file.getId());
+            }
         }
 
         return null;
     }
     
+    private static String getImageAsBase64FromInputStream(InputStream imageThumbInputStream) throws IOException {
+        ByteArrayOutputStream rawImageData = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int bytesRead;
+        while ((bytesRead = imageThumbInputStream.read(buffer)) != -1) {
+            rawImageData.write(buffer, 0, bytesRead);
+        }
+        logger.fine("read " + rawImageData.size() + " bytes of raw thumbnail image.");
+
+        return "data:image/png;base64," + Base64.encodeToString(rawImageData.toByteArray(), false);
+    }
+    
     public static String getImageAsBase64FromFile(File imageFile) {
         InputStream imageThumbInputStream = null;
         try {
@@ -209,7 +251,10 @@ public class ImageThumbConverter {
         return null;
     }
     
-    public static File getImageThumbAsFile(FileAccessIO fileAccess, int size ) {
+    public static File getImageThumbAsFile(DataFileIO fileAccess, int size ) {
+        if (!fileAccess.isLocalFile()) {
+            return null;
+        }
         String imageThumbFileName = null;
         try {
             if (fileAccess.getDataFile() != null && fileAccess.getDataFile().getContentType().substring(0, 6).equalsIgnoreCase("image/")) {
@@ -241,6 +286,122 @@ public class ImageThumbConverter {
         return null;
     }
     
+    /*
+     * The thumbnails of the files stored remotely (on S3, etc.) are 
+     * generated the same way, from a temp copy of the file (of the "img" aux
+     * object, for the WorldMap shapefiles), and saved as aux objects, 
+     * "thumb<size>" ("img.thumb<size>"), all the sizes generated in one go.
+     */
+    private static String getThumbAuxTag(DataFile file, int size) {
+        if (file != null && "application/zipped-shapefile".equalsIgnoreCase(file.getContentType())) {
+            return "img.thumb" + size;
+        }
+        return "thumb" + size;
+    }
+    
+    private static boolean generateAuxThumb(DataFileIO dataAccess, int size) {
+        DataFile file = dataAccess.getDataFile();
+        if (file == null || file.getContentType() == null) {
+            return false;
+        }
+
+        String contentType = file.getContentType();
+        boolean isImage = contentType.toLowerCase().startsWith("image/");
+        boolean isPDF = contentType.equalsIgnoreCase("application/pdf");
+        boolean isWorldMap = contentType.equalsIgnoreCase("application/zipped-shapefile");
+
+        if (!isImage && !isPDF && !isWorldMap) {
+            return false;
+        }
+
+        String thumbTag = getThumbAuxTag(file, size);
+        Path tempFile = null;
+
+        try {
+            if (dataAccess.isAuxObjectCached(thumbTag)) {
+                return true;
+            }
+
+            // (the same limits as for the local files; checked before the
+            // file is downloaded)
+            long sizeLimit = isPDF ? getThumbnailSizeLimitPDF() : getThumbnailSizeLimitImage();
+            if (sizeLimit < 0) {
+                return false;
+            }
+
+            long fileSize;
+            if (isWorldMap) {
+                if (!dataAccess.isAuxObjectCached("img")) {
+                    return false;
+                }
+                fileSize = dataAccess.getAuxObjectSize("img");
+            } else {
+                fileSize = file.getFilesize();
+            }
+
+            if (sizeLimit > 0 && (fileSize <= 0 || fileSize > sizeLimit)) {
+                return false;
+            }
+
+            tempFile = isWorldMap ? dataAccess.copyAuxToTempFile("img") : dataAccess.copyToTempFile();
+
+            String thumbFileLocation = isPDF
+                    ? generatePDFThumb(tempFile.toString(), size)
+                    : generateImageThumb(tempFile.toString(), size);
+
+            if (thumbFileLocation == null) {
+                return false;
+            }
+
+            dataAccess.savePathAsAux(Paths.get(thumbFileLocation), thumbTag);
+
+            // the other sizes, generated while we were at it: 
+            // (the smaller pdf thumbs are made from the preview-size one, 
+            // and named after it)
+            String thumbTagPrefix = isWorldMap ? "img.thumb" : "thumb";
+            for (int s : (new int[]{DEFAULT_PREVIEW_SIZE, DEFAULT_THUMBNAIL_SIZE, DEFAULT_CARDIMAGE_SIZE})) {
+                if (s == size) {
+                    continue;
+                }
+                for (Path thumbFile : getTempThumbPaths(tempFile, s)) {
+                    if (Files.exists(thumbFile)) {
+                        dataAccess.savePathAsAux(thumbFile, thumbTagPrefix + s);
+                        break;
+                    }
+                }
+            }
+            return true;
+
+        } catch (IOException ioEx) {
+            logger.warning("Failed to generate the thumbnail " + thumbTag + " of DataFile id " + file.getId() + ": " + ioEx.getMessage());
+            return false;
+        } finally {
+            if (tempFile != null) {
+                deleteTempThumbs(tempFile, size);
+            }
+        }
+    }
+
+    private static Path[] getTempThumbPaths(Path tempFile, int size) {
+        return new Path[]{
+            Paths.get(tempFile.toString() + ".thumb" + size),
+            Paths.get(tempFile.toString() + ".thumb" + DEFAULT_PREVIEW_SIZE + ".thumb" + size)
+        };
+    }
+
+    private static void deleteTempThumbs(Path tempFile, int size) {
+        try {
+            Files.deleteIfExists(tempFile);
+            for (int s : (new int[]{DEFAULT_PREVIEW_SIZE, DEFAULT_THUMBNAIL_SIZE, DEFAULT_CARDIMAGE_SIZE, size})) {
+                for (Path thumbFile : getTempThumbPaths(tempFile, s)) {
+                    Files.deleteIfExists(thumbFile);
+                }
+            }
+        } catch (IOException ex) {
+            logger.warning("Failed to delete the temp files of " + tempFile + ": " + ex.getMessage());
+        }
+    }
+    
     public static String generateImageThumb(String fileLocation) {
         return generateImageThumb(fileLocation, DEFAULT_THUMBNAIL_SIZE);
     }
@@ -0,0 +1,213 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Read access to the "rotated" image of a tab file (see
+ * {@link TabularFileTransposer}), shared by all the subset requests on the
+ * same file.
+ *
+ * The open images are kept in a small LRU cache, keyed by the path of the
+ * image, i.e. one per tabular DataFile. Each one holds the column offset
+ * table, parsed once, and the columns mapped into memory so far, themselves
+ * evicted least recently used first. Users {@link #acquire} an image and
+ * {@link #release()} it when done; an image evicted from the cache while in
+ * use is closed when its last user releases it.
+ *
+ * The buffers returned by {@link #getColumn(int)} are independent, read-only
+ * views, so each request keeps its own position, and stay valid after the
+ * image is released.
+ */
+public class RotatedImageReader {
+
+    private static final Logger logger = Logger.getLogger(RotatedImageReader.class.getCanonicalName());
+
+    private static final int MAX_OPEN_IMAGES = 16;
+    private static final long MAX_MAPPED_BYTES_PER_IMAGE = 256 * 1024 * 1024;
+
+    // least recently used first
+    private static final Map<String, RotatedImageReader> openImages = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final String path;
+    private final long lastModified;
+    private final long fileLength;
+    private final int varcount;
+    private final FileChannel fileChannel;
+    private final long[] columnEndOffsets;
+
+    // guarded by openImages
+    private int references = 0;
+    private boolean evicted = false;
+
+    // least recently used first; guarded by itself
+    private final Map<Integer, MappedByteBuffer> mappedColumns = new LinkedHashMap<>(16, 0.75f, true);
+    private long mappedBytes = 0;
+
+    private RotatedImageReader(File rotatedImageFile, int varcount) throws IOException {
+        this.path = rotatedImageFile.getAbsolutePath();
+        this.lastModified = rotatedImageFile.lastModified();
+        this.fileLength = rotatedImageFile.length();
+        this.varcount = varcount;
+        this.fileChannel = FileChannel.open(rotatedImageFile.toPath(), StandardOpenOption.READ);
+        try {
+            this.columnEndOffsets = readColumnOffsets();
+        } catch (IOException ex) {
+            fileChannel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return The shared reader of the image, to be released with
+     * {@link #release()}.
+     */
+    public static RotatedImageReader acquire(File rotatedImageFile, int varcount) throws IOException {
+        String path = rotatedImageFile.getAbsolutePath();
+        synchronized (openImages) {
+            RotatedImageReader reader = openImages.get(path);
+            if (reader != null && (reader.varcount != varcount
+                    || reader.lastModified != rotatedImageFile.lastModified()
+                    || reader.fileLength != rotatedImageFile.length())) {
+                // the image was generated again
+                openImages.remove(path);
+                reader.evict();
+                reader = null;
+            }
+            if (reader == null) {
+                reader = new RotatedImageReader(rotatedImageFile, varcount);
+                openImages.put(path, reader);
+                Iterator<RotatedImageReader> eldest = openImages.values().iterator();
+                while (openImages.size() > MAX_OPEN_IMAGES && eldest.hasNext()) {
+                    eldest.next().evict();
+                    eldest.remove();
+                }
+            }
+            reader.references++;
+            return reader;
+        }
+    }
+
+    /**
+     * Closes the image, if open, and deletes it; for the images of temp tab
+     * files, not to be reused.
+     */
+    public static void discard(File rotatedImageFile) throws IOException {
+        synchronized (openImages) {
+            RotatedImageReader reader = openImages.remove(rotatedImageFile.getAbsolutePath());
+            if (reader != null) {
+                reader.evict();
+            }
+        }
+        Files.deleteIfExists(rotatedImageFile.toPath());
+    }
+
+    public void release() {
+        synchronized (openImages) {
+            references--;
+            if (references == 0 && evicted) {
+                close();
+            }
+        }
+    }
+
+    // called with the openImages lock held
+    private void evict() {
+        evicted = true;
+        if (references == 0) {
+            close();
+        }
+    }
+
+    private void close() {
+        logger.fine("closing rotated image " + path);
+        try {
+            fileChannel.close();
+        } catch (IOException ioe) {
+            // don't care.
+        }
+    }
+
+    private long[] readColumnOffsets() throws IOException {
+        ByteBuffer offsetHeader = ByteBuffer.allocate(varcount * 8);
+        while (offsetHeader.hasRemaining()) {
+            if (fileChannel.read(offsetHeader, offsetHeader.position()) < 0) {
+                throw new IOException("Could not read " + varcount * 8 + " header bytes from the rotated file.");
+            }
+        }
+        offsetHeader.flip();
+        long[] byteOffsets = new long[varcount];
+        for (int varindex = 0; varindex < varcount; varindex++) {
+            byteOffsets[varindex] = offsetHeader.getLong();
+        }
+        return byteOffsets;
+    }
+
+    public int getVarCount() {
+        return varcount;
+    }
+
+    /*
+     * Note that the column is the *absolute* column number, i.e. the number
+     * of the physical column in the tabular file, as stored in
+     * DataVariable.FileOrder.
+     */
+    public long getColumnOffset(int column) throws IOException {
+        checkColumn(column);
+        return column > 0 ? columnEndOffsets[column - 1] : varcount * 8;
+    }
+
+    public long getColumnLength(int column) throws IOException {
+        long offset = getColumnOffset(column);
+        return columnEndOffsets[column] - offset;
+    }
+
+    /**
+     * @return The bytes of the column (each value followed by a new line),
+     * as a new read-only buffer positioned at the start of the column.
+     */
+    public ByteBuffer getColumn(int column) throws IOException {
+        long offset = getColumnOffset(column);
+        long length = getColumnLength(column);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Column " + column + " is too large to be mapped: " + length + " bytes");
+        }
+        MappedByteBuffer mapped;
+        synchronized (mappedColumns) {
+            mapped = mappedColumns.get(column);
+            if (mapped == null) {
+                mapped = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                mappedColumns.put(column, mapped);
+                mappedBytes += length;
+                Iterator<MappedByteBuffer> eldest = mappedColumns.values().iterator();
+                while (mappedBytes > MAX_MAPPED_BYTES_PER_IMAGE && mappedColumns.size() > 1) {
+                    mappedBytes -= eldest.next().capacity();
+                    eldest.remove();
+                }
+            }
+        }
+        return mapped.asReadOnlyBuffer();
+    }
+
+    private void checkColumn(int column) throws IOException {
+        if (column < 0 || column >= varcount) {
+            throw new IOException("Column " + column + " is out of bounds.");
+        }
+    }
+
+    static int getNumberOfOpenImages() {
+        synchronized (openImages) {
+            return openImages.size();
+        }
+    }
+
+}
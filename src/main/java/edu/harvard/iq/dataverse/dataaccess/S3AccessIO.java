@@ -0,0 +1,697 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.Dataset;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+/**
+ * The storage driver for Amazon S3, and the S3-compatible object stores
+ * (Ceph, Swift with the S3 middleware, etc.).
+ *
+ * The storage identifier of a file is s3://<bucket>:<file name>; the object
+ * key is <dataset authority>/<dataset identifier>/<file name>, the same
+ * path as that of a file stored on the filesystem, under the files
+ * directory. The aux objects are stored next to it, as <key>.<tag>.
+ *
+ * Large files are uploaded (and copied) in parts, in parallel, on the
+ * threads of the default ManagedExecutorService of the application server.
+ */
+public class S3AccessIO extends DataFileIO {
+    private static final Logger logger = Logger.getLogger(S3AccessIO.class.getCanonicalName());
+
+    public static final String STORAGE_TAG = "s3";
+
+    private static final long MB = 1024 * 1024;
+    // the limits of S3: the parts of a multipart upload are 5 MB or more
+    // (except for the last one), and 10000 at most; a single PUT or copy,
+    // 5 GB at most.
+    private static final long MIN_PART_SIZE = 5 * MB;
+    private static final int MAX_PARTS = 10000;
+    private static final long MAX_SINGLE_COPY_SIZE = 5 * 1024 * MB;
+
+    private static final long DEFAULT_PART_SIZE = 64 * MB;
+    private static final int DEFAULT_UPLOAD_THREADS = 4;
+
+    // The driver keeps one client, shared by all the S3AccessIO objects it
+    // creates; the clients are thread-safe, and hold the connection pool.
+    // The parts are uploaded by the container's executor service, looked up
+    // once: the drivers are not EJBs, so nothing can be injected.
+    public static class Driver implements DataAccessDriver {
+        private AmazonS3 s3 = null;
+        private ExecutorService executor = null;
+        private boolean executorLookedUp = false;
+
+        public Driver() {
+        }
+
+        public Driver(AmazonS3 s3) {
+            this.s3 = s3;
+        }
+
+        public Driver(AmazonS3 s3, ExecutorService executor) {
+            this.s3 = s3;
+            this.executor = executor;
+            this.executorLookedUp = true;
+        }
+
+        @Override
+        public String getStorageTag() {
+            return STORAGE_TAG;
+        }
+
+        @Override
+        public DataFileIO createDataAccessObject(DataFile dataFile, DataAccessRequest req) throws IOException {
+            return new S3AccessIO(dataFile, req, getClient(), getExecutor());
+        }
+
+        @Override
+        public String createStorageIdentifier(String fileName) throws IOException {
+            String bucketName = System.getProperty("dataverse.files.s3.bucket-name");
+            if (bucketName == null || bucketName.equals("")) {
+                throw new IOException("No S3 bucket configured (dataverse.files.s3.bucket-name).");
+            }
+            return STORAGE_TAG + "://" + bucketName + ":" + fileName;
+        }
+
+        private synchronized AmazonS3 getClient() throws IOException {
+            if (s3 == null) {
+                // The credentials are looked up by the default chain of the SDK:
+                // the AWS_ACCESS_KEY_ID and AWS_SECRET_ACCESS_KEY environment
+                // variables, ~/.aws/credentials, the EC2 instance profile...
+                AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard();
+
+                String endpointUrl = System.getProperty("dataverse.files.s3.endpoint-url");
+                String region = System.getProperty("dataverse.files.s3.region");
+
+                try {
+                    if (endpointUrl != null && !endpointUrl.equals("")) {
+                        builder.setEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpointUrl, region == null || region.equals("") ? "us-east-1" : region));
+                    } else if (region != null && !region.equals("")) {
+                        builder.setRegion(region);
+                    }
+                    builder.setPathStyleAccessEnabled(Boolean.getBoolean("dataverse.files.s3.path-style-access"));
+
+                    s3 = builder.build();
+                } catch (AmazonClientException ex) {
+                    throw new IOException("Failed to create the S3 client: " + ex.getMessage(), ex);
+                }
+            }
+            return s3;
+        }
+
+        private synchronized ExecutorService getExecutor() {
+            if (!executorLookedUp) {
+                executorLookedUp = true;
+                try {
+                    executor = (ExecutorService) new InitialContext().lookup("java:comp/DefaultManagedExecutorService");
+                } catch (NamingException ex) {
+                    // (not in the application server)
+                    logger.warning("No managed executor service; the parts of the S3 uploads will be sent one at a time: " + ex.getMessage());
+                }
+            }
+            return executor;
+        }
+    }
+
+    private final AmazonS3 s3;
+    private final ExecutorService executor;
+    private String bucketName = null;
+    private String key = null;
+
+    private long partSize = getPartSizeOption();
+    private int uploadThreads = getUploadThreadsOption();
+
+    private boolean isReadAccess = false;
+    private boolean isWriteAccess = false;
+
+    public S3AccessIO(DataFile dataFile, DataAccessRequest req, AmazonS3 s3) {
+        this(dataFile, req, s3, null);
+    }
+
+    /**
+     * @param executor The executor service the parts of the multipart
+     * uploads and copies are sent on (the managed one of the application
+     * server; it is not shut down); or null, to send them one at a time.
+     */
+    public S3AccessIO(DataFile dataFile, DataAccessRequest req, AmazonS3 s3, ExecutorService executor) {
+        super(dataFile, req);
+
+        this.s3 = s3;
+        this.executor = executor;
+        this.setIsLocalFile(false);
+    }
+
+    @Override
+    public boolean canRead() {
+        return isReadAccess;
+    }
+
+    @Override
+    public boolean canWrite() {
+        return isWriteAccess;
+    }
+
+    @Override
+    public void open(DataAccessOption... options) throws IOException {
+        DataFile dataFile = this.getDataFile();
+        DataAccessRequest req = this.getRequest();
+
+        if (req != null && req.getParameter("noVarHeader") != null) {
+            this.setNoVarHeader(true);
+        }
+
+        if (isWriteAccessRequested(options)) {
+            isWriteAccess = true;
+            isReadAccess = false;
+        } else {
+            isWriteAccess = false;
+            isReadAccess = true;
+        }
+
+        if (isReadAccess) {
+            try {
+                this.setSize(s3.getObjectMetadata(getBucketName(), getKey()).getContentLength());
+            } catch (AmazonClientException ex) {
+                throw toIOException("S3 object " + getStorageLocation(), ex);
+            }
+
+            // (the object itself is only requested when the stream is
+            // read; so a caller can still replace it with the stream of
+            // a thumbnail, a saved original, etc. for free)
+            InputStream objectStream = new ObjectInputStream();
+            this.setInputStream(objectStream);
+            setChannel(Channels.newChannel(objectStream));
+
+            if (dataFile.getContentType() != null
+                    && dataFile.getContentType().equals("text/tab-separated-values")
+                    && dataFile.isTabularData()
+                    && dataFile.getDataTable() != null
+                    && (!this.noVarHeader())) {
+
+                List datavariables = dataFile.getDataTable().getDataVariables();
+                String varHeaderLine = generateVariableHeader(datavariables);
+                this.setVarHeader(varHeaderLine);
+            }
+        } else if (isWriteAccess) {
+            UploadChannel uploadChannel = new UploadChannel(getKey());
+            this.setOutputStream(Channels.newOutputStream(uploadChannel));
+            setChannel(uploadChannel);
+        }
+
+        this.setMimeType(dataFile.getContentType());
+        try {
+            this.setFileName(dataFile.getFileMetadata().getLabel());
+        } catch (Exception ex) {
+            this.setFileName("unknown");
+        }
+
+        this.setStatus(200);
+    }
+
+    @Override
+    public InputStream openRange(long offset, long length) throws IOException {
+        if (offset < 0) {
+            throw new IOException("Invalid offset " + offset);
+        }
+        if (length == 0) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        GetObjectRequest request = new GetObjectRequest(getBucketName(), getKey());
+        if (length > 0) {
+            request.setRange(offset, offset + length - 1);
+        } else if (offset > 0) {
+            request.setRange(offset);
+        }
+
+        try {
+            return s3.getObject(request).getObjectContent();
+        } catch (AmazonClientException ex) {
+            throw toIOException("S3 object " + getStorageLocation(), ex);
+        }
+    }
+
+    @Override
+    public void copyPath(Path fileSystemPath) throws IOException {
+        upload(fileSystemPath, getKey());
+        setSize(Files.size(fileSystemPath));
+    }
+
+    @Override
+    public String getStorageLocation() throws IOException {
+        return STORAGE_TAG + "://" + getBucketName() + "/" + getKey();
+    }
+
+    @Override
+    public Path getFileSystemPath() throws IOException {
+        throw new IOException("S3AccessIO: this is a remote object, with no local filesystem path.");
+    }
+
+    @Override
+    public void delete() throws IOException {
+        try {
+            s3.deleteObject(getBucketName(), getKey());
+        } catch (AmazonClientException ex) {
+            throw toIOException("S3 object " + getStorageLocation(), ex);
+        }
+    }
+
+    // Aux objects:
+
+    @Override
+    public Channel openAuxChannel(String auxItemTag, DataAccessOption... options) throws IOException {
+        String auxKey = getAuxKey(auxItemTag);
+
+        if (isWriteAccessRequested(options)) {
+            return new UploadChannel(auxKey);
+        }
+
+        try {
+            return Channels.newChannel(s3.getObject(getBucketName(), auxKey).getObjectContent());
+        } catch (AmazonClientException ex) {
+            throw toIOException("Auxiliary Object " + auxKey, ex);
+        }
+    }
+
+    @Override
+    public boolean isAuxObjectCached(String auxItemTag) throws IOException {
+        String auxKey = getAuxKey(auxItemTag);
+        try {
+            return s3.doesObjectExist(getBucketName(), auxKey);
+        } catch (AmazonClientException ex) {
+            throw toIOException("Auxiliary Object " + auxKey, ex);
+        }
+    }
+
+    @Override
+    public long getAuxObjectSize(String auxItemTag) throws IOException {
+        String auxKey = getAuxKey(auxItemTag);
+        try {
+            return s3.getObjectMetadata(getBucketName(), auxKey).getContentLength();
+        } catch (AmazonClientException ex) {
+            throw toIOException("Auxiliary Object " + auxKey, ex);
+        }
+    }
+
+    @Override
+    public void backupAsAux(String auxItemTag) throws IOException {
+        // (there is no rename in S3; the object is copied, on the server,
+        // then deleted)
+        copy(getKey(), getAuxKey(auxItemTag));
+        delete();
+    }
+
+    @Override
+    public void savePathAsAux(Path fileSystemPath, String auxItemTag) throws IOException {
+        upload(fileSystemPath, getAuxKey(auxItemTag));
+    }
+
+    @Override
+    public List<String> listAuxObjects() throws IOException {
+        String prefix = getKey() + ".";
+        List<String> auxItemTags = new ArrayList<>();
+
+        try {
+            ObjectListing listing = s3.listObjects(new ListObjectsRequest().withBucketName(getBucketName()).withPrefix(prefix));
+            while (true) {
+                for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+                    auxItemTags.add(summary.getKey().substring(prefix.length()));
+                }
+                if (!listing.isTruncated()) {
+                    break;
+                }
+                listing = s3.listNextBatchOfObjects(listing);
+            }
+        } catch (AmazonClientException ex) {
+            throw toIOException("Auxiliary Objects of " + getStorageLocation(), ex);
+        }
+
+        return auxItemTags;
+    }
+
+    @Override
+    public void deleteAuxObject(String auxItemTag) throws IOException {
+        String auxKey = getAuxKey(auxItemTag);
+        try {
+            s3.deleteObject(getBucketName(), auxKey);
+        } catch (AmazonClientException ex) {
+            throw toIOException("Auxiliary Object " + auxKey, ex);
+        }
+    }
+
+    // The size of the parts of the multipart uploads and copies, and the
+    // number of them sent at a time:
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    public void setPartSize(long partSize) {
+        this.partSize = partSize;
+    }
+
+    public int getUploadThreads() {
+        return uploadThreads;
+    }
+
+    public void setUploadThreads(int uploadThreads) {
+        this.uploadThreads = uploadThreads;
+    }
+
+    // Helper methods, S3-specific:
+
+    private String getBucketName() throws IOException {
+        if (bucketName == null) {
+            parseStorageIdentifier();
+        }
+        return bucketName;
+    }
+
+    private String getKey() throws IOException {
+        if (key == null) {
+            parseStorageIdentifier();
+        }
+        return key;
+    }
+
+    private String getAuxKey(String auxItemTag) throws IOException {
+        if (auxItemTag == null || "".equals(auxItemTag)) {
+            throw new IOException("Null or invalid Auxiliary Object Tag.");
+        }
+        return getKey() + "." + auxItemTag;
+    }
+
+    private void parseStorageIdentifier() throws IOException {
+        DataFile dataFile = this.getDataFile();
+        if (dataFile == null) {
+            throw new IOException("No datafile defined in the Data Access Object");
+        }
+
+        String storageIdentifier = dataFile.getStorageIdentifier();
+        String prefix = STORAGE_TAG + "://";
+        int separator = storageIdentifier == null ? -1 : storageIdentifier.indexOf(':', prefix.length());
+        if (separator < 0 || !storageIdentifier.startsWith(prefix)
+                || separator == prefix.length() || separator == storageIdentifier.length() - 1) {
+            throw new IOException("Data Access: invalid S3 storage identifier " + storageIdentifier);
+        }
+
+        Dataset dataset = dataFile.getOwner();
+        if (dataset == null || dataset.getAuthority() == null || dataset.getIdentifier() == null) {
+            throw new IOException("Data Access: no parent dataset defined for this datafile");
+        }
+
+        bucketName = storageIdentifier.substring(prefix.length(), separator);
+        key = dataset.getAuthority() + "/" + dataset.getIdentifier() + "/" + storageIdentifier.substring(separator + 1);
+    }
+
+    /**
+     * Uploads a local file: with a single PUT, if it fits in one part;
+     * otherwise in parts, uploadThreads at a time, each one read by the SDK
+     * from its own offset in the file.
+     */
+    private void upload(final Path fileSystemPath, final String destinationKey) throws IOException {
+        final String bucket = getBucketName();
+        final long fileSize = Files.size(fileSystemPath);
+
+        if (fileSize <= partSize) {
+            try {
+                s3.putObject(new PutObjectRequest(bucket, destinationKey, fileSystemPath.toFile()));
+            } catch (AmazonClientException ex) {
+                throw toIOException("S3 object " + destinationKey, ex);
+            }
+            return;
+        }
+
+        multipart(destinationKey, fileSize, new PartTransfer() {
+            @Override
+            public PartETag transfer(String uploadId, int partNumber, long offset, long length) {
+                return s3.uploadPart(new UploadPartRequest()
+                        .withBucketName(bucket)
+                        .withKey(destinationKey)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withFile(fileSystemPath.toFile())
+                        .withFileOffset(offset)
+                        .withPartSize(length)).getPartETag();
+            }
+        });
+    }
+
+    /**
+     * Copies an object, on the server: with a single copy request, up to
+     * 5 GB; in parts, above that.
+     */
+    private void copy(final String sourceKey, final String destinationKey) throws IOException {
+        final String bucket = getBucketName();
+        long objectSize;
+
+        try {
+            objectSize = s3.getObjectMetadata(bucket, sourceKey).getContentLength();
+            if (objectSize <= MAX_SINGLE_COPY_SIZE) {
+                s3.copyObject(bucket, sourceKey, bucket, destinationKey);
+                return;
+            }
+        } catch (AmazonClientException ex) {
+            throw toIOException("S3 object " + sourceKey, ex);
+        }
+
+        multipart(destinationKey, objectSize, new PartTransfer() {
+            @Override
+            public PartETag transfer(String uploadId, int partNumber, long offset, long length) {
+                return s3.copyPart(new CopyPartRequest()
+                        .withSourceBucketName(bucket)
+                        .withSourceKey(sourceKey)
+                        .withDestinationBucketName(bucket)
+                        .withDestinationKey(destinationKey)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withFirstByte(offset)
+                        .withLastByte(offset + length - 1)).getPartETag();
+            }
+        });
+    }
+
+    private interface PartTransfer {
+        public PartETag transfer(String uploadId, int partNumber, long offset, long length);
+    }
+
+    private void multipart(String destinationKey, long size, final PartTransfer partTransfer) throws IOException {
+        String bucket = getBucketName();
+
+        // (no more than 10000 parts; the 5 MB minimum is enforced on the
+        // JVM option, so that the tests can use smaller parts)
+        long thisPartSize = Math.max(partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+        int partCount = (int) ((size + thisPartSize - 1) / thisPartSize);
+
+        final String uploadId;
+        try {
+            uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, destinationKey)).getUploadId();
+        } catch (AmazonClientException ex) {
+            throw toIOException("S3 object " + destinationKey, ex);
+        }
+
+        logger.fine("Multipart upload " + uploadId + " of " + destinationKey + ": " + partCount + " parts, " + (executor == null ? 1 : uploadThreads) + " at a time");
+
+        // (no more than uploadThreads parts submitted at a time, so that one
+        // large file does not take all the threads of the shared executor)
+        LinkedList<Future<PartETag>> inFlight = new LinkedList<>();
+        try {
+            List<PartETag> partETags = new ArrayList<>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                final int partNumber = i + 1;
+                final long offset = i * thisPartSize;
+                final long length = Math.min(thisPartSize, size - offset);
+                if (executor == null) {
+                    partETags.add(partTransfer.transfer(uploadId, partNumber, offset, length));
+                    continue;
+                }
+                if (inFlight.size() >= Math.max(1, uploadThreads)) {
+                    partETags.add(inFlight.removeFirst().get());
+                }
+                inFlight.add(executor.submit(new Callable<PartETag>() {
+                    @Override
+                    public PartETag call() {
+                        return partTransfer.transfer(uploadId, partNumber, offset, length);
+                    }
+                }));
+            }
+            while (!inFlight.isEmpty()) {
+                partETags.add(inFlight.removeFirst().get());
+            }
+
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, destinationKey, uploadId, partETags));
+        } catch (InterruptedException | ExecutionException | RejectedExecutionException | AmazonClientException ex) {
+            Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+            for (Future<PartETag> part : inFlight) {
+                part.cancel(true);
+            }
+            try {
+                s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, destinationKey, uploadId));
+            } catch (AmazonClientException abortEx) {
+                logger.warning("Failed to abort the multipart upload " + uploadId + " of " + destinationKey + ": " + abortEx.getMessage());
+            }
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (cause instanceof AmazonClientException) {
+                throw toIOException("S3 object " + destinationKey, (AmazonClientException) cause);
+            }
+            throw new IOException("Multipart upload of " + destinationKey + " failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static IOException toIOException(String object, AmazonClientException ex) {
+        if (ex instanceof AmazonServiceException && ((AmazonServiceException) ex).getStatusCode() == 404) {
+            FileNotFoundException notFound = new FileNotFoundException(object + " does not exist.");
+            notFound.initCause(ex);
+            return notFound;
+        }
+        return new IOException(object + ": " + ex.getMessage(), ex);
+    }
+
+    private static long getPartSizeOption() {
+        String option = System.getProperty("dataverse.files.s3.part-size-mb");
+        if (option != null && !option.equals("")) {
+            try {
+                return Math.max(Long.parseLong(option) * MB, MIN_PART_SIZE);
+            } catch (NumberFormatException nfe) {
+                logger.warning("Invalid dataverse.files.s3.part-size-mb: " + option);
+            }
+        }
+        return DEFAULT_PART_SIZE;
+    }
+
+    private static int getUploadThreadsOption() {
+        String option = System.getProperty("dataverse.files.s3.upload-threads");
+        if (option != null && !option.equals("")) {
+            try {
+                return Math.max(Integer.parseInt(option), 1);
+            } catch (NumberFormatException nfe) {
+                logger.warning("Invalid dataverse.files.s3.upload-threads: " + option);
+            }
+        }
+        return DEFAULT_UPLOAD_THREADS;
+    }
+
+    // The stream of the object, opened on the first read:
+    private class ObjectInputStream extends InputStream {
+        private InputStream objectContent = null;
+        private boolean closed = false;
+
+        private InputStream getObjectContent() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (objectContent == null) {
+                objectContent = openRange(0, -1);
+            }
+            return objectContent;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return getObjectContent().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return getObjectContent().read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return getObjectContent().skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return objectContent == null ? 0 : objectContent.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            if (objectContent != null) {
+                objectContent.close();
+            }
+        }
+    }
+
+    // A write channel to an object: the bytes go into a temp file, uploaded
+    // when the channel is closed.
+    private class UploadChannel implements WritableByteChannel {
+        private final String destinationKey;
+        private final Path tempFile;
+        private final FileChannel tempChannel;
+
+        UploadChannel(String destinationKey) throws IOException {
+            this.destinationKey = destinationKey;
+            this.tempFile = Files.createTempFile("dataverse-s3-", ".tmp");
+            this.tempChannel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return tempChannel.write(src);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return tempChannel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!tempChannel.isOpen()) {
+                return;
+            }
+            try {
+                tempChannel.close();
+                upload(tempFile, destinationKey);
+                if (destinationKey.equals(getKey())) {
+                    setSize(Files.size(tempFile));
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+}
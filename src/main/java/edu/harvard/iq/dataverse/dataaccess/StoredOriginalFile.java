@@ -70,6 +70,7 @@ public class StoredOriginalFile {
             return null;
         }
 
+        dataAccess.closeInputStream();
         dataAccess.setInputStream(Channels.newInputStream((ReadableByteChannel) storedOriginalChannel));
 
         // Reset the size, filename and the mime type: 
@@ -0,0 +1,284 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Creates the "rotated" (column-wise) image of a tab-delimited file, as used
+ * by {@link TabularSubsetGenerator}: a header of {@code varcount} longs, the
+ * byte offset of the end of each column, followed by the columns, each value
+ * terminated by a new line.
+ *
+ * The tab file is scanned as raw bytes, and the values are copied into
+ * in-memory column buffers. When the buffers hold more than the memory budget
+ * they are all written out, one column after the other, as a segment of a
+ * single spill file. The final image is then assembled column by column,
+ * from that column's part of every segment followed by what is left in its
+ * buffer - the merge step of an external sort. Two files are open at any
+ * time, however many columns there are.
+ *
+ * @see TabularSubsetGenerator#getRotatedImage
+ */
+public class TabularFileTransposer {
+
+    private static final Logger logger = Logger.getLogger(TabularFileTransposer.class.getCanonicalName());
+
+    public static final long DEFAULT_MEMORY_BUDGET = 32 * 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    private static final int MIN_COLUMN_BUFFER = 64;
+
+    private final long memoryBudget;
+
+    private int varcount;
+    private byte[][] columnBuffers;
+    private int[] columnSizes;
+    private long bufferedBytes;
+
+    private FileChannel spillChannel;
+    // for every segment written to the spill file, the length of each column
+    private final List<long[]> spilledSegments = new ArrayList<>();
+    private long[] spilledColumnSizes;
+
+    public TabularFileTransposer() {
+        this(DEFAULT_MEMORY_BUDGET);
+    }
+
+    public TabularFileTransposer(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @param tabfile The tab-delimited file; only the first {@code varcount}
+     * values of the first {@code casecount} lines are used.
+     * @param rotatedImageFile Where to write the image. It is written under a
+     * unique temporary name first, so that an interrupted run does not leave
+     * a truncated image behind, and concurrent runs for the same file do not
+     * get in each other's way.
+     */
+    public void transpose(File tabfile, File rotatedImageFile, int varcount, int casecount) throws IOException {
+        if (varcount < 1) {
+            throw new IOException("Invalid number of variables for the rotated image: " + varcount);
+        }
+        this.varcount = varcount;
+        columnBuffers = new byte[varcount][];
+        columnSizes = new int[varcount];
+        spilledColumnSizes = new long[varcount];
+        bufferedBytes = 0;
+        spilledSegments.clear();
+
+        File spillFile = null;
+        File tempImageFile = null;
+        try {
+            tempImageFile = File.createTempFile(rotatedImageFile.getName(), ".tmp", rotatedImageFile.getAbsoluteFile().getParentFile());
+            spillFile = File.createTempFile("columnBufferFile", "bytes");
+            try (RandomAccessFile spill = new RandomAccessFile(spillFile, "rw")) {
+                spillChannel = spill.getChannel();
+                readColumns(tabfile, casecount);
+                writeImage(tempImageFile);
+            } finally {
+                spillChannel = null;
+            }
+            Files.move(tempImageFile.toPath(), rotatedImageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (spillFile != null) {
+                spillFile.delete();
+            }
+            if (tempImageFile != null) {
+                tempImageFile.delete();
+            }
+            columnBuffers = null;
+        }
+    }
+
+    private void readColumns(File tabfile, int casecount) throws IOException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int caseindex = 0;
+        int varindex = 0;
+        boolean lineStarted = false;
+
+        try (FileInputStream tabfileStream = new FileInputStream(tabfile)) {
+            int readlen;
+            while (caseindex < casecount && (readlen = tabfileStream.read(buffer)) > -1) {
+                int tokenStart = 0;
+                int i = 0;
+                while (i < readlen && caseindex < casecount) {
+                    byte b = buffer[i];
+                    if (b != '\t' && b != '\n') {
+                        i++;
+                        continue;
+                    }
+                    lineStarted = true;
+                    if (varindex < varcount) {
+                        append(varindex, buffer, tokenStart, i - tokenStart);
+                        appendNewLine(varindex);
+                    }
+                    varindex++;
+                    if (b == '\n') {
+                        if (varindex < varcount) {
+                            throw new IOException("Line " + (caseindex + 1) + " of the tab file has fewer than " + varcount + " values");
+                        }
+                        caseindex++;
+                        varindex = 0;
+                        lineStarted = false;
+                    }
+                    tokenStart = ++i;
+                }
+                if (caseindex < casecount && tokenStart < readlen) {
+                    // the value continues in the next chunk
+                    lineStarted = true;
+                    if (varindex < varcount) {
+                        append(varindex, buffer, tokenStart, readlen - tokenStart);
+                    }
+                }
+            }
+        }
+
+        if (caseindex < casecount && lineStarted) {
+            // the last line has no new line at the end
+            if (varindex < varcount - 1) {
+                throw new IOException("Line " + (caseindex + 1) + " of the tab file has fewer than " + varcount + " values");
+            }
+            if (varindex < varcount) {
+                appendNewLine(varindex);
+            }
+            caseindex++;
+        }
+
+        if (caseindex < casecount) {
+            throw new IOException("Tab file has fewer rows than the stored number of cases!");
+        }
+    }
+
+    private void append(int column, byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        ensureCapacity(column, length);
+        System.arraycopy(bytes, offset, columnBuffers[column], columnSizes[column], length);
+        columnSizes[column] += length;
+        bufferedBytes += length;
+    }
+
+    private void appendNewLine(int column) throws IOException {
+        ensureCapacity(column, 1);
+        columnBuffers[column][columnSizes[column]++] = '\n';
+        bufferedBytes++;
+    }
+
+    private void ensureCapacity(int column, int length) throws IOException {
+        if (bufferedBytes + length > memoryBudget && bufferedBytes > 0) {
+            spill();
+        }
+        byte[] columnBuffer = columnBuffers[column];
+        int required = columnSizes[column] + length;
+        if (columnBuffer == null || columnBuffer.length < required) {
+            int capacity = columnBuffer == null ? MIN_COLUMN_BUFFER : columnBuffer.length;
+            while (capacity < required) {
+                capacity = capacity > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : capacity * 2;
+            }
+            byte[] grown = new byte[capacity];
+            if (columnBuffer != null) {
+                System.arraycopy(columnBuffer, 0, grown, 0, columnSizes[column]);
+            }
+            columnBuffers[column] = grown;
+        }
+    }
+
+    /**
+     * Writes all the column buffers to the end of the spill file, as one
+     * segment, with a single gathering write.
+     */
+    private void spill() throws IOException {
+        long[] segment = new long[varcount];
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int varindex = 0; varindex < varcount; varindex++) {
+            segment[varindex] = columnSizes[varindex];
+            if (columnSizes[varindex] > 0) {
+                buffers.add(ByteBuffer.wrap(columnBuffers[varindex], 0, columnSizes[varindex]));
+            }
+        }
+        ByteBuffer[] gathered = buffers.toArray(new ByteBuffer[buffers.size()]);
+        long remaining = bufferedBytes;
+        while (remaining > 0) {
+            remaining -= spillChannel.write(gathered);
+        }
+        spilledSegments.add(segment);
+
+        // keep the buffers for the next segment, unless one column has
+        // grown well beyond its share of the budget
+        long fairShare = Math.max(MIN_COLUMN_BUFFER, memoryBudget / varcount);
+        for (int varindex = 0; varindex < varcount; varindex++) {
+            spilledColumnSizes[varindex] += columnSizes[varindex];
+            columnSizes[varindex] = 0;
+            if (columnBuffers[varindex] != null && columnBuffers[varindex].length > 2 * fairShare) {
+                columnBuffers[varindex] = null;
+            }
+        }
+        logger.fine("spilled segment " + spilledSegments.size() + " (" + bufferedBytes + " bytes)");
+        bufferedBytes = 0;
+    }
+
+    private void writeImage(File imageFile) throws IOException {
+        try (FileOutputStream imageStream = new FileOutputStream(imageFile)) {
+            FileChannel imageChannel = imageStream.getChannel();
+
+            // the offset header: the end of each column vector, counted from
+            // the start of the file (the first vector starts right after the
+            // header)
+            ByteBuffer offsetHeader = ByteBuffer.allocate(varcount * 8);
+            long columnOffset = varcount * 8;
+            for (int varindex = 0; varindex < varcount; varindex++) {
+                columnOffset += spilledColumnSizes[varindex] + columnSizes[varindex];
+                offsetHeader.putLong(columnOffset);
+            }
+            offsetHeader.flip();
+            writeFully(imageChannel, offsetHeader);
+
+            long[] segmentOffsets = new long[spilledSegments.size()];
+            long segmentOffset = 0;
+            for (int s = 0; s < spilledSegments.size(); s++) {
+                segmentOffsets[s] = segmentOffset;
+                for (long columnLength : spilledSegments.get(s)) {
+                    segmentOffset += columnLength;
+                }
+            }
+
+            for (int varindex = 0; varindex < varcount; varindex++) {
+                for (int s = 0; s < spilledSegments.size(); s++) {
+                    long length = spilledSegments.get(s)[varindex];
+                    long position = segmentOffsets[s];
+                    long transferred = 0;
+                    while (transferred < length) {
+                        transferred += spillChannel.transferTo(position + transferred, length - transferred, imageChannel);
+                    }
+                    segmentOffsets[s] += length;
+                }
+                if (columnSizes[varindex] > 0) {
+                    writeFully(imageChannel, ByteBuffer.wrap(columnBuffers[varindex], 0, columnSizes[varindex]));
+                }
+            }
+
+            if (imageChannel.position() != columnOffset) {
+                throw new IOException("Rotated image has " + imageChannel.position() + " bytes instead of the expected " + columnOffset);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
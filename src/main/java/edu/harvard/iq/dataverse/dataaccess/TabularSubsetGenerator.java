@@ -31,9 +31,6 @@ import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.regex.Matcher;
 
 
@@ -56,9 +53,7 @@ public class TabularSubsetGenerator implements SubsetGenerator {
     private static int COLUMN_TYPE_DOUBLE = 3; 
     private static int COLUMN_TYPE_FLOAT = 4; 
     
-    private static int MAX_COLUMN_BUFFER = 8192;
-    
-    private FileChannel fileChannel = null; 
+    private RotatedImageReader imageReader = null; 
     
     private int varcount; 
     private int casecount; 
@@ -66,14 +61,9 @@ public class TabularSubsetGenerator implements SubsetGenerator {
     
     private byte[][] columnEntries = null; 
 
-    
+    // the requested columns of the rotated image, each one positioned at
+    // the next entry to read
     private ByteBuffer[] columnByteBuffers;
-    private int[] columnBufferSizes;
-    private int[] columnBufferOffsets;
-    
-    private long[] columnStartOffsets; 
-    private long[] columnTotalOffsets;
-    private long[] columnTotalLengths;
     
     public TabularSubsetGenerator() {
         
@@ -94,57 +84,38 @@ public class TabularSubsetGenerator implements SubsetGenerator {
             throw new IOException("Subsetting is supported on local files only!");
         }
         
+        if (variables == null || variables.size() < 1 || variables.size() > getVarCount()) {
+            throw new IOException("Illegal number of variables in the subset request");
+        }
+        
         //File tabfile = datafile.getFileSystemLocation().toFile();
         File tabfile = dataAccess.getFileSystemPath().toFile();
         
         File rotatedImageFile = getRotatedImage(tabfile, getVarCount(), getCaseCount());
-        long[] columnEndOffsets = extractColumnOffsets(rotatedImageFile, getVarCount(), getCaseCount()); 
-        
-        fileChannel = (FileChannel.open(Paths.get(rotatedImageFile.getAbsolutePath()), StandardOpenOption.READ));
         
-        if (variables == null || variables.size() < 1 || variables.size() > getVarCount()) {
-            throw new IOException("Illegal number of variables in the subset request");
-        }
+        // the image (its offset table and mapped columns) is shared with the
+        // other requests on the same file, until close()
+        imageReader = RotatedImageReader.acquire(rotatedImageFile, getVarCount());
         
         subsetcount = variables.size();
-        columnTotalOffsets = new long[subsetcount];
-        columnTotalLengths = new long[subsetcount];
         columnByteBuffers = new ByteBuffer[subsetcount];
-
-
-        
-        if (subsetcount == 1) {
-            if (!datafile.getDataTable().getId().equals(variables.get(0).getDataTable().getId())) {
-                throw new IOException("Variable in the subset request does not belong to the datafile.");
-            }
-            dbgLog.fine("single variable subset; setting fileChannel position to "+extractColumnOffset(columnEndOffsets, variables.get(0).getFileOrder()));
-            fileChannel.position(extractColumnOffset(columnEndOffsets, variables.get(0).getFileOrder()));
-            columnTotalLengths[0] = extractColumnLength(columnEndOffsets, variables.get(0).getFileOrder());
-            columnTotalOffsets[0] = 0;
-        } else {
+        if (subsetcount > 1) {
             columnEntries = new byte[subsetcount][];
+        }
 
-            columnBufferSizes = new int[subsetcount];
-            columnBufferOffsets = new int[subsetcount];
-            columnStartOffsets = new long[subsetcount];
-
+        try {
             int i = 0;
             for (DataVariable var : variables) {
                 if (!datafile.getDataTable().getId().equals(var.getDataTable().getId())) {
                     throw new IOException("Variable in the subset request does not belong to the datafile.");
                 }
-                columnByteBuffers[i] = ByteBuffer.allocate(MAX_COLUMN_BUFFER);
-                columnTotalLengths[i] = extractColumnLength(columnEndOffsets, var.getFileOrder());
-                columnStartOffsets[i] = extractColumnOffset(columnEndOffsets, var.getFileOrder());
-                if (columnTotalLengths[i] < MAX_COLUMN_BUFFER) {
-                    columnByteBuffers[i].limit((int)columnTotalLengths[i]);
-                }
-                fileChannel.position(columnStartOffsets[i]);
-                columnBufferSizes[i] = fileChannel.read(columnByteBuffers[i]);
-                columnBufferOffsets[i] = 0;
-                columnTotalOffsets[i] = columnBufferSizes[i];
+                dbgLog.fine("subset column " + i + ": offset " + imageReader.getColumnOffset(var.getFileOrder()));
+                columnByteBuffers[i] = imageReader.getColumn(var.getFileOrder());
                 i++;
             }
+        } catch (IOException ex) {
+            close();
+            throw ex;
         }
     }
     
@@ -165,153 +136,44 @@ public class TabularSubsetGenerator implements SubsetGenerator {
     }
     
     
-    /* 
-     * Note that this method operates on the *absolute* column number, i.e.
-     * the number of the physical column in the tabular file. This is stored
-     * in DataVariable.FileOrder. 
-     * This "column number" should not be confused with the number of column 
-     * in the subset request; a user can request any number of variable 
-     * columns, in an order that doesn't have to follow the physical order
-     * of the columns in the file. 
-    */
-    private long extractColumnOffset(long[] columnEndOffsets, int column) throws IOException {
-        if (columnEndOffsets == null || columnEndOffsets.length <= column) {
-            throw new IOException("Offsets table not initialized; or column out of bounds.");
-        }
-        long columnOffset;
-        
-        if (column > 0) {
-            columnOffset = columnEndOffsets[column - 1];
-        } else {
-            columnOffset = getVarCount() * 8; 
-        }
-        return columnOffset; 
-    }
-    
-    /* 
-     * See the comment for the method above. 
-     */
-    private long extractColumnLength(long[] columnEndOffsets, int column) throws IOException {
-        if (columnEndOffsets == null || columnEndOffsets.length <= column) {
-            throw new IOException("Offsets table not initialized; or column out of bounds.");
-        }
-        long columnLength; 
-        
-        if (column > 0) {
-            columnLength = columnEndOffsets[column] - columnEndOffsets[column - 1];
-        } else {
-            columnLength = columnEndOffsets[0] - varcount * 8;  
-        }
-        
-        return columnLength; 
-    }
-      
-    
-    private void bufferMoreColumnBytes(int column) throws IOException {
-        if (columnTotalOffsets[column] >= columnTotalLengths[column]) {
-            throw new IOException("attempt to buffer bytes past the column boundary");
-        }
-        fileChannel.position(columnStartOffsets[column] + columnTotalOffsets[column]);
-        
-        columnByteBuffers[column].clear();
-        if (columnTotalLengths[column] < columnTotalOffsets[column] + MAX_COLUMN_BUFFER) {
-            dbgLog.fine("Limiting the buffer to "+(columnTotalLengths[column] - columnTotalOffsets[column])+" bytes");
-            columnByteBuffers[column].limit((int) (columnTotalLengths[column] - columnTotalOffsets[column]));
-        }
-        columnBufferSizes[column] = fileChannel.read(columnByteBuffers[column]);
-        dbgLog.fine("Read "+columnBufferSizes[column]+" bytes for subset column "+column);
-        columnBufferOffsets[column] = 0;
-        columnTotalOffsets[column] += columnBufferSizes[column];
-    }
-    
     public byte[] readColumnEntryBytes(int column) {
         return readColumnEntryBytes(column, true);
     }
     
     
     public byte[] readColumnEntryBytes(int column, boolean addTabs) {
-        byte[] leftover = null; 
-        byte[] ret = null; 
+        ByteBuffer columnBuffer = columnByteBuffers[column];
         
-        if (columnBufferOffsets[column] >= columnBufferSizes[column]) {
-            try {
-                bufferMoreColumnBytes(column);
-                if (columnBufferSizes[column] < 1) {
-                    return null;
-                }
-            } catch (IOException ioe) {
-                return null; 
-            }
+        int start = columnBuffer.position();
+        int byteindex = start;
+        int limit = columnBuffer.limit();
+        while (byteindex < limit && columnBuffer.get(byteindex) != '\n') {
+            byteindex++;
         }
-        
-        int byteindex = columnBufferOffsets[column];
-        try {
-            while (columnByteBuffers[column].array()[byteindex] != '\n') {
-                byteindex++;
-                if (byteindex == columnBufferSizes[column]) {
-                    // save the leftover: 
-                    if (leftover == null) {
-                        leftover = new byte[columnBufferSizes[column] - columnBufferOffsets[column]];
-                        System.arraycopy(columnByteBuffers[column].array(), columnBufferOffsets[column], leftover, 0, columnBufferSizes[column] - columnBufferOffsets[column]);
-                    } else {
-                        byte[] merged = new byte[leftover.length + columnBufferSizes[column]];
-                        
-                        System.arraycopy(leftover, 0, merged, 0, leftover.length);
-                        System.arraycopy(columnByteBuffers[column].array(), 0, merged, leftover.length, columnBufferSizes[column]);
-                        leftover = merged;
-                        merged = null; 
-                    }
-                    // read more bytes:
-                    bufferMoreColumnBytes(column);
-                    if (columnBufferSizes[column] < 1) {
-                        return null;
-                    }
-                    byteindex = 0;
-                }
-            }
-
-            // presumably, we have found our '\n':
-            if (leftover == null) {
-                ret = new byte[byteindex - columnBufferOffsets[column] + 1];
-                System.arraycopy(columnByteBuffers[column].array(), columnBufferOffsets[column], ret, 0, byteindex - columnBufferOffsets[column] + 1);
-            } else {
-                ret = new byte[leftover.length + byteindex + 1];
-                System.arraycopy(leftover, 0, ret, 0, leftover.length);
-                System.arraycopy(columnByteBuffers[column].array(), 0, ret, leftover.length, byteindex + 1);
-            }
-
-        } catch (IOException ioe) {
+        if (byteindex == limit) {
+            // no more entries in this column
             return null;
         }
+        
+        byte[] ret = new byte[byteindex - start + 1];
+        columnBuffer.get(ret);
 
-        columnBufferOffsets[column] = (byteindex + 1);
-
-        if (column < columnBufferOffsets.length - 1) {
+        if (column < columnByteBuffers.length - 1) {
             ret[ret.length - 1] = '\t';
         }
         return ret;
     }
     
     public int readSingleColumnSubset(byte[] buffer) throws IOException {
-        if (columnTotalOffsets[0] == columnTotalLengths[0]) {
+        ByteBuffer columnBuffer = columnByteBuffers[0];
+        if (!columnBuffer.hasRemaining()) {
             return -1;
         }
         
-        if (columnByteBuffers[0] == null) {
-            dbgLog.fine("allocating single column subset buffer.");
-            columnByteBuffers[0] = ByteBuffer.allocate(buffer.length);
-        }
-                
-        int bytesread = fileChannel.read(columnByteBuffers[0]);
+        int bytesread = Math.min(buffer.length, columnBuffer.remaining());
+        columnBuffer.get(buffer, 0, bytesread);
         dbgLog.fine("single column subset: read "+bytesread+" bytes.");
-        if (columnTotalOffsets[0] + bytesread > columnTotalLengths[0]) {
-            bytesread = (int)(columnTotalLengths[0] - columnTotalOffsets[0]);
-        }
-        System.arraycopy(columnByteBuffers[0].array(), 0, buffer, 0, bytesread);
-
-        columnTotalOffsets[0] += bytesread;
-        columnByteBuffers[0].clear();
-        return bytesread > 0 ? bytesread : -1;
+        return bytesread;
     }
     
     
@@ -339,12 +201,9 @@ public class TabularSubsetGenerator implements SubsetGenerator {
     
     
     public void close() {
-        if (fileChannel != null) {
-            try {
-                fileChannel.close();
-            } catch (IOException ioe) {
-                // don't care.
-            }
+        if (imageReader != null) {
+            imageReader.release();
+            imageReader = null;
         }
     }
     
@@ -632,20 +491,17 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         }
         
         File rotatedImageFile = getRotatedImage(tabfile, varcount, casecount);
-        long[] columnEndOffsets = extractColumnOffsets(rotatedImageFile, varcount, casecount); 
-        long columnOffset = 0; 
-        long columnLength = 0; 
         
-        if (column > 0) {
-            columnOffset = columnEndOffsets[column - 1];
-            columnLength = columnEndOffsets[column] - columnEndOffsets[column - 1];
-        } else {
-            columnOffset = varcount * 8; 
-            columnLength = columnEndOffsets[0] - varcount * 8;  
+        // the mapped column stays readable after the shared image is released
+        ByteBuffer columnBuffer;
+        RotatedImageReader imageReader = RotatedImageReader.acquire(rotatedImageFile, varcount);
+        try {
+            columnBuffer = imageReader.getColumn(column);
+        } finally {
+            imageReader.release();
         }
+        long columnLength = columnBuffer.remaining(); 
         
-        FileChannel fc = (FileChannel.open(Paths.get(rotatedImageFile.getAbsolutePath()), StandardOpenOption.READ));
-        fc.position(columnOffset);
         int MAX_COLUMN_BUFFER = 8192;
         
         ByteBuffer in = ByteBuffer.allocate(MAX_COLUMN_BUFFER);
@@ -661,7 +517,8 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         byte[] leftover = null; 
         
         while (bytesReadTotal < columnLength) {
-            bytesRead = fc.read(in);
+            bytesRead = in.remaining();
+            columnBuffer.get(in.array(), 0, (int)bytesRead);
             byte[] columnBytes = in.array();
             int bytecount = 0; 
 
@@ -873,8 +730,6 @@ public class TabularSubsetGenerator implements SubsetGenerator {
             }
         }
         
-        fc.close();
-
         if (caseindex != casecount) {
             throw new IOException("Faile to read "+casecount+" tokens for column "+column);
             //System.out.println("read "+caseindex+" tokens instead of expected "+casecount+".");
@@ -883,34 +738,6 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         return retVector; 
     }
     
-    private long[] extractColumnOffsets (File rotatedImageFile, int varcount, int casecount) throws IOException {
-         BufferedInputStream rotfileStream = new BufferedInputStream(new FileInputStream(rotatedImageFile));
-        
-        byte[] offsetHeader = new byte[varcount * 8];
-        long[] byteOffsets = new long[varcount];
-        
-        
-        int readlen = rotfileStream.read(offsetHeader); 
-        
-        if (readlen != varcount * 8) {
-            throw new IOException ("Could not read "+varcount*8+" header bytes from the rotated file.");
-        }
-        
-        for (int varindex = 0; varindex < varcount; varindex++) {
-            byte[] offsetBytes = new byte[8];
-            System.arraycopy(offsetHeader, varindex*8, offsetBytes, 0, 8);
-           
-            ByteBuffer offsetByteBuffer = ByteBuffer.wrap(offsetBytes);
-            byteOffsets[varindex] = offsetByteBuffer.getLong();
-            
-            //System.out.println(byteOffsets[varindex]);
-        }
-        
-        rotfileStream.close(); 
-        
-        return byteOffsets; 
-    }
-    
     private File getRotatedImage(File tabfile, int varcount, int casecount)  throws IOException {
         String fileName = tabfile.getAbsolutePath();
         String rotatedImageFileName = fileName + ".90d";
@@ -924,177 +751,26 @@ public class TabularSubsetGenerator implements SubsetGenerator {
         
     }
     
+    /**
+     * Deletes the rotated image generated for a (temp) tab file, if any. 
+     */
+    public static void discardRotatedImage(File tabfile) {
+        try {
+            RotatedImageReader.discard(new File(tabfile.getAbsolutePath() + ".90d"));
+        } catch (IOException ioex) {
+            dbgLog.warning("Failed to delete the rotated image of " + tabfile.getAbsolutePath());
+        }
+    }
+    
     private File generateRotatedImage (File tabfile, int varcount, int casecount) throws IOException {
         // TODO: throw exceptions if bad file, zero varcount, etc. ...
         
         String fileName = tabfile.getAbsolutePath();
         String rotatedImageFileName = fileName + ".90d";
+        File rotatedImageFile = new File(rotatedImageFileName);
         
-        int MAX_OUTPUT_STREAMS = 32;
-        int MAX_BUFFERED_BYTES = 10 * 1024 * 1024; // 10 MB - for now?
-        int MAX_COLUMN_BUFFER = 8 * 1024; 
-        
-        // offsetHeader will contain the byte offsets of the individual column 
-        // vectors in the final rotated image file
-        byte[] offsetHeader = new byte[varcount * 8];
-        int[] bufferedSizes = new int[varcount];
-        long[] cachedfileSizes = new long[varcount];
-        File[] columnTempFiles = new File[varcount];
-        
-        for (int i = 0; i < varcount; i++) {
-            bufferedSizes[i] = 0; 
-            cachedfileSizes[i] = 0;
-        }
-        
-        // TODO: adjust MAX_COLUMN_BUFFER here, so that the total size is 
-        // no more than MAX_BUFFERED_BYTES (but no less than 1024 maybe?)
-        
-        byte[][] bufferedColumns = new byte [varcount][MAX_COLUMN_BUFFER];
-        
-        // read the tab-delimited file: 
-        
-        FileInputStream tabfileStream = new FileInputStream(tabfile);
-        
-        Scanner scanner = new Scanner(tabfileStream);
-        scanner.useDelimiter("\\n");
-        
-        for (int caseindex = 0; caseindex < casecount; caseindex++) {
-            if (scanner.hasNext()) {
-                String[] line = (scanner.next()).split("\t", -1);
-                // TODO: throw an exception if there are fewer tab-delimited 
-                // tokens than the number of variables specified. 
-                String token = "";
-                int tokensize = 0; 
-                for (int varindex = 0; varindex < varcount; varindex++) {
-                    // TODO: figure out the safest way to convert strings to 
-                    // bytes here. Is it going to be safer to use getBytes("UTF8")?
-                    // we are already making the assumption that the values 
-                    // in the tab file are in UTF8. -- L.A.
-                    token = line[varindex] + "\n";
-                    tokensize = token.getBytes().length;
-                    if (bufferedSizes[varindex]+tokensize > MAX_COLUMN_BUFFER) {
-                        // fill the buffer and dump its contents into the temp file:
-                        // (do note that there may be *several* MAX_COLUMN_BUFFERs
-                        // worth of bytes in the token!)
-                        
-                        int tokenoffset = 0; 
-
-                        if (bufferedSizes[varindex] != MAX_COLUMN_BUFFER) {
-                            tokenoffset = MAX_COLUMN_BUFFER-bufferedSizes[varindex];
-                            System.arraycopy(token.getBytes(), 0, bufferedColumns[varindex], bufferedSizes[varindex], tokenoffset);
-                        } // (otherwise the buffer is already full, and we should 
-                          // simply dump it into the temp file, without adding any 
-                          // extra bytes to it)
-                        
-                        File bufferTempFile = columnTempFiles[varindex]; 
-                        if (bufferTempFile == null) {
-                            bufferTempFile = File.createTempFile("columnBufferFile", "bytes");
-                            columnTempFiles[varindex] = bufferTempFile; 
-                        } 
-                        
-                        // *append* the contents of the buffer to the end of the
-                        // temp file, if already exists:
-                        BufferedOutputStream outputStream = new BufferedOutputStream(new FileOutputStream (bufferTempFile, true));
-                        outputStream.write(bufferedColumns[varindex], 0, MAX_COLUMN_BUFFER);
-                        cachedfileSizes[varindex] += MAX_COLUMN_BUFFER;
-                        
-                        // keep writing MAX_COLUMN_BUFFER-size chunks of bytes into 
-                        // the temp file, for as long as there's more than MAX_COLUMN_BUFFER
-                        // bytes left in the token:
-                        
-                        while (tokensize - tokenoffset > MAX_COLUMN_BUFFER) {
-                            outputStream.write(token.getBytes(), tokenoffset, MAX_COLUMN_BUFFER);
-                            cachedfileSizes[varindex] += MAX_COLUMN_BUFFER;
-                            tokenoffset += MAX_COLUMN_BUFFER;
-                        }
-                        
-                        outputStream.close();
-                        
-                        // buffer the remaining bytes and reset the buffered 
-                        // byte counter: 
-                        
-                        System.arraycopy(token.getBytes(), 
-                                tokenoffset, 
-                                bufferedColumns[varindex], 
-                                0,
-                                tokensize - tokenoffset); 
-                        
-                        bufferedSizes[varindex] = tokensize - tokenoffset; 
-                        
-                    } else {
-                        // continue buffering
-                        System.arraycopy(token.getBytes(), 0, bufferedColumns[varindex], bufferedSizes[varindex], tokensize);
-                        bufferedSizes[varindex] += tokensize; 
-                    }
-                }
-            } else {
-                scanner.close();
-                throw new IOException("Tab file has fewer rows than the stored number of cases!");
-            }
-            
-        }
-        
-        // OK, we've created the individual byte vectors of the tab file columns;
-        // they may be partially saved in temp files and/or in memory.
-        // We now need to go through all these buffers and create the final 
-        // rotated image file. 
-        
-        BufferedOutputStream finalOut = new BufferedOutputStream(new FileOutputStream (new File(rotatedImageFileName)));
-        
-        // but first we should create the offset header and write it out into 
-        // the final file; because it should be at the head, doh!
-        
-        long columnOffset = varcount * 8;
-        // (this is the offset of the first column vector; it is equal to the
-        // size of the offset header, i.e. varcount * 8 bytes)
-      
-        for (int varindex = 0; varindex < varcount; varindex++) {
-            long totalColumnBytes = cachedfileSizes[varindex] + bufferedSizes[varindex];
-            columnOffset+=totalColumnBytes;
-            //totalColumnBytes;
-            byte[] columnOffsetByteArray = ByteBuffer.allocate(8).putLong(columnOffset).array();
-            System.arraycopy(columnOffsetByteArray, 0, offsetHeader, varindex * 8, 8);
-        }
-        
-        finalOut.write(offsetHeader, 0, varcount * 8);
-        
-        for (int varindex = 0; varindex < varcount; varindex++) {
-            long cachedBytesRead = 0; 
-            
-            // check if there is a cached temp file:
-            
-            File cachedTempFile = columnTempFiles[varindex]; 
-            if (cachedTempFile != null) {
-                byte[] cachedBytes = new byte[MAX_COLUMN_BUFFER];
-                BufferedInputStream cachedIn = new BufferedInputStream(new FileInputStream(cachedTempFile));
-                int readlen = 0; 
-                while ((readlen = cachedIn.read(cachedBytes)) > -1) {
-                    finalOut.write(cachedBytes, 0, readlen);
-                    cachedBytesRead += readlen;
-                }
-                cachedIn.close();
-                // delete the temp file: 
-                cachedTempFile.delete();
-                
-            }
-            
-            if (cachedBytesRead != cachedfileSizes[varindex]) {
-                finalOut.close();
-                throw new IOException("Could not read the correct number of bytes cached for column "+varindex+"; "+
-                        cachedfileSizes[varindex] + " bytes expected, "+cachedBytesRead+" read.");
-            }
-            
-            // then check if there are any bytes buffered for this column:
-            
-            if (bufferedSizes[varindex] > 0) {
-                finalOut.write(bufferedColumns[varindex], 0, bufferedSizes[varindex]);
-            }
-            
-        }
-        
-        finalOut.close();
-        return new File(rotatedImageFileName);
-
+        new TabularFileTransposer().transpose(tabfile, rotatedImageFile, varcount, casecount);
+        return rotatedImageFile;
     }
   
     /*
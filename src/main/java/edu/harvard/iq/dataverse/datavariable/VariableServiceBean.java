@@ -53,6 +53,24 @@ public class VariableServiceBean {
          return query.getResultList();
     }
     
+    /**
+     * Like {@link #findByDataTableId(java.lang.Long)}, but the summary
+     * statistics, categories and invalid ranges of all the variables are
+     * read along with them - one query per kind, for the whole table - 
+     * rather than one variable at a time, when first accessed. For the 
+     * metadata exports, that go through all of them. 
+     */
+    public List<DataVariable> findByDataTableIdWithMetadata(Long dtId) {
+         Query query = em.createQuery("select object(o) from DataVariable as o where o.dataTable.id =:dtId order by o.fileOrder");
+         query.setParameter("dtId", dtId);
+         query.setHint("eclipselink.batch.type", "IN");
+         query.setHint("eclipselink.batch.size", "1000");
+         query.setHint("eclipselink.batch", "o.summaryStatistics");
+         query.setHint("eclipselink.batch", "o.categories");
+         query.setHint("eclipselink.batch", "o.invalidRanges");
+         return query.getResultList();
+    }
+    
     /* 
      * This is awful!
      * TODO: stop keeping format types in the database!
@@ -0,0 +1,200 @@
+package edu.harvard.iq.dataverse.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * How long the commands submitted to the engine take, per command class,
+ * split into checking the permissions of the affected objects and executing
+ * the command. The execution time of a command includes the commands it
+ * submits itself; these are counted as nested submits of the command. Kept
+ * since the application started.
+ *
+ * @see edu.harvard.iq.dataverse.EjbDataverseEngine#submit(edu.harvard.iq.dataverse.engine.command.Command)
+ */
+public class CommandMetrics {
+
+    /**
+     * The upper bounds of the histogram buckets, in milliseconds.
+     */
+    static final long[] BUCKETS_MILLIS = {1, 5, 10, 50, 100, 500, 1000, 5000, 10000};
+
+    private static final CommandMetrics INSTANCE = new CommandMetrics();
+
+    private final ConcurrentMap<String, Stats> commands = new ConcurrentHashMap<>();
+
+    CommandMetrics() {
+    }
+
+    public static CommandMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param command The class name of the command.
+     * @param nested Whether the command was submitted by another command.
+     * @param permissionChecks The number of objects whose permissions were
+     * checked.
+     * @param permissionNanos Time taken checking the permissions.
+     * @param executed Whether the command was executed, i.e. passed the
+     * permission checks.
+     * @param executeNanos Time taken executing the command.
+     * @param failed Whether the command was denied, or failed.
+     */
+    public void record(String command, boolean nested, int permissionChecks, long permissionNanos, boolean executed, long executeNanos, boolean failed) {
+        Stats stats = stats(command);
+        stats.count.increment();
+        if (nested) {
+            stats.nestedCount.increment();
+        }
+        if (failed) {
+            stats.failures.increment();
+        }
+        stats.permissionChecks.add(permissionChecks);
+        stats.permission.record(permissionNanos);
+        if (executed) {
+            stats.execute.record(executeNanos);
+        }
+    }
+
+    /**
+     * Counts a command submitted while {@code command} was executing.
+     */
+    public void recordNestedSubmit(String command) {
+        stats(command).nestedSubmits.increment();
+    }
+
+    public void clear() {
+        commands.clear();
+    }
+
+    /**
+     * @return The metrics of every command class, the ones that took the
+     * most time altogether first.
+     */
+    public JsonArrayBuilder toJson() {
+        // the totals keep changing while they are sorted, and commands may
+        // be cleared: sort on a copy of them
+        List<Total> totals = new ArrayList<>();
+        for (Map.Entry<String, Stats> entry : commands.entrySet()) {
+            totals.add(new Total(entry.getKey(), entry.getValue()));
+        }
+        Collections.sort(totals, new Comparator<Total>() {
+            @Override
+            public int compare(Total o1, Total o2) {
+                return Long.compare(o2.nanos, o1.nanos);
+            }
+        });
+        JsonArrayBuilder json = Json.createArrayBuilder();
+        for (Total total : totals) {
+            Stats stats = total.stats;
+            json.add(Json.createObjectBuilder()
+                    .add("command", total.command)
+                    .add("count", stats.count.sum())
+                    .add("failures", stats.failures.sum())
+                    .add("nestedCount", stats.nestedCount.sum())
+                    .add("nestedSubmits", stats.nestedSubmits.sum())
+                    .add("permissionChecks", stats.permissionChecks.sum())
+                    .add("totalMillis", total.nanos / 1000000)
+                    .add("permission", stats.permission.toJson())
+                    .add("execute", stats.execute.toJson()));
+        }
+        return json;
+    }
+
+    private Stats stats(String command) {
+        Stats stats = commands.get(command);
+        if (stats == null) {
+            Stats created = new Stats();
+            stats = commands.putIfAbsent(command, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * The total time of a command class, when the metrics were read.
+     */
+    private static class Total {
+
+        final String command;
+        final Stats stats;
+        final long nanos;
+
+        Total(String command, Stats stats) {
+            this.command = command;
+            this.stats = stats;
+            this.nanos = stats.totalNanos();
+        }
+    }
+
+    private static class Stats {
+
+        final LongAdder count = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder nestedCount = new LongAdder();
+        final LongAdder nestedSubmits = new LongAdder();
+        final LongAdder permissionChecks = new LongAdder();
+        final Timer permission = new Timer();
+        final Timer execute = new Timer();
+
+        long totalNanos() {
+            return permission.nanos.sum() + execute.nanos.sum();
+        }
+    }
+
+    private static class Timer {
+
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        // not cumulative; the ones slower than the last bucket are only in count
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_MILLIS.length);
+
+        void record(long elapsedNanos) {
+            count.increment();
+            nanos.add(elapsedNanos);
+            long max = maxNanos.get();
+            while (elapsedNanos > max && !maxNanos.compareAndSet(max, elapsedNanos)) {
+                max = maxNanos.get();
+            }
+            for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+                if (elapsedNanos <= BUCKETS_MILLIS[i] * 1000000) {
+                    buckets.incrementAndGet(i);
+                    break;
+                }
+            }
+        }
+
+        JsonObjectBuilder toJson() {
+            long n = count.sum();
+            JsonObjectBuilder histogram = Json.createObjectBuilder();
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS_MILLIS.length; i++) {
+                cumulative += buckets.get(i);
+                histogram.add("le" + BUCKETS_MILLIS[i] + "ms", cumulative);
+            }
+            histogram.add("all", Math.max(n, cumulative));
+            return Json.createObjectBuilder()
+                    .add("count", n)
+                    .add("totalMillis", nanos.sum() / 1000000)
+                    .add("meanMillis", n == 0 ? 0 : nanos.sum() / 1e6 / n)
+                    .add("maxMillis", maxNanos.get() / 1e6)
+                    .add("histogram", histogram);
+        }
+    }
+
+}
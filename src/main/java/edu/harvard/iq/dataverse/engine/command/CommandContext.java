@@ -19,6 +19,7 @@ import edu.harvard.iq.dataverse.GuestbookResponseServiceBean;
 import edu.harvard.iq.dataverse.GuestbookServiceBean;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.PermissionServiceBean;
+import edu.harvard.iq.dataverse.PostPublishServiceBean;
 import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
 import edu.harvard.iq.dataverse.search.SearchServiceBean;
 import edu.harvard.iq.dataverse.TemplateServiceBean;
@@ -98,4 +99,6 @@ public interface CommandContext {
     public UserNotificationServiceBean notifications();
     
     public AuthenticationServiceBean authentication();
+
+    public PostPublishServiceBean postPublish();
 }
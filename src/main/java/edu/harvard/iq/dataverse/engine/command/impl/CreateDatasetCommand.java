@@ -46,6 +46,8 @@ public class CreateDatasetCommand extends AbstractCommand<Dataset> {
     // TODO: rather than have a boolean, create a sub-command for creating a dataset during import
     private final ImportUtil.ImportType importType;
     private final Template template;
+    // false when a batch import indexes all the new datasets at the end
+    private final boolean indexDataset;
 
     public CreateDatasetCommand(Dataset theDataset, DataverseRequest aRequest) {
         super(aRequest, theDataset.getOwner());
@@ -53,6 +55,7 @@ public class CreateDatasetCommand extends AbstractCommand<Dataset> {
         this.registrationRequired = false;
         this.importType=null;
         this.template=null;
+        this.indexDataset=true;
     }
 
     public CreateDatasetCommand(Dataset theDataset, DataverseRequest aRequest, boolean registrationRequired) {
@@ -61,14 +64,20 @@ public class CreateDatasetCommand extends AbstractCommand<Dataset> {
         this.registrationRequired = registrationRequired;
         this.importType=null;
         this.template=null;
+        this.indexDataset=true;
     }
     
     public CreateDatasetCommand(Dataset theDataset, DataverseRequest aRequest, boolean registrationRequired, ImportUtil.ImportType importType) {
+        this(theDataset, aRequest, registrationRequired, importType, true);
+    }
+    
+    public CreateDatasetCommand(Dataset theDataset, DataverseRequest aRequest, boolean registrationRequired, ImportUtil.ImportType importType, boolean indexDataset) {
         super(aRequest, theDataset.getOwner());
         this.theDataset = theDataset;
         this.registrationRequired = registrationRequired;
         this.importType=importType;
         this.template=null;
+        this.indexDataset=indexDataset;
     }
     
     public CreateDatasetCommand(Dataset theDataset, DataverseRequest aRequest, boolean registrationRequired, ImportUtil.ImportType importType, Template template) {
@@ -77,6 +86,7 @@ public class CreateDatasetCommand extends AbstractCommand<Dataset> {
         this.registrationRequired = registrationRequired;
         this.importType=importType;
         this.template=template;
+        this.indexDataset=true;
     }
     
     @Override
@@ -189,15 +199,17 @@ public class CreateDatasetCommand extends AbstractCommand<Dataset> {
             ctxt.templates().incrementUsageCount(template.getId());
         }
 
-        try {
-            /**
-             * @todo Do something with the result. Did it succeed or fail?
-             */
-            boolean doNormalSolrDocCleanUp = true;
-            ctxt.index().indexDataset(savedDataset, doNormalSolrDocCleanUp);
+        if (indexDataset) {
+            try {
+                /**
+                 * @todo Do something with the result. Did it succeed or fail?
+                 */
+                boolean doNormalSolrDocCleanUp = true;
+                ctxt.index().indexDataset(savedDataset, doNormalSolrDocCleanUp);
 
-        } catch ( RuntimeException e ) {
-            logger.log(Level.WARNING, "Exception while indexing:" + e.getMessage(), e);
+            } catch ( RuntimeException e ) {
+                logger.log(Level.WARNING, "Exception while indexing:" + e.getMessage(), e);
+            }
         }
           logger.log(Level.FINE, "after index {0}", formatter.format(new Date().getTime()));      
         
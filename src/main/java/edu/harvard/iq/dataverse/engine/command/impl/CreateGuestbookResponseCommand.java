@@ -31,7 +31,7 @@ public class CreateGuestbookResponseCommand extends AbstractVoidCommand  {
     protected void executeImpl(CommandContext ctxt) throws CommandException {
        Timestamp createDate = new Timestamp(new Date().getTime());
        response.setResponseTime(createDate);
-       ctxt.responses().save(response);
+       ctxt.responses().record(response);
     }
     
 }
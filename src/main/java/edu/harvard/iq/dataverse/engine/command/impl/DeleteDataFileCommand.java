@@ -13,15 +13,11 @@ import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandExecutionException;
 import edu.harvard.iq.dataverse.engine.command.exception.PermissionException;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.commons.lang.StringUtils;
 
 /**
  * Deletes a data file, both DB entity and filesystem object.
@@ -73,9 +69,6 @@ public class DeleteDataFileCommand extends AbstractVoidCommand {
         // trying to remove the object from the database:
         
         
-        // TODO: !!
-        // The code below assumes all the files are stored locally, on the filesystem!
-        // -- L.A. 4.0.2
         logger.log(Level.FINE, "Delete command called on an unpublished DataFile {0}", doomed.getId());
         String fileSystemName = doomed.getStorageIdentifier();
         logger.log(Level.FINE, "Storage identifier for the file: {0}", fileSystemName);
@@ -118,12 +111,6 @@ public class DeleteDataFileCommand extends AbstractVoidCommand {
             
             logger.log(Level.FINE, "Successfully deleted physical storage object (file) for the DataFile {0}", doomed.getId());
             
-            // Destroy the dataAccess object - we will need to purge the 
-            // DataFile from the database (below), so we don't want to have any
-            // objects in this transaction that reference it:
-            
-            dataAccess = null; 
-            
             // We may also have a few extra files associated with this object - 
             // preserved original that was used in the tabular data ingest, 
             // cached R data frames, image thumbnails, etc.
@@ -132,37 +119,35 @@ public class DeleteDataFileCommand extends AbstractVoidCommand {
             // auxiliary files, we'll just leave an error message in the 
             // log file and proceed deleting the database object.
             
-            // Note that the assumption here is that all these auxiliary 
-            // files - saved original, cached format conversions, etc., are
-            // all stored on the physical filesystem locally. 
-            // TODO: revisit and review this assumption! -- L.A. 4.0
+            // They are all stored as the aux objects of the file, by the 
+            // same storage driver: 
             
-            List<Path> victims = new ArrayList<>();
-
-            // 1. preserved original: 
-            Path filePath = doomed.getSavedOriginalFile();
-            if (filePath != null) {
-                victims.add(filePath);
+            try {
+                dataAccess.deleteAllAuxObjects();
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, "Error deleting the auxiliary objects while deleting DataFile {0}: {1}", new Object[]{doomed.getName(), ex.getMessage()});
             }
-
-            // 2. Cached files: 
-            victims.addAll(listCachedFiles(doomed));
-
-            // Delete them all: 
-            List<String> failures = new ArrayList<>();
-            for (Path deadFile : victims) {
-                try {
-                    logger.log(Level.FINE, "Deleting cached file {0}", deadFile.toString());
-                    Files.delete(deadFile);
-                } catch (IOException ex) {
-                    failures.add(deadFile.toString());
+            
+            // (except for the preserved originals saved as "_<file name>", 
+            // by the older versions, on the filesystem):
+            
+            if (dataAccess.isLocalFile()) {
+                Path filePath = doomed.getSavedOriginalFile();
+                if (filePath != null) {
+                    try {
+                        logger.log(Level.FINE, "Deleting saved original {0}", filePath.toString());
+                        Files.delete(filePath);
+                    } catch (IOException ex) {
+                        logger.log(Level.SEVERE, "Error deleting physical file {0} while deleting DataFile {1}", new Object[]{filePath.toString(), doomed.getName()});
+                    }
                 }
             }
-
-            if (!failures.isEmpty()) {
-                String failedFiles = StringUtils.join(failures, ",");
-                Logger.getLogger(DeleteDataFileCommand.class.getName()).log(Level.SEVERE, "Error deleting physical file(s) {0} while deleting DataFile {1}", new Object[]{failedFiles, doomed.getName()});
-            }
+            
+            // Destroy the dataAccess object - we will need to purge the 
+            // DataFile from the database (below), so we don't want to have any
+            // objects in this transaction that reference it:
+            
+            dataAccess = null; 
                     
             DataFile doomedAndMerged = ctxt.em().merge(doomed);
             ctxt.em().remove(doomedAndMerged);
@@ -191,36 +176,4 @@ public class DeleteDataFileCommand extends AbstractVoidCommand {
 
     }
 
-    private List<Path> listCachedFiles(DataFile dataFile) {
-        List<Path> victims = new ArrayList<>();
-
-        // cached files for a given datafiles are stored on the filesystem
-        // as <filesystemname>.*; for example, <filename>.thumb64 or 
-        // <filename>.RData.
-        final String baseName = dataFile.getStorageIdentifier();
-
-        if (baseName == null || baseName.equals("")) {
-            return null;
-        }
-
-        Path datasetDirectory = dataFile.getOwner().getFileSystemDirectory();
-
-        DirectoryStream.Filter<Path> filter = new DirectoryStream.Filter<Path>() {
-            @Override
-            public boolean accept(Path file) throws IOException {
-                return (file.getFileName() != null
-                        && file.getFileName().toString().startsWith(baseName + "."));
-            }
-        };
-
-        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(datasetDirectory, filter)) {
-            for (Path filePath : dirStream) {
-                victims.add(filePath);
-            }
-        } catch (IOException ex) {
-        }
-
-        return victims;
-    }
-
 }
@@ -2,6 +2,7 @@ package edu.harvard.iq.dataverse.engine.command.impl;
 
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DataverseFieldTypeInputLevel;
+import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.authorization.DataverseRole;
 import edu.harvard.iq.dataverse.RoleAssignment;
 import edu.harvard.iq.dataverse.authorization.Permission;
@@ -14,6 +15,7 @@ import edu.harvard.iq.dataverse.engine.command.RequiredPermissionsMap;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.exception.IllegalCommandException;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Deletes a {@link Dataverse} - but only if it is empty.
@@ -75,10 +77,16 @@ public class DeleteDataverseCommand extends AbstractVoidCommand {
             ctxt.em().remove(merged);
         }
         doomed.setDataverseFieldTypeInputLevels(new ArrayList());
+        // the dataverse's card in the dataverses above it and in the ones it
+        // is linked into (the links go with it)
+        List<DvObject> guestSearchesToInvalidate = new ArrayList<>();
+        guestSearchesToInvalidate.add(doomed);
+        guestSearchesToInvalidate.addAll(ctxt.dvLinking().findLinkingDataverses(doomed.getId()));
         // DATAVERSE
         Dataverse doomedAndMerged = ctxt.em().merge(doomed);
         ctxt.em().remove(doomedAndMerged);
         // Remove from index        
         ctxt.index().delete(doomed);
+        ctxt.search().invalidateGuestSearchesAfterCommit(guestSearchesToInvalidate);
     }
 }
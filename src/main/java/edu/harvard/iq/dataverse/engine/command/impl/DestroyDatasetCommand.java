@@ -3,6 +3,7 @@ package edu.harvard.iq.dataverse.engine.command.impl;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.authorization.DataverseRole;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.RoleAssignment;
@@ -87,6 +88,11 @@ public class DestroyDatasetCommand extends AbstractVoidCommand {
         }
 
         Dataverse toReIndex = managedDoomed.getOwner();
+        // the dataset's cards in the dataverses above it and in the ones it is
+        // linked into (the links go with it)
+        List<DvObject> guestSearchesToInvalidate = new ArrayList<>();
+        guestSearchesToInvalidate.add(managedDoomed);
+        guestSearchesToInvalidate.addAll(ctxt.dsLinking().findLinkingDataverses(doomed.getId()));
 
         // dataset
         ctxt.em().remove(managedDoomed);
@@ -102,6 +108,7 @@ public class DestroyDatasetCommand extends AbstractVoidCommand {
         logger.log(Level.FINE, "Result of attempt to delete dataset and file IDs from the search index: {0}", resultOfSolrDeletionAttempt.getMessage());
 
         ctxt.index().indexDataverse(toReIndex);
+        ctxt.search().invalidateGuestSearchesAfterCommit(guestSearchesToInvalidate);
     }
 
 }
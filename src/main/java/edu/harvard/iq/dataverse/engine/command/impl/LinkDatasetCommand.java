@@ -15,6 +15,7 @@ import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.Date;
 
 /**
@@ -43,6 +44,7 @@ public class LinkDatasetCommand extends AbstractCommand<DatasetLinkingDataverse>
         ctxt.em().flush();
         boolean doNormalSolrDocCleanUp = true;
         ctxt.index().indexDataset(linkedDataset, doNormalSolrDocCleanUp);
+        ctxt.search().invalidateGuestSearchesAfterCommit(Collections.singletonList(linkingDataverse));
         return datasetLinkingDataverse;
     }  
 }
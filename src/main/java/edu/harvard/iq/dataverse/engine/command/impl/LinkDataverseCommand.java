@@ -14,6 +14,7 @@ import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.Date;
 
 /**
@@ -40,6 +41,8 @@ public class LinkDataverseCommand extends AbstractCommand<DataverseLinkingDatave
         dataverseLinkingDataverse.setLinkCreateTime(new Timestamp(new Date().getTime()));
         ctxt.dvLinking().save(dataverseLinkingDataverse);
         ctxt.index().indexDataverse(linkedDataverse);
+        // the linked dataverse now shows up in the searches of the linking one
+        ctxt.search().invalidateGuestSearchesAfterCommit(Collections.singletonList(linkingDataverse));
         return dataverseLinkingDataverse;
     }   
 }
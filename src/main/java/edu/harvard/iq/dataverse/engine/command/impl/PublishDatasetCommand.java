@@ -12,8 +12,6 @@ import edu.harvard.iq.dataverse.DatasetFieldConstant;
 import edu.harvard.iq.dataverse.DatasetVersionUser;
 import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.Dataverse;
-import edu.harvard.iq.dataverse.RoleAssignment;
-import edu.harvard.iq.dataverse.UserNotification;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.engine.command.AbstractCommand;
@@ -22,13 +20,9 @@ import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.engine.command.RequiredPermissions;
 import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.exception.IllegalCommandException;
-import edu.harvard.iq.dataverse.search.IndexResponse;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
-import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.Date;
-import java.util.List;
-import java.util.ResourceBundle;
 
 /**
  *
@@ -67,56 +61,28 @@ public class PublishDatasetCommand extends AbstractCommand<Dataset> {
         if (minorRelease && !theDataset.getLatestVersion().isMinorUpdate()) {
             throw new IllegalCommandException("Cannot release as minor version. Re-try as major release.", this);
         }
-        /* make an attempt to register if not registered */
+        if (theDataset.isLocked()) {
+            throw new IllegalCommandException("This dataset is locked: " + theDataset.getDatasetLock().getInfo(), this);
+        }
+        /* make an attempt to register if not registered; it is made public after publishing */
         String nonNullDefaultIfKeyNotFound = "";
         String protocol = theDataset.getProtocol();
         String doiProvider = ctxt.settings().getValueForKey(SettingsServiceBean.Key.DoiProvider, nonNullDefaultIfKeyNotFound);
-        String authority = theDataset.getAuthority();
-        if (theDataset.getGlobalIdCreateTime() == null) {
-            if (protocol.equals("doi")
-                    && (doiProvider.equals("EZID") || doiProvider.equals("DataCite"))) {
-                String doiRetString = "";
-                if (doiProvider.equals("EZID")) {
-                    doiRetString = ctxt.doiEZId().createIdentifier(theDataset);
-                    if (doiRetString.contains(theDataset.getIdentifier())) {
-                        theDataset.setGlobalIdCreateTime(new Timestamp(new Date().getTime()));
-                    } else if (doiRetString.contains("identifier already exists")) {
-                        theDataset.setIdentifier(ctxt.datasets().generateIdentifierSequence(protocol, authority, theDataset.getDoiSeparator()));
-                        doiRetString = ctxt.doiEZId().createIdentifier(theDataset);
-                        if (!doiRetString.contains(theDataset.getIdentifier())) {
-                            throw new IllegalCommandException("This dataset may not be published because its identifier is already in use by another dataset. Please contact Dataverse Support for assistance.", this);
-                        } else {
-                            theDataset.setGlobalIdCreateTime(new Timestamp(new Date().getTime()));
-                        }
-                    } else {
-                        throw new IllegalCommandException("This dataset may not be published because it has not been registered. Please contact Dataverse Support for assistance.", this);
-                    }
-                } else {
-                    throw new IllegalCommandException("This dataset may not be published because its DOI provider is not supported. Please contact Dataverse Support for assistance.", this);
-                }
-            } else if (protocol.equals("hdl") && doiProvider.equals("IISH")) {
-                if (ctxt.pidWebservice().pidExists(theDataset)) {
-                    final String identifier = ctxt.datasets().generateIdentifierSequence(protocol, authority, theDataset.getDoiSeparator());
-                    theDataset.setIdentifier(identifier);
-                    if (ctxt.pidWebservice().pidExists(theDataset)) {
-                        throw new IllegalCommandException("This dataset may not be published because it has not been registered. Please contact thedata.org for assistance.", this);
-                    }
-                }
-                theDataset.setGlobalIdCreateTime(new Timestamp(new Date().getTime()));
-            }
+        if (theDataset.getGlobalIdCreateTime() == null
+                && protocol.equals("doi") && doiProvider.equals("DataCite")) {
+            throw new IllegalCommandException("This dataset may not be published because its DOI provider is not supported. Please contact Dataverse Support for assistance.", this);
         }
-        
+        try {
+            // (an identifier in use is replaced here, while it is not public yet)
+            ctxt.postPublish().reservePid(theDataset);
+        } catch (Exception e) {
+            throw new IllegalCommandException("This dataset may not be published because its identifier could not be registered (" + e.getMessage() + "). Please contact Dataverse Support for assistance.", this);
+        }
+
+        // the post-publish notifications find the new files by this time
+        Timestamp updateTime = new Timestamp(new Date().getTime());
         if (theDataset.getPublicationDate() == null) {
-            //Before setting dataset to released send notifications to users with download file
-            List<RoleAssignment> ras = ctxt.roles().directRoleAssignments(theDataset);
-            for (RoleAssignment ra : ras) {
-                if (ra.getRole().permissions().contains(Permission.DownloadFile)) {
-                    for (AuthenticatedUser au : ctxt.roleAssignees().getExplicitUsers(ctxt.roleAssignees().getRoleAssignee(ra.getAssigneeIdentifier()))) {
-                        ctxt.notifications().sendNotification(au, new Timestamp(new Date().getTime()), UserNotification.Type.ASSIGNROLE, theDataset.getId());
-                    }
-                }
-            }
-            theDataset.setPublicationDate(new Timestamp(new Date().getTime()));
+            theDataset.setPublicationDate(updateTime);
             theDataset.setReleaseUser((AuthenticatedUser) getUser());
             if (!minorRelease) {
                 theDataset.getEditVersion().setVersionNumber(new Long(1));
@@ -133,7 +99,6 @@ public class PublishDatasetCommand extends AbstractCommand<Dataset> {
             theDataset.getEditVersion().setMinorVersionNumber(new Long(theDataset.getMinorVersionNumber() + 1));
         }
 
-        Timestamp updateTime = new Timestamp(new Date().getTime());
         theDataset.getEditVersion().setReleaseTime(updateTime);
         theDataset.getEditVersion().setLastUpdateTime(updateTime);
         theDataset.setModificationTime(updateTime);
@@ -145,16 +110,6 @@ public class PublishDatasetCommand extends AbstractCommand<Dataset> {
             if (dataFile.getPublicationDate() == null) {
                 // this is a new, previously unpublished file, so publish by setting date
                 dataFile.setPublicationDate(updateTime);
-
-                // check if any prexisting roleassignments have file download and send notifications
-                List<RoleAssignment> ras = ctxt.roles().directRoleAssignments(dataFile);
-                for (RoleAssignment ra : ras) {
-                    if (ra.getRole().permissions().contains(Permission.DownloadFile)) {
-                        for (AuthenticatedUser au : ctxt.roleAssignees().getExplicitUsers(ctxt.roleAssignees().getRoleAssignee(ra.getAssigneeIdentifier()))) {
-                            ctxt.notifications().sendNotification(au, new Timestamp(new Date().getTime()), UserNotification.Type.GRANTFILEACCESS, theDataset.getId());
-                        }
-                    }
-                }
             }
 
             // set the files restriction flag to the same as the latest version's
@@ -177,9 +132,8 @@ public class PublishDatasetCommand extends AbstractCommand<Dataset> {
         if (subject != null) {
             Dataverse dv = savedDataset.getOwner();
             while (dv != null) {
-                if (dv.getDataverseSubjects().addAll(subject.getControlledVocabularyValues())) {
-                    ctxt.index().indexDataverse(dv); // need to reindex to capture the new subjects
-                }
+                // reindexed after publishing, to capture the new subjects
+                dv.getDataverseSubjects().addAll(subject.getControlledVocabularyValues());
                 dv = dv.getOwner();
             }
         }
@@ -200,41 +154,12 @@ public class PublishDatasetCommand extends AbstractCommand<Dataset> {
             ctxt.em().merge(datasetDataverseUser);
         }
 
-        if (protocol.equals("hdl") && doiProvider.equals("IISH")) {
-            ctxt.pidWebservice().publicizeIdentifier(savedDataset);
-        }
-        if (protocol.equals("doi")
-                && doiProvider.equals("EZID")) {
-            ctxt.doiEZId().publicizeIdentifier(savedDataset);
-        }
-        if (protocol.equals("doi")
-                && doiProvider.equals("DataCite")) {
-            try {
-                ctxt.doiDataCite().publicizeIdentifier(savedDataset);
-            } catch (IOException io) {
-                throw new CommandException(ResourceBundle.getBundle("Bundle").getString("dataset.publish.error.datacite"), this);
-            } catch (Exception e) {
-                if (e.toString().contains("Internal Server Error")) {
-                    throw new CommandException(ResourceBundle.getBundle("Bundle").getString("dataset.publish.error.datacite"), this);
-                }
-                throw new CommandException(ResourceBundle.getBundle("Bundle").getString("dataset.publish.error.datacite"), this);
-            }
-        }
-
         /*
-        MoveIndexing to after DOI update so that if command exception is thrown the re-index will not
-        
-         */
-        
-        boolean doNormalSolrDocCleanUp = true;
-        ctxt.index().indexDataset(savedDataset, doNormalSolrDocCleanUp);
-        /**
-         * @todo consider also ctxt.solrIndex().indexPermissionsOnSelfAndChildren(theDataset);
-         */
-        /**
-         * @todo what should we do with the indexRespose?
+         * Registering the identifier, notifying the users who may download
+         * the files and indexing are done in the background, once this has
+         * been committed; the dataset is locked until then.
          */
-        IndexResponse indexResponse = ctxt.solrIndex().indexPermissionsForOneDvObject(savedDataset);
+        ctxt.postPublish().schedule(savedDataset, (AuthenticatedUser) getUser());
 
         return savedDataset;
     }
@@ -36,9 +36,7 @@ public class PublishDataverseCommand extends AbstractCommand<Dataverse> {
             List<RoleAssignment> ras = ctxt.roles().directRoleAssignments(dataverse);
             for (RoleAssignment ra : ras) {
                 if (ra.getRole().permissions().contains(Permission.DownloadFile)) {
-                    for (AuthenticatedUser au : ctxt.roleAssignees().getExplicitUsers(ctxt.roleAssignees().getRoleAssignee(ra.getAssigneeIdentifier()))) {
-                        ctxt.notifications().sendNotification(au, new Timestamp(new Date().getTime()), UserNotification.Type.ASSIGNROLE, dataverse.getId());
-                    }
+                    ctxt.notifications().sendNotifications(ctxt.roleAssignees().getExplicitUsers(ctxt.roleAssignees().getRoleAssignee(ra.getAssigneeIdentifier())), new Timestamp(new Date().getTime()), UserNotification.Type.ASSIGNROLE, dataverse.getId());
                 }
             }
 
@@ -0,0 +1,131 @@
+package edu.harvard.iq.dataverse.export;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The complete DDI export of the released version of a dataset, saved in the
+ * dataset directory as
+ * "export_ddi.&lt;global id&gt;.v&lt;version id&gt;.&lt;last update&gt;.xml".
+ * A new version, an update of the released version or a new persistent
+ * identifier gives a new name, so a saved export is never served for
+ * anything but the version and identifier it was made from; the exports
+ * under the older names are removed when the new one is saved.
+ */
+public class DDIExportCache {
+
+    private static final Logger logger = Logger.getLogger(DDIExportCache.class.getCanonicalName());
+
+    static final String PREFIX = "export_ddi.";
+    static final String SUFFIX = ".xml";
+
+    /**
+     * Writes the export; called at most once per request.
+     */
+    public interface ExportWriter {
+
+        void write(OutputStream os) throws IOException;
+    }
+
+    private final File directory;
+    private final String exportName;
+
+    /**
+     * @param directory The dataset directory.
+     * @param globalId The persistent identifier of the dataset.
+     * @param versionId The id of the released version.
+     * @param lastUpdateTime When the released version was last updated.
+     */
+    public DDIExportCache(File directory, String globalId, Long versionId, Date lastUpdateTime) {
+        this.directory = directory;
+        this.exportName = getExportName(globalId, versionId, lastUpdateTime);
+    }
+
+    static String getExportName(String globalId, Long versionId, Date lastUpdateTime) {
+        // "doi:10.5072/FK2/ABCDEF" -> "doi_10.5072_FK2_ABCDEF"
+        String id = (globalId == null) ? "" : globalId.replaceAll("[^A-Za-z0-9.-]", "_");
+        long lastUpdate = (lastUpdateTime == null) ? 0 : lastUpdateTime.getTime();
+        return PREFIX + id + ".v" + versionId + "." + lastUpdate + SUFFIX;
+    }
+
+    /**
+     * @return The saved export, or {@code null} if there is none yet.
+     */
+    public File find() {
+        File export = new File(directory, exportName);
+        return export.exists() ? export : null;
+    }
+
+    /**
+     * Sends the saved export to {@code os}. If there is none, the export is
+     * written once to a temporary file in the dataset directory, saved under
+     * its name and sent from there. If it cannot be saved, the temporary file
+     * is sent; if not even that can be created, the export is written
+     * straight to {@code os}.
+     */
+    public void export(ExportWriter writer, OutputStream os) throws IOException {
+        File export = find();
+        if (export != null) {
+            Files.copy(export.toPath(), os);
+            return;
+        }
+
+        File tempExport;
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            tempExport = File.createTempFile(exportName, ".tmp", directory);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not save the DDI export " + exportName + ", sending it as it is written", ex);
+            writer.write(os);
+            return;
+        }
+
+        try {
+            try (OutputStream tempStream = new FileOutputStream(tempExport)) {
+                writer.write(tempStream);
+            }
+            export = save(tempExport);
+            Files.copy((export != null ? export : tempExport).toPath(), os);
+        } finally {
+            if (tempExport.exists()) {
+                tempExport.delete();
+            }
+        }
+    }
+
+    private File save(File tempExport) {
+        File export = new File(directory, exportName);
+        try {
+            Files.move(tempExport.toPath(), export.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Could not save the DDI export " + exportName, ex);
+            return null;
+        }
+        // the exports of the earlier versions are no longer needed:
+        removeExportsExcept(exportName);
+        return export;
+    }
+
+    private void removeExportsExcept(String except) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(PREFIX) && name.endsWith(SUFFIX) && !name.equals(except)) {
+                file.delete();
+            }
+        }
+    }
+
+}
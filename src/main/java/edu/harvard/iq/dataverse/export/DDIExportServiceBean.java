@@ -12,16 +12,21 @@ import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DataFileServiceBean;
 import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.PublishedVersionCache;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableRange;
 import edu.harvard.iq.dataverse.datavariable.VariableServiceBean;
 import edu.harvard.iq.dataverse.datavariable.SummaryStatistic;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.logging.Logger;
 import java.util.logging.Level;
+import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import javax.ejb.Stateless;
@@ -107,11 +112,57 @@ public class DDIExportServiceBean {
     }
 
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
-    public void exportDataset(Long datasetId, OutputStream os, String partialExclude, String partialInclude) {
+    public void exportDataset(final Long datasetId, OutputStream os, String partialExclude, String partialInclude) {
+        if ((partialExclude == null || "".equals(partialExclude)) && (partialInclude == null || "".equals(partialInclude))) {
+            DDIExportCache exportCache = getDatasetExportCache(datasetId);
+            if (exportCache != null) {
+                try {
+                    exportCache.export(new DDIExportCache.ExportWriter() {
+                        @Override
+                        public void write(OutputStream exportStream) {
+                            export(OBJECT_TAG_DATASET, datasetId, exportStream, null, null);
+                        }
+                    }, os);
+                    return;
+                } catch (IOException ex) {
+                    throw new EJBException("ERROR occurred while sending the saved DDI export of dataset " + datasetId, ex);
+                }
+            }
+        }
         export(OBJECT_TAG_DATASET, datasetId, os, partialExclude, partialInclude);
 
     }
 
+    /**
+     * The complete DDI export of the released version of the dataset, if it
+     * has been saved in the dataset directory (see {@link DDIExportCache}).
+     * It is saved by the first
+     * {@link #exportDataset(java.lang.Long, java.io.OutputStream, java.lang.String, java.lang.String)}
+     * of the complete DDI of the version.
+     *
+     * @return The file, or null if the export has not been saved.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public File getDatasetExportFile(Long datasetId) {
+        DDIExportCache exportCache = getDatasetExportCache(datasetId);
+        return (exportCache != null) ? exportCache.find() : null;
+    }
+
+    private DDIExportCache getDatasetExportCache(Long datasetId) {
+        Dataset dataset = datasetService.find(datasetId);
+        if (dataset == null) {
+            throw new IllegalArgumentException("Metadata Export: Invalid dataset id supplied.");
+        }
+        DatasetVersion releasedVersion = dataset.getReleasedVersion();
+        if (releasedVersion == null) {
+            throw new IllegalArgumentException("Metadata Export: Dataset not released.");
+        }
+        if (dataset.getFileSystemDirectory() == null) {
+            return null;
+        }
+        return new DDIExportCache(dataset.getFileSystemDirectory().toFile(), dataset.getGlobalId(), releasedVersion.getId(), releasedVersion.getLastUpdateTime());
+    }
+
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void exportDataFile(Long varId, OutputStream os, String partialExclude, String partialInclude) {
         export(OBJECT_TAG_DATAFILE, varId, os, partialExclude, partialInclude);
@@ -418,7 +469,7 @@ public class DDIExportServiceBean {
         xmlw.writeStartElement("dataDscr");
 
         if (checkField("var", excludedFieldSet, includedFieldSet)) {
-            List<DataVariable> vars = variableService.findByDataTableId(dt.getId());
+            List<DataVariable> vars = variableService.findByDataTableIdWithMetadata(dt.getId());
 
             for (DataVariable var : vars) {
                 createVarDDI(xmlw, excludedFieldSet, null, var);
@@ -459,17 +510,22 @@ public class DDIExportServiceBean {
         }
         
         if (checkField("fileDscr", excludedFieldSet, includedFieldSet)) {
+            // (looked up once, for both passes)
+            Map<Long, DataTable> dataTables = new HashMap<>();
             for (FileMetadata fileMetadata : tabularDataFiles) {
                 DataTable dt = fileService.findDataTableByFileId(fileMetadata.getDataFile().getId());
+                dataTables.put(fileMetadata.getDataFile().getId(), dt);
                 createFileDscr(xmlw, excludedFieldSet, includedFieldSet, fileMetadata.getDataFile(),dt);
             }
             
-            // 2nd pass, to create data (variable) description sections: 
+            // 2nd pass, to create data (variable) description sections; 
+            // the variables of one table at a time, written out as soon as 
+            // they have been read: 
             xmlw.writeStartElement("dataDscr");
 
             for (FileMetadata fileMetadata : tabularDataFiles) {
-                DataTable dt = fileService.findDataTableByFileId(fileMetadata.getDataFile().getId());
-                List<DataVariable> vars = variableService.findByDataTableId(dt.getId());
+                DataTable dt = dataTables.get(fileMetadata.getDataFile().getId());
+                List<DataVariable> vars = variableService.findByDataTableIdWithMetadata(dt.getId());
 
                 for (DataVariable var : vars) { 
                     createVarDDI(xmlw, excludedFieldSet, null, var);
@@ -522,7 +578,7 @@ public class DDIExportServiceBean {
                 xmlw.writeEndElement(); // rspStmt
                 xmlw.writeStartElement("biblCit");
                 
-                xmlw.writeCharacters(version.getCitation());
+                xmlw.writeCharacters(PublishedVersionCache.getInstance().getCitation(version, false));
                 
                 xmlw.writeEndElement(); // biblCit
         
@@ -38,7 +38,7 @@ import edu.harvard.iq.dataverse.MetadataBlock;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.dataaccess.DataFileIO;
 import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
-import edu.harvard.iq.dataverse.dataaccess.FileAccessIO;
+import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.dataaccess.TabularSubsetGenerator;
 import edu.harvard.iq.dataverse.datavariable.SummaryStatistic;
@@ -61,6 +61,7 @@ import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav.SAVFileReade
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav.SAVFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.por.PORFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.por.PORFileReaderSpi;
+import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.MD5Checksum;
 import edu.harvard.iq.dataverse.util.ShapefileHandler;
@@ -76,6 +77,7 @@ import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
@@ -85,6 +87,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -101,6 +106,7 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Named;
@@ -148,6 +154,8 @@ public class IngestServiceBean {
     DataFileServiceBean fileService; 
     @EJB
     SystemConfig systemConfig;
+    @EJB
+    IndexServiceBean indexService;
 
     @Resource(mappedName = "jms/DataverseIngest")
     Queue queue;
@@ -621,6 +629,205 @@ public class IngestServiceBean {
         return null;
     }   // end createDataFiles
     
+    /**
+     * Unpacks a zip archive as it is read from the stream - the body of a 
+     * SWORD deposit, as it is received, for ex. - without storing the archive 
+     * itself first. The MD5 of each file is computed as it is written to the 
+     * temp location, and the files are linked to the version, but their types 
+     * are left undetermined: see detectFileTypesAndStartIngest(), to be 
+     * called once the files are saved. 
+     * Unlike createDataFiles(), an archive that cannot be unpacked is not 
+     * saved as is, since it cannot be read again; an IOException is thrown 
+     * instead, and the temp files created so far are deleted. 
+     * The stream is not closed, nor necessarily read to its end. 
+     */
+    public List<DataFile> createDataFilesFromZipStream(DatasetVersion version, InputStream zipStream) throws IOException {
+        if (getFilesTempDirectory() == null) {
+            throw new IOException("Temp directory is not configured.");
+        }
+        
+        List<DataFile> datafiles = new ArrayList<>();
+        int fileNumberLimit = systemConfig.getZipUploadFilesLimit();
+        
+        // (not closed, as that would close the underlying stream too)
+        ZipInputStream unZippedIn = new ZipInputStream(zipStream);
+        
+        try {
+            while (true) {
+                ZipEntry zipEntry = null;
+                try {
+                    zipEntry = unZippedIn.getNextEntry();
+                } catch (IllegalArgumentException iaex) {
+                    // (see createDataFiles() above)
+                    throw new IOException("Failed to unpack Zip file. (Unknown Character Set used in a file name?)");
+                }
+                
+                if (zipEntry == null) {
+                    break;
+                }
+                
+                if (!zipEntry.isDirectory()) {
+                    if (datafiles.size() > fileNumberLimit) {
+                        throw new IOException("The number of files in the zip archive is over the limit (" + fileNumberLimit + ").");
+                    }
+                    
+                    String fileEntryName = zipEntry.getName();
+                    logger.fine("ZipEntry, file: " + fileEntryName);
+                    
+                    if (fileEntryName != null && !fileEntryName.equals("")) {
+                        String shortName = fileEntryName.replaceFirst("^.*[\\/]", "");
+                        
+                        if (!shortName.startsWith("._") && !shortName.startsWith(".DS_Store") && !"".equals(shortName)) {
+                            DataFile datafile = createSingleDataFile(version, null, shortName, MIME_TYPE_UNDETERMINED_DEFAULT, false);
+                            fileService.generateStorageIdentifier(datafile);
+                            datafiles.add(datafile);
+                            datafile.setmd5(saveTempFile(unZippedIn, datafile));
+                            
+                            if (!fileEntryName.equals(shortName)) {
+                                String categoryName = fileEntryName.replaceFirst("[\\/][^\\/]*$", "");
+                                if (!"".equals(categoryName)) {
+                                    logger.fine("setting category to " + categoryName);
+                                    datafile.getFileMetadata().addCategoryByName(categoryName.replaceAll("[\\/]", "-"));
+                                }
+                            }
+                        }
+                    }
+                }
+                unZippedIn.closeEntry();
+            }
+        } catch (IOException ioex) {
+            deleteTempFiles(datafiles);
+            throw ioex;
+        }
+        
+        // link the data files to the dataset/version: 
+        for (DataFile datafile : datafiles) {
+            datafile.setOwner(version.getDataset());
+            if (version.getFileMetadatas() == null) {
+                version.setFileMetadatas(new ArrayList());
+            }
+            version.getFileMetadatas().add(datafile.getFileMetadata());
+            datafile.getFileMetadata().setDatasetVersion(version);
+            version.getDataset().getFiles().add(datafile);
+        }
+        
+        return datafiles;
+    }
+    
+    /**
+     * Undoes createDataFilesFromZipStream(), for files that are not going to
+     * be added after all: unlinks them from the version and deletes their 
+     * temp files. 
+     */
+    public void discardDataFiles(DatasetVersion version, List<DataFile> dataFiles) {
+        for (DataFile dataFile : dataFiles) {
+            if (version.getFileMetadatas() != null) {
+                version.getFileMetadatas().remove(dataFile.getFileMetadata());
+            }
+            version.getDataset().getFiles().remove(dataFile);
+        }
+        deleteTempFiles(dataFiles);
+    }
+    
+    private void deleteTempFiles(List<DataFile> dataFiles) {
+        for (DataFile dataFile : dataFiles) {
+            Path tempLocationPath = Paths.get(getFilesTempDirectory() + "/" + dataFile.getStorageIdentifier());
+            try {
+                Files.deleteIfExists(tempLocationPath);
+            } catch (IOException ex) {
+                // (non-fatal - it's just a temp file.)
+                logger.warning("Failed to delete temp file " + tempLocationPath.toString());
+            }
+        }
+    }
+    
+    /**
+     * Saves the bytes of the stream in the temp location of the file. 
+     * @return The MD5 of the bytes, computed on the way. 
+     */
+    private String saveTempFile(InputStream inputStream, DataFile datafile) throws IOException {
+        MessageDigest md5 = null;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IOException("MD5 is not available", nsae);
+        }
+        
+        try (OutputStream outputStream = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(getFilesTempDirectory() + "/" + datafile.getStorageIdentifier())), md5)) {
+            byte[] dataBuffer = new byte[8192];
+            int i = 0;
+            while ((i = inputStream.read(dataBuffer)) != -1) {
+                outputStream.write(dataBuffer, 0, i);
+            }
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md5.digest()) {
+            sb.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Determines the types of the files created by 
+     * createDataFilesFromZipStream(), once they are saved, and starts the 
+     * ingest of those that are ingestable; in the background, so that the 
+     * deposit the files came with can be answered first. The dataset is 
+     * reindexed if any of the types has changed. 
+     * (Unlike with addFiles(), no metadata is extracted from FITS files.)
+     */
+    @Asynchronous
+    public void detectFileTypesAndStartIngest(Long datasetId, List<Long> dataFileIds, AuthenticatedUser user) {
+        boolean typesChanged = false;
+        
+        for (Long dataFileId : dataFileIds) {
+            DataFile dataFile = fileService.find(dataFileId);
+            if (dataFile == null) {
+                continue;
+            }
+            String fileName = dataFile.getFileMetadata().getLabel();
+            
+            String recognizedType = null;
+            try {
+                DataFileIO dataAccess = dataFile.getAccessObject();
+                if (dataAccess.isLocalFile()) {
+                    recognizedType = FileUtil.determineFileType(dataAccess.getFileSystemPath().toFile(), fileName);
+                } else {
+                    Path tempFile = dataAccess.copyToTempFile();
+                    try {
+                        recognizedType = FileUtil.determineFileType(tempFile.toFile(), fileName);
+                    } finally {
+                        Files.deleteIfExists(tempFile);
+                    }
+                }
+            } catch (Exception ex) {
+                logger.warning("Failed to run the file utility mime type check on file " + fileName);
+            }
+            
+            if (recognizedType == null || recognizedType.equals("") || recognizedType.equals(dataFile.getContentType())) {
+                continue;
+            }
+            logger.fine("File utility recognized deposited file " + fileName + " as " + recognizedType);
+            
+            dataFile.setContentType(recognizedType);
+            if (ingestableAsTabular(dataFile)) {
+                dataFile.SetIngestScheduled();
+            }
+            performPostProcessingTasks(dataFile);
+            fileService.save(dataFile);
+            typesChanged = true;
+        }
+        
+        Dataset dataset = datasetService.find(datasetId);
+        if (dataset == null) {
+            return;
+        }
+        startIngestJobs(dataset, user);
+        if (typesChanged) {
+            indexService.indexDataset(dataset, true);
+        }
+    }
+    
     // TODO: 
     // add comments explaining what's going on in the 2 methods below. 
     // -- L.A. 4.0 beta
@@ -951,6 +1158,11 @@ public class IngestServiceBean {
                     
                     try {
 
+                        // (the storage identifier under which the file is 
+                        // saved by the storage driver configured - for the 
+                        // local filesystem, the same as the temp name)
+                        dataFile.setStorageIdentifier(DataAccess.createStorageIdentifier(storageId));
+                        
                         DataFileIO dataAccess = dataFile.getAccessObject();
      
                         /* 
@@ -981,9 +1193,14 @@ public class IngestServiceBean {
                             the file using Files.copy, like this:
                         
                             Files.copy(tempLocationPath, dataAccess.getFileSystemLocation(), StandardCopyOption.REPLACE_EXISTING);
+                        
+                            since the temp file is deleted right after, we 
+                            move it instead - which, for the local filesystem, 
+                            is a rename; the temp directory lives under the 
+                            files directory:)
                         */
                         
-                        dataAccess.copyPath(tempLocationPath);
+                        dataAccess.movePath(tempLocationPath);
 
                         // Set filesize in bytes
                         // 
@@ -1003,7 +1220,7 @@ public class IngestServiceBean {
                         // (TODO: probably not a very good style, that the size of the thumbnail 
                         // is hard-coded here; it may change in the future...)
                         Path tempThumbnailPath = Paths.get(tempLocationPath.toString() + ".thumb64");
-                        Files.delete(tempLocationPath);
+                        Files.deleteIfExists(tempLocationPath);
                         if (tempThumbnailPath.toFile().exists()) {
                             Files.delete(tempThumbnailPath);
                         }
@@ -1185,18 +1402,26 @@ public class IngestServiceBean {
     }
     
     public void produceSummaryStatistics(DataFile dataFile) throws IOException {
+        produceSummaryStatistics(dataFile, null);
+    }
+    
+    /**
+     * @param tabFile a local copy of the tab file, to produce the statistics
+     * from; or null, to use the stored file (which must be local).
+     */
+    public void produceSummaryStatistics(DataFile dataFile, File tabFile) throws IOException {
         /*
         logger.info("Skipping summary statistics and UNF.");
          */
-        produceDiscreteNumericSummaryStatistics(dataFile); 
-        produceContinuousSummaryStatistics(dataFile);
-        produceCharacterSummaryStatistics(dataFile);
+        produceDiscreteNumericSummaryStatistics(dataFile, tabFile); 
+        produceContinuousSummaryStatistics(dataFile, tabFile);
+        produceCharacterSummaryStatistics(dataFile, tabFile);
         
         recalculateDataFileUNF(dataFile);
         recalculateDatasetVersionUNF(dataFile.getFileMetadata().getDatasetVersion());
     }
     
-    public void produceContinuousSummaryStatistics(DataFile dataFile) throws IOException {
+    public void produceContinuousSummaryStatistics(DataFile dataFile, File tabFile) throws IOException {
 
         // quick, but memory-inefficient way:
         // - this method just loads the entire file-worth of continuous vectors 
@@ -1209,12 +1434,16 @@ public class IngestServiceBean {
         // bytes from the file to extract the column:
         
         TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
+        int varcount = dataFile.getDataTable().getVarQuantity().intValue();
+        int casecount = dataFile.getDataTable().getCaseQuantity().intValue();
         
         for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
             if (dataFile.getDataTable().getDataVariables().get(i).isIntervalContinuous()) {
                 logger.fine("subsetting continuous vector");
                 if ("float".equals(dataFile.getDataTable().getDataVariables().get(i).getFormat())) {
-                    Float[] variableVector = subsetGenerator.subsetFloatVector(dataFile, i);
+                    Float[] variableVector = tabFile == null
+                        ? subsetGenerator.subsetFloatVector(dataFile, i)
+                        : subsetGenerator.subsetFloatVector(tabFile, i, varcount, casecount);
                     logger.fine("Calculating summary statistics on a Float vector;");
                     calculateContinuousSummaryStatistics(dataFile, i, variableVector);
                     // calculate the UNF while we are at it:
@@ -1222,7 +1451,9 @@ public class IngestServiceBean {
                     calculateUNF(dataFile, i, variableVector);
                     variableVector = null; 
                 } else {
-                    Double[] variableVector = subsetGenerator.subsetDoubleVector(dataFile, i);
+                    Double[] variableVector = tabFile == null
+                        ? subsetGenerator.subsetDoubleVector(dataFile, i)
+                        : subsetGenerator.subsetDoubleVector(tabFile, i, varcount, casecount);
                     logger.fine("Calculating summary statistics on a Double vector;");
                     calculateContinuousSummaryStatistics(dataFile, i, variableVector);
                     // calculate the UNF while we are at it:
@@ -1235,16 +1466,20 @@ public class IngestServiceBean {
         }
     }
     
-    public void produceDiscreteNumericSummaryStatistics(DataFile dataFile) throws IOException {
+    public void produceDiscreteNumericSummaryStatistics(DataFile dataFile, File tabFile) throws IOException {
         
         TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
+        int varcount = dataFile.getDataTable().getVarQuantity().intValue();
+        int casecount = dataFile.getDataTable().getCaseQuantity().intValue();
         
         for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
             if (dataFile.getDataTable().getDataVariables().get(i).isIntervalDiscrete()
                     && dataFile.getDataTable().getDataVariables().get(i).isTypeNumeric()) {
                 logger.fine("subsetting discrete-numeric vector");
                 //Double[] variableVector = subsetGenerator.subsetDoubleVector(dataFile, i);
-                Long[] variableVector = subsetGenerator.subsetLongVector(dataFile, i);
+                Long[] variableVector = tabFile == null
+                        ? subsetGenerator.subsetLongVector(dataFile, i)
+                        : subsetGenerator.subsetLongVector(tabFile, i, varcount, casecount);
                 // We are discussing calculating the same summary stats for 
                 // all numerics (the same kind of sumstats that we've been calculating
                 // for numeric continuous type)  -- L.A. Jul. 2014
@@ -1258,7 +1493,7 @@ public class IngestServiceBean {
         }
     }
     
-    public void produceCharacterSummaryStatistics(DataFile dataFile) throws IOException {
+    public void produceCharacterSummaryStatistics(DataFile dataFile, File tabFile) throws IOException {
 
         /* 
             At this point it's still not clear what kinds of summary stats we
@@ -1273,11 +1508,15 @@ public class IngestServiceBean {
         */
         
         TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
+        int varcount = dataFile.getDataTable().getVarQuantity().intValue();
+        int casecount = dataFile.getDataTable().getCaseQuantity().intValue();
         
         for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
             if (dataFile.getDataTable().getDataVariables().get(i).isTypeCharacter()) {
                 logger.fine("subsetting character vector");
-                String[] variableVector = subsetGenerator.subsetStringVector(dataFile, i);
+                String[] variableVector = tabFile == null
+                        ? subsetGenerator.subsetStringVector(dataFile, i)
+                        : subsetGenerator.subsetStringVector(tabFile, i, varcount, casecount);
                 //calculateCharacterSummaryStatistics(dataFile, i, variableVector);
                 // calculate the UNF while we are at it:
                 logger.fine("Calculating UNF on a String vector");
@@ -1483,9 +1722,6 @@ public class IngestServiceBean {
                     dataAccess.copyPath(Paths.get(tabFile.getAbsolutePath()));
                     // Reset the file size: 
                     dataFile.setFilesize(dataAccess.getSize());
-
-                    // delete the temp tab-file:
-                    tabFile.delete();
                     
 
                     // and change the mime type to "tabular" on the final datafile, 
@@ -1496,7 +1732,22 @@ public class IngestServiceBean {
                     dataFile.setDataTable(tabDataIngest.getDataTable());
                     tabDataIngest.getDataTable().setDataFile(dataFile);
 
-                    produceSummaryStatistics(dataFile);
+                    // (if the file is not stored locally, the statistics 
+                    // are produced from the temp tab-file - and its rotated 
+                    // image is not kept, as the subsetting is only 
+                    // supported on local files)
+                    if (dataAccess.isLocalFile()) {
+                        produceSummaryStatistics(dataFile);
+                    } else {
+                        try {
+                            produceSummaryStatistics(dataFile, tabFile);
+                        } finally {
+                            TabularSubsetGenerator.discardRotatedImage(tabFile);
+                        }
+                    }
+
+                    // delete the temp tab-file:
+                    tabFile.delete();
 
                     dataFile.setIngestDone();
                     // delete the ingest request, if exists:
@@ -1686,11 +1937,9 @@ public class IngestServiceBean {
     public boolean extractMetadata(String tempFileLocation, DataFile dataFile, DatasetVersion editVersion) throws IOException {
         boolean ingestSuccessful = false;
 
-        FileInputStream tempFileInputStream = null; 
+        File tempFile = new File(tempFileLocation);
         
-        try {
-            tempFileInputStream = new FileInputStream(new File(tempFileLocation));
-        } catch (FileNotFoundException notfoundEx) {
+        if (!tempFile.canRead()) {
             throw new IOException("Could not open temp file "+tempFileLocation);
         }
         
@@ -1699,7 +1948,9 @@ public class IngestServiceBean {
         //FileMetadataExtractor extractorPlugin = IngestSP.getMetadataExtractorByMIMEType(dfile.getContentType());
         FileMetadataExtractor extractorPlugin = new FITSFileMetadataExtractor();
 
-        FileMetadataIngest extractedMetadata = extractorPlugin.ingest(new BufferedInputStream(tempFileInputStream));
+        // (the file is handed to the plugin as is, so that it can skip the 
+        // parts it doesn't need - such as the data units of a FITS file)
+        FileMetadataIngest extractedMetadata = extractorPlugin.ingest(tempFile);
         Map<String, Set<String>> extractedMetadataMap = extractedMetadata.getMetadataMap();
 
         // Store the fields and values we've gathered for safe-keeping:
@@ -2042,16 +2293,18 @@ public class IngestServiceBean {
             DataFileIO thumbnailDataAccess = null;
             try {
                 DataFileIO dataAccess = dataFile.getAccessObject();
-                if (dataAccess != null && dataAccess.isLocalFile()) {
+                if (dataAccess != null) {
                     dataAccess.open();
 
-                    thumbnailDataAccess = ImageThumbConverter.getImageThumb((FileAccessIO) dataAccess, ImageThumbConverter.DEFAULT_PREVIEW_SIZE);
+                    thumbnailDataAccess = ImageThumbConverter.getImageThumb(dataAccess, ImageThumbConverter.DEFAULT_PREVIEW_SIZE);
                 }
             } catch (IOException ioEx) {
                 thumbnailDataAccess = null;
             }
             if (thumbnailDataAccess != null) {
                 dataFile.setPreviewImageAvailable(true);
+                // (the thumbnail itself is not needed here)
+                thumbnailDataAccess.closeInputStream();
             }
         }
     }
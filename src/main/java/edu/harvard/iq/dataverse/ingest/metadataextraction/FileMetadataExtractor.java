@@ -43,6 +43,17 @@ public abstract class FileMetadataExtractor {
     public abstract FileMetadataIngest ingest(BufferedInputStream stream)
         throws IOException;
 
+    /**
+     * Extracts the metadata from a file saved locally; the plugins that can 
+     * do better with a file than with a stream (by seeking past the parts 
+     * they don't need, for example) override this method.
+     */
+    public FileMetadataIngest ingest(File file) throws IOException {
+        try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+            return ingest(stream);
+        }
+    }
+
     
     // should this be an abstract method as well? 
     
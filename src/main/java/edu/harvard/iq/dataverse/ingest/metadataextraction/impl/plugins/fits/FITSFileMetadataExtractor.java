@@ -27,13 +27,12 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.Properties;
 import java.util.logging.Logger;
-import nom.tam.fits.BasicHDU;
-import nom.tam.fits.Fits;
-import nom.tam.fits.FitsException;
+import nom.tam.fits.AsciiTableHDU;
+import nom.tam.fits.BinaryTableHDU;
 import nom.tam.fits.Header;
 import nom.tam.fits.HeaderCard;
 import nom.tam.fits.ImageHDU;
-import nom.tam.fits.TableHDU;
+import nom.tam.fits.RandomGroupsHDU;
 import nom.tam.fits.UndefinedHDU;
 
 /**
@@ -220,7 +219,31 @@ public class FITSFileMetadataExtractor extends FileMetadataExtractor {
     }
     
     public FileMetadataIngest ingest (BufferedInputStream stream) throws IOException{
-        dbgLog.fine("Attempting to read FITS file;");
+        dbgLog.fine("Attempting to read FITS stream;");
+        
+        return ingest(new FITSHeaderScanner(stream));
+    }
+    
+    /**
+     * Reads the FITS file directly; the data units, that have no metadata 
+     * in them, are skipped without being read (unless the file is gzipped, 
+     * in which case they are decompressed on the fly - but still not kept 
+     * in memory), so the size of the file does not matter.
+     */
+    @Override
+    public FileMetadataIngest ingest (File file) throws IOException {
+        dbgLog.fine("Attempting to read FITS file "+file.getName()+";");
+        
+        try (FITSHeaderScanner scanner = new FITSHeaderScanner(file)) {
+            return ingest(scanner);
+        }
+    }
+    
+    /*
+     * The metadata are extracted from the headers of the HDUs only; which 
+     * are read one by one, without the data units in between:
+     */
+    private FileMetadataIngest ingest (FITSHeaderScanner scanner) throws IOException {
         
         Map<String, Set<String>> fitsMetaMap = new HashMap<>();
                 
@@ -234,21 +257,9 @@ public class FITSFileMetadataExtractor extends FileMetadataExtractor {
         FileMetadataIngest ingest = new FileMetadataIngest();
         ingest.setMetadataBlockName(ASTROPHYSICS_BLOCK_NAME);
         
-        Fits fitsFile = null; 
-        try {
-            fitsFile = new Fits (stream);
-        } catch (FitsException fEx) {
-            throw new IOException ("Failed to open FITS stream; "+fEx.getMessage());
-        }
-        
-        if (fitsFile == null) {
-            throw new IOException ("Failed to open FITS stream; null Fits object");
-        }
-        
-        
         readConfig(); 
 
-        BasicHDU hdu = null;
+        Header hduHeader = null;
         int i = 0; 
                 
         int nTableHDUs = 0; 
@@ -262,422 +273,408 @@ public class FITSFileMetadataExtractor extends FileMetadataExtractor {
         List<String> hduTypes = new ArrayList<String>();
         List<String> hduNames = new ArrayList<String>(); 
         
-        try {
-            fitsMetaMap.put(ATTRIBUTE_TYPE, new HashSet<String>());
-            while ((hdu = fitsFile.readHDU()) != null) {
-                dbgLog.fine("reading HDU number " + i);
-                hduNames.add("[UNNAMED]");
+        // (the HDU types are determined from the headers, the same way, 
+        // and in the same order, as FitsFactory does it)
+        
+        fitsMetaMap.put(ATTRIBUTE_TYPE, new HashSet<String>());
+        while ((hduHeader = scanner.nextHeader()) != null) {
+            dbgLog.fine("reading HDU number " + i);
+            hduNames.add("[UNNAMED]");
+            
+            if (ImageHDU.isHeader(hduHeader)) {
+                dbgLog.fine("this is an image HDU");
                 
-                Header hduHeader = hdu.getHeader();
-
+                nAxis = hduHeader.getIntValue("NAXIS");
+                dbgLog.fine("NAXIS (directly from header): "+nAxis);
                 
-                if (hdu instanceof ImageHDU) {
-                    dbgLog.fine("this is an image HDU");
-                    
-                    nAxis = hduHeader.getIntValue("NAXIS");
-                    dbgLog.fine("NAXIS (directly from header): "+nAxis);
-                    
-                    if (nAxis > 0) {
-                        metadataKeys.add("NAXIS");
+                if (nAxis > 0) {
+                    metadataKeys.add("NAXIS");
 
-                        if (nAxis > 1) {
+                    if (nAxis > 1) {
+                    
+                        nImageHDUs++;
+                        if (nAxis > 2) {
+                            hduTypes.add(HDU_TYPE_IMAGE_CUBE);
+                         
+                        } else {
+                            // Check for type Spectrum: 
                         
-                            nImageHDUs++;
-                            if (nAxis > 2) {
-                                hduTypes.add(HDU_TYPE_IMAGE_CUBE);
-                             
-                            } else {
-                                // Check for type Spectrum: 
-                            
-                                hduTypes.add(HDU_TYPE_IMAGE);
-                            }
+                            hduTypes.add(HDU_TYPE_IMAGE);
                         }
-                    } else {
-                        hduTypes.add(HDU_TYPE_UNKNOWN);
                     }
-                } else if (hdu instanceof TableHDU) {
-                    dbgLog.fine("this is a table HDU");
-                    nTableHDUs++;
-                    hduTypes.add(HDU_TYPE_TABLE);
-                } else if (hdu instanceof UndefinedHDU) {
-                    dbgLog.fine("this is an undefined HDU");
-                    nUndefHDUs++;
-                    hduTypes.add(HDU_TYPE_UNDEF);
-
                 } else {
-                    dbgLog.fine("this is an UKNOWN HDU");
                     hduTypes.add(HDU_TYPE_UNKNOWN);
                 }
-                               
-                i++;
+            } else if (RandomGroupsHDU.isHeader(hduHeader)) {
+                dbgLog.fine("this is a random groups HDU");
+                hduTypes.add(HDU_TYPE_UNKNOWN);
+            } else if (AsciiTableHDU.isHeader(hduHeader) || BinaryTableHDU.isHeader(hduHeader)) {
+                dbgLog.fine("this is a table HDU");
+                nTableHDUs++;
+                hduTypes.add(HDU_TYPE_TABLE);
+            } else if (UndefinedHDU.isHeader(hduHeader)) {
+                dbgLog.fine("this is an undefined HDU");
+                nUndefHDUs++;
+                hduTypes.add(HDU_TYPE_UNDEF);
 
-                // Standard HDU attributes that we always check: 
-                
-                if (fitsMetaMap.get(ATTRIBUTE_FACILITY) == null) {
-                    String hduTelescope = hdu.getTelescope();
-                    if (hduTelescope != null) {
-                        fitsMetaMap.put(ATTRIBUTE_FACILITY, new HashSet<String>());
-                        fitsMetaMap.get(ATTRIBUTE_FACILITY).add(hduTelescope);
-                        metadataKeys.add("TELESCOP");
-                    }
+            } else {
+                dbgLog.fine("this is an UKNOWN HDU");
+                hduTypes.add(HDU_TYPE_UNKNOWN);
+            }
+                           
+            i++;
+
+            // Standard HDU attributes that we always check: 
+            
+            if (fitsMetaMap.get(ATTRIBUTE_FACILITY) == null) {
+                String hduTelescope = hduHeader.getStringValue("TELESCOP");
+                if (hduTelescope != null) {
+                    fitsMetaMap.put(ATTRIBUTE_FACILITY, new HashSet<String>());
+                    fitsMetaMap.get(ATTRIBUTE_FACILITY).add(hduTelescope);
+                    metadataKeys.add("TELESCOP");
                 }
-                
-                if (fitsMetaMap.get(ATTRIBUTE_INSTRUMENT) == null) {
-                    String hduInstrument = hdu.getInstrument();
-                    if (hduInstrument != null) {
-                        fitsMetaMap.put(ATTRIBUTE_INSTRUMENT, new HashSet<String>());
-                        fitsMetaMap.get(ATTRIBUTE_INSTRUMENT).add(hduInstrument);
-                        metadataKeys.add("INSTRUME");
-                    }
+            }
+            
+            if (fitsMetaMap.get(ATTRIBUTE_INSTRUMENT) == null) {
+                String hduInstrument = hduHeader.getStringValue("INSTRUME");
+                if (hduInstrument != null) {
+                    fitsMetaMap.put(ATTRIBUTE_INSTRUMENT, new HashSet<String>());
+                    fitsMetaMap.get(ATTRIBUTE_INSTRUMENT).add(hduInstrument);
+                    metadataKeys.add("INSTRUME");
                 }
-                
-                /* 
-                 * Spatial coordinates: we just use CRVAL1 and CRVAL2, 
-                 * X and Y coordinates of the center pixel, if available:
-                */
-                
-                double crval1Float = hduHeader.getDoubleValue("CRVAL1");
-                double crval2Float = hduHeader.getDoubleValue("CRVAL2");
-                
-                dbgLog.fine("CRVAL1: "+crval1Float);
-                dbgLog.fine("CRVAL2: "+crval2Float);
-                
-                if (crval1Float != 0.0 || crval2Float != 0.0) {
-                    if (fitsMetaMap.get(ATTRIBUTE_COVERAGE_SPATIAL) == null) {
-                        fitsMetaMap.put(ATTRIBUTE_COVERAGE_SPATIAL, new HashSet<String>());
-                    }
-                    fitsMetaMap.get(ATTRIBUTE_COVERAGE_SPATIAL).add("("+crval1Float+" "+crval2Float+")");
-                    metadataKeys.add("CRVAL1");
-                    metadataKeys.add("CRVAL2");
+            }
+            
+            /* 
+             * Spatial coordinates: we just use CRVAL1 and CRVAL2, 
+             * X and Y coordinates of the center pixel, if available:
+            */
+            
+            double crval1Float = hduHeader.getDoubleValue("CRVAL1");
+            double crval2Float = hduHeader.getDoubleValue("CRVAL2");
+            
+            dbgLog.fine("CRVAL1: "+crval1Float);
+            dbgLog.fine("CRVAL2: "+crval2Float);
+            
+            if (crval1Float != 0.0 || crval2Float != 0.0) {
+                if (fitsMetaMap.get(ATTRIBUTE_COVERAGE_SPATIAL) == null) {
+                    fitsMetaMap.put(ATTRIBUTE_COVERAGE_SPATIAL, new HashSet<String>());
                 }
-                
-                /* 
-                 * Special treatment for the OBJECT value:
-                */
-                
-                String objectString = hduHeader.getStringValue("OBJECT");
+                fitsMetaMap.get(ATTRIBUTE_COVERAGE_SPATIAL).add("("+crval1Float+" "+crval2Float+")");
+                metadataKeys.add("CRVAL1");
+                metadataKeys.add("CRVAL2");
+            }
+            
+            /* 
+             * Special treatment for the OBJECT value:
+            */
+            
+            String objectString = hduHeader.getStringValue("OBJECT");
+            if (objectString != null && !objectString.equals("")) {
+                metadataKeys.add("OBJECT");
+            } else {
+                objectString = hduHeader.getStringValue("TARGNAME");
                 if (objectString != null && !objectString.equals("")) {
-                    metadataKeys.add("OBJECT");
-                } else {
-                    objectString = hduHeader.getStringValue("TARGNAME");
-                    if (objectString != null && !objectString.equals("")) {
-                        metadataKeys.add("TARGNAME");
-                    }
+                    metadataKeys.add("TARGNAME");
                 }
-                
-                if (objectString != null && !objectString.equals("")) {
-                    if (fitsMetaMap.get(ATTRIBUTE_OBJECT) == null) {
-                        fitsMetaMap.put(ATTRIBUTE_OBJECT, new HashSet<String>());
-                    }
-                    fitsMetaMap.get(ATTRIBUTE_OBJECT).add(objectString);    
+            }
+            
+            if (objectString != null && !objectString.equals("")) {
+                if (fitsMetaMap.get(ATTRIBUTE_OBJECT) == null) {
+                    fitsMetaMap.put(ATTRIBUTE_OBJECT, new HashSet<String>());
                 }
-                
-                
-                /* 
-                 * Let's try to determine the start and end date/time for this
-                 * HDU. HDUs can have their own, differend end and start times; 
-                 * for the start time of the whole file we'll select the min. 
-                 * of the individual HDU start times, and the max. for end time. 
-                 */
-                
-                // The standard header key is "DATE-OBS" - but all these 
-                // hacky variants below are common too, so we'll go through 
-                // them all: 
-                
-                String obsDateString = hduHeader.getStringValue("DATE-OBS");
+                fitsMetaMap.get(ATTRIBUTE_OBJECT).add(objectString);    
+            }
+            
+            
+            /* 
+             * Let's try to determine the start and end date/time for this
+             * HDU. HDUs can have their own, differend end and start times; 
+             * for the start time of the whole file we'll select the min. 
+             * of the individual HDU start times, and the max. for end time. 
+             */
+            
+            // The standard header key is "DATE-OBS" - but all these 
+            // hacky variants below are common too, so we'll go through 
+            // them all: 
+            
+            String obsDateString = hduHeader.getStringValue("DATE-OBS");
+            if (obsDateString != null && !obsDateString.equals("")) {
+                metadataKeys.add("DATE-OBS");
+            } else {
+                obsDateString = hduHeader.getStringValue("DATE_OBS");
                 if (obsDateString != null && !obsDateString.equals("")) {
-                    metadataKeys.add("DATE-OBS");
+                    metadataKeys.add("DATE_OBS");
                 } else {
-                    obsDateString = hduHeader.getStringValue("DATE_OBS");
+                    obsDateString = hduHeader.getStringValue("OBS-DATE");
                     if (obsDateString != null && !obsDateString.equals("")) {
-                        metadataKeys.add("DATE_OBS");
-                    } else {
-                        obsDateString = hduHeader.getStringValue("OBS-DATE");
-                        if (obsDateString != null && !obsDateString.equals("")) {
-                            metadataKeys.add("OBS-DATE");
-                        }
+                        metadataKeys.add("OBS-DATE");
                     }
                 }
+            }
+            
+            // TODO: 
+            // see if it's easier to replace this with getObservationDate() 
+            // on the HDU - ?
+            // DONE: No, getObservationDate() is bad news. all it does 
+            // on the inside is 
+            // return new FitsDate(myHeader.getStringValue("DATE-OBS")).toDate();
+            // -- which adds all the complications you'd expect, adding 
+            // a time zone to the strings that didn't have any (shifting 
+            // the value by a seemingly random number of hours), etc. 
+            
+            if (obsDateString != null) {
+                Date startDate = null;
+                Date endDate = null; 
+                String startDateFormatted = null; 
+                String endDateFormatted = null; 
                 
-                // TODO: 
-                // see if it's easier to replace this with getObservationDate() 
-                // on the HDU - ?
-                // DONE: No, getObservationDate() is bad news. all it does 
-                // on the inside is 
-                // return new FitsDate(myHeader.getStringValue("DATE-OBS")).toDate();
-                // -- which adds all the complications you'd expect, adding 
-                // a time zone to the strings that didn't have any (shifting 
-                // the value by a seemingly random number of hours), etc. 
+                // We'll try to parse it, first as a full date-time string:
+                // replace all slashes with dashes: 
+                obsDateString = obsDateString.replace('/', '-');
                 
-                if (obsDateString != null) {
-                    Date startDate = null;
-                    Date endDate = null; 
-                    String startDateFormatted = null; 
-                    String endDateFormatted = null; 
-                    
-                    // We'll try to parse it, first as a full date-time string:
-                    // replace all slashes with dashes: 
-                    obsDateString = obsDateString.replace('/', '-');
+                for (SimpleDateFormat format : TIME_FORMATS) {
+                    format.setLenient(false);
+                
+                    try {
+                        startDate = format.parse(obsDateString);
+                        dbgLog.fine("Valid date string: " + obsDateString + ", format: " + format.toPattern() + ", resulting date: "+startDate+", formatted resulting date: "+TIME_FORMATS[0].format(startDate));
+                        startDateFormatted = format.format(startDate);
+                        //startDateFormatted = obsDateString;
+                        break;
+                    } catch (ParseException ex) {
+                        startDate = null; 
+                    }
                     
-                    for (SimpleDateFormat format : TIME_FORMATS) {
+                    // Alternative method: 
+                    // We could truncate the string to the point where the parser
+                    // stopped; e.g., if our format was yyyy-mm-dd and the
+                    // string was "2014-05-07T14:52:01" we'll truncate the 
+                    // string to "2014-05-07".
+                    /*
+                    ParsePosition pos = new ParsePosition(0);
+                    startDate = format.parse(obsDateString, pos);
+                    if (startDate == null) {
+                        continue;
+                    }
+                    if (pos.getIndex() != obsDateString.length()) {
+                        obsDateString = obsDateString.substring(0, pos.getIndex());
+                    }
+                    dbgLog.fine("Valid date: " + obsDateString + ", format: " + format.toPattern());
+                    break;
+                    */
+                }
+                
+                // if that didn't work, we'll try parsing the string as a 
+                // date only: 
+                if (startDate == null) {
+                    for (SimpleDateFormat format : DATE_FORMATS) {
                         format.setLenient(false);
-                    
+                
                         try {
                             startDate = format.parse(obsDateString);
-                            dbgLog.fine("Valid date string: " + obsDateString + ", format: " + format.toPattern() + ", resulting date: "+startDate+", formatted resulting date: "+TIME_FORMATS[0].format(startDate));
-                            startDateFormatted = format.format(startDate);
-                            //startDateFormatted = obsDateString;
+                            dbgLog.info("Valid date string: " + obsDateString + ", format: " + format.toPattern() + ", resulting date: "+startDate+", formatted resulting date: "+DATE_FORMATS[0].format(startDate));
+                            //startDateFormatted = format.format(startDate);
+                            startDateFormatted = DATE_FORMATS[0].format(startDate);
                             break;
                         } catch (ParseException ex) {
                             startDate = null; 
                         }
-                        
-                        // Alternative method: 
-                        // We could truncate the string to the point where the parser
-                        // stopped; e.g., if our format was yyyy-mm-dd and the
-                        // string was "2014-05-07T14:52:01" we'll truncate the 
-                        // string to "2014-05-07".
-                        /*
-                        ParsePosition pos = new ParsePosition(0);
-                        startDate = format.parse(obsDateString, pos);
-                        if (startDate == null) {
-                            continue;
-                        }
-                        if (pos.getIndex() != obsDateString.length()) {
-                            obsDateString = obsDateString.substring(0, pos.getIndex());
-                        }
-                        dbgLog.fine("Valid date: " + obsDateString + ", format: " + format.toPattern());
-                        break;
-                        */
                     }
-                    
-                    // if that didn't work, we'll try parsing the string as a 
-                    // date only: 
-                    if (startDate == null) {
-                        for (SimpleDateFormat format : DATE_FORMATS) {
-                            format.setLenient(false);
-                    
-                            try {
-                                startDate = format.parse(obsDateString);
-                                dbgLog.info("Valid date string: " + obsDateString + ", format: " + format.toPattern() + ", resulting date: "+startDate+", formatted resulting date: "+DATE_FORMATS[0].format(startDate));
-                                //startDateFormatted = format.format(startDate);
-                                startDateFormatted = DATE_FORMATS[0].format(startDate);
-                                break;
-                            } catch (ParseException ex) {
-                                startDate = null; 
-                            }
-                        }
-                        // if that worked, let's see if we have the time value
-                        // stored separately - in "TIME-OBS":
-                        if (startDate != null) {
-                            String obsTimeString = hduHeader.getStringValue("TIME-OBS");
-                            Date startDateTime = null; 
+                    // if that worked, let's see if we have the time value
+                    // stored separately - in "TIME-OBS":
+                    if (startDate != null) {
+                        String obsTimeString = hduHeader.getStringValue("TIME-OBS");
+                        Date startDateTime = null; 
+                        
+                        if (obsTimeString != null && !obsTimeString.equals("")) {
+                            String newObsDateString = DATE_FORMATS[0].format(startDate) + "T" + obsTimeString;
                             
-                            if (obsTimeString != null && !obsTimeString.equals("")) {
-                                String newObsDateString = DATE_FORMATS[0].format(startDate) + "T" + obsTimeString;
-                                
-                                for (SimpleDateFormat format : TIME_FORMATS) {
-                                    format.setLenient(false);
-                    
-                                    try {
-                                        startDateTime = format.parse(newObsDateString);
-                                        dbgLog.fine("Valid date obtained by combining obs date and time: " + newObsDateString + ", format: " + format.toPattern() + ", resulting date: "+startDateTime+", formatted resulting date: "+TIME_FORMATS[0].format(startDateTime));
-                                        //startDateFormatted = TIME_FORMATS[0].format(startDateTime);
-                                        //startDateFormatted = newObsDateString;
-                                        startDateFormatted = format.format(startDateTime);
-                                        break;
-                                    } catch (ParseException ex) {
-                                        startDateTime = null; 
-                                    }
-                                }
-                                
-                                if (startDateTime != null) {
-                                    startDate = startDateTime;
+                            for (SimpleDateFormat format : TIME_FORMATS) {
+                                format.setLenient(false);
+                
+                                try {
+                                    startDateTime = format.parse(newObsDateString);
+                                    dbgLog.fine("Valid date obtained by combining obs date and time: " + newObsDateString + ", format: " + format.toPattern() + ", resulting date: "+startDateTime+", formatted resulting date: "+TIME_FORMATS[0].format(startDateTime));
+                                    //startDateFormatted = TIME_FORMATS[0].format(startDateTime);
+                                    //startDateFormatted = newObsDateString;
+                                    startDateFormatted = format.format(startDateTime);
+                                    break;
+                                } catch (ParseException ex) {
+                                    startDateTime = null; 
                                 }
                             }
+                            
+                            if (startDateTime != null) {
+                                startDate = startDateTime;
+                            }
                         }
                     }
+                }
+                
+                if (startDate != null) {
+                    dbgLog.fine("Let's try and calculate the end date...");
+                    // Check if it's the min. start date value we've got so far:
                     
-                    if (startDate != null) {
-                        dbgLog.fine("Let's try and calculate the end date...");
-                        // Check if it's the min. start date value we've got so far:
-                        
-                        if (minDate == null) {
-                            minDate = startDate;
-                            startObsTime = startDateFormatted;
-                        } else if (startDate.before(minDate)) {
-                            minDate = startDate;
-                            startObsTime = startDateFormatted;
-                        }
-                        
-                        // Stop/end dates: 
-                        endDate = startDate; 
-                        endDateFormatted = startDateFormatted; 
-                        
-                        // Check if we have the EXPTIME stored, that would allow us
-                        // to recalculate the end time: 
-                        // getDoubleValue isn't advertised to throw any exceptions; 
-                        // so I'm going to assume that it just returns 0
-                        // if there's not such header value, or if the value
-                        // is not a valid double. (their document does say that 
-                        // it returns 0.0 "if not found"; but what does it return
-                        // if the value of the header is "foo"?")
-                        double expTimeValue = hduHeader.getDoubleValue("EXPTIME");
-                        if (expTimeValue != 0.0) {
-                            long expTimeInMillis = (long) (expTimeValue * 1000);
-                            dbgLog.fine("EXPTIME in MILLISECONDS: " + expTimeInMillis);
-                            Calendar endDateCal = Calendar.getInstance();
-                            endDateCal.setTime(endDate);
-                            long endTimeInMillis = endDateCal.getTimeInMillis() + expTimeInMillis;
-                            dbgLog.fine("END TIME in MILLISECONDS: " + endTimeInMillis);
-                            endDateCal.setTimeInMillis(endTimeInMillis);
-                            endDate = endDateCal.getTime();
-                        
-                            if ((endTimeInMillis / 1000) * 1000 != endTimeInMillis) {
-                                endDateFormatted = TIME_FORMATS[0].format(endDate);
-                            } else {
-                                endDateFormatted = TIME_FORMATS[1].format(endDate);
-                            }
-                            
-                            // While we are at it, we will also populate the 
-                            // Resolution.Temporal field, where EXPTIME 
-                            // maps in the Astro metadata block: 
-                            String indexableKeyExpTime = getIndexableMetaKey("EXPTIME");
-                            if (fitsMetaMap.get(indexableKeyExpTime) == null) {
-                                fitsMetaMap.put(indexableKeyExpTime, new HashSet<String>());
-                            }
-                            fitsMetaMap.get(indexableKeyExpTime).add(Double.toString(expTimeValue));
-                            metadataKeys.add("EXPTIME");
+                    if (minDate == null) {
+                        minDate = startDate;
+                        startObsTime = startDateFormatted;
+                    } else if (startDate.before(minDate)) {
+                        minDate = startDate;
+                        startObsTime = startDateFormatted;
+                    }
+                    
+                    // Stop/end dates: 
+                    endDate = startDate; 
+                    endDateFormatted = startDateFormatted; 
+                    
+                    // Check if we have the EXPTIME stored, that would allow us
+                    // to recalculate the end time: 
+                    // getDoubleValue isn't advertised to throw any exceptions; 
+                    // so I'm going to assume that it just returns 0
+                    // if there's not such header value, or if the value
+                    // is not a valid double. (their document does say that 
+                    // it returns 0.0 "if not found"; but what does it return
+                    // if the value of the header is "foo"?")
+                    double expTimeValue = hduHeader.getDoubleValue("EXPTIME");
+                    if (expTimeValue != 0.0) {
+                        long expTimeInMillis = (long) (expTimeValue * 1000);
+                        dbgLog.fine("EXPTIME in MILLISECONDS: " + expTimeInMillis);
+                        Calendar endDateCal = Calendar.getInstance();
+                        endDateCal.setTime(endDate);
+                        long endTimeInMillis = endDateCal.getTimeInMillis() + expTimeInMillis;
+                        dbgLog.fine("END TIME in MILLISECONDS: " + endTimeInMillis);
+                        endDateCal.setTimeInMillis(endTimeInMillis);
+                        endDate = endDateCal.getTime();
+                    
+                        if ((endTimeInMillis / 1000) * 1000 != endTimeInMillis) {
+                            endDateFormatted = TIME_FORMATS[0].format(endDate);
+                        } else {
+                            endDateFormatted = TIME_FORMATS[1].format(endDate);
                         }
                         
-                        // Check if it's the max. end date value so far: 
-                        
-                        if (maxDate == null) {
-                            maxDate = endDate;
-                            stopObsTime = endDateFormatted; 
-                        } else if (endDate.after(maxDate)) {
-                            maxDate = endDate; 
-                            stopObsTime = endDateFormatted; 
+                        // While we are at it, we will also populate the 
+                        // Resolution.Temporal field, where EXPTIME 
+                        // maps in the Astro metadata block: 
+                        String indexableKeyExpTime = getIndexableMetaKey("EXPTIME");
+                        if (fitsMetaMap.get(indexableKeyExpTime) == null) {
+                            fitsMetaMap.put(indexableKeyExpTime, new HashSet<String>());
                         }
-                        
-                        
+                        fitsMetaMap.get(indexableKeyExpTime).add(Double.toString(expTimeValue));
+                        metadataKeys.add("EXPTIME");
                     }
-                   
-                }
-                
-                
-                /* TODO: 
-                 * use the Axes values for determining if this is a spectrum:
-                */
-                if (hdu.getAxes() != null) {
-                    for (int j = 0; j < hdu.getAxes().length; j++) {
-                        int nAxisN = hdu.getAxes()[j];
-                        metadataKeys.add("NAXIS"+j);
-                        dbgLog.fine("NAXIS"+j+" value: "+nAxisN);
+                    
+                    // Check if it's the max. end date value so far: 
+                    
+                    if (maxDate == null) {
+                        maxDate = endDate;
+                        stopObsTime = endDateFormatted; 
+                    } else if (endDate.after(maxDate)) {
+                        maxDate = endDate; 
+                        stopObsTime = endDateFormatted; 
                     }
-                } else {
-                        dbgLog.fine("NULL Axes array.");
+                    
+                    
                 }
-                
-                // Process individual header cards:
-                
-                HeaderCard headerCard = null;
+               
+            }
+            
+            
+            /* TODO: 
+             * use the Axes values for determining if this is a spectrum:
+            */
+            int nAxes = hduHeader.getIntValue("NAXIS", 0);
+            for (int j = 0; j < nAxes; j++) {
+                // (in the reverse order, as BasicHDU.getAxes() has them)
+                int nAxisN = hduHeader.getIntValue("NAXIS"+(nAxes-j), 0);
+                metadataKeys.add("NAXIS"+j);
+                dbgLog.fine("NAXIS"+j+" value: "+nAxisN);
+            }
+            
+            // Process individual header cards:
+            
+            HeaderCard headerCard = null;
 
-                int j = 0;
-                while ((headerCard = hduHeader.nextCard()) != null) {
+            int j = 0;
+            while ((headerCard = hduHeader.nextCard()) != null) {
 
-                    String headerKey = headerCard.getKey();
-                    String headerValue = headerCard.getValue();
-                    String headerComment = headerCard.getComment();
+                String headerKey = headerCard.getKey();
+                String headerValue = headerCard.getValue();
+                String headerComment = headerCard.getComment();
 
-                    dbgLog.fine("Processing header key: "+headerKey);
-                    dbgLog.fine("Value: "+headerValue);
-                    boolean recognized = false; 
-                    
-                    if (headerKey != null) {
-                        /*
-                        if (i > 1 && headerKey.equals("EXTNAME")) {
-                            hduNames.set(i-2, headerValue);
-                        } */
-                        if (isRecognizedKey(headerKey)) {
-                            dbgLog.fine("recognized key: " + headerKey);
-                            recognized = true; 
-                            metadataKeys.add(headerKey);
-                        } /*else if (isRecognizedColumnKey(headerKey)) {
-                            dbgLog.fine("recognized column key: " + headerKey);
-                            recognized = true;
-                            //columnKeys.add(getTrimmedColumnKey(headerKey));
-                            columnKeys.add(headerKey);
-                        }*/
-                    } 
-                    
-                    if (recognized) {
+                dbgLog.fine("Processing header key: "+headerKey);
+                dbgLog.fine("Value: "+headerValue);
+                boolean recognized = false; 
+                
+                if (headerKey != null) {
+                    /*
+                    if (i > 1 && headerKey.equals("EXTNAME")) {
+                        hduNames.set(i-2, headerValue);
+                    } */
+                    if (isRecognizedKey(headerKey)) {
+                        dbgLog.fine("recognized key: " + headerKey);
+                        recognized = true; 
+                        metadataKeys.add(headerKey);
+                    } /*else if (isRecognizedColumnKey(headerKey)) {
+                        dbgLog.fine("recognized column key: " + headerKey);
+                        recognized = true;
+                        //columnKeys.add(getTrimmedColumnKey(headerKey));
+                        columnKeys.add(headerKey);
+                    }*/
+                } 
+                
+                if (recognized) {
 
-                        String indexableKey = 
-                                getIndexableMetaKey(headerKey) != null ? 
-                                getIndexableMetaKey(headerKey) : 
-                                headerKey; 
+                    String indexableKey = 
+                            getIndexableMetaKey(headerKey) != null ? 
+                            getIndexableMetaKey(headerKey) : 
+                            headerKey; 
+                    
+                    if (headerValue != null) {
+                        dbgLog.fine("value: " + headerValue);
+                        if (fitsMetaMap.get(indexableKey) == null) {
+                            fitsMetaMap.put(indexableKey, new HashSet<String>());
+                        } 
                         
-                        if (headerValue != null) {
-                            dbgLog.fine("value: " + headerValue);
-                            if (fitsMetaMap.get(indexableKey) == null) {
-                                fitsMetaMap.put(indexableKey, new HashSet<String>());
-                            } 
-                            
-                            // if the key is supposed to be a FLOAT, we only 
-                            // want to process it if the value actually validates
-                            // as a float:
-                            // TODO: make sure all other values that may be 
-                            // be expected to parse as certain formats/types are 
-                            // also validated!
-                            // -- L.A. 4.0 beta
-                            if (isRecognizedFloatKey(headerKey)) {
-                                try {
-                                    Double.parseDouble(headerValue);
-                                    fitsMetaMap.get(indexableKey).add(headerValue);
-                                } catch (Exception e) {}
-                            } else {
+                        // if the key is supposed to be a FLOAT, we only 
+                        // want to process it if the value actually validates
+                        // as a float:
+                        // TODO: make sure all other values that may be 
+                        // be expected to parse as certain formats/types are 
+                        // also validated!
+                        // -- L.A. 4.0 beta
+                        if (isRecognizedFloatKey(headerKey)) {
+                            try {
+                                Double.parseDouble(headerValue);
                                 fitsMetaMap.get(indexableKey).add(headerValue);
-                            }
-
-                        } else if (headerKey.equals("COMMENT") && headerComment != null) {
-                            dbgLog.fine("comment: " + headerComment);
-                            if (fitsMetaMap.get(indexableKey) == null) {
-                                fitsMetaMap.put(indexableKey, new HashSet<String>());
-                            } 
-                            fitsMetaMap.get(indexableKey).add(headerComment);
+                            } catch (Exception e) {}
                         } else {
-                            dbgLog.fine("value is null");
+                            fitsMetaMap.get(indexableKey).add(headerValue);
                         }
 
+                    } else if (headerKey.equals("COMMENT") && headerComment != null) {
+                        dbgLog.fine("comment: " + headerComment);
+                        if (fitsMetaMap.get(indexableKey) == null) {
+                            fitsMetaMap.put(indexableKey, new HashSet<String>());
+                        } 
+                        fitsMetaMap.get(indexableKey).add(headerComment);
+                    } else {
+                        dbgLog.fine("value is null");
                     }
-                    j++;
+
                 }
-                dbgLog.fine ("processed "+j+" cards total;");
-                
-                // not sure this is legit: hdu.skipData(fitsFile.getStream());
-                // the following is legit, but seemingly unnecessary: 
-                // Data fitsData = hdu.getData(); 
-                // dbgLog.info ("data size: "+fitsData.getSize());
-                // TODO: confirm memory use implications of reading the Data 
-                // section vs. skipping it explicitly vs. not doing anything. :) 
-                // -- L.A. June 1 2014.
-                dbgLog.fine("total size of the HDU is "+hdu.getSize());
-                               
+                j++;
             }
-
-        } catch (FitsException fEx) {
-            throw new IOException("Failed to read HDU number " + i);
-        }
+            dbgLog.fine ("processed "+j+" cards total;");
             
-        dbgLog.fine ("processed "+i+" HDUs total;");
+            // The data unit is skipped by the scanner, when the next 
+            // header is read; it is never read into memory. 
+            dbgLog.fine("size of the data unit of the HDU is "+scanner.getDataSize());
+                           
+        }
         
-        int n = fitsFile.getNumberOfHDUs(); 
+        dbgLog.fine ("processed "+i+" HDUs total;");
         
-        if (n != i) {
-            dbgLog.fine("WARNING: mismatch between the number of cards processed and reported!");
-        }
-        dbgLog.fine("Total (current) number of HDUs: "+n);
+        int n = i; 
         
         // Make final decisions on the "type(s)" of the file we have just
         // processed: 
@@ -1033,18 +1030,14 @@ public class FITSFileMetadataExtractor extends FileMetadataExtractor {
      */
     
     public static void main(String[] args) {
-        BufferedInputStream fitsStream = null;
-        
         String fitsFile = args[0]; 
         FileMetadataIngest fitsIngest = null; 
         Map<String, Set<String>> fitsMetadata = null; 
         
         try {
-           fitsStream = new BufferedInputStream(new FileInputStream(fitsFile)); 
-           
            FITSFileMetadataExtractor fitsIngester = new FITSFileMetadataExtractor();
            
-           fitsIngest = fitsIngester.ingest(fitsStream); 
+           fitsIngest = fitsIngester.ingest(new File(fitsFile)); 
            fitsMetadata = fitsIngest.getMetadataMap();
             
         } catch (IOException ex) {
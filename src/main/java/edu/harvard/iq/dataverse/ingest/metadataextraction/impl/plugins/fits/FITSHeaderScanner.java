@@ -0,0 +1,290 @@
+package edu.harvard.iq.dataverse.ingest.metadataextraction.impl.plugins.fits;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import nom.tam.fits.Header;
+
+/**
+ * Reads the headers of the HDUs in a FITS file, one after another, without
+ * reading the data units in between: in a file, these are skipped by moving
+ * the position of its channel past them (so the size of the data does not
+ * matter); in a stream - a gzipped file, for example - they are read through,
+ * and discarded, block by block.
+ *
+ * The size of a data unit is calculated from the BITPIX, NAXISn, PCOUNT and
+ * GCOUNT values in its header, as defined in the FITS Standard (4.4.1).
+ */
+class FITSHeaderScanner implements Closeable {
+    private static final Logger logger = Logger.getLogger(FITSHeaderScanner.class.getCanonicalName());
+
+    static final int BLOCK_SIZE = 2880;
+    static final int CARD_SIZE = 80;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int SKIP_BUFFER_SIZE = 64 * 1024;
+
+    // one or the other, depending on how the file is read:
+    private final FileChannel channel;
+    private final InputStream stream;
+    // (a gzipped stream can only be read through; skip() on an inflater
+    // goes 512 bytes at a time)
+    private final boolean gzipped;
+    private byte[] skipBuffer = null;
+
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+
+    private int hduCount = 0;
+    // the size of the data unit of the last HDU read, without the padding;
+    // it is skipped when (and if) the next header is requested.
+    private long dataSize = 0;
+    private boolean finished = false;
+
+    /**
+     * Opens a FITS file, plain or gzipped.
+     */
+    FITSHeaderScanner(File file) throws IOException {
+        FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(2);
+            fileChannel.read(magic, 0);
+            if (magic.position() == 2 && isGzipMagic(magic.get(0), magic.get(1))) {
+                channel = null;
+                stream = new GZIPInputStream(new BufferedInputStream(Channels.newInputStream(fileChannel)), SKIP_BUFFER_SIZE);
+                gzipped = true;
+            } else {
+                channel = fileChannel;
+                stream = null;
+                gzipped = false;
+            }
+        } catch (IOException ex) {
+            fileChannel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads a FITS stream, plain or gzipped.
+     */
+    FITSHeaderScanner(BufferedInputStream in) throws IOException {
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        channel = null;
+        if (b1 != -1 && b2 != -1 && isGzipMagic((byte) b1, (byte) b2)) {
+            stream = new GZIPInputStream(in, SKIP_BUFFER_SIZE);
+            gzipped = true;
+        } else {
+            stream = in;
+            gzipped = false;
+        }
+    }
+
+    private static boolean isGzipMagic(byte b1, byte b2) {
+        return ((b1 & 0xff) | ((b2 & 0xff) << 8)) == GZIP_MAGIC;
+    }
+
+    /**
+     * Reads the header of the next HDU, skipping the data unit of the
+     * previous one.
+     *
+     * @return the header; or null, if there are no more HDUs in the file.
+     * @throws IOException if the file is not a FITS file, or is truncated.
+     */
+    Header nextHeader() throws IOException {
+        if (finished) {
+            return null;
+        }
+
+        if (hduCount > 0) {
+            skipData(paddedSize(dataSize));
+            dataSize = 0;
+        }
+
+        List<String> cards = new ArrayList<>();
+        boolean end = false;
+
+        while (!end) {
+            int bytesRead = readBlock();
+
+            if (bytesRead < BLOCK_SIZE) {
+                if (bytesRead == 0 && cards.isEmpty() && hduCount > 0) {
+                    // the end of the file, right after the last HDU.
+                    finished = true;
+                    return null;
+                }
+                if (hduCount == 0) {
+                    throw new IOException("Failed to open FITS stream; not a FITS file, or the primary header is incomplete.");
+                }
+                throw new IOException("Failed to read HDU number " + hduCount + "; the header is incomplete.");
+            }
+
+            for (int offset = 0; offset < BLOCK_SIZE; offset += CARD_SIZE) {
+                String card = new String(block.array(), offset, CARD_SIZE, StandardCharsets.US_ASCII);
+
+                if (cards.isEmpty()) {
+                    if (hduCount == 0 && !card.startsWith("SIMPLE  =")) {
+                        throw new IOException("Failed to open FITS stream; not a FITS file (no SIMPLE keyword).");
+                    }
+                    if (hduCount > 0 && !card.startsWith("XTENSION=")) {
+                        // Not an extension; the records that may follow the
+                        // last HDU are not part of the standard, and are ignored.
+                        logger.fine("No XTENSION keyword after HDU number " + (hduCount - 1) + "; ignoring the rest of the file.");
+                        finished = true;
+                        return null;
+                    }
+                }
+
+                cards.add(card);
+
+                if (card.startsWith("END") && card.substring(0, 8).trim().equals("END")) {
+                    end = true;
+                    break;
+                }
+            }
+        }
+
+        Header header = new Header(cards.toArray(new String[cards.size()]));
+        dataSize = dataSize(header);
+        hduCount++;
+        return header;
+    }
+
+    /**
+     * @return the size, in bytes, of the data unit of the last HDU read,
+     * not including the padding at the end.
+     */
+    long getDataSize() {
+        return dataSize;
+    }
+
+    /**
+     * The size of the data unit, in bytes:
+     * |BITPIX| * GCOUNT * (PCOUNT + NAXIS1 * NAXIS2 * ... * NAXISm) / 8;
+     * with NAXIS1 left out for the random groups (where it is 0).
+     */
+    static long dataSize(Header header) throws IOException {
+        int nAxis = header.getIntValue("NAXIS", 0);
+        if (nAxis <= 0) {
+            return 0;
+        }
+
+        boolean randomGroups = header.getBooleanValue("GROUPS", false) && header.getLongValue("NAXIS1", -1) == 0;
+
+        try {
+            long elements = 1;
+            for (int axis = randomGroups ? 2 : 1; axis <= nAxis; axis++) {
+                elements = Math.multiplyExact(elements, nonNegative(header, "NAXIS" + axis, -1));
+            }
+
+            long bitpix = Math.abs(header.getLongValue("BITPIX", 0));
+            long pCount = nonNegative(header, "PCOUNT", 0);
+            long gCount = nonNegative(header, "GCOUNT", 1);
+
+            long bits = Math.multiplyExact(Math.multiplyExact(bitpix, gCount), Math.addExact(pCount, elements));
+            return bits / 8;
+        } catch (ArithmeticException ex) {
+            throw new IOException("Invalid FITS header; the size of the data unit is too large.");
+        }
+    }
+
+    private static long nonNegative(Header header, String key, long defaultValue) throws IOException {
+        long value = header.getLongValue(key, defaultValue);
+        if (value < 0) {
+            throw new IOException("Invalid or missing " + key + " value in the FITS header.");
+        }
+        return value;
+    }
+
+    private static long paddedSize(long size) {
+        long remainder = size % BLOCK_SIZE;
+        return remainder == 0 ? size : size + (BLOCK_SIZE - remainder);
+    }
+
+    /**
+     * Reads the next 2880 bytes into the block buffer.
+     *
+     * @return the number of bytes read; less than a full block at the end
+     * of the file only.
+     */
+    private int readBlock() throws IOException {
+        block.clear();
+        if (channel != null) {
+            while (block.hasRemaining()) {
+                if (channel.read(block) < 0) {
+                    break;
+                }
+            }
+            return block.position();
+        }
+
+        int total = 0;
+        while (total < BLOCK_SIZE) {
+            int n = stream.read(block.array(), total, BLOCK_SIZE - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private void skipData(long bytes) throws IOException {
+        if (bytes == 0) {
+            return;
+        }
+
+        if (channel != null) {
+            long position = channel.position() + bytes;
+            if (position > channel.size()) {
+                throw new IOException("Failed to read HDU number " + (hduCount - 1) + "; the data unit is incomplete.");
+            }
+            channel.position(position);
+            return;
+        }
+
+        if (gzipped && skipBuffer == null) {
+            skipBuffer = new byte[SKIP_BUFFER_SIZE];
+        }
+
+        long remaining = bytes;
+        while (remaining > 0) {
+            long n;
+            if (gzipped) {
+                n = stream.read(skipBuffer, 0, (int) Math.min(remaining, SKIP_BUFFER_SIZE));
+            } else {
+                n = stream.skip(remaining);
+                if (n == 0) {
+                    // skip() may return 0 before the end of the stream; 
+                    // read() tells the two apart:
+                    n = stream.read() < 0 ? -1 : 1;
+                }
+            }
+            if (n < 0) {
+                throw new IOException("Failed to read HDU number " + (hduCount - 1) + "; the data unit is incomplete.");
+            }
+            remaining -= n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        } else {
+            stream.close();
+        }
+    }
+}
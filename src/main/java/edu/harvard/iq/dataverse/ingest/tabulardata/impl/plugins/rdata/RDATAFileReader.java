@@ -27,6 +27,8 @@ import java.text.*;
 import java.util.logging.*;
 import java.util.*;
 import java.security.NoSuchAlgorithmException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import javax.inject.Inject;
 
@@ -487,6 +489,71 @@ public class RDATAFileReader extends TabularDataFileReader {
 
         init();
 
+        // The file is saved locally first, so that it can still be sent to 
+        // Rserve if it turns out not to be readable in Java: 
+        File rDataFile = File.createTempFile("data-", ".RData");
+        try {
+            Files.copy(stream, rDataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            RDataParser parser = new RDataParser(getDataLanguageEncoding());
+            try {
+                return readDataFrame(parser, rDataFile);
+            } catch (UnsupportedRDataException ex) {
+                if (!parser.isWorkspace()) {
+                    // (a saveRDS() file; which the R scripts, that load() 
+                    // workspaces, could not read either)
+                    throw new IOException("Unsupported R data file; " + ex.getMessage());
+                }
+                LOG.info("RDATAFileReader: " + ex.getMessage() + " Ingesting the file with Rserve instead.");
+            }
+
+            try (BufferedInputStream rDataStream = new BufferedInputStream(new FileInputStream(rDataFile))) {
+                return readWithRserve(rDataStream);
+            }
+        } finally {
+            if (!rDataFile.delete()) {
+                LOG.warning("RDATAFileReader: Failed to delete temp file " + rDataFile.getAbsolutePath());
+            }
+        }
+    }
+
+  /**
+   * Reads the data frame in Java, and writes it straight into the TAB file.
+   * @throws UnsupportedRDataException if the file uses anything that 
+   * cannot be read in Java.
+   */
+    private TabularDataIngest readDataFrame(RDataParser parser, File rDataFile) throws IOException {
+        RDataFrame dataFrame;
+        try (InputStream rDataStream = new FileInputStream(rDataFile)) {
+            dataFrame = new RDataFrame(parser.readDataFrame(rDataStream));
+        }
+
+        createDataVariables(dataFrame.getVariableNames());
+        for (int k = 0; k < dataFrame.getVariableNames().length; k++) {
+            setVariableMetaData(k, dataFrame.getTypeName(k), dataFrame.getFormat(k), dataFrame.getLevels(k));
+        }
+        if (dataFrame.getCaseQuantity() > 0) {
+            dataTable.setCaseQuantity(new Long(dataFrame.getCaseQuantity()));
+        }
+
+        File tabFileDestination = File.createTempFile("data-", ".tab");
+        try (PrintWriter tabFileWriter = new PrintWriter(tabFileDestination.getAbsolutePath(), "UTF-8")) {
+            int lineCount = dataFrame.writeTabFile(tabFileWriter);
+            LOG.fine("RDATAFileReader: wrote " + lineCount + " lines of tab-delimited data.");
+        }
+
+        dataTable.setUnf("UNF:pending");
+
+        ingesteddata.setTabDelimitedFile(tabFileDestination);
+        ingesteddata.setDataTable(dataTable);
+        return ingesteddata;
+    }
+
+  /**
+   * Reads the data frame with Rserve.
+   */
+    private TabularDataIngest readWithRserve(BufferedInputStream stream) throws IOException {
+
         // Create Request object
         LOG.fine("RDATAFileReader: Creating RRequest object from RRequestBuilder object");
 
@@ -623,39 +690,12 @@ public class RDATAFileReader extends TabularDataFileReader {
 
             RList metaInfo = fileInformation.at("meta.info").asList();
 
-            int varQnty = 0;
             variableNames = fileInformation.at("varNames").asStrings();
 
             //mDataTypes = fileInformation.at("dataTypes").asStrings();
 
             // Initialize variables: 
-            List<DataVariable> variableList = new ArrayList<DataVariable>();
-
-            for (String varName : variableNames) {
-                DataVariable dv = new DataVariable();
-                dv.setName(varName);
-                dv.setLabel(varName);
-                // TODO:
-                // Check if variables have real descriptive labels defined, 
-                // via the mechanismm provided by that special optional package... 
-                // (?) -- L.A. 
-                dv.setInvalidRanges(new ArrayList());
-                dv.setSummaryStatistics(new ArrayList());
-                dv.setUnf("UNF:6:XYZXYZXYZ");
-                dv.setCategories(new ArrayList());
-                variableList.add(dv);
-
-                dv.setFileOrder(varQnty);
-
-                dv.setDataTable(dataTable);
-
-                // variableLabels.put(varName, varName);
-                // variableNameList.add(varName);
-                varQnty++;
-            }
-
-            dataTable.setVarQuantity(new Long(varQnty));
-            dataTable.setDataVariables(variableList);
+            createDataVariables(variableNames);
         
             // Get the Variable Meta Data Table while Populating 
             processVariableInfo(metaInfo, dataTable);
@@ -684,6 +724,41 @@ public class RDATAFileReader extends TabularDataFileReader {
     
   }
 
+    /**
+     * Creates the DataVariable objects of the data table, with the names 
+     * given, and no metadata yet.
+     */
+    private void createDataVariables(String[] variableNames) {
+        int varQnty = 0;
+        List<DataVariable> variableList = new ArrayList<DataVariable>();
+
+        for (String varName : variableNames) {
+            DataVariable dv = new DataVariable();
+            dv.setName(varName);
+            dv.setLabel(varName);
+            // TODO:
+            // Check if variables have real descriptive labels defined, 
+            // via the mechanismm provided by that special optional package... 
+            // (?) -- L.A. 
+            dv.setInvalidRanges(new ArrayList());
+            dv.setSummaryStatistics(new ArrayList());
+            dv.setUnf("UNF:6:XYZXYZXYZ");
+            dv.setCategories(new ArrayList());
+            variableList.add(dv);
+
+            dv.setFileOrder(varQnty);
+
+            dv.setDataTable(dataTable);
+
+            // variableLabels.put(varName, varName);
+            // variableNameList.add(varName);
+            varQnty++;
+        }
+
+        dataTable.setVarQuantity(new Long(varQnty));
+        dataTable.setDataVariables(variableList);
+    }
+
     /**
    * Read a Local Resource and Return Its Contents as a String
    * <code>readLocalResource</code> searches the local path around the class
@@ -755,98 +830,7 @@ public class RDATAFileReader extends TabularDataFileReader {
                     LOG.fine("variable level: " + variableLevels[i]);
                 }
 
-                //dataTable.getDataVariables().get(k).setFormatSchema("RDATA");
-
-                if (variableTypeName == null || variableTypeName.equals("character") || variableTypeName.equals("other")) {
-                    // This is a String: 
-                    dataTable.getDataVariables().get(k).setTypeCharacter();
-                    dataTable.getDataVariables().get(k).setIntervalDiscrete();
-                    
-                } else if (variableTypeName.equals("integer")) {
-                    dataTable.getDataVariables().get(k).setTypeNumeric();
-                    dataTable.getDataVariables().get(k).setIntervalDiscrete();
-                    
-                } else if (variableTypeName.equals("numeric") || variableTypeName.equals("double")) {
-                    dataTable.getDataVariables().get(k).setTypeNumeric();
-                    dataTable.getDataVariables().get(k).setIntervalContinuous();
-                    
-                } else if (variableTypeName.startsWith("Date")) {
-                    dataTable.getDataVariables().get(k).setTypeCharacter();
-                    dataTable.getDataVariables().get(k).setIntervalDiscrete();
-                    dataTable.getDataVariables().get(k).setFormat(variableFormat);
-                    
-                    // instead:
-                    if (variableTypeName.equals("Date")) {
-                        dataTable.getDataVariables().get(k).setFormatCategory("date");
-                    } else if (variableTypeName.equals("DateTime")) {
-                        dataTable.getDataVariables().get(k).setFormatCategory("time");
-                    }
-                    
-                } else if (variableTypeName.equals("factor")) {
-                    
-                    // All R factors are *string* factors!
-                    dataTable.getDataVariables().get(k).setTypeCharacter();
-                    dataTable.getDataVariables().get(k).setIntervalDiscrete();
-                    if (variableLevels != null && variableLevels.length > 0) {
-                        // yes, this is a factor, with levels defined.
-                        LOG.fine("this is a factor.");
-                        boolean ordered = false; 
-                        
-                        if (variableFormat != null && variableFormat.equals("ordered")) {
-                            LOG.fine("an ordered factor, too");
-                            ordered = true;
-                        }
-                        
-                        for (int i = 0; i < variableLevels.length; i++) {
-                            VariableCategory cat = new VariableCategory();
-                            cat.setValue(variableLevels[i]);
-                            // Sadly, R factors don't have descriptive labels;
-                            cat.setLabel(variableLevels[i]);
-                            
-                            if (ordered) {
-                                cat.setOrder(i+1);
-                            }
-
-                            /* cross-link the variable and category to each other: */
-                            cat.setDataVariable(dataTable.getDataVariables().get(k));
-                            dataTable.getDataVariables().get(k).getCategories().add(cat);
-                        }
-                        
-                        dataTable.getDataVariables().get(k).setOrderedCategorical(ordered);
-
-                    }
-
-                } // And finally, a special case for logical variables: 
-                // For all practical purposes, they are handled as numeric factors
-                // with 0 and 1 for the values and "FALSE" and "TRUE" for the labels.
-                // (so this can also be used as an example of ingesting a *numeric* 
-                // categorical variable - as opposed to *string* categoricals, that
-                // we turn R factors into - above.
-                else if ("logical".equals(variableTypeName)) {
-                    dataTable.getDataVariables().get(k).setFormatCategory("Boolean");
-                    
-                    dataTable.getDataVariables().get(k).setTypeNumeric();
-                    dataTable.getDataVariables().get(k).setIntervalDiscrete();
-
-                    String booleanFactorLabels[] = new String[2];
-                    booleanFactorLabels[0] = "FALSE";
-                    booleanFactorLabels[1] = "TRUE";
-
-                    String booleanFactorValues[] = new String[2];
-                    booleanFactorValues[0] = "0";
-                    booleanFactorValues[1] = "1";
-
-                    for (int i = 0; i < 2; i++) {
-                        VariableCategory cat = new VariableCategory();
-                        cat.setValue(booleanFactorValues[i]);
-                        // Sadly, R factors don't have descriptive labels;
-                        cat.setLabel(booleanFactorLabels[i]);
-
-                        /* cross-link the variable and category to each other: */
-                        cat.setDataVariable(dataTable.getDataVariables().get(k));
-                        dataTable.getDataVariables().get(k).getCategories().add(cat);
-                    }
-                }
+                setVariableMetaData(k, variableTypeName, variableFormat, variableLevels);
 
                 // Store the meta-data in a hashmap (to return later)
             } catch (REXPMismatchException ex) {
@@ -857,4 +841,111 @@ public class RDATAFileReader extends TabularDataFileReader {
             }
         }
     }
+
+    /**
+     * Sets the type, format and categories of a variable, from the metadata 
+     * of the column of the data frame - as described by VariableMetaData() 
+     * in dataset.info.script.R, or by RDataFrame.
+     *
+     * @param k the column number
+     * @param variableTypeName "character", "integer", "numeric", "factor",
+     * "logical", "Date" or "DateTime"
+     * @param variableFormat "ordered" for ordered factors; the date/time 
+     * format of dates and times
+     * @param variableLevels the levels of factors
+     */
+    private void setVariableMetaData(int k, String variableTypeName, String variableFormat, String[] variableLevels) {
+        //dataTable.getDataVariables().get(k).setFormatSchema("RDATA");
+
+        if (variableTypeName == null || variableTypeName.equals("character") || variableTypeName.equals("other")) {
+            // This is a String: 
+            dataTable.getDataVariables().get(k).setTypeCharacter();
+            dataTable.getDataVariables().get(k).setIntervalDiscrete();
+            
+        } else if (variableTypeName.equals("integer")) {
+            dataTable.getDataVariables().get(k).setTypeNumeric();
+            dataTable.getDataVariables().get(k).setIntervalDiscrete();
+            
+        } else if (variableTypeName.equals("numeric") || variableTypeName.equals("double")) {
+            dataTable.getDataVariables().get(k).setTypeNumeric();
+            dataTable.getDataVariables().get(k).setIntervalContinuous();
+            
+        } else if (variableTypeName.startsWith("Date")) {
+            dataTable.getDataVariables().get(k).setTypeCharacter();
+            dataTable.getDataVariables().get(k).setIntervalDiscrete();
+            dataTable.getDataVariables().get(k).setFormat(variableFormat);
+            
+            // instead:
+            if (variableTypeName.equals("Date")) {
+                dataTable.getDataVariables().get(k).setFormatCategory("date");
+            } else if (variableTypeName.equals("DateTime")) {
+                dataTable.getDataVariables().get(k).setFormatCategory("time");
+            }
+            
+        } else if (variableTypeName.equals("factor")) {
+            
+            // All R factors are *string* factors!
+            dataTable.getDataVariables().get(k).setTypeCharacter();
+            dataTable.getDataVariables().get(k).setIntervalDiscrete();
+            if (variableLevels != null && variableLevels.length > 0) {
+                // yes, this is a factor, with levels defined.
+                LOG.fine("this is a factor.");
+                boolean ordered = false; 
+                
+                if (variableFormat != null && variableFormat.equals("ordered")) {
+                    LOG.fine("an ordered factor, too");
+                    ordered = true;
+                }
+                
+                for (int i = 0; i < variableLevels.length; i++) {
+                    VariableCategory cat = new VariableCategory();
+                    cat.setValue(variableLevels[i]);
+                    // Sadly, R factors don't have descriptive labels;
+                    cat.setLabel(variableLevels[i]);
+                    
+                    if (ordered) {
+                        cat.setOrder(i+1);
+                    }
+
+                    /* cross-link the variable and category to each other: */
+                    cat.setDataVariable(dataTable.getDataVariables().get(k));
+                    dataTable.getDataVariables().get(k).getCategories().add(cat);
+                }
+                
+                dataTable.getDataVariables().get(k).setOrderedCategorical(ordered);
+
+            }
+
+        } // And finally, a special case for logical variables: 
+        // For all practical purposes, they are handled as numeric factors
+        // with 0 and 1 for the values and "FALSE" and "TRUE" for the labels.
+        // (so this can also be used as an example of ingesting a *numeric* 
+        // categorical variable - as opposed to *string* categoricals, that
+        // we turn R factors into - above.
+        else if ("logical".equals(variableTypeName)) {
+            dataTable.getDataVariables().get(k).setFormatCategory("Boolean");
+            
+            dataTable.getDataVariables().get(k).setTypeNumeric();
+            dataTable.getDataVariables().get(k).setIntervalDiscrete();
+
+            String booleanFactorLabels[] = new String[2];
+            booleanFactorLabels[0] = "FALSE";
+            booleanFactorLabels[1] = "TRUE";
+
+            String booleanFactorValues[] = new String[2];
+            booleanFactorValues[0] = "0";
+            booleanFactorValues[1] = "1";
+
+            for (int i = 0; i < 2; i++) {
+                VariableCategory cat = new VariableCategory();
+                cat.setValue(booleanFactorValues[i]);
+                // Sadly, R factors don't have descriptive labels;
+                cat.setLabel(booleanFactorLabels[i]);
+
+                /* cross-link the variable and category to each other: */
+                cat.setDataVariable(dataTable.getDataVariables().get(k));
+                dataTable.getDataVariables().get(k).getCategories().add(cat);
+            }
+        }
+    }
 }
@@ -0,0 +1,335 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.rdata;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * An R data frame, as read by {@link RDataParser}: the metadata of its
+ * columns - their type names, formats and levels, the same as the
+ * dataset.info.script.R script gives - and the writing of its values in
+ * the tab-delimited format, the same way write.table.R and
+ * {@link RTabFileParser} do.
+ *
+ * The columns supported are the numeric, integer, logical and character
+ * vectors, the factors (ordered or not), and the Date and POSIXct vectors;
+ * anything else (matrices, lists, other classes...) is reported with an
+ * {@link UnsupportedRDataException}.
+ */
+class RDataFrame {
+
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final String[] variableNames;
+    private final RObject[] columns;
+    private final String[] typeNames;
+    private final String[] formats;
+    private final String[][] levels;
+    // the time zones of the POSIXct columns, and their names, as written
+    private final ZoneId[] timeZones;
+    private final String[] timeZoneNames;
+    private final int caseQuantity;
+
+    RDataFrame(RObject dataFrame) throws IOException {
+        columns = dataFrame.getElements();
+        if (columns.length == 0) {
+            throw new IOException("The data frame has no variables.");
+        }
+        caseQuantity = rowCount(dataFrame);
+
+        String[] names = dataFrame.getStringsAttribute("names");
+        variableNames = new String[columns.length];
+        typeNames = new String[columns.length];
+        formats = new String[columns.length];
+        levels = new String[columns.length][];
+        timeZones = new ZoneId[columns.length];
+        timeZoneNames = new String[columns.length];
+
+        for (int k = 0; k < columns.length; k++) {
+            variableNames[k] = names != null && k < names.length && names[k] != null ? names[k] : "V" + (k + 1);
+            RObject column = columns[k];
+            if (column.length() != caseQuantity) {
+                throw new IOException("Variable " + variableNames[k] + " has " + column.length()
+                        + " values, for " + caseQuantity + " rows.");
+            }
+            setColumnType(k, column);
+        }
+    }
+
+    String[] getVariableNames() {
+        return variableNames;
+    }
+
+    int getCaseQuantity() {
+        return caseQuantity;
+    }
+
+    /**
+     * @return "numeric", "integer", "logical", "character", "factor", "Date"
+     * or "DateTime".
+     */
+    String getTypeName(int k) {
+        return typeNames[k];
+    }
+
+    /**
+     * @return "ordered" for ordered factors, the date or time format of the
+     * Date and POSIXct columns; null otherwise.
+     */
+    String getFormat(int k) {
+        return formats[k];
+    }
+
+    /**
+     * @return The levels of a factor; an empty array for the other columns.
+     */
+    String[] getLevels(int k) {
+        return levels[k];
+    }
+
+    /**
+     * Writes the values, one row per line.
+     *
+     * @return The number of lines written.
+     */
+    int writeTabFile(PrintWriter out) {
+        StringBuilder line = new StringBuilder();
+        for (int row = 0; row < caseQuantity; row++) {
+            line.setLength(0);
+            for (int k = 0; k < columns.length; k++) {
+                if (k > 0) {
+                    line.append('\t');
+                }
+                appendValue(line, k, row);
+            }
+            out.println(line);
+        }
+        return caseQuantity;
+    }
+
+    /**
+     * Missing values (NAs) are written as empty strings. Character values,
+     * and the levels of factors, are quoted and escaped, as
+     * TabularDataFileReader.escapeCharacterString() does; numeric values
+     * are written the way RTabFileParser writes them.
+     */
+    private void appendValue(StringBuilder line, int k, int row) {
+        RObject column = columns[k];
+        switch (typeNames[k]) {
+            case "numeric": {
+                double value = column.getDoubles()[row];
+                if (RObject.isNA(value)) {
+                    // missing value
+                } else if (Double.isNaN(value)) {
+                    line.append("NaN");
+                } else if (value == Double.POSITIVE_INFINITY) {
+                    line.append("Inf");
+                } else if (value == Double.NEGATIVE_INFINITY) {
+                    line.append("-Inf");
+                } else {
+                    line.append(Double.toString(value));
+                }
+                break;
+            }
+            case "integer": {
+                int value = column.getInts()[row];
+                if (value != RObject.NA_INTEGER) {
+                    line.append(value);
+                }
+                break;
+            }
+            case "logical": {
+                int value = column.getInts()[row];
+                if (value != RObject.NA_INTEGER) {
+                    line.append(value == 0 ? '0' : '1');
+                }
+                break;
+            }
+            case "factor": {
+                int code = column.getInts()[row];
+                if (code != RObject.NA_INTEGER && code >= 1 && code <= levels[k].length) {
+                    appendString(line, levels[k][code - 1]);
+                }
+                break;
+            }
+            case "character": {
+                String value = column.getStrings()[row];
+                if (value != null) {
+                    appendString(line, value);
+                }
+                break;
+            }
+            case "Date": {
+                double days = numericValue(column, row);
+                if (!Double.isNaN(days) && !Double.isInfinite(days)) {
+                    line.append(LocalDate.ofEpochDay((long) Math.floor(days)).toString());
+                }
+                break;
+            }
+            case "DateTime": {
+                double seconds = numericValue(column, row);
+                if (!Double.isNaN(seconds) && !Double.isInfinite(seconds)) {
+                    appendDateTime(line, seconds, timeZones[k], timeZoneNames[k]);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * The seconds, truncated to milliseconds - as R's "%OS3" does - with the
+     * milliseconds left out if all zeros, and the time zone appended, as in
+     * "2013-04-08 13:14:23.102 UTC"; as write.table.R writes POSIXct values.
+     */
+    private static void appendDateTime(StringBuilder line, double seconds, ZoneId timeZone, String timeZoneName) {
+        long milliseconds = (long) Math.floor(seconds * 1000);
+        line.append(DATE_TIME_FORMAT.format(Instant.ofEpochMilli(milliseconds).atZone(timeZone)));
+        int fraction = (int) Math.floorMod(milliseconds, 1000L);
+        if (fraction != 0) {
+            line.append('.');
+            if (fraction < 100) {
+                line.append('0');
+            }
+            if (fraction < 10) {
+                line.append('0');
+            }
+            line.append(fraction);
+        }
+        line.append(' ').append(timeZoneName);
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                default:
+                    line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * @return A value of a Date or POSIXct column - which may be stored as
+     * integers, as well as reals; NaN for NA.
+     */
+    private static double numericValue(RObject column, int row) {
+        if (column.getType() == RObject.INTSXP) {
+            int value = column.getInts()[row];
+            return value == RObject.NA_INTEGER ? Double.NaN : value;
+        }
+        return column.getDoubles()[row];
+    }
+
+    /**
+     * Works out the type of a column the way VariableMetaData() in
+     * dataset.info.script.R does, i.e. by the first of its classes that it
+     * has a method for.
+     */
+    private void setColumnType(int k, RObject column) throws UnsupportedRDataException {
+        levels[k] = new String[0];
+        String[] classes = column.getClassAttribute();
+        if (classes == null) {
+            if (column.getAttribute("dim") != null) {
+                throw new UnsupportedRDataException("Unsupported variable " + variableNames[k] + ": a matrix.");
+            }
+            switch (column.getType()) {
+                case RObject.REALSXP:
+                    typeNames[k] = "numeric";
+                    return;
+                case RObject.INTSXP:
+                    typeNames[k] = "integer";
+                    return;
+                case RObject.LGLSXP:
+                    typeNames[k] = "logical";
+                    return;
+                case RObject.STRSXP:
+                    typeNames[k] = "character";
+                    return;
+                default:
+                    throw new UnsupportedRDataException("Unsupported variable " + variableNames[k] + ": of type " + column.getType() + ".");
+            }
+        }
+
+        boolean numeric = column.getType() == RObject.REALSXP || column.getType() == RObject.INTSXP;
+        for (String className : classes) {
+            if (className.equals("factor") && column.getType() == RObject.INTSXP) {
+                typeNames[k] = "factor";
+                String[] factorLevels = column.getStringsAttribute("levels");
+                if (factorLevels != null) {
+                    levels[k] = factorLevels;
+                    for (int i = 0; i < factorLevels.length; i++) {
+                        if (factorLevels[i] == null) {
+                            factorLevels[i] = "NA";
+                        }
+                    }
+                }
+                if (column.inherits("ordered")) {
+                    formats[k] = "ordered";
+                }
+                return;
+            } else if (className.equals("POSIXt") && column.inherits("POSIXct") && numeric) {
+                typeNames[k] = "DateTime";
+                formats[k] = "yyyy-MM-dd HH:mm:ss.SSS z";
+                // Values with no time zone are written in UTC; those with
+                // one, in theirs, as is
+                String[] timeZone = column.getStringsAttribute("tzone");
+                if (timeZone == null || timeZone.length == 0 || timeZone[0] == null || timeZone[0].isEmpty()) {
+                    timeZones[k] = ZoneOffset.UTC;
+                    timeZoneNames[k] = "UTC";
+                } else {
+                    try {
+                        timeZones[k] = ZoneId.of(timeZone[0]);
+                    } catch (DateTimeException ex) {
+                        throw new UnsupportedRDataException("Unsupported time zone of variable " + variableNames[k] + ": " + timeZone[0]);
+                    }
+                    timeZoneNames[k] = timeZone[0];
+                }
+                return;
+            } else if (className.equals("Date") && numeric) {
+                typeNames[k] = "Date";
+                formats[k] = "yyyy-MM-dd";
+                return;
+            }
+        }
+        throw new UnsupportedRDataException("Unsupported variable " + variableNames[k] + ": of class " + classes[0] + ".");
+    }
+
+    /**
+     * The number of rows, from the row names; which are stored as
+     * c(NA, -n) (or c(NA, n)) when they are just the row numbers.
+     */
+    private static int rowCount(RObject dataFrame) {
+        RObject rowNames = dataFrame.getAttribute("row.names");
+        if (rowNames == null) {
+            return dataFrame.getElements()[0].length();
+        }
+        if (rowNames.getType() == RObject.INTSXP && rowNames.length() == 2
+                && rowNames.getInts()[0] == RObject.NA_INTEGER) {
+            return Math.abs(rowNames.getInts()[1]);
+        }
+        return rowNames.length();
+    }
+
+}
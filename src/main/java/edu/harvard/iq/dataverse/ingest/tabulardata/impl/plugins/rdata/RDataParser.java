@@ -0,0 +1,583 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.rdata;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+
+/**
+ * Reads R's serialization format, in Java: that of the workspaces saved by
+ * save() (.RData), and of the single objects saved by saveRDS() (.rds);
+ * XDR (binary) only - which is what R writes, unless asked otherwise -
+ * versions 2 and 3, uncompressed or compressed with gzip, bzip2 or xz.
+ *
+ * This follows ReadItem() etc. in R's src/main/serialize.c. Anything that
+ * cannot be read (ASCII or native binary formats, reference classes, ALTREP
+ * classes other than those of base R...) is reported with an
+ * {@link UnsupportedRDataException}.
+ *
+ * @see RObject
+ */
+class RDataParser {
+
+    private static final Logger dbgLog = Logger.getLogger(RDataParser.class.getPackage().getName());
+
+    // the pseudo SEXPTYPEs of the serialization format
+    private static final int REFSXP = 255;
+    private static final int NILVALUE_SXP = 254;
+    private static final int GLOBALENV_SXP = 253;
+    private static final int UNBOUNDVALUE_SXP = 252;
+    private static final int MISSINGARG_SXP = 251;
+    private static final int BASENAMESPACE_SXP = 250;
+    private static final int NAMESPACESXP = 249;
+    private static final int PACKAGESXP = 248;
+    private static final int PERSISTSXP = 247;
+    private static final int CLASSREFSXP = 246;
+    private static final int GENERICREFSXP = 245;
+    private static final int BCREPDEF = 244;
+    private static final int BCREPREF = 243;
+    private static final int EMPTYENV_SXP = 242;
+    private static final int BASEENV_SXP = 241;
+    private static final int ATTRLANGSXP = 240;
+    private static final int ATTRLISTSXP = 239;
+    private static final int ALTREP_SXP = 238;
+
+    // the flags of an item
+    private static final int HAS_ATTR_BIT_MASK = 1 << 9;
+    private static final int HAS_TAG_BIT_MASK = 1 << 10;
+
+    // the encoding flags of a CHARSXP, in its levels
+    private static final int BYTES_MASK = 1 << 1;
+    private static final int LATIN1_MASK = 1 << 2;
+    private static final int UTF8_MASK = 1 << 3;
+    private static final int ASCII_MASK = 1 << 6;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Charset defaultEncoding;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final List<RObject> refTable = new ArrayList<>();
+    private DataInputStream in;
+    private boolean workspace;
+    private Charset nativeEncoding;
+
+    /**
+     * @param defaultEncoding The encoding of the strings that are not
+     * flagged with theirs, if the file does not say what the native encoding
+     * of the R that wrote it was (version 2 files do not); null for UTF-8.
+     */
+    RDataParser(String defaultEncoding) {
+        Charset charset = StandardCharsets.UTF_8;
+        if (defaultEncoding != null && !defaultEncoding.isEmpty()) {
+            try {
+                charset = Charset.forName(defaultEncoding);
+            } catch (IllegalArgumentException ex) {
+                dbgLog.warning("Unknown encoding " + defaultEncoding + "; using UTF-8.");
+            }
+        }
+        this.defaultEncoding = charset;
+    }
+
+    /**
+     * @return The data frame in the RData file: that of a saveRDS() file;
+     * of a workspace, the first one by name, as ls() lists them (i.e. the
+     * hidden ones, whose names start with a ".", left out) - which is the
+     * one the R scripts used to pick.
+     */
+    RObject readDataFrame(InputStream stream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(decompress(stream), BUFFER_SIZE));
+        readHeader();
+        if (!workspace) {
+            RObject object = readItem();
+            if (!object.isDataFrame()) {
+                throw new IOException("The R data file does not contain a data frame.");
+            }
+            return object;
+        }
+
+        // A workspace is a pairlist of the objects, tagged with their names;
+        // only the one data frame is kept while reading it:
+        Collator collator = Collator.getInstance(Locale.ENGLISH);
+        String dataFrameName = null;
+        RObject dataFrame = null;
+        int flags = in.readInt();
+        while (type(flags) == RObject.LISTSXP) {
+            if (hasAttributes(flags)) {
+                readItem();
+            }
+            String name = hasTag(flags) ? readItem().getSymbolName() : null;
+            RObject value = readItem();
+            if (name != null && !name.startsWith(".") && value.isDataFrame()
+                    && (dataFrameName == null || collator.compare(name, dataFrameName) < 0)) {
+                dataFrameName = name;
+                dataFrame = value;
+            }
+            flags = in.readInt();
+        }
+        if (dataFrame == null) {
+            throw new IOException("No data frame found in the R workspace.");
+        }
+        dbgLog.fine("Read data frame " + dataFrameName + " from the R workspace.");
+        return dataFrame;
+    }
+
+    /**
+     * @return Whether the file read is a workspace (rather than a single
+     * object, saved with saveRDS()).
+     */
+    boolean isWorkspace() {
+        return workspace;
+    }
+
+    private InputStream decompress(InputStream stream) throws IOException {
+        BufferedInputStream bufferedStream = new BufferedInputStream(stream, BUFFER_SIZE);
+        byte[] magic = new byte[6];
+        bufferedStream.mark(magic.length);
+        int length = 0;
+        int n;
+        while (length < magic.length && (n = bufferedStream.read(magic, length, magic.length - length)) > 0) {
+            length += n;
+        }
+        bufferedStream.reset();
+
+        if (length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return new GZIPInputStream(bufferedStream, BUFFER_SIZE);
+        } else if (length >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h') {
+            return new BZip2CompressorInputStream(bufferedStream, true);
+        } else if (length >= 6 && (magic[0] & 0xFF) == 0xFD && magic[1] == '7' && magic[2] == 'z'
+                && magic[3] == 'X' && magic[4] == 'Z' && magic[5] == 0) {
+            return new XZCompressorInputStream(bufferedStream, true);
+        }
+        return bufferedStream;
+    }
+
+    private void readHeader() throws IOException {
+        byte[] format = new byte[2];
+        in.readFully(format);
+        if (format[0] == 'R' && format[1] == 'D') {
+            // "RDX2\n", "RDX3\n": a workspace, in the XDR format;
+            // "RDA2\n", "RDB2\n" etc.: in the ASCII or native binary ones.
+            workspace = true;
+            byte[] workspaceFormat = new byte[3];
+            in.readFully(workspaceFormat);
+            if (workspaceFormat[0] != 'X') {
+                throw new UnsupportedRDataException("Unsupported R workspace format: RD" + (char) workspaceFormat[0]);
+            }
+            in.readFully(format);
+        }
+        if (format[1] != '\n' || (format[0] != 'X' && format[0] != 'A' && format[0] != 'B')) {
+            throw new IOException("Not an R data file.");
+        }
+        if (format[0] != 'X') {
+            throw new UnsupportedRDataException("Unsupported R serialization format: " + (char) format[0]);
+        }
+
+        int version = in.readInt();
+        // the versions of R that wrote the file, and that can read it:
+        in.readInt();
+        in.readInt();
+        if (version == 3) {
+            byte[] encoding = new byte[in.readInt()];
+            in.readFully(encoding);
+            String encodingName = new String(encoding, StandardCharsets.US_ASCII);
+            try {
+                nativeEncoding = Charset.forName(encodingName);
+            } catch (IllegalArgumentException ex) {
+                throw new UnsupportedRDataException("Unsupported native encoding: " + encodingName);
+            }
+        } else if (version == 2) {
+            nativeEncoding = defaultEncoding;
+        } else {
+            throw new UnsupportedRDataException("Unsupported R serialization version: " + version);
+        }
+    }
+
+    private RObject readItem() throws IOException {
+        return readItem(in.readInt());
+    }
+
+    private RObject readItem(int flags) throws IOException {
+        int type = type(flags);
+        RObject object;
+        switch (type) {
+            case NILVALUE_SXP:
+                return RObject.NULL;
+            case EMPTYENV_SXP:
+            case BASEENV_SXP:
+            case GLOBALENV_SXP:
+            case UNBOUNDVALUE_SXP:
+            case MISSINGARG_SXP:
+            case BASENAMESPACE_SXP:
+                return new RObject(type, null);
+            case REFSXP:
+                int index = flags >> 8;
+                if (index == 0) {
+                    index = in.readInt();
+                }
+                if (index < 1 || index > refTable.size()) {
+                    throw new IOException("Invalid reference in the R data file: " + index);
+                }
+                return refTable.get(index - 1);
+            case PERSISTSXP:
+            case PACKAGESXP:
+            case NAMESPACESXP:
+                object = new RObject(type, readStringVector());
+                refTable.add(object);
+                return object;
+            case RObject.SYMSXP:
+                RObject name = readItem();
+                object = new RObject(RObject.SYMSXP, name.getStrings()[0]);
+                refTable.add(object);
+                return object;
+            case RObject.ENVSXP:
+                // locked or not
+                in.readInt();
+                object = new RObject(RObject.ENVSXP, null);
+                refTable.add(object);
+                // the enclosure, frame, hash table and attributes - which
+                // are of no use to the ingest
+                for (int i = 0; i < 4; i++) {
+                    readItem();
+                }
+                return object;
+            case RObject.LISTSXP:
+            case RObject.LANGSXP:
+            case RObject.CLOSXP:
+            case RObject.PROMSXP:
+            case RObject.DOTSXP:
+                return readPairList(flags);
+            case ALTREP_SXP:
+                return readAltrep();
+            case RObject.EXTPTRSXP:
+                object = new RObject(type, null);
+                refTable.add(object);
+                // the protected value and the tag
+                readItem();
+                readItem();
+                break;
+            case RObject.WEAKREFSXP:
+                object = new RObject(type, null);
+                refTable.add(object);
+                break;
+            case RObject.SPECIALSXP:
+            case RObject.BUILTINSXP:
+                byte[] functionName = new byte[in.readInt()];
+                in.readFully(functionName);
+                object = new RObject(type, null);
+                break;
+            case RObject.CHARSXP:
+                object = new RObject(RObject.STRSXP, new String[]{readString(flags)});
+                if (hasAttributes(flags)) {
+                    readItem();
+                }
+                return object;
+            case RObject.LGLSXP:
+            case RObject.INTSXP:
+                object = new RObject(type, readInts(readLength()));
+                break;
+            case RObject.REALSXP:
+                object = new RObject(type, readDoubles(readLength()));
+                break;
+            case RObject.CPLXSXP:
+                object = new RObject(type, readDoubles(2 * readLength()));
+                break;
+            case RObject.STRSXP:
+                String[] strings = new String[readLength()];
+                for (int i = 0; i < strings.length; i++) {
+                    int stringFlags = in.readInt();
+                    if (type(stringFlags) != RObject.CHARSXP) {
+                        throw new IOException("Unexpected item in a character vector: " + type(stringFlags));
+                    }
+                    strings[i] = readString(stringFlags);
+                }
+                object = new RObject(type, strings);
+                break;
+            case RObject.VECSXP:
+            case RObject.EXPRSXP:
+                RObject[] elements = new RObject[readLength()];
+                for (int i = 0; i < elements.length; i++) {
+                    elements[i] = readItem();
+                }
+                object = new RObject(type, elements);
+                break;
+            case RObject.BCODESXP:
+                readByteCode();
+                object = new RObject(type, null);
+                break;
+            case RObject.RAWSXP:
+                byte[] bytes = new byte[readLength()];
+                in.readFully(bytes);
+                object = new RObject(type, bytes);
+                break;
+            case RObject.S4SXP:
+                object = new RObject(type, null);
+                break;
+            case CLASSREFSXP:
+            case GENERICREFSXP:
+            default:
+                throw new UnsupportedRDataException("Unsupported R object type: " + type);
+        }
+        if (hasAttributes(flags)) {
+            object.setAttributes(readItem());
+        }
+        return object;
+    }
+
+    /**
+     * Reads a pairlist - or a call, closure etc., which are serialized the
+     * same way - as one list: the cells that follow, in the CDR of each
+     * cell, are read in a loop, rather than recursively, so that a long
+     * pairlist does not use up the stack.
+     */
+    private RObject readPairList(int flags) throws IOException {
+        int type = type(flags);
+        List<String> tags = new ArrayList<>();
+        List<RObject> values = new ArrayList<>();
+        RObject attributes = null;
+        while (true) {
+            if (hasAttributes(flags)) {
+                RObject cellAttributes = readItem();
+                if (values.isEmpty()) {
+                    attributes = cellAttributes;
+                }
+            }
+            tags.add(hasTag(flags) ? readItem().getSymbolName() : null);
+            values.add(readItem());
+
+            flags = in.readInt();
+            if (type(flags) == NILVALUE_SXP) {
+                break;
+            } else if (type(flags) != RObject.LISTSXP) {
+                // a dotted pair; e.g. the body of a closure, after its formals
+                tags.add(null);
+                values.add(readItem(flags));
+                break;
+            }
+        }
+        RObject pairList = RObject.pairList(type, tags, values);
+        pairList.setAttributes(attributes);
+        return pairList;
+    }
+
+    /**
+     * Reads an ALTREP object (since R 3.5 - e.g. the compact sequences that
+     * 1:n makes) and turns it into the vector it stands for, for the ALTREP
+     * classes of base R that store their vectors, or the way to compute
+     * them.
+     */
+    private RObject readAltrep() throws IOException {
+        RObject info = readItem();
+        RObject state = readItem();
+        RObject attributes = readItem();
+
+        String className = info.getType() == RObject.LISTSXP && info.length() > 0
+                ? info.getElements()[0].getSymbolName() : null;
+        RObject object;
+        if ("compact_intseq".equals(className) || "compact_realseq".equals(className)) {
+            // (length, first value, increment)
+            double length = sequenceInfo(state, 0);
+            double first = sequenceInfo(state, 1);
+            double increment = sequenceInfo(state, 2);
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new UnsupportedRDataException("Vector too long: " + (long) length);
+            }
+            if (className.equals("compact_intseq")) {
+                int[] values = new int[(int) length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = (int) (first + i * increment);
+                }
+                object = new RObject(RObject.INTSXP, values);
+            } else {
+                double[] values = new double[(int) length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = first + i * increment;
+                }
+                object = new RObject(RObject.REALSXP, values);
+            }
+        } else if (className != null && className.startsWith("wrap_")) {
+            // (the wrapped vector, its metadata)
+            RObject wrapped = state.getElements()[0];
+            object = new RObject(wrapped.getType(), wrapped.getData());
+        } else if ("deferred_string".equals(className) && state.getType() == RObject.LISTSXP
+                && state.getElements()[0].getType() == RObject.INTSXP) {
+            // (the integer vector to turn into strings, ...); the ones of
+            // real vectors would need R's formatting of numbers
+            int[] values = state.getElements()[0].getInts();
+            String[] strings = new String[values.length];
+            for (int i = 0; i < values.length; i++) {
+                strings[i] = values[i] == RObject.NA_INTEGER ? null : Integer.toString(values[i]);
+            }
+            object = new RObject(RObject.STRSXP, strings);
+        } else {
+            throw new UnsupportedRDataException("Unsupported ALTREP class: " + className);
+        }
+        object.setAttributes(attributes);
+        return object;
+    }
+
+    private static double sequenceInfo(RObject state, int index) {
+        return state.getType() == RObject.INTSXP ? state.getInts()[index] : state.getDoubles()[index];
+    }
+
+    /**
+     * Reads, and drops, the byte code of a compiled closure; as
+     * ReadBC() does.
+     */
+    private void readByteCode() throws IOException {
+        RObject[] reps = new RObject[in.readInt()];
+        readByteCode(reps);
+    }
+
+    private void readByteCode(RObject[] reps) throws IOException {
+        // the code
+        readItem();
+        // the constants
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            int type = in.readInt();
+            switch (type) {
+                case RObject.BCODESXP:
+                    readByteCode(reps);
+                    break;
+                case RObject.LANGSXP:
+                case RObject.LISTSXP:
+                case BCREPDEF:
+                case BCREPREF:
+                case ATTRLANGSXP:
+                case ATTRLISTSXP:
+                    readByteCodeLanguage(type, reps);
+                    break;
+                default:
+                    readItem();
+            }
+        }
+    }
+
+    private RObject readByteCodeLanguage(int type, RObject[] reps) throws IOException {
+        switch (type) {
+            case BCREPREF:
+                return reps[in.readInt()];
+            case BCREPDEF:
+            case RObject.LANGSXP:
+            case RObject.LISTSXP:
+            case ATTRLANGSXP:
+            case ATTRLISTSXP:
+                int position = -1;
+                if (type == BCREPDEF) {
+                    position = in.readInt();
+                    type = in.readInt();
+                }
+                boolean hasAttributes = type == ATTRLANGSXP || type == ATTRLISTSXP;
+                RObject language = new RObject(type == ATTRLANGSXP || type == RObject.LANGSXP ? RObject.LANGSXP : RObject.LISTSXP, null);
+                if (position >= 0) {
+                    reps[position] = language;
+                }
+                if (hasAttributes) {
+                    readItem();
+                }
+                // the tag, the CAR and the CDR
+                readItem();
+                readByteCodeLanguage(in.readInt(), reps);
+                readByteCodeLanguage(in.readInt(), reps);
+                return language;
+            default:
+                return readItem();
+        }
+    }
+
+    private String[] readStringVector() throws IOException {
+        if (in.readInt() != 0) {
+            throw new IOException("Names in persistent strings are not supported.");
+        }
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readItem().getStrings()[0];
+        }
+        return strings;
+    }
+
+    /**
+     * @return The string of a CHARSXP, in the encoding it is flagged with;
+     * null for NA_character_.
+     */
+    private String readString(int flags) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = length <= buffer.length ? buffer : new byte[length];
+        in.readFully(bytes, 0, length);
+        int levels = flags >> 12;
+        Charset charset;
+        if ((levels & UTF8_MASK) != 0) {
+            charset = StandardCharsets.UTF_8;
+        } else if ((levels & (LATIN1_MASK | BYTES_MASK)) != 0) {
+            charset = StandardCharsets.ISO_8859_1;
+        } else if ((levels & ASCII_MASK) != 0) {
+            charset = StandardCharsets.US_ASCII;
+        } else {
+            charset = nativeEncoding;
+        }
+        return new String(bytes, 0, length, charset);
+    }
+
+    private int readLength() throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            // a long vector: the length is in the next 2 ints
+            long longLength = ((long) in.readInt() << 32) + (in.readInt() & 0xFFFFFFFFL);
+            throw new UnsupportedRDataException("Vector too long: " + longLength);
+        } else if (length < 0 || length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Invalid vector length in the R data file: " + length);
+        }
+        return length;
+    }
+
+    private int[] readInts(int length) throws IOException {
+        int[] values = new int[length];
+        int offset = 0;
+        while (offset < length) {
+            int count = Math.min(length - offset, buffer.length / 4);
+            in.readFully(buffer, 0, count * 4);
+            ByteBuffer.wrap(buffer, 0, count * 4).asIntBuffer().get(values, offset, count);
+            offset += count;
+        }
+        return values;
+    }
+
+    private double[] readDoubles(int length) throws IOException {
+        double[] values = new double[length];
+        int offset = 0;
+        while (offset < length) {
+            int count = Math.min(length - offset, buffer.length / 8);
+            in.readFully(buffer, 0, count * 8);
+            ByteBuffer.wrap(buffer, 0, count * 8).asDoubleBuffer().get(values, offset, count);
+            offset += count;
+        }
+        return values;
+    }
+
+    private static int type(int flags) {
+        return flags & 0xFF;
+    }
+
+    private static boolean hasAttributes(int flags) {
+        return (flags & HAS_ATTR_BIT_MASK) != 0;
+    }
+
+    private static boolean hasTag(int flags) {
+        return (flags & HAS_TAG_BIT_MASK) != 0;
+    }
+
+}
@@ -0,0 +1,172 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.rdata;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An R object, as read by {@link RDataParser}: its type (the SEXPTYPE), its
+ * data, and its attributes. Only what the ingest needs is kept: the values
+ * of vectors, the names of symbols, the elements of lists and pairlists;
+ * environments, closures, byte code etc. are read, but their contents are
+ * dropped.
+ */
+class RObject {
+
+    // SEXPTYPEs, as in R's Rinternals.h
+    static final int NILSXP = 0;
+    static final int SYMSXP = 1;
+    static final int LISTSXP = 2;
+    static final int CLOSXP = 3;
+    static final int ENVSXP = 4;
+    static final int PROMSXP = 5;
+    static final int LANGSXP = 6;
+    static final int SPECIALSXP = 7;
+    static final int BUILTINSXP = 8;
+    static final int CHARSXP = 9;
+    static final int LGLSXP = 10;
+    static final int INTSXP = 13;
+    static final int REALSXP = 14;
+    static final int CPLXSXP = 15;
+    static final int STRSXP = 16;
+    static final int DOTSXP = 17;
+    static final int VECSXP = 19;
+    static final int EXPRSXP = 20;
+    static final int BCODESXP = 21;
+    static final int EXTPTRSXP = 22;
+    static final int WEAKREFSXP = 23;
+    static final int RAWSXP = 24;
+    static final int S4SXP = 25;
+
+    // R's NA_INTEGER, which is also the NA of logical vectors
+    static final int NA_INTEGER = Integer.MIN_VALUE;
+
+    static final RObject NULL = new RObject(NILSXP, null);
+
+    private final int type;
+    /*
+     * int[] for logical and integer vectors, double[] for real (and complex)
+     * ones, String[] for character vectors (null for NA), RObject[] for
+     * lists and pairlists, byte[] for raw vectors; the name of symbols;
+     * null otherwise.
+     */
+    private final Object data;
+    // the tags of the elements of pairlists
+    private String[] tags;
+    private Map<String, RObject> attributes;
+
+    RObject(int type, Object data) {
+        this.type = type;
+        this.data = data;
+    }
+
+    static RObject pairList(int type, List<String> tags, List<RObject> values) {
+        RObject pairList = new RObject(type, values.toArray(new RObject[values.size()]));
+        pairList.tags = tags.toArray(new String[tags.size()]);
+        return pairList;
+    }
+
+    int getType() {
+        return type;
+    }
+
+    Object getData() {
+        return data;
+    }
+
+    int[] getInts() {
+        return (int[]) data;
+    }
+
+    double[] getDoubles() {
+        return (double[]) data;
+    }
+
+    String[] getStrings() {
+        return (String[]) data;
+    }
+
+    RObject[] getElements() {
+        return (RObject[]) data;
+    }
+
+    /**
+     * @return The name of a symbol; null if this is not one.
+     */
+    String getSymbolName() {
+        return type == SYMSXP ? (String) data : null;
+    }
+
+    int length() {
+        if (data instanceof int[]) {
+            return ((int[]) data).length;
+        } else if (data instanceof double[]) {
+            // (complex values are stored as pairs of doubles)
+            return ((double[]) data).length / (type == CPLXSXP ? 2 : 1);
+        } else if (data instanceof Object[]) {
+            return ((Object[]) data).length;
+        } else if (data instanceof byte[]) {
+            return ((byte[]) data).length;
+        }
+        return 0;
+    }
+
+    RObject getAttribute(String name) {
+        return attributes == null ? null : attributes.get(name);
+    }
+
+    /**
+     * @return The values of a character vector attribute; null if there is
+     * no such attribute, or if it is not a character vector.
+     */
+    String[] getStringsAttribute(String name) {
+        RObject attribute = getAttribute(name);
+        return attribute != null && attribute.type == STRSXP ? attribute.getStrings() : null;
+    }
+
+    /**
+     * Sets the attributes from the pairlist they are serialized as.
+     */
+    void setAttributes(RObject pairList) {
+        if (pairList == null || pairList.type != LISTSXP) {
+            attributes = null;
+            return;
+        }
+        attributes = new LinkedHashMap<>();
+        RObject[] values = pairList.getElements();
+        for (int i = 0; i < values.length; i++) {
+            if (pairList.tags[i] != null) {
+                attributes.put(pairList.tags[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return The "class" attribute; null if there is none.
+     */
+    String[] getClassAttribute() {
+        return getStringsAttribute("class");
+    }
+
+    /**
+     * Like R's inherits().
+     */
+    boolean inherits(String className) {
+        String[] classes = getClassAttribute();
+        return classes != null && Arrays.asList(classes).contains(className);
+    }
+
+    boolean isDataFrame() {
+        return type == VECSXP && inherits("data.frame");
+    }
+
+    /**
+     * Like R's ISNA(): NA_real_ is a NaN with 1954 in its lower word; other
+     * NaNs are not NAs.
+     */
+    static boolean isNA(double value) {
+        return Double.isNaN(value) && (Double.doubleToRawLongBits(value) & 0xFFFFFFFFL) == 1954;
+    }
+
+}
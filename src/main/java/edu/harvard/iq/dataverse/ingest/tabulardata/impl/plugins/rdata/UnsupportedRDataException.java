@@ -0,0 +1,16 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.rdata;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an RData file uses something that the in-process reader
+ * ({@link RDataParser}, {@link RDataFrame}) does not support, but that R
+ * itself can read; the file is then ingested through Rserve instead.
+ */
+public class UnsupportedRDataException extends IOException {
+
+    public UnsupportedRDataException(String message) {
+        super(message);
+    }
+
+}
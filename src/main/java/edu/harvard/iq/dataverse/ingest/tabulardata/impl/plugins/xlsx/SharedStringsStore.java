@@ -0,0 +1,260 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.xlsx;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * The shared strings table of a workbook (xl/sharedStrings.xml), read with
+ * SAX, rather than loaded with POI's SharedStringsTable, which keeps an XML
+ * bean for every string. The strings are kept in memory as long as they fit
+ * in the memory budget; once they no longer do, they are spilled to a temp
+ * file, and read back from it, by offset, when looked up (the most recently
+ * used ones are kept in memory still).
+ */
+class SharedStringsStore implements Closeable {
+
+    private static final Logger dbglog = Logger.getLogger(SharedStringsStore.class.getPackage().getName());
+
+    static final long DEFAULT_MEMORY_BUDGET = 16 * 1024 * 1024;
+
+    private static final int RECENT_CACHE_SIZE = 1024;
+
+    // the escapes of characters that are not valid in XML, "_x000D_" etc.
+    private static final Pattern ESCAPED_CHARACTER = Pattern.compile("_x([0-9A-Fa-f]{4})_");
+
+    private final long memoryBudget;
+    private List<String> strings = new ArrayList<>();
+    private long stringsBytes;
+    private int count;
+
+    private File spillFile;
+    private OutputStream spillOut;
+    private RandomAccessFile spillIn;
+    private FileChannel spillChannel;
+    // offsets[i] is where string i starts in the spill file; offsets[count]
+    // is where the last one ends
+    private long[] offsets;
+
+    private final Map<Integer, String> recent = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+            return size() > RECENT_CACHE_SIZE;
+        }
+    };
+
+    SharedStringsStore(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @param sharedStringsData The xl/sharedStrings.xml part of the workbook;
+     * {@code null} if it has none. It is closed once read.
+     */
+    static SharedStringsStore read(InputStream sharedStringsData, long memoryBudget) throws IOException, SAXException {
+        SharedStringsStore store = new SharedStringsStore(memoryBudget);
+        if (sharedStringsData == null) {
+            return store;
+        }
+        try {
+            XMLReader xReader = XMLReaderFactory.createXMLReader();
+            xReader.setContentHandler(new SharedStringsHandler(store));
+            xReader.parse(new InputSource(sharedStringsData));
+        } catch (IOException | SAXException ex) {
+            store.close();
+            throw ex;
+        } finally {
+            sharedStringsData.close();
+        }
+        dbglog.fine("Read " + store.size() + " shared strings" + (store.isSpilled() ? ", spilled to disk." : "."));
+        return store;
+    }
+
+    void add(String string) throws IOException {
+        if (spillFile == null) {
+            strings.add(string);
+            stringsBytes += 40 + 2L * string.length();
+            count++;
+            if (stringsBytes > memoryBudget) {
+                spill();
+            }
+        } else {
+            append(string);
+        }
+    }
+
+    String get(int index) throws IOException {
+        if (index < 0 || index >= count) {
+            throw new IOException("Invalid shared string index: " + index);
+        }
+        if (spillFile == null) {
+            return strings.get(index);
+        }
+        String string = recent.get(index);
+        if (string == null) {
+            string = readSpilled(index);
+            recent.put(index, string);
+        }
+        return string;
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (spillOut != null) {
+                spillOut.close();
+            }
+            if (spillIn != null) {
+                spillIn.close();
+            }
+        } catch (IOException ex) {
+            // (non-fatal - it's just a temp file.)
+        }
+        if (spillFile != null && !spillFile.delete()) {
+            dbglog.warning("Failed to delete temp file " + spillFile.getAbsolutePath());
+        }
+        strings = null;
+    }
+
+    private void spill() throws IOException {
+        spillFile = File.createTempFile("sharedstrings-", ".bin");
+        spillOut = new BufferedOutputStream(new FileOutputStream(spillFile), 64 * 1024);
+        offsets = new long[Math.max(1024, count * 2)];
+        List<String> inMemory = strings;
+        strings = null;
+        count = 0;
+        for (String string : inMemory) {
+            append(string);
+        }
+        dbglog.fine("Shared strings over " + memoryBudget + " bytes; spilled to " + spillFile.getAbsolutePath());
+    }
+
+    private void append(String string) throws IOException {
+        if (spillChannel != null) {
+            throw new IllegalStateException("Shared strings cannot be added once looked up.");
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        spillOut.write(bytes);
+        if (count + 1 >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[count + 1] = offsets[count] + bytes.length;
+        count++;
+    }
+
+    private String readSpilled(int index) throws IOException {
+        if (spillChannel == null) {
+            spillOut.close();
+            spillOut = null;
+            spillIn = new RandomAccessFile(spillFile, "r");
+            spillChannel = spillIn.getChannel();
+        }
+        long position = offsets[index];
+        ByteBuffer buffer = ByteBuffer.allocate((int) (offsets[index + 1] - position));
+        while (buffer.hasRemaining()) {
+            if (spillChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the shared strings spill file.");
+            }
+        }
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Undoes the "_xHHHH_" escapes of characters that cannot be written as
+     * such in the XML of a workbook, as POI's XSSFRichTextString does.
+     */
+    static String unescape(String value) {
+        if (value.indexOf("_x") < 0) {
+            return value;
+        }
+        Matcher matcher = ESCAPED_CHARACTER.matcher(value);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            char c = (char) Integer.parseInt(matcher.group(1), 16);
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(String.valueOf(c)));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Adds the text of every string item ({@code si}) to the store: that of
+     * its {@code t} element, or of those of its runs, without the phonetic
+     * runs ({@code rPh}).
+     */
+    private static class SharedStringsHandler extends DefaultHandler {
+
+        private final SharedStringsStore store;
+        private final StringBuilder itemText = new StringBuilder();
+        private boolean inText;
+        private boolean inPhoneticRun;
+
+        SharedStringsHandler(SharedStringsStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String name, Attributes attributes) throws SAXException {
+            if (name.equals("si")) {
+                itemText.setLength(0);
+            } else if (name.equals("rPh")) {
+                inPhoneticRun = true;
+            } else if (name.equals("t")) {
+                inText = !inPhoneticRun;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String name) throws SAXException {
+            if (name.equals("t")) {
+                inText = false;
+            } else if (name.equals("rPh")) {
+                inPhoneticRun = false;
+            } else if (name.equals("si")) {
+                try {
+                    store.add(unescape(itemText.toString()));
+                } catch (IOException ex) {
+                    throw new SAXException("Failed to store a shared string: " + ex.getMessage(), ex);
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            if (inText) {
+                itemText.append(ch, start, length);
+            }
+        }
+    }
+
+}
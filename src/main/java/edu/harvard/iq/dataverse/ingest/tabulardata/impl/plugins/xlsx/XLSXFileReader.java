@@ -21,12 +21,11 @@ package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.xlsx;
 
 
 import java.io.*;
-import java.io.FileReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.logging.*;
 import java.util.*;
 
-import javax.inject.Inject;
-
 
 import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
@@ -34,25 +33,18 @@ import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
-import javax.naming.Context;
-import javax.naming.InitialContext;
-import javax.naming.NamingException;
-
-import org.apache.commons.lang.StringUtils;
 
 import org.apache.poi.xssf.eventusermodel.XSSFReader;
-import org.apache.poi.xssf.usermodel.XSSFRichTextString;
-import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
 import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
 import org.xml.sax.Attributes;
-import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.XMLReaderFactory;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 
 /**
@@ -61,7 +53,16 @@ import javax.xml.parsers.SAXParserFactory;
  * It utilizes Apache POI framework for reading XLSX data; and uses an
  * event-based, SAX model for parsing the extracted XML. This way spreadsheets
  * of any size can be converted into tab-delimited data with a fairly small 
- * memory footprint.
+ * memory footprint: 
+ * 
+ * - the workbook is opened from a (temp) file, so that only the parts that 
+ * are read are unpacked; 
+ * - the shared strings table is read into a {@link SharedStringsStore}, that
+ * spills to disk, instead of POI's in-memory SharedStringsTable; 
+ * - the rows are written into the tab file as they are parsed, with the 
+ * types of the columns inferred in the same pass. Only if a column turns out
+ * to be a string one after some of its values have been written as numbers
+ * is the sheet parsed (and written) again, with the types now known. 
  * 
  * @author Leonid Andreev
  *
@@ -69,7 +70,8 @@ import javax.xml.parsers.SAXParserFactory;
 public class XLSXFileReader extends TabularDataFileReader {
 
     private static final Logger dbglog = Logger.getLogger(XLSXFileReader.class.getPackage().getName());
-    private char delimiterChar = '\t';
+    private static final char delimiterChar = '\t';
+    private long sharedStringsMemoryBudget = SharedStringsStore.DEFAULT_MEMORY_BUDGET;
 
     public XLSXFileReader(TabularDataFileReaderSpi originator) {
         super(originator);
@@ -79,6 +81,14 @@ public class XLSXFileReader extends TabularDataFileReader {
         
     }
     
+    /**
+     * @param sharedStringsMemoryBudget How much memory, in bytes, the shared 
+     * strings of a workbook may take before they are spilled to disk.
+     */
+    void setSharedStringsMemoryBudget(long sharedStringsMemoryBudget) {
+        this.sharedStringsMemoryBudget = sharedStringsMemoryBudget;
+    }
+    
     /**
      * Reads an XLSX file, converts it into a dataverse DataTable.
      *
@@ -94,15 +104,62 @@ public class XLSXFileReader extends TabularDataFileReader {
         TabularDataIngest ingesteddata = new TabularDataIngest();
         DataTable dataTable = new DataTable();
 
-        File firstPassTempFile = File.createTempFile("firstpass-", ".tab");
-        PrintWriter firstPassWriter = new PrintWriter(firstPassTempFile.getAbsolutePath());
+        // OPCPackage.open(InputStream) would unpack the entire workbook in 
+        // memory; opened from a file, it only reads the parts asked for: 
+        File xlsxTempFile = File.createTempFile("xlsx-", ".xlsx");
+        File tabFileDestination = File.createTempFile("data-", ".tab");
+        OPCPackage pkg = null;
+        SharedStringsStore sst = null;
+        boolean success = false;
+        
         try {
-            processSheet(stream, dataTable, firstPassWriter);
+            Files.copy(stream, xlsxTempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            pkg = OPCPackage.open(xlsxTempFile.getAbsolutePath(), PackageAccess.READ);
+            XSSFReader r = new XSSFReader(pkg);
+            
+            List<PackagePart> sharedStringsParts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+            sst = SharedStringsStore.read(sharedStringsParts.isEmpty() ? null : sharedStringsParts.get(0).getInputStream(), sharedStringsMemoryBudget);
+            
+            SheetHandler firstPass = new SheetHandler(sst, dataTable, null);
+            try (PrintWriter writer = new PrintWriter(tabFileDestination.getAbsolutePath())) {
+                firstPass.setWriter(writer);
+                processSheet(r, firstPass);
+            }
+            
+            if (firstPass.isRewriteNeeded()) {
+                // Some values were written as numbers, in columns that 
+                // turned out to be string ones further down: 
+                dbglog.fine("Column types changed after the first rows were written; writing the tab file again.");
+                SheetHandler secondPass = new SheetHandler(sst, dataTable, firstPass.getNumericVariables());
+                try (PrintWriter writer = new PrintWriter(tabFileDestination.getAbsolutePath())) {
+                    secondPass.setWriter(writer);
+                    processSheet(r, secondPass);
+                }
+                if (dataTable.getCaseQuantity().longValue() != secondPass.getCaseCount()) {
+                    throw new IOException("Mismatch between line counts in first and final passes!");
+                }
+            }
+            success = true;
+        } catch (IOException ex) {
+            throw ex;
         } catch (Exception ex) {
             throw new IOException("Could not parse Excel/XLSX spreadsheet. "+ex.getMessage());
+        } finally {
+            if (sst != null) {
+                sst.close();
+            }
+            if (pkg != null) {
+                // (a package opened read-only is closed with revert())
+                pkg.revert();
+            }
+            xlsxTempFile.delete();
+            if (!success) {
+                tabFileDestination.delete();
+            }
         }
 
         if (dataTable.getCaseQuantity() == null || dataTable.getCaseQuantity().intValue() < 1) {
+            tabFileDestination.delete();
             String errorMessage; 
             if (dataTable.getVarQuantity() == null || dataTable.getVarQuantity().intValue() < 1) {
                 errorMessage = "No rows of data found in the Excel (XLSX) file.";
@@ -112,100 +169,6 @@ public class XLSXFileReader extends TabularDataFileReader {
             throw new IOException(errorMessage);
         }
         
-        // 2nd pass:
-        
-        File tabFileDestination = File.createTempFile("data-", ".tab");
-        PrintWriter finalWriter = new PrintWriter(tabFileDestination.getAbsolutePath());
-        
-        BufferedReader secondPassReader = new BufferedReader(new FileReader(firstPassTempFile));
-        
-        int varQnty = dataTable.getVarQuantity().intValue();
-        int lineCounter = 0;
-        String line = null;
-        String[] caseRow = new String[varQnty];
-        String[] valueTokens;
-
-        
-        while ((line = secondPassReader.readLine()) != null) {
-            // chop the line:
-            line = line.replaceFirst("[\r\n]*$", "");
-            valueTokens = line.split("" + delimiterChar, -2);
-
-            if (valueTokens == null) {
-                throw new IOException("Failed to read line " + (lineCounter + 1) + " during the second pass.");
-            }
-
-            if (valueTokens.length != varQnty) {
-                throw new IOException("Reading mismatch, line " + (lineCounter + 1) + " during the second pass: "
-                        + varQnty + " delimited values expected, " + valueTokens.length + " found.");
-            }
-        
-            for (int i = 0; i < varQnty; i++) {
-                if (dataTable.getDataVariables().get(i).isTypeNumeric()) {
-                    if (valueTokens[i] == null || valueTokens[i].equals(".") || valueTokens[i].equals("") || valueTokens[i].equalsIgnoreCase("NA")) {
-                        // Missing value - represented as an empty string in 
-                        // the final tab file
-                        caseRow[i] = "";
-                    } else if (valueTokens[i].equalsIgnoreCase("NaN")) {
-                        // "Not a Number" special value: 
-                        caseRow[i] = "NaN";
-                    } else if (valueTokens[i].equalsIgnoreCase("Inf")
-                            || valueTokens[i].equalsIgnoreCase("+Inf")) {
-                        // Positive infinity:
-                        caseRow[i] = "Inf";
-                    } else if (valueTokens[i].equalsIgnoreCase("-Inf")) {
-                        // Negative infinity: 
-                        caseRow[i] = "-Inf";
-                    } else if (valueTokens[i].equalsIgnoreCase("null")) {
-                        // By request from Gus - "NULL" is recognized as a 
-                        // numeric zero: 
-                        caseRow[i] = "0";
-                    } else {
-                        try {
-                            Double testDoubleValue = new Double(valueTokens[i]);
-                            caseRow[i] = testDoubleValue.toString();
-                        } catch (Exception ex) {
-                            throw new IOException ("Failed to parse a value recognized as numeric in the first pass! column: "+i+", value: "+valueTokens[i]);
-                        }
-                    }    
-                } else {
-                    // Treat as a String:
-                    // Strings are stored in tab files quoted;                                                                                   
-                    // Missing values are stored as tab-delimited nothing - 
-                    // i.e., an empty string between two tabs (or one tab and 
-                    // the new line);                                                                       
-                    // Empty strings stored as "" (quoted empty string).
-                    
-                    if (valueTokens[i] != null && !valueTokens[i].equals(".")) {
-                        String charToken = valueTokens[i];
-                        // Dealing with quotes: 
-                        // remove the leading and trailing quotes, if present:
-                        charToken = charToken.replaceFirst("^\"", "");
-                        charToken = charToken.replaceFirst("\"$", "");
-                        // escape the remaining ones:
-                        charToken = charToken.replace("\"", "\\\"");
-                        // final pair of quotes:
-                        charToken = "\"" + charToken + "\"";
-                        caseRow[i] = charToken;
-                    } else {
-                        caseRow[i] = "";
-                    }
-                }
-            }
-            
-            finalWriter.println(StringUtils.join(caseRow, "\t"));
-            lineCounter++;
-
-            
-        }
-
-        secondPassReader.close();
-        finalWriter.close();
-        
-        if (dataTable.getCaseQuantity().intValue() != lineCounter) {
-            throw new IOException("Mismatch between line counts in first and final passes!");
-        }
-        
         dataTable.setUnf("UNF:6:NOTCALCULATED");
         
         ingesteddata.setTabDelimitedFile(tabFileDestination);
@@ -228,28 +191,23 @@ public class XLSXFileReader extends TabularDataFileReader {
 
     }
 
-    public void processSheet(String filename, DataTable dataTable, PrintWriter tempOut) throws Exception {
-        BufferedInputStream xlsxInputStream = new BufferedInputStream(new FileInputStream(new File(filename)));
-        processSheet(xlsxInputStream, dataTable, tempOut);
-    }
-
-    public void processSheet(InputStream inputStream, DataTable dataTable, PrintWriter tempOut) throws Exception {
-        dbglog.info("entering processSheet");
-        OPCPackage pkg = OPCPackage.open(inputStream);
-        XSSFReader r = new XSSFReader(pkg);
-        SharedStringsTable sst = r.getSharedStringsTable();
-
-        XMLReader parser = fetchSheetParser(sst, dataTable, tempOut);
+    private void processSheet(XSSFReader r, SheetHandler handler) throws Exception {
+        dbglog.fine("entering processSheet");
+        
+        XMLReader parser = fetchSheetParser(handler);
 
         // rId2 found by processing the Workbook
         // Seems to either be rId# or rSheet#
         InputStream sheet1 = r.getSheet("rId1");
-        InputSource sheetSource = new InputSource(sheet1);
-        parser.parse(sheetSource);
-        sheet1.close();
+        try {
+            InputSource sheetSource = new InputSource(sheet1);
+            parser.parse(sheetSource);
+        } finally {
+            sheet1.close();
+        }
     }
     
-    public XMLReader fetchSheetParser(SharedStringsTable sst, DataTable dataTable, PrintWriter tempOut) throws SAXException {
+    private XMLReader fetchSheetParser(SheetHandler handler) throws SAXException {
         // An attempt to use org.apache.xerces.parsers.SAXParser resulted 
         // in some weird conflict in the app; the default XMLReader obtained 
         // from the XMLReaderFactory (from xml-apis.jar) appears to be working
@@ -264,49 +222,76 @@ public class XLSXFileReader extends TabularDataFileReader {
         // -- L.A. 4.0 alpha 1
  
         XMLReader xReader = XMLReaderFactory.createXMLReader();
-        dbglog.fine("creating new SheetHandler;");
-        ContentHandler handler = new SheetHandler(sst, dataTable, tempOut);
         xReader.setContentHandler(handler);
         return xReader;
     }
 
+    /**
+     * Writes the rows of the sheet into the tab file as they are parsed. 
+     * Unless the types of the variables are given, (i.e. on the first pass)
+     * it defines the variables from the first row, and infers their types 
+     * from the values of the others, row by row: a row is written with the 
+     * types inferred so far (i.e. with the values of a variable that has 
+     * only had numeric ones yet written as numbers). 
+     */
     private static class SheetHandler extends DefaultHandler {
 
         private DataTable dataTable;
-        private SharedStringsTable sst;
-        private String cellContents;
-        private boolean nextIsString;
+        private SharedStringsStore sst;
+        private final StringBuilder cellContents = new StringBuilder();
+        private final StringBuilder inlineContents = new StringBuilder();
+        private String cellType;
+        private boolean inPhoneticRun;
         private boolean variableHeader;
-        //private List<String> variableNames;
         private String[] variableNames;
         private int caseCount;
         private int columnCount; 
-        boolean[] isNumericVariable;
+        private boolean[] isNumericVariable;
+        private final boolean typesKnown;
+        // whether a value of the variable has been written as a number:
+        private boolean[] writtenAsNumeric;
+        private boolean rewriteNeeded;
         String[] dataRow; 
         PrintWriter tempOut; 
 
-        private SheetHandler(SharedStringsTable sst) {
-            this(sst, null, null);
-        }
-
-        private SheetHandler(SharedStringsTable sst, DataTable dataTable, PrintWriter tempOut) {
+        /**
+         * @param numericVariables The types of the variables, if known 
+         * already (from the first pass); {@code null} to infer them. 
+         */
+        private SheetHandler(SharedStringsStore sst, DataTable dataTable, boolean[] numericVariables) {
             this.sst = sst;
             this.dataTable = dataTable;
-            this.tempOut = tempOut; 
+            this.typesKnown = numericVariables != null;
+            this.isNumericVariable = numericVariables;
             variableHeader = true;
-            //variableNames = new ArrayList<String>(); 
             caseCount = 0; 
             columnCount = 0; 
         }
         
+        private void setWriter(PrintWriter tempOut) {
+            this.tempOut = tempOut;
+        }
+        
+        private boolean isRewriteNeeded() {
+            return rewriteNeeded;
+        }
+        
+        private boolean[] getNumericVariables() {
+            return isNumericVariable;
+        }
+        
+        private int getCaseCount() {
+            return caseCount;
+        }
+        
+        @Override
         public void startElement(String uri, String localName, String name,
                 Attributes attributes) throws SAXException {
-            dbglog.fine("entering startElement ("+name+")");
 
             // first raw encountered: 
-            if (variableHeader && name.equals("row")) {
+            if (variableHeader && name.equals("row") && !typesKnown) {
                 Long varCount = null; 
-                String rAttribute = attributes.getValue("t");
+                String rAttribute = attributes.getValue("r");
                 if (rAttribute == null) {
                     dbglog.warning("Null r attribute in the first row element!");
                 } else if (!rAttribute.equals("1")) {
@@ -315,7 +300,7 @@ public class XLSXFileReader extends TabularDataFileReader {
                 
                 String spansAttribute = attributes.getValue("spans");
                 if (spansAttribute == null) {
-                    dbglog.warning("Null spans attribute in the first row element!");
+                    throw new SAXException("Null spans attribute in the first row element!");
                 } 
                 int colIndex = spansAttribute.indexOf(':');
                 if (colIndex < 1 || (colIndex == spansAttribute.length() - 1)) {
@@ -345,31 +330,39 @@ public class XLSXFileReader extends TabularDataFileReader {
                 String indexAttribute = attributes.getValue("r");
                 
                 if (indexAttribute == null) {
-                    dbglog.warning("Null r attribute in a cell element!");
+                    throw new SAXException("Null r attribute in a cell element!");
                 } 
-                if (!indexAttribute.matches(".*[0-9]")) {
+                // (no regular expressions here; this is done for every cell)
+                int digitsStart = 0;
+                while (digitsStart < indexAttribute.length() && !Character.isDigit(indexAttribute.charAt(digitsStart))) {
+                    digitsStart++;
+                }
+                if (digitsStart == indexAttribute.length()) {
                     dbglog.warning("Invalid index (r) attribute in a cell element: "+indexAttribute+"!"); 
                 }
-                columnCount = getColumnCount(indexAttribute.replaceFirst("[0-9].*$", ""));
+                columnCount = getColumnCount(indexAttribute.substring(0, digitsStart));
                 
                 if (columnCount < 0) {
                     throw new SAXException("Could not establish position index of a cell element unambiguously!");
                 }
-                
-                String cellType = attributes.getValue("t");
-                if (cellType != null && cellType.equals("s")) {
-                    nextIsString = true;
-                } else {
-                    nextIsString = false;
+                if (columnCount >= dataTable.getVarQuantity().intValue()) {
+                    throw new SAXException("Cell "+indexAttribute+" is outside of the columns of the first row.");
                 }
+                
+                cellType = attributes.getValue("t");
+                inlineContents.setLength(0);
+            }
+            
+            if (name.equals("rPh")) {
+                inPhoneticRun = true;
             }
             // Clear contents cache
-            cellContents = "";
+            cellContents.setLength(0);
         }
 
         private int getColumnCount(String columnTag) {
             int count = -1;
-            if (columnTag.length() == 1 && columnTag.matches("[A-Z]")) {
+            if (columnTag.length() == 1 && columnTag.charAt(0) >= 'A' && columnTag.charAt(0) <= 'Z') {
                 count = columnTag.charAt(0) - 'A';
             } else {
                 dbglog.warning("Unsupported column index tag: "+columnTag);
@@ -389,131 +382,54 @@ public class XLSXFileReader extends TabularDataFileReader {
             return new String(letterTag);
         }
         
+        @Override
         public void endElement(String uri, String localName, String name)
                 throws SAXException {
-            dbglog.fine("entering endElement ("+name+")");
-            // Process the content cache as required.
-            // Do it now, as characters() may be called more than once
-            if (nextIsString) {
-                int idx = Integer.parseInt(cellContents);
-                cellContents = new XSSFRichTextString(sst.getEntryAt(idx)).toString();
-                nextIsString = false;
-            }
-
+            
             // v => contents of a cell
-            // Output after we've seen the string contents
             if (name.equals("v")) {
-                if (variableHeader) {
-                    dbglog.fine("variable header mode; cell "+columnCount+", cell contents: "+cellContents);
-                    
-                    //variableNames.add(cellContents);
-                    variableNames[columnCount] = cellContents;
-                } else {
-                    dataRow[columnCount] = cellContents;
-                    dbglog.fine("data row mode; cell "+columnCount+", cell contents: "+cellContents);
+                String value = cellContents.toString();
+                if ("s".equals(cellType)) {
+                    try {
+                        value = sst.get(Integer.parseInt(value));
+                    } catch (IOException | NumberFormatException ex) {
+                        throw new SAXException("Failed to look up shared string " + value + ": " + ex.getMessage());
+                    }
                 }
+                setCellValue(value);
+            }
+            
+            // inline strings: <c t="inlineStr"><is><t>...</t></is></c>
+            if (name.equals("t") && "inlineStr".equals(cellType) && !inPhoneticRun) {
+                inlineContents.append(cellContents);
+            }
+            if (name.equals("rPh")) {
+                inPhoneticRun = false;
+            }
+            if (name.equals("is")) {
+                setCellValue(SharedStringsStore.unescape(inlineContents.toString()));
             }
             
             if (name.equals("row")) {
                 if (variableHeader) {
-                    // Initialize variables:
-                    dbglog.fine("variableHeader mode; ");
-                    List<DataVariable> variableList = new ArrayList<DataVariable>();
-                    //columnCount = variableNames.size();
-                    columnCount = dataTable.getVarQuantity().intValue();
-                    
-                    for (int i = 0; i < columnCount; i++) {
-                        String varName = variableNames[i];
-                        
-
-                        if (varName == null || varName.equals("")) {
-                            varName = getColumnLetterTag(i);
-                            // TODO: 
-                            // Add a sensible variable name validation algorithm.
-                            // -- L.A. 4.0 alpha 1
-                            //throw new IOException ("Invalid variable names in the first line!");
-                        }
-                        
-                        if (varName == null) {
-                            throw new SAXException("Could not establish variable name for column "+i);
-                        }
-                        
-                        varName = varName.replaceAll("[ _\t\n\r]", "");
-                        
-                        DataVariable dv = new DataVariable();
-                        dv.setName(varName);
-                        dv.setLabel(varName);
-                        dv.setInvalidRanges(new ArrayList());
-                        dv.setSummaryStatistics(new ArrayList());
-                        dv.setUnf("UNF:6:NOTCALCULATED");
-                        dv.setCategories(new ArrayList());
-                        variableList.add(dv);
-
-                        dv.setTypeCharacter();
-                        dv.setIntervalDiscrete();
-
-                        dv.setFileOrder(i);
-                        dv.setDataTable(dataTable);
-                    }
-        
-                    dataTable.setDataVariables(variableList);
-                    isNumericVariable = new boolean[columnCount];
-                    
-                    for (int i=0; i<columnCount; i++) {
-                        // OK, let's assume that every variable is numeric; 
-                        // but we'll go through the file and examine every value; the 
-                        // moment we find a value that's not a legit numeric one, we'll 
-                        // assume that it is in fact a String. 
-                        isNumericVariable[i] = true; 
+                    if (!typesKnown) {
+                        defineVariables();
                     }
                     variableHeader = false; 
                 } else {
-                    dbglog.fine("row mode;");
-                    // go through the values and make an educated guess about the 
-                    // data types:
-                    
-                    for (int i = 0; i < dataTable.getVarQuantity().intValue(); i++) {
-                        if (isNumericVariable[i]) {
-                            // If we haven't given up on the "numeric" status of this 
-                            // variable, let's perform some tests on it, and see if 
-                            // this value is still a parsable number:
-                            if (dataRow[i] != null && (!dataRow[i].equals(""))) {
-
-                                boolean isNumeric = false; 
-                        
-                                if (dataRow[i].equalsIgnoreCase(".")
-                                        || dataRow[i].equalsIgnoreCase("NaN")
-                                        || dataRow[i].equalsIgnoreCase("NA")
-                                        || dataRow[i].equalsIgnoreCase("Inf")
-                                        || dataRow[i].equalsIgnoreCase("+Inf")
-                                        || dataRow[i].equalsIgnoreCase("-Inf")
-                                        || dataRow[i].equalsIgnoreCase("null")) {
-                                    isNumeric = true;
-                                } else {
-                                    try {
-                                        Double testDoubleValue = new Double(dataRow[i]);
-                                        isNumeric = true; 
-                                    } catch (Exception ex) {
-                                        // the token failed to parse as a double number;
-                                        // so we'll have to assume it's just a string variable.
-                                    }
-                                }
-                                if (!isNumeric) {
-                                    isNumericVariable[i] = false; 
-                                }
-                            }
-                        } 
+                    if (!typesKnown) {
+                        inferTypes();
+                    }
+                    if (tempOut != null) {
+                        writeRow();
                     }
-                    
-                    // print out the data row:
-                    tempOut.println(StringUtils.join(dataRow, "\t"));
                     caseCount++;
                 }
                 columnCount = 0;
                 dataRow = new String[dataTable.getVarQuantity().intValue()];
             }
             
-            if (name.equals("sheetData")) {
+            if (name.equals("sheetData") && !typesKnown) {
                 dataTable.setCaseQuantity(new Long(caseCount));
             
                 // Re-type the variables that we've determined are numerics:
@@ -524,15 +440,187 @@ public class XLSXFileReader extends TabularDataFileReader {
                         dataTable.getDataVariables().get(i).setIntervalContinuous();
                     }
                 }
-                
-                tempOut.close(); 
             }
         }
 
+        @Override
         public void characters(char[] ch, int start, int length)
                 throws SAXException {
-            cellContents += new String(ch, start, length);
+            cellContents.append(ch, start, length);
+        }
+        
+        private void setCellValue(String value) {
+            if (variableHeader) {
+                if (variableNames != null) {
+                    variableNames[columnCount] = value;
+                }
+            } else {
+                dataRow[columnCount] = value;
+            }
+        }
+        
+        private void defineVariables() throws SAXException {
+            // Initialize variables:
+            List<DataVariable> variableList = new ArrayList<DataVariable>();
+            columnCount = dataTable.getVarQuantity().intValue();
+
+            for (int i = 0; i < columnCount; i++) {
+                String varName = variableNames[i];
+
+
+                if (varName == null || varName.equals("")) {
+                    varName = getColumnLetterTag(i);
+                    // TODO: 
+                    // Add a sensible variable name validation algorithm.
+                    // -- L.A. 4.0 alpha 1
+                    //throw new IOException ("Invalid variable names in the first line!");
+                }
+
+                if (varName == null) {
+                    throw new SAXException("Could not establish variable name for column "+i);
+                }
+
+                varName = varName.replaceAll("[ _\t\n\r]", "");
+
+                DataVariable dv = new DataVariable();
+                dv.setName(varName);
+                dv.setLabel(varName);
+                dv.setInvalidRanges(new ArrayList());
+                dv.setSummaryStatistics(new ArrayList());
+                dv.setUnf("UNF:6:NOTCALCULATED");
+                dv.setCategories(new ArrayList());
+                variableList.add(dv);
+
+                dv.setTypeCharacter();
+                dv.setIntervalDiscrete();
+
+                dv.setFileOrder(i);
+                dv.setDataTable(dataTable);
+            }
+
+            dataTable.setDataVariables(variableList);
+            isNumericVariable = new boolean[columnCount];
+            writtenAsNumeric = new boolean[columnCount];
+
+            for (int i=0; i<columnCount; i++) {
+                // OK, let's assume that every variable is numeric; 
+                // but we'll go through the file and examine every value; the 
+                // moment we find a value that's not a legit numeric one, we'll 
+                // assume that it is in fact a String. 
+                isNumericVariable[i] = true; 
+            }
+        }
+        
+        private void inferTypes() {
+            // go through the values and make an educated guess about the 
+            // data types:
+            for (int i = 0; i < dataRow.length; i++) {
+                // If we haven't given up on the "numeric" status of this 
+                // variable, let's perform some tests on it, and see if 
+                // this value is still a parsable number:
+                if (isNumericVariable[i] && dataRow[i] != null && !dataRow[i].equals("") && !isNumericValue(dataRow[i])) {
+                    isNumericVariable[i] = false;
+                    if (writtenAsNumeric[i]) {
+                        // the rows written so far will have to be written
+                        // again; there is no point in writing any more now:
+                        rewriteNeeded = true;
+                        tempOut = null;
+                    }
+                }
+            }
+        }
+        
+        private void writeRow() {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < dataRow.length; i++) {
+                if (i > 0) {
+                    line.append(delimiterChar);
+                }
+                if (isNumericVariable[i]) {
+                    line.append(formatNumericValue(dataRow[i]));
+                    if (!typesKnown) {
+                        writtenAsNumeric[i] = true;
+                    }
+                } else {
+                    line.append(formatStringValue(dataRow[i]));
+                }
+            }
+            tempOut.println(line);
+        }
+    }
+    
+    static boolean isNumericValue(String value) {
+        if (value.equalsIgnoreCase(".")
+                || value.equalsIgnoreCase("NaN")
+                || value.equalsIgnoreCase("NA")
+                || value.equalsIgnoreCase("Inf")
+                || value.equalsIgnoreCase("+Inf")
+                || value.equalsIgnoreCase("-Inf")
+                || value.equalsIgnoreCase("null")) {
+            return true;
+        }
+        try {
+            Double.parseDouble(value);
+            return true;
+        } catch (NumberFormatException ex) {
+            // the token failed to parse as a double number;
+            // so we'll have to assume it's just a string variable.
+            return false;
+        }
+    }
+    
+    static String formatNumericValue(String value) {
+        if (value == null || value.equals(".") || value.equals("") || value.equalsIgnoreCase("NA")) {
+            // Missing value - represented as an empty string in 
+            // the final tab file
+            return "";
+        } else if (value.equalsIgnoreCase("NaN")) {
+            // "Not a Number" special value: 
+            return "NaN";
+        } else if (value.equalsIgnoreCase("Inf")
+                || value.equalsIgnoreCase("+Inf")) {
+            // Positive infinity:
+            return "Inf";
+        } else if (value.equalsIgnoreCase("-Inf")) {
+            // Negative infinity: 
+            return "-Inf";
+        } else if (value.equalsIgnoreCase("null")) {
+            // By request from Gus - "NULL" is recognized as a 
+            // numeric zero: 
+            return "0";
+        }
+        return Double.toString(Double.parseDouble(value));
+    }
+    
+    static String formatStringValue(String value) {
+        // Strings are stored in tab files quoted;                                                                                   
+        // Missing values are stored as tab-delimited nothing - 
+        // i.e., an empty string between two tabs (or one tab and 
+        // the new line);                                                                       
+        // Empty strings stored as "" (quoted empty string).
+        if (value == null) {
+            return "\"\"";
+        }
+        if (value.equals(".")) {
+            return "";
         }
+        String charToken = value;
+        // Dealing with quotes: 
+        // remove the leading and trailing quotes, if present:
+        charToken = charToken.replaceFirst("^\"", "");
+        charToken = charToken.replaceFirst("\"$", "");
+        // before escaping anything, escape the back slashes already in
+        // the string (see TabularDataFileReader.escapeCharacterString()):
+        charToken = charToken.replace("\\", "\\\\");
+        // escape the remaining quotes:
+        charToken = charToken.replace("\"", "\\\"");
+        // as well as the tabs and new lines, that would otherwise break
+        // the line into wrong values, or lines:
+        charToken = charToken.replace("\t", "\\t");
+        charToken = charToken.replace("\n", "\\n");
+        charToken = charToken.replace("\r", "\\r");
+        // final pair of quotes:
+        return "\"" + charToken + "\"";
     }
 
     public static void main(String[] args) throws Exception {
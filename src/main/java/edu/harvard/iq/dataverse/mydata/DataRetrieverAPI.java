@@ -22,6 +22,7 @@ import edu.harvard.iq.dataverse.search.SearchConstants;
 import edu.harvard.iq.dataverse.search.SearchException;
 import edu.harvard.iq.dataverse.search.SearchFields;
 import edu.harvard.iq.dataverse.search.SortBy;
+import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -69,6 +70,8 @@ public class DataRetrieverAPI extends AbstractApiBean {
     AuthenticationServiceBean authenticationService;
         @EJB
     MyDataQueryHelperServiceBean myDataQueryHelperServiceBean;
+    @EJB
+    SystemConfig systemConfig;
     
     private List<DataverseRole> roleList;
     private DataverseRolePermissionHelper rolePermissionHelper;
@@ -359,6 +362,7 @@ public class DataRetrieverAPI extends AbstractApiBean {
         myDataFinder = new MyDataFinder(rolePermissionHelper,
                                         roleAssigneeService,
                                         dvObjectServiceBean);
+        this.myDataFinder.setCacheTtlSeconds(systemConfig.getMyDataCacheTtlSeconds());
         this.myDataFinder.runFindDataSteps(filterParams);
         if (myDataFinder.hasError()){
             return this.getJSONErrorString(myDataFinder.getErrorMessage(), myDataFinder.getErrorMessage());
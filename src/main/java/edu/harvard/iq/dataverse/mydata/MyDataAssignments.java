@@ -0,0 +1,127 @@
+package edu.harvard.iq.dataverse.mydata;
+
+import edu.harvard.iq.dataverse.DvObject;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The raw results of the MyData database queries for one user, for all of
+ * their roles: the role assignments, the type and owner of each object they
+ * are assigned on, and the datasets inside those objects (for roles with file
+ * permissions given on a dataverse).
+ *
+ * Filtering by role, harvested dataverses, etc. is done by
+ * {@link MyDataFinder} on every request, so one instance serves all the
+ * filter combinations of the user and can be cached.
+ */
+public class MyDataAssignments {
+
+    private final long created = System.currentTimeMillis();
+
+    // one pair per role assignment: { definition point id, role id }
+    private final long[] definitionPointIds;
+    private final long[] roleIds;
+
+    private final Map<Long, String> dtypeById = new HashMap<>();
+    private final Map<Long, Long> parentIdById = new HashMap<>();
+
+    // datasets inside the assigned objects: { dataset id, owner id }
+    private final long[] childDatasetIds;
+    private final long[] childDatasetParentIds;
+
+    /**
+     * @param roleAssignments rows of (definitionpoint_id, role_id)
+     * @param dvObjectInfo rows of (id, dtype, owner_id) for the assigned
+     * objects, may be null
+     * @param childInfo rows of (id, dtype, owner_id) for the objects inside
+     * the assigned objects, may be null
+     */
+    public MyDataAssignments(List<Object[]> roleAssignments, List<Object[]> dvObjectInfo, List<Object[]> childInfo) {
+        definitionPointIds = new long[roleAssignments.size()];
+        roleIds = new long[roleAssignments.size()];
+        int i = 0;
+        for (Object[] ra : roleAssignments) {
+            definitionPointIds[i] = ((Number) ra[0]).longValue();
+            roleIds[i] = ((Number) ra[1]).longValue();
+            i++;
+        }
+
+        if (dvObjectInfo != null) {
+            for (Object[] row : dvObjectInfo) {
+                Long dvId = ((Number) row[0]).longValue();
+                dtypeById.put(dvId, (String) row[1]);
+                parentIdById.put(dvId, toLong(row[2]));
+            }
+        }
+
+        int numChildDatasets = 0;
+        if (childInfo != null) {
+            for (Object[] row : childInfo) {
+                if (DvObject.DATASET_DTYPE_STRING.equals(row[1])) {
+                    numChildDatasets++;
+                }
+            }
+        }
+        childDatasetIds = new long[numChildDatasets];
+        childDatasetParentIds = new long[numChildDatasets];
+        if (numChildDatasets > 0) {
+            i = 0;
+            for (Object[] row : childInfo) {
+                if (DvObject.DATASET_DTYPE_STRING.equals(row[1])) {
+                    childDatasetIds[i] = ((Number) row[0]).longValue();
+                    childDatasetParentIds[i] = ((Number) row[2]).longValue();
+                    i++;
+                }
+            }
+        }
+    }
+
+    private static Long toLong(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return ((Number) value).longValue();
+    }
+
+    public boolean isOlderThan(long millis) {
+        return System.currentTimeMillis() - created > millis;
+    }
+
+    public int getNumRoleAssignments() {
+        return definitionPointIds.length;
+    }
+
+    public long getDefinitionPointId(int i) {
+        return definitionPointIds[i];
+    }
+
+    public long getRoleId(int i) {
+        return roleIds[i];
+    }
+
+    /**
+     * @return The dtype of an assigned object, or {@code null} if it was not
+     * found.
+     */
+    public String getDtype(Long dvObjectId) {
+        return dtypeById.get(dvObjectId);
+    }
+
+    public Long getParentId(Long dvObjectId) {
+        return parentIdById.get(dvObjectId);
+    }
+
+    public int getNumChildDatasets() {
+        return childDatasetIds.length;
+    }
+
+    public long getChildDatasetId(int i) {
+        return childDatasetIds[i];
+    }
+
+    public long getChildDatasetParentId(int i) {
+        return childDatasetParentIds[i];
+    }
+
+}
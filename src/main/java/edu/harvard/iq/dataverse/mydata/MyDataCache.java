@@ -0,0 +1,116 @@
+package edu.harvard.iq.dataverse.mydata;
+
+import edu.harvard.iq.dataverse.util.LruCache;
+import edu.harvard.iq.dataverse.util.TransactionUtil;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Per user cache of {@link MyDataAssignments}, keyed by assignee identifier
+ * (e.g. "@jsmith"). Entries are dropped when a role of the user is assigned
+ * or revoked; anything that may affect many users at once (roles given to
+ * groups, changes to the roles themselves, group membership) clears the whole
+ * cache.
+ *
+ * The service beans that change roles and groups evict through the
+ * {@code ...AfterCommit} methods, so that the entries are only dropped once
+ * the change is visible to the queries that reload them.
+ */
+public class MyDataCache {
+
+    private static final Logger logger = Logger.getLogger(MyDataCache.class.getCanonicalName());
+
+    private final LruCache<String, MyDataAssignments> cache = new LruCache<>();
+    /**
+     * Bumped on every invalidation, so that results loaded while roles were
+     * changing are not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public MyDataCache(long maxSize) {
+        cache.setMaxSize(maxSize);
+    }
+
+    /**
+     * To be called <em>before</em> querying the database, and passed back to
+     * {@link #put(java.lang.String, long, edu.harvard.iq.dataverse.mydata.MyDataAssignments)}.
+     */
+    public long currentGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @return The cached assignments, or {@code null} if there are none or
+     * they are older than {@code ttlMillis}.
+     */
+    public MyDataAssignments get(String assigneeIdentifier, long ttlMillis) {
+        MyDataAssignments assignments = cache.get(assigneeIdentifier);
+        if (assignments == null) {
+            return null;
+        }
+        if (assignments.isOlderThan(ttlMillis)) {
+            cache.invalidate(assigneeIdentifier);
+            return null;
+        }
+        return assignments;
+    }
+
+    public void put(String assigneeIdentifier, long generationBeforeLoading, MyDataAssignments assignments) {
+        if (generationBeforeLoading != generation.get()) {
+            logger.fine("roles changed while MyData was loading for " + assigneeIdentifier + "; not caching");
+            return;
+        }
+        cache.put(assigneeIdentifier, assignments);
+    }
+
+    /**
+     * Called when a role of {@code assigneeIdentifier} was assigned or
+     * revoked.
+     */
+    public void invalidate(String assigneeIdentifier) {
+        if (assigneeIdentifier == null || !assigneeIdentifier.startsWith("@")) {
+            // a group (or a predefined assignee such as ":authenticated-users")
+            invalidateAll();
+            return;
+        }
+        generation.incrementAndGet();
+        cache.invalidate(assigneeIdentifier);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidate();
+        logger.fine("MyData cache cleared");
+    }
+
+    /**
+     * {@link #invalidate(java.lang.String)}, once the current transaction has
+     * committed.
+     */
+    public void invalidateAfterCommit(TransactionSynchronizationRegistry transactionRegistry, final String assigneeIdentifier) {
+        TransactionUtil.afterCommit(transactionRegistry, new Runnable() {
+            @Override
+            public void run() {
+                invalidate(assigneeIdentifier);
+            }
+        });
+    }
+
+    /**
+     * {@link #invalidateAll()}, once the current transaction has committed.
+     */
+    public void invalidateAllAfterCommit(TransactionSynchronizationRegistry transactionRegistry) {
+        TransactionUtil.afterCommit(transactionRegistry, new Runnable() {
+            @Override
+            public void run() {
+                invalidateAll();
+            }
+        });
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+}
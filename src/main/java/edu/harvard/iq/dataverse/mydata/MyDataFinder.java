@@ -13,9 +13,12 @@ import edu.harvard.iq.dataverse.search.SearchFields;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
@@ -52,7 +55,16 @@ public class MyDataFinder {
     public String errorMessage = null;
     // --------------------
 
-    public Map<Long, Boolean> harvestedDataverseIds = new HashMap();
+    /**
+     * The database results of each user, for all their roles; see
+     * {@link #setCacheTtlSeconds(long)}.
+     */
+    public static final MyDataCache assignmentsCache = new MyDataCache(500);
+
+    // 0: don't use the cache
+    private long cacheTtlMillis = 0;
+
+    public Set<Long> harvestedDataverseIds = new HashSet<>();
 
     // Populated in initial query.  DvObject ids -- regardless of Dtype,
     // are sorted into respective buckets in regard to permissions.
@@ -62,25 +74,25 @@ public class MyDataFinder {
     // POPULATED IN STEP 1 (1st query)
     // ----------------------------
     public Map<Long, Long> childToParentIds = new HashMap();
-    public Map<Long, Boolean> idsWithDataversePermissions = new HashMap<>();  // { role id : true }
-    public Map<Long, Boolean> idsWithDatasetPermissions = new HashMap<>();  // { role id : true }
-    public Map<Long, Boolean> idsWithFilePermissions = new HashMap<>();  // { role id : true }
+    public Set<Long> idsWithDataversePermissions = new HashSet<>();
+    public Set<Long> idsWithDatasetPermissions = new HashSet<>();
+    public Set<Long> idsWithFilePermissions = new HashSet<>();
 
-    private List<Long> directDvObjectIds = new ArrayList<Long>();
+    private Set<Long> directDvObjectIds = new LinkedHashSet<>();
 
-    // Lists later used to format Solr Queries
+    // Sets later used to format Solr Queries
     // 
     // ----------------------------
     // POPULATED IN STEP 2 (2nd query)
     // ----------------------------
-    private List<Long> directDataverseIds = new ArrayList<>();
-    private List<Long> directDatasetIds = new ArrayList<>();
-    private List<Long> directFileIds = new ArrayList<>();
+    private Set<Long> directDataverseIds = new LinkedHashSet<>();
+    private Set<Long> directDatasetIds = new LinkedHashSet<>();
+    private Set<Long> directFileIds = new LinkedHashSet<>();
     
-    private List<Long> datasetParentIds = new ArrayList<>(); // dataverse has dataset permissions
+    private Set<Long> datasetParentIds = new LinkedHashSet<>(); // dataverse has dataset permissions
 
-    private List<Long> fileParentIds = new ArrayList<>();   // dataset has file permissions      
-    private List<Long> fileGrandparentFileIds = new ArrayList<>();  // dataverse has file permissions
+    private Set<Long> fileParentIds = new LinkedHashSet<>();   // dataset has file permissions      
+    private Set<Long> fileGrandparentFileIds = new LinkedHashSet<>();  // dataverse has file permissions
 
     
     public MyDataFinder(DataverseRolePermissionHelper rolePermissionHelper, RoleAssigneeServiceBean roleAssigneeService, DvObjectServiceBean dvObjectServiceBean) {
@@ -94,7 +106,7 @@ public class MyDataFinder {
     private void loadHarvestedDataverseIds(){
         
         for (Long id : dvObjectServiceBean.getAllHarvestedDataverseIds()){
-            harvestedDataverseIds.put(id, true);
+            harvestedDataverseIds.add(id);
         }
         
     }
@@ -107,6 +119,14 @@ public class MyDataFinder {
     public boolean isHarvestedDataExcluded(){
         return excludeHarvestedData;
     }
+
+    /**
+     * Allow the database results of a user to be reused for that long, unless
+     * their roles change in the meantime.
+     */
+    public void setCacheTtlSeconds(long cacheTtlSeconds){
+        this.cacheTtlMillis = cacheTtlSeconds * 1000;
+    }
             
     /**
      * Check if a dvobject id is in the Harvested Id dict
@@ -119,7 +139,7 @@ public class MyDataFinder {
             return false;
         }
     
-        if (this.harvestedDataverseIds.containsKey(id)){
+        if (this.harvestedDataverseIds.contains(id)){
             return true;
         }
         return false;
@@ -130,25 +150,25 @@ public class MyDataFinder {
         // POPULATED IN STEP 1 (1st query)
         // ----------------------------
         this.childToParentIds = new HashMap();
-        this.idsWithDataversePermissions = new HashMap<>();  // { role id : true }
-        this.idsWithDatasetPermissions = new HashMap<>();  // { role id : true }
-        this.idsWithFilePermissions = new HashMap<>();  // { role id : true }
+        this.idsWithDataversePermissions = new HashSet<>();
+        this.idsWithDatasetPermissions = new HashSet<>();
+        this.idsWithFilePermissions = new HashSet<>();
 
-        this.directDvObjectIds = new ArrayList<Long>();
+        this.directDvObjectIds = new LinkedHashSet<>();
 
-        // Lists later used to format Solr Queries
+        // Sets later used to format Solr Queries
         // 
         // ----------------------------
         // POPULATED IN STEP 2 (2nd query)
         // ----------------------------
-        this.directDataverseIds = new ArrayList<>();
-        this.directDatasetIds = new ArrayList<>();
-        this.directFileIds = new ArrayList<>();
+        this.directDataverseIds = new LinkedHashSet<>();
+        this.directDatasetIds = new LinkedHashSet<>();
+        this.directFileIds = new LinkedHashSet<>();
 
-        this.datasetParentIds = new ArrayList<>(); // dataverse has dataset permissions
+        this.datasetParentIds = new LinkedHashSet<>(); // dataverse has dataset permissions
 
-        this.fileParentIds = new ArrayList<>();   // dataset has file permissions      
-        this.fileGrandparentFileIds = new ArrayList<>();  // dataverse has file permissions
+        this.fileParentIds = new LinkedHashSet<>();   // dataset has file permissions      
+        this.fileGrandparentFileIds = new LinkedHashSet<>();  // dataverse has file permissions
     
     }
    
@@ -188,18 +208,85 @@ public class MyDataFinder {
         }
         
         msgt("runFindDataSteps: " + this.userIdentifier);
-        if (!runStep1RoleAssignments()){
+        MyDataAssignments assignments = findAssignments();
+        if (assignments == null){
+            this.addErrorMessage("Sorry, the EntityManager isn't working (still).");
             return;
         }
-        if (!runStep2DirectAssignments()){
+        if (!runStep1RoleAssignments(assignments)){
+            return;
+        }
+        if (!runStep2DirectAssignments(assignments)){
             return;
         }
         if (!fileGrandparentFileIds.isEmpty()){
-            runStep3FilePermsAssignedAtDataverse();
+            runStep3FilePermsAssignedAtDataverse(assignments);
         }    
         
     }
     
+    /**
+     * Run the database queries for all the roles of the user (or reuse their
+     * cached results); the steps below only filter them.
+     * 
+     * The 2nd and 3rd queries only need the ids found by the 1st one, so
+     * they run at the same time.  The 3rd query is run on every object
+     * with file permissions and step 3 keeps the rows of the dataverses.
+     */
+    private MyDataAssignments findAssignments(){
+        String assigneeIdentifier = MyDataUtil.formatUserIdentifierAsAssigneeIdentifier(this.userIdentifier);
+        if (cacheTtlMillis > 0){
+            MyDataAssignments cached = assignmentsCache.get(assigneeIdentifier, cacheTtlMillis);
+            if (cached != null){
+                msg("reusing MyData assignments for " + assigneeIdentifier);
+                return cached;
+            }
+        }
+        long generation = assignmentsCache.currentGeneration();
+        
+        List<Long> allRoleIds = null;
+        List<Object[]> roleAssignments = this.roleAssigneeService.getAssigneeAndRoleIdListFor(assigneeIdentifier, allRoleIds);
+        if (roleAssignments == null){
+            return null;
+        }
+        
+        Set<Long> assignedIds = new LinkedHashSet<>();
+        Set<Long> assignedIdsWithFilePermissions = new LinkedHashSet<>();
+        for (Object[] ra : roleAssignments) {
+            Long dvId = (Long)ra[0];
+            Long roleId = (Long)ra[1];
+            assignedIds.add(dvId);
+            if (this.rolePermissionHelper.hasFilePermissions(roleId)){
+                assignedIdsWithFilePermissions.add(dvId);
+            }
+        }
+        
+        List<Object[]> dvObjectInfo = null;
+        List<Object[]> childInfo = null;
+        if (!assignedIds.isEmpty()){
+            Future<List<Object[]>> dvObjectInfoFuture = this.dvObjectServiceBean.getDvObjectInfoForMyDataAsync(new ArrayList<>(assignedIds));
+            Future<List<Object[]>> childInfoFuture = null;
+            if (!assignedIdsWithFilePermissions.isEmpty()){
+                childInfoFuture = this.dvObjectServiceBean.getDvObjectInfoByParentIdForMyDataAsync(new ArrayList<>(assignedIdsWithFilePermissions));
+            }
+            try {
+                dvObjectInfo = dvObjectInfoFuture.get();
+                if (childInfoFuture != null){
+                    childInfo = childInfoFuture.get();
+                }
+            } catch (InterruptedException | ExecutionException ex) {
+                logger.warning("MyData queries failed for " + assigneeIdentifier + ": " + ex);
+                return null;
+            }
+        }
+        
+        MyDataAssignments assignments = new MyDataAssignments(roleAssignments, dvObjectInfo, childInfo);
+        if (cacheTtlMillis > 0){
+            assignmentsCache.put(assigneeIdentifier, generation, assignments);
+        }
+        return assignments;
+    }
+    
     public List<String> getSolrFilterQueriesForTotalCounts(){
         
         return this.getSolrFilterQueries(true);
@@ -380,8 +467,8 @@ public class MyDataFinder {
         // ----------------------
         List<String> idList = new ArrayList<>();
         outputList.add("<h4>dataset ids: " + this.idsWithDatasetPermissions.size() + "</h4>");
-        for (Map.Entry pair : this.idsWithDatasetPermissions.entrySet()) {          
-            idList.add(pair.getKey().toString());
+        for (Long dsId : this.idsWithDatasetPermissions) {          
+            idList.add(dsId.toString());
         }
         outputList.add("<pre>" + StringUtils.join(idList, ", ") + "</pre>");        
 
@@ -442,35 +529,28 @@ public class MyDataFinder {
     }
     
     
-    private boolean runStep1RoleAssignments(){
+    private boolean runStep1RoleAssignments(MyDataAssignments assignments){
                 
-        List<Object[]> results = this.roleAssigneeService.getAssigneeAndRoleIdListFor(MyDataUtil.formatUserIdentifierAsAssigneeIdentifier(this.userIdentifier)
-                                        , this.filterParams.getRoleIds());
-        
-        //msgt("runStep1RoleAssignments results: " + results.toString());
-
-        if (results == null){
-            this.addErrorMessage("Sorry, the EntityManager isn't working (still).");
-            return false;
-        }else if (results.isEmpty()){
-            List<String> roleNames = this.rolePermissionHelper.getRoleNamesByIdList(this.filterParams.getRoleIds());
-            if ((roleNames == null)||(roleNames.isEmpty())){
-                this.addErrorMessage("Sorry, you have no assigned roles.");
-            }else{
-                if (roleNames.size()==1){
-                    this.addErrorMessage("Sorry, nothing was found for this role: " + StringUtils.join(roleNames, ", "));                
-                }else{
-                    this.addErrorMessage("Sorry, nothing was found for these roles: " + StringUtils.join(roleNames, ", "));                
+        Set<Long> selectedRoleIds = new HashSet<>();
+        if (this.filterParams.getRoleIds() != null){
+            for (Long roleId : this.filterParams.getRoleIds()){
+                if (roleId != null){
+                    selectedRoleIds.add(roleId);
                 }
             }
-            return false;
         }
-    
+        
         // Iterate through assigned objects, a single object may end up in 
         // multiple "buckets"
-        for (Object[] ra : results) {
-            Long dvId = (Long)ra[0];
-            Long roleId = (Long)ra[1];
+        boolean roleFound = false;
+        for (int i = 0; i < assignments.getNumRoleAssignments(); i++) {
+            Long dvId = assignments.getDefinitionPointId(i);
+            Long roleId = assignments.getRoleId(i);
+            
+            if ((!selectedRoleIds.isEmpty())&&(!selectedRoleIds.contains(roleId))){
+                continue;
+            }
+            roleFound = true;
             
             //----------------------------------
             // Is this is a harvested Dataverse?
@@ -485,48 +565,64 @@ public class MyDataFinder {
             // applies to a Dataverse, Dataset, and/or File
             //----------------------------------
             if (this.rolePermissionHelper.hasDataversePermissions(roleId)){
-                this.idsWithDataversePermissions.put(dvId, true);
+                this.idsWithDataversePermissions.add(dvId);
             }
             if (this.rolePermissionHelper.hasDatasetPermissions(roleId)){
-                this.idsWithDatasetPermissions.put(dvId, true);
+                this.idsWithDatasetPermissions.add(dvId);
             }
             if (this.rolePermissionHelper.hasFilePermissions(roleId)){
-                this.idsWithFilePermissions.put(dvId, true);
+                this.idsWithFilePermissions.add(dvId);
             }
             directDvObjectIds.add(dvId);
         }      
+        
+        if (!roleFound){
+            List<String> roleNames = this.rolePermissionHelper.getRoleNamesByIdList(this.filterParams.getRoleIds());
+            if ((roleNames == null)||(roleNames.isEmpty())){
+                this.addErrorMessage("Sorry, you have no assigned roles.");
+            }else{
+                if (roleNames.size()==1){
+                    this.addErrorMessage("Sorry, nothing was found for this role: " + StringUtils.join(roleNames, ", "));                
+                }else{
+                    this.addErrorMessage("Sorry, nothing was found for these roles: " + StringUtils.join(roleNames, ", "));                
+                }
+            }
+            return false;
+        }
         return true;
     }
     
-    private boolean runStep2DirectAssignments(){
+    private boolean runStep2DirectAssignments(MyDataAssignments assignments){
         
         if (this.hasError()){
             throw new IllegalStateException("Error encountered earlier.  Before calling this method on a MyData object,first check 'hasError()'");
         }
         //msgt("runStep2DirectAssignments");
         
-        List<Object[]> results = this.dvObjectServiceBean.getDvObjectInfoForMyData(directDvObjectIds);
-        msgt("runStep2DirectAssignments number of results: " + results.size());
-//List<RoleAssignment> results = this.roleAssigneeService.getAssignmentsFor(this.userIdentifier);
-        if (results.isEmpty()){
+        boolean dvObjectFound = false;
+        for (Long dvId : directDvObjectIds) {
+            if (assignments.getDtype(dvId) != null){
+                dvObjectFound = true;
+                break;
+            }
+        }
+        if (!dvObjectFound){
             this.addErrorMessage("Sorry, you have no assigned Dataverses, Datasets, or Files.");
             return false;
         }
     
-        Integer dvIdAsInteger;
-        Long dvId;
         String dtype;
         Long parentId;
         
         // -----------------------------------------------
         // Iterate through assigned objects
         // -----------------------------------------------
-        for (Object[] ra : results) {
-            dvIdAsInteger = (Integer)ra[0];     // ?? Why?
-            dvId = new Long(dvIdAsInteger);
-            dtype = (String)ra[1];
-            parentId = (Long)ra[2];
-            
+        for (Long dvId : directDvObjectIds) {
+            dtype = assignments.getDtype(dvId);
+            if (dtype == null){
+                continue;
+            }
+            parentId = assignments.getParentId(dvId);
             
             // -----------------------------------------------
             // If this object is harvested, then skip it...
@@ -544,10 +640,10 @@ public class MyDataFinder {
                     //if (this.idsWithDataversePermissions.containsKey(dvId)){
                         this.directDataverseIds.add(dvId);  // Direct dataverse (no indirect dataverses)
                     //}
-                    if (this.idsWithDatasetPermissions.containsKey(dvId)){
+                    if (this.idsWithDatasetPermissions.contains(dvId)){
                         this.datasetParentIds.add(dvId);    // Parent to dataset
                     }
-                    if (this.idsWithFilePermissions.containsKey(dvId)){
+                    if (this.idsWithFilePermissions.contains(dvId)){
                         this.fileGrandparentFileIds.add(dvId); // Grandparent to file
                         // Also show the Dataset--even though the permissions don't apply directly
                         //  e.g. The Permissions flows:
@@ -559,12 +655,12 @@ public class MyDataFinder {
                     //if (this.idsWithDatasetPermissions.containsKey(dvId)){
                         this.directDatasetIds.add(dvId); // Direct dataset
                     //}
-                    if (this.idsWithFilePermissions.containsKey(dvId)){
+                    if (this.idsWithFilePermissions.contains(dvId)){
                         this.fileParentIds.add(dvId);   // Parent to file
                     }
                     break;
                 case(DvObject.DATAFILE_DTYPE_STRING):
-                    if (this.idsWithFilePermissions.containsKey(dvId)){
+                    if (this.idsWithFilePermissions.contains(dvId)){
                         this.directFileIds.add(dvId); // Direct file
                     }
                     break;
@@ -579,40 +675,29 @@ public class MyDataFinder {
     }
     
     
-    private boolean runStep3FilePermsAssignedAtDataverse(){
+    private boolean runStep3FilePermsAssignedAtDataverse(MyDataAssignments assignments){
         msgt("runStep3FilePermsAssignedAtDataverse");
         if ((this.fileGrandparentFileIds == null)||(this.fileGrandparentFileIds.isEmpty())){
             return true;
         }
         
-        List<Object[]> results = this.dvObjectServiceBean.getDvObjectInfoByParentIdForMyData(this.fileGrandparentFileIds);
-        msg("runStep3FilePermsAssignedAtDataverse results count: " + results.size());
         /*  SEK 07/09 Ticket 2329
         Removed failure for empty results - if there are none let it go
         */
-        if (results.isEmpty()){
-            return true;        // RMP, shouldn't throw an error if no results           
-        }
-        
-        Integer dvIdAsInteger;
-        Long dvId;
-        String dtype;
-        Long parentId;
+        msg("runStep3FilePermsAssignedAtDataverse candidates: " + assignments.getNumChildDatasets());
         
-        // Iterate through object list
+        // Iterate through the datasets found below the assigned objects,
+        // keeping those of the dataverses with file permissions
         //
-        for (Object[] ra : results) {
-            dvIdAsInteger = (Integer)ra[0];     // ?? Why?
-            dvId = new Long(dvIdAsInteger);
-            dtype = (String)ra[1];
-            parentId = (Long)ra[2];
+        for (int i = 0; i < assignments.getNumChildDatasets(); i++) {
+            Long parentId = assignments.getChildDatasetParentId(i);
+            if (!this.fileGrandparentFileIds.contains(parentId)){
+                continue;
+            }
+            Long dvId = assignments.getChildDatasetId(i);
             
             this.childToParentIds.put(dvId, parentId);
-            
-            // Should ALWAYS be a Dataset!
-            if (dtype.equals(DvObject.DATASET_DTYPE_STRING)){  
-                this.fileParentIds.add(dvId);
-            }
+            this.fileParentIds.add(dvId);
         }
         
         return true;
@@ -19,6 +19,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.json.Json;
@@ -84,11 +86,13 @@ public class RoleTagRetriever {
         // (2) Load roles from solr docs
         loadInfoFromSolrResponseDocs(solrQueryResponse);
         
-        // (3) Load grandparent ids, if needed
-        findDataverseIdsForFiles();
+        // (3) Load grandparent ids, if needed, on a container thread...
+        Future<List<Object[]>> datasetInfo = startFindingDataverseIdsForFiles();
         
-        // (4) Retrieve the role ids
-        retrieveRoleIdsForDvObjects(userIdentifier);
+        // (4) ...while retrieving the role ids, those of the grandparents included
+        List<Object[]> roleIdResults = queryRoleIdsForDvObjects(userIdentifier);
+        findDataverseIdsForFiles(datasetInfo);
+        retrieveRoleIdsForDvObjects(userIdentifier, roleIdResults);
 
         // (5) Prepare final role lists
         prepareFinalRoleLists();
@@ -286,7 +290,7 @@ public class RoleTagRetriever {
      * 
      * 
      */
-    private void findDataverseIdsForFiles(){
+    private Future<List<Object[]>> startFindingDataverseIdsForFiles(){
         msgt("findDataverseIdsForFiles: " + datasetIdsNeedingParentIds.toString());
         
         // -------------------------------------
@@ -298,13 +302,28 @@ public class RoleTagRetriever {
         
         if (this.datasetIdsNeedingParentIds.isEmpty()){
             logger.fine("No ids found!");
+            return null;
+        }
+        
+        return this.dvObjectServiceBean.getDvObjectInfoForMyDataAsync(this.datasetIdsNeedingParentIds);
+    }
+    
+    private void findDataverseIdsForFiles(Future<List<Object[]>> datasetInfo){
+        
+        if (datasetInfo == null){
             return;
         }
         
         // -------------------------------------
         // (2) Do we have any dataset Ids where we need to find the parent dataverse?
         // -------------------------------------
-        List<Object[]> results = this.dvObjectServiceBean.getDvObjectInfoForMyData(this.datasetIdsNeedingParentIds);
+        List<Object[]> results;
+        try {
+            results = datasetInfo.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            logger.log(Level.WARNING, "Could not find the dataverses of datasets {0}: {1}", new Object[]{this.datasetIdsNeedingParentIds.toString(), ex});
+            return;
+        }
         logger.fine("findDataverseIdsForFiles results count: " + results.size());
        
         // -------------------------------------
@@ -343,23 +362,35 @@ public class RoleTagRetriever {
     }
     
     
-    private boolean retrieveRoleIdsForDvObjects(String userIdentifier){
+    /**
+     * Role ids for the objects found in the cards and for the owners of the
+     * datasets in {@code datasetIdsNeedingParentIds} (the dataverses found
+     * by {@link #findDataverseIdsForFiles(java.util.concurrent.Future)})
+     * 
+     * @return The query results, or {@code null} if there is nothing to look up
+     */
+    private List<Object[]> queryRoleIdsForDvObjects(String userIdentifier){
                 
         if (userIdentifier == null){
             throw new NullPointerException("RoleTagRetriever.constructor. userIdentifier cannot be null");
         }        
         
         if (this.idToRoleListHash.isEmpty()){
-            return true;
+            return null;
         }
 
         List<Long> dvObjectIdList = new ArrayList<>(this.idToRoleListHash.keySet());
-        if (dvObjectIdList.isEmpty()){
-            return true;
-        }
         //msg("dvObjectIdList: " + dvObjectIdList.toString());
         String assigneeIdentifer = MyDataUtil.formatUserIdentifierAsAssigneeIdentifier(userIdentifier);
-        List<Object[]> results = this.roleAssigneeService.getRoleIdsFor(assigneeIdentifer, dvObjectIdList);
+        return this.roleAssigneeService.getRoleIdsFor(assigneeIdentifer, dvObjectIdList, this.datasetIdsNeedingParentIds);
+    }
+    
+    private boolean retrieveRoleIdsForDvObjects(String userIdentifier, List<Object[]> results){
+                
+        if (this.idToRoleListHash.isEmpty()){
+            return true;
+        }
+        List<Long> dvObjectIdList = new ArrayList<>(this.idToRoleListHash.keySet());
         
         //msgt("runStep1RoleAssignments results: " + results.toString());
 
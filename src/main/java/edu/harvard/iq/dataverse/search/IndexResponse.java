@@ -3,10 +3,19 @@ package edu.harvard.iq.dataverse.search;
 public class IndexResponse {
 
     private final String message;
+    private final boolean failed;
     int numberOfSolrDocumentsIndexed;
 
     public IndexResponse(String message) {
+        this(message, false);
+    }
+
+    /**
+     * @param failed Whether Solr could not be updated.
+     */
+    public IndexResponse(String message, boolean failed) {
         this.message = message;
+        this.failed = failed;
     }
 
     @Override
@@ -18,6 +27,10 @@ public class IndexResponse {
         return message;
     }
 
+    public boolean isFailed() {
+        return failed;
+    }
+
     public int getNumberOfSolrDocumentsIndexed() {
         if (true) {
             /**
@@ -17,6 +17,8 @@ import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.DvObjectServiceBean;
 import edu.harvard.iq.dataverse.FileMetadata;
 import edu.harvard.iq.dataverse.PermissionServiceBean;
+import edu.harvard.iq.dataverse.ProjectionServiceBean;
+import edu.harvard.iq.dataverse.PublishedVersionCache;
 import edu.harvard.iq.dataverse.util.StringUtil;
 import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinUserServiceBean;
 import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
@@ -135,6 +137,8 @@ public class IndexServiceBean {
             String msg = "Could not find root dataverse and the root dataverse should not be indexed. Returning.";
             return new AsyncResult<>(msg);
         } else if (dataverse.getId() == rootDataverse.getId()) {
+            // still, whatever triggered this may have changed what is in it
+            SearchServiceBean.guestSearchCache.invalidate(dataverse);
             String msg = "The root dataverse should not be indexed. Returning.";
             return new AsyncResult<>(msg);
         }
@@ -199,7 +203,8 @@ public class IndexServiceBean {
             dataversePaths.remove(dataversePaths.size() - 1);
         }
         //Add paths for linking dataverses
-        for (Dataverse linkingDataverse : dvLinkingService.findLinkingDataverses(dataverse.getId())) {
+        List<Dataverse> linkingDataverses = dvLinkingService.findLinkingDataverses(dataverse.getId());
+        for (Dataverse linkingDataverse : linkingDataverses) {
             List<String> linkingDataversePathSegmentsAccumulator = new ArrayList<>();
             List<String> linkingdataverseSegments = findPathSegments(linkingDataverse, linkingDataversePathSegmentsAccumulator);
             List<String> linkingDataversePaths = getDataversePathsFromSegments(linkingdataverseSegments);
@@ -218,21 +223,24 @@ public class IndexServiceBean {
                 logger.info("WARNING: indexing of a dataverse with no id attempted");
             }
         } catch (SolrServerException | IOException ex) {
-            status = ex.toString();
+            status = IndexUtil.SOLR_UPDATE_FAILED + ex;
             logger.info(status);
             return new AsyncResult<>(status);
         }
         try {
             solrServer.commit();
         } catch (SolrServerException | IOException ex) {
-            status = ex.toString();
+            status = IndexUtil.SOLR_UPDATE_FAILED + ex;
             logger.info(status);
             return new AsyncResult<>(status);
         }
 
         dvObjectService.updateContentIndexTime(dataverse);
+        SearchServiceBean.guestSearchCache.invalidate(dataverse);
+        SearchServiceBean.guestSearchCache.invalidate(linkingDataverses);
         IndexResponse indexResponse = solrIndexService.indexPermissionsForOneDvObject(dataverse);
-        String msg = "indexed dataverse " + dataverse.getId() + ":" + dataverse.getAlias() + ". Response from permission indexing: " + indexResponse.getMessage();
+        String msg = "indexed dataverse " + dataverse.getId() + ":" + dataverse.getAlias() + ". Response from permission indexing: "
+                + (indexResponse.isFailed() ? IndexUtil.SOLR_UPDATE_FAILED : "") + indexResponse.getMessage();
         return new AsyncResult<>(msg);
 
     }
@@ -244,6 +252,22 @@ public class IndexServiceBean {
     }
 
     public Future<String> indexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) {
+        try {
+            return doIndexDataset(dataset, doNormalSolrDocCleanUp);
+        } finally {
+            // the cards of the dataset and its files are gone or changed in
+            // all the dataverses above it, and in the ones it is linked to
+            SearchServiceBean.guestSearchCache.invalidate(dataset);
+            if (dataset.getId() != null) {
+                SearchServiceBean.guestSearchCache.invalidate(dsLinkingService.findLinkingDataverses(dataset.getId()));
+            }
+            // and so may be the files of its released versions
+            ProjectionServiceBean.releasedVersionCache.invalidate(dataset.getId());
+            PublishedVersionCache.getInstance().invalidate(dataset.getId());
+        }
+    }
+
+    private Future<String> doIndexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) {
         logger.fine("indexing dataset " + dataset.getId());
         /**
          * @todo should we use solrDocIdentifierDataset or
@@ -973,12 +997,12 @@ public class IndexServiceBean {
         try {
             solrServer.add(docs);
         } catch (SolrServerException | IOException ex) {
-            return ex.toString();
+            return IndexUtil.SOLR_UPDATE_FAILED + ex;
         }
         try {
             solrServer.commit();
         } catch (SolrServerException | IOException ex) {
-            return ex.toString();
+            return IndexUtil.SOLR_UPDATE_FAILED + ex;
         }
 
         dvObjectService.updateContentIndexTime(dataset);
@@ -1110,6 +1134,7 @@ public class IndexServiceBean {
         } catch (SolrServerException | IOException ex) {
             return ex.toString();
         }
+        SearchServiceBean.guestSearchCache.invalidate(doomed);
         String response = "Successfully deleted dataverse " + doomed.getId() + " from Solr index. updateReponse was: " + updateResponse.toString();
         logger.fine(response);
         return response;
@@ -5,6 +5,26 @@ import java.util.List;
 
 public class IndexUtil {
 
+    /**
+     * Starts the part of the result of indexing a dataverse or a dataset
+     * (which is otherwise a report for the logs) that tells Solr could not be
+     * updated.
+     */
+    public static final String SOLR_UPDATE_FAILED = "Solr could not be updated: ";
+
+    /**
+     * @return What went wrong, if the result of indexing tells Solr could not
+     * be updated; {@code null} otherwise.
+     */
+    public static String findFailure(String indexResult) {
+        int start = (indexResult == null) ? -1 : indexResult.indexOf(SOLR_UPDATE_FAILED);
+        if (start == -1) {
+            return null;
+        }
+        int end = indexResult.indexOf('\n', start);
+        return (end == -1) ? indexResult.substring(start) : indexResult.substring(start, end);
+    }
+
     public static List<Long> findDvObjectIdsToProcessMod(List<Long> dvObjectIds, long mod, long which) {
         List<Long> subsetToProcess = new ArrayList<>();
         for (Long dvObjectId : dvObjectIds) {
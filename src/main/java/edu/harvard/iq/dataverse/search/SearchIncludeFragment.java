@@ -17,7 +17,6 @@ import edu.harvard.iq.dataverse.PermissionsWrapper;
 import edu.harvard.iq.dataverse.SettingsWrapper;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.dataaccess.DataFileIO;
-import edu.harvard.iq.dataverse.dataaccess.FileAccessIO;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -352,6 +351,7 @@ public class SearchIncludeFragment implements java.io.Serializable {
              * solrSearchResult.setCitation method but only the dataset card in
              * the UI (currently) shows this "citation" field.
              */
+            List<SolrSearchResult> fileSearchResults = new ArrayList<>();
             for (SolrSearchResult solrSearchResult : searchResults) {
                 if (solrSearchResult.getEntityId() == null) {
                     // avoiding EJBException a la https://redmine.hmdc.harvard.edu/issues/3809
@@ -388,13 +388,15 @@ public class SearchIncludeFragment implements java.io.Serializable {
                     }
                 } else if (solrSearchResult.getType().equals("files")) {
                     //logger.info("XXRESULT: datafile: "+solrSearchResult.getEntityId());
-                    dataFileService.populateFileSearchCard(solrSearchResult);
+                    // populated below, all at once
+                    fileSearchResults.add(solrSearchResult);
 
                     /**
                      * @todo: show DataTable variables
                      */
                 }
             }
+            dataFileService.populateFileSearchCards(fileSearchResults);
 
             // populate preview counts: https://redmine.hmdc.harvard.edu/issues/3560
             previewCountbyType.put("dataverses", 0L);
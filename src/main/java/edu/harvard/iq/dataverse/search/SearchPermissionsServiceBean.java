@@ -17,6 +17,8 @@ import edu.harvard.iq.dataverse.authorization.groups.GroupServiceBean;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -100,6 +102,24 @@ public class SearchPermissionsServiceBean {
         return permStrings;
     }
 
+    /**
+     * Resolves each assignee once, for callers that work on many objects at a
+     * time.
+     *
+     * @return The indexable string of each assignee that has one.
+     */
+    public Map<String, String> findIndexableStrings(Collection<String> assigneeIdentifiers) {
+        Map<String, String> indexableStrings = new HashMap<>();
+        for (String assigneeIdentifier : assigneeIdentifiers) {
+            RoleAssignee userOrGroup = roleAssigneeService.getRoleAssignee(assigneeIdentifier);
+            String indexableUserOrGroupPermissionString = getIndexableStringForUserOrGroup(userOrGroup);
+            if (indexableUserOrGroupPermissionString != null) {
+                indexableStrings.put(assigneeIdentifier, indexableUserOrGroupPermissionString);
+            }
+        }
+        return indexableStrings;
+    }
+
     private void resetRoleAssigneeCache() {
         roleAssigneeCache.clear();
     }
@@ -221,7 +241,7 @@ public class SearchPermissionsServiceBean {
         return dataverse.isReleased();
     }
 
-    private Permission getRequiredSearchPermission(DvObject dvObject) {
+    static Permission getRequiredSearchPermission(DvObject dvObject) {
         if (dvObject.isInstanceofDataverse()) {
             return Permission.ViewUnpublishedDataverse;
         } else {
@@ -0,0 +1,169 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.util.LruCache;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+
+/**
+ * A short lived cache of raw Solr responses for guest searches (dataverse
+ * landing pages, mostly). Only the Solr round trip is cached; the
+ * {@link SolrQueryResponse} is still built fresh for every request so callers
+ * are free to decorate the results.
+ *
+ * Entries are tied to the dataverse the search was scoped to. Indexing an
+ * object bumps a "generation" counter on every dataverse above it, which
+ * makes all the cached pages of that part of the tree stale at once, without
+ * having to scan the cache.
+ */
+public class SearchResultCache {
+
+    private static final Logger logger = Logger.getLogger(SearchResultCache.class.getCanonicalName());
+
+    private final LruCache<String, Entry> cache = new LruCache<>();
+    private final ConcurrentMap<Long, AtomicLong> generationsByDataverseId = new ConcurrentHashMap<>();
+    /**
+     * Bumped on every invalidation; used for searches that were not scoped to
+     * a dataverse.
+     */
+    private final AtomicLong globalGeneration = new AtomicLong();
+    /**
+     * Bumped when the whole cache is cleared; added to every per dataverse
+     * generation.
+     */
+    private final AtomicLong epoch = new AtomicLong();
+
+    public SearchResultCache(long maxSize) {
+        cache.setMaxSize(maxSize);
+    }
+
+    /**
+     * Builds a cache key out of all the parameters of the query, with the
+     * filter queries sorted so that the order in which the callers add them
+     * does not matter.
+     */
+    public static String createKey(Long dataverseId, SolrQuery solrQuery) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(dataverseId).append('|');
+        List<String> names = new ArrayList<>(solrQuery.getParameterNames());
+        Collections.sort(names);
+        for (String name : names) {
+            String[] values = solrQuery.getParams(name);
+            if (values == null) {
+                continue;
+            }
+            if (name.equals("fq")) {
+                values = values.clone();
+                Arrays.sort(values);
+            }
+            for (String value : values) {
+                sb.append(name).append('=').append(value).append('&');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * To be called <em>before</em> querying Solr; the value is passed back to
+     * {@link #put(java.lang.String, java.lang.Long, long, org.apache.solr.client.solrj.response.QueryResponse)}
+     * so that a response computed while the index was being updated is never
+     * served.
+     */
+    public long currentGeneration(Long dataverseId) {
+        if (dataverseId == null) {
+            return globalGeneration.get();
+        }
+        AtomicLong generation = generationsByDataverseId.get(dataverseId);
+        return epoch.get() + ((generation != null) ? generation.get() : 0);
+    }
+
+    /**
+     * @return The cached response, or {@code null} if there is none, it is
+     * older than {@code ttlMillis}, or it has been invalidated.
+     */
+    public QueryResponse get(String key, long ttlMillis) {
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.created > ttlMillis
+                || entry.generation != currentGeneration(entry.dataverseId)) {
+            cache.invalidate(key);
+            return null;
+        }
+        return entry.queryResponse;
+    }
+
+    public void put(String key, Long dataverseId, long generation, QueryResponse queryResponse) {
+        cache.put(key, new Entry(dataverseId, generation, queryResponse));
+    }
+
+    /**
+     * Invalidates the cached searches of the object itself (if it is a
+     * dataverse) and of all the dataverses above it.
+     */
+    public void invalidate(DvObject dvObject) {
+        globalGeneration.incrementAndGet();
+        for (DvObject current = dvObject; current != null; current = current.getOwner()) {
+            if (current.isInstanceofDataverse() && current.getId() != null) {
+                bump(current.getId());
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #invalidate(edu.harvard.iq.dataverse.DvObject)}, for
+     * several objects, e.g. the dataverses a dataset is linked into.
+     */
+    public void invalidate(Iterable<? extends DvObject> dvObjects) {
+        for (DvObject dvObject : dvObjects) {
+            invalidate(dvObject);
+        }
+    }
+
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        globalGeneration.incrementAndGet();
+        cache.invalidate();
+        logger.fine("guest search cache cleared");
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private void bump(Long dataverseId) {
+        AtomicLong generation = generationsByDataverseId.get(dataverseId);
+        if (generation == null) {
+            AtomicLong fresh = new AtomicLong();
+            generation = generationsByDataverseId.putIfAbsent(dataverseId, fresh);
+            if (generation == null) {
+                generation = fresh;
+            }
+        }
+        generation.incrementAndGet();
+    }
+
+    private static class Entry {
+
+        final Long dataverseId;
+        final long generation;
+        final long created = System.currentTimeMillis();
+        final QueryResponse queryResponse;
+
+        Entry(Long dataverseId, long generation, QueryResponse queryResponse) {
+            this.dataverseId = dataverseId;
+            this.generation = generation;
+            this.queryResponse = queryResponse;
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.io.IOException;
+
+/**
+ * Receives the results of a cursor based search one by one, as Solr streams
+ * them back, so that callers don't have to hold a whole page in memory.
+ *
+ * @see SearchServiceBean#searchAfter(edu.harvard.iq.dataverse.authorization.users.User, edu.harvard.iq.dataverse.Dataverse, java.lang.String, java.util.List, java.lang.String, int, edu.harvard.iq.dataverse.search.SearchResultHandler)
+ */
+public interface SearchResultHandler {
+
+    /**
+     * Called once, before any result.
+     *
+     * @param numResultsFound total number of matches, for all pages
+     */
+    void start(long numResultsFound) throws IOException;
+
+    void handle(SolrSearchResult solrSearchResult) throws IOException;
+
+}
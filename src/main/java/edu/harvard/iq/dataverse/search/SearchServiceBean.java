@@ -18,9 +18,14 @@ import edu.harvard.iq.dataverse.authorization.users.GuestUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
 import edu.harvard.iq.dataverse.util.JsfHelper;
 import edu.harvard.iq.dataverse.util.SystemConfig;
+import edu.harvard.iq.dataverse.util.TransactionUtil;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
@@ -34,16 +39,19 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.EJBTransactionRolledbackException;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionRolledbackLocalException;
 import javax.inject.Named;
 import javax.persistence.NoResultException;
+import javax.transaction.TransactionSynchronizationRegistry;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrQuery.SortClause;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.StreamingResponseCallback;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.impl.HttpSolrServer.RemoteSolrException;
 import org.apache.solr.client.solrj.response.FacetField;
@@ -82,9 +90,40 @@ public class SearchServiceBean {
     GroupServiceBean groupService;
     @EJB
     SystemConfig systemConfig;
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
 
     public static final JsfHelper JH = new JsfHelper();
+
+    /**
+     * Solr responses for the first page of guest searches; see
+     * {@link SystemConfig#getGuestSearchCacheTtlSeconds()}.
+     */
+    public static final SearchResultCache guestSearchCache = new SearchResultCache(256);
+
+    /**
+     * The cursor to pass to
+     * {@link #searchAfter(edu.harvard.iq.dataverse.authorization.users.User, edu.harvard.iq.dataverse.Dataverse, java.lang.String, java.util.List, java.lang.String, int, edu.harvard.iq.dataverse.search.SearchResultHandler)}
+     * for the first page, same as Solr's "cursorMark".
+     */
+    public static final String CURSOR_START = "*";
+
     private SolrServer solrServer;
+
+    /**
+     * Makes the cached guest searches of the given objects, and of the
+     * dataverses above them, stale once the current transaction has
+     * committed. For changes that reindexing does not reach everywhere, such
+     * as links (the linking dataverses) and removals.
+     */
+    public void invalidateGuestSearchesAfterCommit(final List<? extends DvObject> dvObjects) {
+        TransactionUtil.afterCommit(transactionRegistry, new Runnable() {
+            @Override
+            public void run() {
+                guestSearchCache.invalidate(dvObjects);
+            }
+        });
+    }
     
     @PostConstruct
     public void init(){
@@ -299,12 +338,32 @@ public class SearchServiceBean {
         solrQuery.setRows(numResultsPerPage);
         logger.fine("Solr query:" + solrQuery);
 
+        // -----------------------------------
+        // Guest landing pages may be served from the cache
+        // -----------------------------------
+        String guestSearchCacheKey = null;
+        Long guestSearchCacheDataverseId = (dataverse != null) ? dataverse.getId() : null;
+        long guestSearchCacheGeneration = 0;
+        long guestSearchCacheTtlSeconds = systemConfig.getGuestSearchCacheTtlSeconds();
+        if (guestSearchCacheTtlSeconds > 0 && user instanceof GuestUser && paginationStart == 0 && !onlyDatatRelatedToMe) {
+            guestSearchCacheKey = SearchResultCache.createKey(guestSearchCacheDataverseId, solrQuery);
+            guestSearchCacheGeneration = guestSearchCache.currentGeneration(guestSearchCacheDataverseId);
+        }
+
         // -----------------------------------  
         // Make the solr query
         // -----------------------------------
         QueryResponse queryResponse;
         try {
-            queryResponse = solrServer.query(solrQuery);
+            queryResponse = (guestSearchCacheKey != null) ? guestSearchCache.get(guestSearchCacheKey, guestSearchCacheTtlSeconds * 1000) : null;
+            if (queryResponse == null) {
+                queryResponse = solrServer.query(solrQuery);
+                if (guestSearchCacheKey != null) {
+                    guestSearchCache.put(guestSearchCacheKey, guestSearchCacheDataverseId, guestSearchCacheGeneration, queryResponse);
+                }
+            } else {
+                logger.fine("Solr query served from the guest search cache");
+            }
         } catch (RemoteSolrException ex) {
             String messageFromSolr = ex.getLocalizedMessage();
             String error = "Search Syntax Error: ";
@@ -347,195 +406,13 @@ public class SearchServiceBean {
          */
         Object searchFieldsObject = new SearchFields();
         Field[] staticSearchFields = searchFieldsObject.getClass().getDeclaredFields();
-        String titleSolrField = null;
-        try {
-            DatasetFieldType titleDatasetField = datasetFieldService.findByName(DatasetFieldConstant.title);
-            titleSolrField = titleDatasetField.getSolrField().getNameSearchable();
-        } catch (EJBTransactionRolledbackException ex) {
-            logger.info("Couldn't find " + DatasetFieldConstant.title);
-            if (ex.getCause() instanceof TransactionRolledbackLocalException) {
-                if (ex.getCause().getCause() instanceof NoResultException) {
-                    logger.info("Caught NoResultException");
-                }
-            }
-        }
+        String titleSolrField = findTitleSolrField();
         Map<String, String> datasetfieldFriendlyNamesBySolrField = new HashMap<>();
         Map<String, String> staticSolrFieldFriendlyNamesBySolrField = new HashMap<>();
         String baseUrl = systemConfig.getDataverseSiteUrl();
         while (iter.hasNext()) {
             SolrDocument solrDocument = iter.next();
-            String id = (String) solrDocument.getFieldValue(SearchFields.ID);
-            Long entityid = (Long) solrDocument.getFieldValue(SearchFields.ENTITY_ID);
-            String type = (String) solrDocument.getFieldValue(SearchFields.TYPE);
-            float score = (Float) solrDocument.getFieldValue(SearchFields.RELEVANCE);
-            logger.fine("score for " + id + ": " + score);
-            String identifier = (String) solrDocument.getFieldValue(SearchFields.IDENTIFIER);
-            String citation = (String) solrDocument.getFieldValue(SearchFields.DATASET_CITATION);
-            String persistentUrl = (String) solrDocument.getFieldValue(SearchFields.PERSISTENT_URL);
-            String name = (String) solrDocument.getFieldValue(SearchFields.NAME);
-            String nameSort = (String) solrDocument.getFieldValue(SearchFields.NAME_SORT);
-//            ArrayList titles = (ArrayList) solrDocument.getFieldValues(SearchFields.TITLE);
-            String title = (String) solrDocument.getFieldValue(titleSolrField);
-            Long datasetVersionId = (Long) solrDocument.getFieldValue(SearchFields.DATASET_VERSION_ID);
-            String deaccessionReason = (String) solrDocument.getFieldValue(SearchFields.DATASET_DEACCESSION_REASON);
-//            logger.info("titleSolrField: " + titleSolrField);
-//            logger.info("title: " + title);
-            String filetype = (String) solrDocument.getFieldValue(SearchFields.FILE_TYPE_FRIENDLY);
-            String fileContentType = (String) solrDocument.getFieldValue(SearchFields.FILE_CONTENT_TYPE);
-            Date release_or_create_date = (Date) solrDocument.getFieldValue(SearchFields.RELEASE_OR_CREATE_DATE);
-            String dateToDisplayOnCard = (String) solrDocument.getFirstValue(SearchFields.RELEASE_OR_CREATE_DATE_SEARCHABLE_TEXT);
-            String dvTree = (String) solrDocument.getFirstValue(SearchFields.SUBTREE);
-            List<String> matchedFields = new ArrayList<>();
-            List<Highlight> highlights = new ArrayList<>();
-            Map<SolrField, Highlight> highlightsMap = new HashMap<>();
-            Map<SolrField, List<String>> highlightsMap2 = new HashMap<>();
-            Map<String, Highlight> highlightsMap3 = new HashMap<>();
-            if (queryResponse.getHighlighting().get(id) != null) {
-                for (Map.Entry<String, String> entry : solrFieldsToHightlightOnMap.entrySet()) {
-                    String field = entry.getKey();
-                    String displayName = entry.getValue();
-
-                    List<String> highlightSnippets = queryResponse.getHighlighting().get(id).get(field);
-                    if (highlightSnippets != null) {
-                        matchedFields.add(field);
-                        /**
-                         * @todo only SolrField.SolrType.STRING? that's not
-                         * right... knit the SolrField object more into the
-                         * highlighting stuff
-                         */
-                        SolrField solrField = new SolrField(field, SolrField.SolrType.STRING, true, true);
-                        Highlight highlight = new Highlight(solrField, highlightSnippets, displayName);
-                        highlights.add(highlight);
-                        highlightsMap.put(solrField, highlight);
-                        highlightsMap2.put(solrField, highlightSnippets);
-                        highlightsMap3.put(field, highlight);
-                    }
-                }
-
-            }
-            SolrSearchResult solrSearchResult = new SolrSearchResult(query, name);
-            /**
-             * @todo put all this in the constructor?
-             */
-            List<String> states = (ArrayList<String>) solrDocument.getFieldValue(SearchFields.PUBLICATION_STATUS);
-            if (states != null) {
-                // set list of all statuses
-                // this method also sets booleans for individual statuses
-                solrSearchResult.setPublicationStatuses(states);
-            }
-//            logger.info(id + ": " + description);
-            solrSearchResult.setId(id);
-            solrSearchResult.setEntityId(entityid);
-            if (retrieveEntities) {
-                solrSearchResult.setEntity(dvObjectService.findDvObject(entityid));
-            }
-            solrSearchResult.setIdentifier(identifier);
-            solrSearchResult.setPersistentUrl(persistentUrl);
-            solrSearchResult.setType(type);
-            solrSearchResult.setScore(score);
-            solrSearchResult.setNameSort(nameSort);
-            solrSearchResult.setReleaseOrCreateDate(release_or_create_date);
-            solrSearchResult.setDateToDisplayOnCard(dateToDisplayOnCard);
-            solrSearchResult.setMatchedFields(matchedFields);
-            solrSearchResult.setHighlightsAsList(highlights);
-            solrSearchResult.setHighlightsMap(highlightsMap);
-            solrSearchResult.setHighlightsAsMap(highlightsMap3);
-            Map<String, String> parent = new HashMap<>();
-            String description = (String) solrDocument.getFieldValue(SearchFields.DESCRIPTION);
-            solrSearchResult.setDescriptionNoSnippet(description);
-            solrSearchResult.setDeaccessionReason(deaccessionReason);
-            solrSearchResult.setDvTree(dvTree);
-            /**
-             * @todo start using SearchConstants class here
-             */
-            if (type.equals("dataverses")) {
-                solrSearchResult.setName(name);
-                solrSearchResult.setHtmlUrl(baseUrl + "/dataverse/" + identifier);
-                solrSearchResult.setImageUrl(baseUrl + "/api/access/dvCardImage/" + entityid);
-                /**
-                 * @todo Expose this API URL after "dvs" is changed to
-                 * "dataverses". Also, is an API token required for published
-                 * dataverses? Michael: url changed.
-                 */
-//                solrSearchResult.setApiUrl(baseUrl + "/api/dataverses/" + entityid);
-            } else if (type.equals("datasets")) {
-                solrSearchResult.setHtmlUrl(baseUrl + "/dataset.xhtml?globalId=" + identifier);
-                solrSearchResult.setApiUrl(baseUrl + "/api/datasets/" + entityid);
-                solrSearchResult.setImageUrl(baseUrl + "/api/access/dsCardImage/" + datasetVersionId);
-                /**
-                 * @todo Could use getFieldValues (plural) here.
-                 */
-                ArrayList<String> datasetDescriptions = (ArrayList<String>) solrDocument.getFieldValue(SearchFields.DATASET_DESCRIPTION);
-                if (datasetDescriptions != null) {
-                    String firstDatasetDescription = datasetDescriptions.get(0);
-                    if (firstDatasetDescription != null) {
-                        solrSearchResult.setDescriptionNoSnippet(firstDatasetDescription);
-                    }
-                }
-                solrSearchResult.setDatasetVersionId(datasetVersionId);
-
-                solrSearchResult.setCitation(citation);
-                if (title != null) {
-//                    solrSearchResult.setTitle((String) titles.get(0));
-                    solrSearchResult.setTitle((String) title);
-                } else {
-                    logger.fine("No title indexed. Setting to empty string to prevent NPE. Dataset id " + entityid + " and version id " + datasetVersionId);
-                    solrSearchResult.setTitle("");
-                }
-                List<String> authors = (ArrayList) solrDocument.getFieldValues(DatasetFieldConstant.authorName);
-                if (authors != null) {
-                    solrSearchResult.setDatasetAuthors(authors);
-                }
-            } else if (type.equals("files")) {
-                String parentGlobalId = null;
-                Object parentGlobalIdObject = solrDocument.getFieldValue(SearchFields.PARENT_IDENTIFIER);
-                if (parentGlobalIdObject != null) {
-                    parentGlobalId = (String) parentGlobalIdObject;
-                    parent.put(SolrSearchResult.PARENT_IDENTIFIER, parentGlobalId);
-                }
-                solrSearchResult.setHtmlUrl(baseUrl + "/dataset.xhtml?persistentId=" + parentGlobalId);
-                solrSearchResult.setDownloadUrl(baseUrl + "/api/access/datafile/" + entityid);
-                /**
-                 * @todo We are not yet setting the API URL for files because
-                 * not all files have metadata. Only subsettable files (those
-                 * with a datatable) seem to have metadata. Furthermore, the
-                 * response is in XML whereas the rest of the Search API returns
-                 * JSON.
-                 */
-//                solrSearchResult.setApiUrl(baseUrl + "/api/meta/datafile/" + entityid);
-                solrSearchResult.setImageUrl(baseUrl + "/api/access/fileCardImage/" + entityid);
-                solrSearchResult.setName(name);
-                solrSearchResult.setFiletype(filetype);
-                solrSearchResult.setFileContentType(fileContentType);
-                Object fileSizeInBytesObject = solrDocument.getFieldValue(SearchFields.FILE_SIZE_IN_BYTES);
-                if (fileSizeInBytesObject != null) {
-                    try {
-                        long fileSizeInBytesLong = (long) fileSizeInBytesObject;
-                        solrSearchResult.setFileSizeInBytes(fileSizeInBytesLong);
-                    } catch (ClassCastException ex) {
-                        logger.info("Could not cast file " + entityid + " to long for " + SearchFields.FILE_SIZE_IN_BYTES + ": " + ex.getLocalizedMessage());
-                    }
-                }
-                solrSearchResult.setFileMd5((String) solrDocument.getFieldValue(SearchFields.FILE_MD5));
-                solrSearchResult.setUnf((String) solrDocument.getFieldValue(SearchFields.UNF));
-                solrSearchResult.setDatasetVersionId(datasetVersionId);
-                List<String> fileCategories = (ArrayList) solrDocument.getFieldValues(SearchFields.FILE_TAG);
-                if (fileCategories != null) {
-                    solrSearchResult.setFileCategories(fileCategories);
-                }
-                List<String> tabularDataTags = (ArrayList) solrDocument.getFieldValues(SearchFields.TABDATA_TAG);
-                if (tabularDataTags != null) {
-                    Collections.sort(tabularDataTags);
-                    solrSearchResult.setTabularDataTags(tabularDataTags);
-                }
-            }
-            /**
-             * @todo store PARENT_ID as a long instead and cast as such
-             */
-            parent.put("id", (String) solrDocument.getFieldValue(SearchFields.PARENT_ID));
-            parent.put("name", (String) solrDocument.getFieldValue(SearchFields.PARENT_NAME));
-            parent.put("citation", (String) solrDocument.getFieldValue(SearchFields.PARENT_CITATION));
-            solrSearchResult.setParent(parent);
+            SolrSearchResult solrSearchResult = toSolrSearchResult(solrDocument, query, queryResponse.getHighlighting(), solrFieldsToHightlightOnMap, titleSolrField, baseUrl, retrieveEntities);
             solrSearchResults.add(solrSearchResult);
         }
         Map<String, List<String>> spellingSuggestionsByToken = new HashMap<>();
@@ -709,6 +586,325 @@ public class SearchServiceBean {
         return solrQueryResponse;
     }
 
+    /**
+     * Cursor based alternative to
+     * {@link #search(edu.harvard.iq.dataverse.authorization.users.User, edu.harvard.iq.dataverse.Dataverse, java.lang.String, java.util.List, java.lang.String, java.lang.String, int, boolean, int)}
+     * for clients that walk through many pages of results, such as harvesters
+     * or reporting jobs. Results are always sorted by Solr document id and a
+     * page starts right after the last document of the previous one, so Solr
+     * never has to collect and skip the documents of all the earlier pages the
+     * way it does with {@code start}.
+     *
+     * Facets, highlighting and spelling suggestions are not computed, and
+     * results are handed to {@code handler} while Solr streams them back
+     * instead of being collected in a {@link SolrQueryResponse}.
+     *
+     * @param cursor {@link #CURSOR_START} for the first page, then the value
+     * returned for the previous page.
+     * @return The cursor of the next page, or {@code null} if this was the
+     * last one.
+     * @throws IllegalArgumentException if the cursor is not one that was
+     * handed out by this method.
+     */
+    public String searchAfter(User user, Dataverse dataverse, String query, List<String> filterQueries, String cursor, int numResultsPerPage, final SearchResultHandler handler) throws SearchException, IOException {
+        if (numResultsPerPage < 1) {
+            throw new IllegalArgumentException("numResultsPerPage must be 1 or greater");
+        }
+        String lastSolrIdSeen = decodeCursor(cursor);
+
+        SolrQuery solrQuery = new SolrQuery();
+        query = SearchUtil.sanitizeQuery(query);
+        solrQuery.setQuery(query);
+        solrQuery.setSort(new SortClause(SearchFields.ID, SolrQuery.ORDER.asc));
+        solrQuery.setParam("fl", "*,score");
+        solrQuery.setParam("qt", "/spell");
+        for (String filterQuery : filterQueries) {
+            solrQuery.addFilterQuery(filterQuery);
+        }
+        String permissionFilterQuery = this.getPermissionFilterQuery(user, solrQuery, dataverse, false);
+        if (permissionFilterQuery != null) {
+            solrQuery.addFilterQuery(permissionFilterQuery);
+        }
+        if (lastSolrIdSeen != null) {
+            solrQuery.addFilterQuery(SearchFields.ID + ":{\"" + lastSolrIdSeen + "\" TO *]");
+        }
+        solrQuery.setStart(0);
+        solrQuery.setRows(numResultsPerPage);
+        logger.fine("Solr query (cursor):" + solrQuery);
+
+        final String finalQuery = query;
+        final String titleSolrField = findTitleSolrField();
+        final String baseUrl = systemConfig.getDataverseSiteUrl();
+        final Map<String, String> noHighlighting = Collections.emptyMap();
+        final String[] lastIdStreamed = new String[1];
+        final int[] numStreamed = new int[1];
+        final boolean[] started = new boolean[1];
+        try {
+            solrServer.queryAndStreamResponse(solrQuery, new StreamingResponseCallback() {
+                @Override
+                public void streamDocListInfo(long numFound, long start, Float maxScore) {
+                    try {
+                        started[0] = true;
+                        handler.start(numFound);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+
+                @Override
+                public void streamSolrDocument(SolrDocument solrDocument) {
+                    try {
+                        handler.handle(toSolrSearchResult(solrDocument, finalQuery, null, noHighlighting, titleSolrField, baseUrl, false));
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    lastIdStreamed[0] = (String) solrDocument.getFieldValue(SearchFields.ID);
+                    numStreamed[0]++;
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            // the client went away, most likely
+            throw ex.getCause();
+        } catch (RemoteSolrException ex) {
+            throw new SearchException("Search Syntax Error: " + ex.getLocalizedMessage(), ex);
+        } catch (SolrServerException ex) {
+            if (ex.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) ex.getCause()).getCause();
+            }
+            throw new SearchException("Internal Dataverse Search Engine Error", ex);
+        }
+        if (!started[0]) {
+            handler.start(0);
+        }
+        if (numStreamed[0] < numResultsPerPage || lastIdStreamed[0] == null) {
+            return null;
+        }
+        return encodeCursor(lastIdStreamed[0]);
+    }
+
+    /**
+     * Cursors handed out by
+     * {@link #searchAfter(edu.harvard.iq.dataverse.authorization.users.User, edu.harvard.iq.dataverse.Dataverse, java.lang.String, java.util.List, java.lang.String, int, edu.harvard.iq.dataverse.search.SearchResultHandler)}
+     * are opaque to clients (like Solr's own "cursorMark") so we are free to
+     * change how they work.
+     */
+    static String encodeCursor(String lastSolrIdSeen) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastSolrIdSeen.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.equals(CURSOR_START)) {
+            return null;
+        }
+        String lastSolrIdSeen;
+        try {
+            lastSolrIdSeen = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        if (lastSolrIdSeen.isEmpty() || lastSolrIdSeen.contains("\"") || lastSolrIdSeen.contains("\\")) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        return lastSolrIdSeen;
+    }
+
+    private String findTitleSolrField() {
+        String titleSolrField = null;
+        try {
+            DatasetFieldType titleDatasetField = datasetFieldService.findByName(DatasetFieldConstant.title);
+            titleSolrField = titleDatasetField.getSolrField().getNameSearchable();
+        } catch (EJBTransactionRolledbackException ex) {
+            logger.info("Couldn't find " + DatasetFieldConstant.title);
+            if (ex.getCause() instanceof TransactionRolledbackLocalException) {
+                if (ex.getCause().getCause() instanceof NoResultException) {
+                    logger.info("Caught NoResultException");
+                }
+            }
+        }
+        return titleSolrField;
+    }
+
+    /**
+     * Turns one Solr document into the card the GUI and the Search API show.
+     *
+     * @param highlighting as returned by Solr, may be {@code null}
+     */
+    private SolrSearchResult toSolrSearchResult(SolrDocument solrDocument, String query, Map<String, Map<String, List<String>>> highlighting, Map<String, String> solrFieldsToHightlightOnMap, String titleSolrField, String baseUrl, boolean retrieveEntities) {
+        String id = (String) solrDocument.getFieldValue(SearchFields.ID);
+        Long entityid = (Long) solrDocument.getFieldValue(SearchFields.ENTITY_ID);
+        String type = (String) solrDocument.getFieldValue(SearchFields.TYPE);
+        float score = (Float) solrDocument.getFieldValue(SearchFields.RELEVANCE);
+        logger.fine("score for " + id + ": " + score);
+        String identifier = (String) solrDocument.getFieldValue(SearchFields.IDENTIFIER);
+        String citation = (String) solrDocument.getFieldValue(SearchFields.DATASET_CITATION);
+        String persistentUrl = (String) solrDocument.getFieldValue(SearchFields.PERSISTENT_URL);
+        String name = (String) solrDocument.getFieldValue(SearchFields.NAME);
+        String nameSort = (String) solrDocument.getFieldValue(SearchFields.NAME_SORT);
+//            ArrayList titles = (ArrayList) solrDocument.getFieldValues(SearchFields.TITLE);
+        String title = (String) solrDocument.getFieldValue(titleSolrField);
+        Long datasetVersionId = (Long) solrDocument.getFieldValue(SearchFields.DATASET_VERSION_ID);
+        String deaccessionReason = (String) solrDocument.getFieldValue(SearchFields.DATASET_DEACCESSION_REASON);
+//            logger.info("titleSolrField: " + titleSolrField);
+//            logger.info("title: " + title);
+        String filetype = (String) solrDocument.getFieldValue(SearchFields.FILE_TYPE_FRIENDLY);
+        String fileContentType = (String) solrDocument.getFieldValue(SearchFields.FILE_CONTENT_TYPE);
+        Date release_or_create_date = (Date) solrDocument.getFieldValue(SearchFields.RELEASE_OR_CREATE_DATE);
+        String dateToDisplayOnCard = (String) solrDocument.getFirstValue(SearchFields.RELEASE_OR_CREATE_DATE_SEARCHABLE_TEXT);
+        String dvTree = (String) solrDocument.getFirstValue(SearchFields.SUBTREE);
+        List<String> matchedFields = new ArrayList<>();
+        List<Highlight> highlights = new ArrayList<>();
+        Map<SolrField, Highlight> highlightsMap = new HashMap<>();
+        Map<SolrField, List<String>> highlightsMap2 = new HashMap<>();
+        Map<String, Highlight> highlightsMap3 = new HashMap<>();
+        if (highlighting != null && highlighting.get(id) != null) {
+            for (Map.Entry<String, String> entry : solrFieldsToHightlightOnMap.entrySet()) {
+                String field = entry.getKey();
+                String displayName = entry.getValue();
+
+                List<String> highlightSnippets = highlighting.get(id).get(field);
+                if (highlightSnippets != null) {
+                    matchedFields.add(field);
+                    /**
+                     * @todo only SolrField.SolrType.STRING? that's not
+                     * right... knit the SolrField object more into the
+                     * highlighting stuff
+                     */
+                    SolrField solrField = new SolrField(field, SolrField.SolrType.STRING, true, true);
+                    Highlight highlight = new Highlight(solrField, highlightSnippets, displayName);
+                    highlights.add(highlight);
+                    highlightsMap.put(solrField, highlight);
+                    highlightsMap2.put(solrField, highlightSnippets);
+                    highlightsMap3.put(field, highlight);
+                }
+            }
+
+        }
+        SolrSearchResult solrSearchResult = new SolrSearchResult(query, name);
+        /**
+         * @todo put all this in the constructor?
+         */
+        List<String> states = (ArrayList<String>) solrDocument.getFieldValue(SearchFields.PUBLICATION_STATUS);
+        if (states != null) {
+            // set list of all statuses
+            // this method also sets booleans for individual statuses
+            solrSearchResult.setPublicationStatuses(states);
+        }
+//            logger.info(id + ": " + description);
+        solrSearchResult.setId(id);
+        solrSearchResult.setEntityId(entityid);
+        if (retrieveEntities) {
+            solrSearchResult.setEntity(dvObjectService.findDvObject(entityid));
+        }
+        solrSearchResult.setIdentifier(identifier);
+        solrSearchResult.setPersistentUrl(persistentUrl);
+        solrSearchResult.setType(type);
+        solrSearchResult.setScore(score);
+        solrSearchResult.setNameSort(nameSort);
+        solrSearchResult.setReleaseOrCreateDate(release_or_create_date);
+        solrSearchResult.setDateToDisplayOnCard(dateToDisplayOnCard);
+        solrSearchResult.setMatchedFields(matchedFields);
+        solrSearchResult.setHighlightsAsList(highlights);
+        solrSearchResult.setHighlightsMap(highlightsMap);
+        solrSearchResult.setHighlightsAsMap(highlightsMap3);
+        Map<String, String> parent = new HashMap<>();
+        String description = (String) solrDocument.getFieldValue(SearchFields.DESCRIPTION);
+        solrSearchResult.setDescriptionNoSnippet(description);
+        solrSearchResult.setDeaccessionReason(deaccessionReason);
+        solrSearchResult.setDvTree(dvTree);
+        /**
+         * @todo start using SearchConstants class here
+         */
+        if (type.equals("dataverses")) {
+            solrSearchResult.setName(name);
+            solrSearchResult.setHtmlUrl(baseUrl + "/dataverse/" + identifier);
+            solrSearchResult.setImageUrl(baseUrl + "/api/access/dvCardImage/" + entityid);
+            /**
+             * @todo Expose this API URL after "dvs" is changed to
+             * "dataverses". Also, is an API token required for published
+             * dataverses? Michael: url changed.
+             */
+//                solrSearchResult.setApiUrl(baseUrl + "/api/dataverses/" + entityid);
+        } else if (type.equals("datasets")) {
+            solrSearchResult.setHtmlUrl(baseUrl + "/dataset.xhtml?globalId=" + identifier);
+            solrSearchResult.setApiUrl(baseUrl + "/api/datasets/" + entityid);
+            solrSearchResult.setImageUrl(baseUrl + "/api/access/dsCardImage/" + datasetVersionId);
+            /**
+             * @todo Could use getFieldValues (plural) here.
+             */
+            ArrayList<String> datasetDescriptions = (ArrayList<String>) solrDocument.getFieldValue(SearchFields.DATASET_DESCRIPTION);
+            if (datasetDescriptions != null) {
+                String firstDatasetDescription = datasetDescriptions.get(0);
+                if (firstDatasetDescription != null) {
+                    solrSearchResult.setDescriptionNoSnippet(firstDatasetDescription);
+                }
+            }
+            solrSearchResult.setDatasetVersionId(datasetVersionId);
+
+            solrSearchResult.setCitation(citation);
+            if (title != null) {
+//                    solrSearchResult.setTitle((String) titles.get(0));
+                solrSearchResult.setTitle((String) title);
+            } else {
+                logger.fine("No title indexed. Setting to empty string to prevent NPE. Dataset id " + entityid + " and version id " + datasetVersionId);
+                solrSearchResult.setTitle("");
+            }
+            List<String> authors = (ArrayList) solrDocument.getFieldValues(DatasetFieldConstant.authorName);
+            if (authors != null) {
+                solrSearchResult.setDatasetAuthors(authors);
+            }
+        } else if (type.equals("files")) {
+            String parentGlobalId = null;
+            Object parentGlobalIdObject = solrDocument.getFieldValue(SearchFields.PARENT_IDENTIFIER);
+            if (parentGlobalIdObject != null) {
+                parentGlobalId = (String) parentGlobalIdObject;
+                parent.put(SolrSearchResult.PARENT_IDENTIFIER, parentGlobalId);
+            }
+            solrSearchResult.setHtmlUrl(baseUrl + "/dataset.xhtml?persistentId=" + parentGlobalId);
+            solrSearchResult.setDownloadUrl(baseUrl + "/api/access/datafile/" + entityid);
+            /**
+             * @todo We are not yet setting the API URL for files because
+             * not all files have metadata. Only subsettable files (those
+             * with a datatable) seem to have metadata. Furthermore, the
+             * response is in XML whereas the rest of the Search API returns
+             * JSON.
+             */
+//                solrSearchResult.setApiUrl(baseUrl + "/api/meta/datafile/" + entityid);
+            solrSearchResult.setImageUrl(baseUrl + "/api/access/fileCardImage/" + entityid);
+            solrSearchResult.setName(name);
+            solrSearchResult.setFiletype(filetype);
+            solrSearchResult.setFileContentType(fileContentType);
+            Object fileSizeInBytesObject = solrDocument.getFieldValue(SearchFields.FILE_SIZE_IN_BYTES);
+            if (fileSizeInBytesObject != null) {
+                try {
+                    long fileSizeInBytesLong = (long) fileSizeInBytesObject;
+                    solrSearchResult.setFileSizeInBytes(fileSizeInBytesLong);
+                } catch (ClassCastException ex) {
+                    logger.info("Could not cast file " + entityid + " to long for " + SearchFields.FILE_SIZE_IN_BYTES + ": " + ex.getLocalizedMessage());
+                }
+            }
+            solrSearchResult.setFileMd5((String) solrDocument.getFieldValue(SearchFields.FILE_MD5));
+            solrSearchResult.setUnf((String) solrDocument.getFieldValue(SearchFields.UNF));
+            solrSearchResult.setDatasetVersionId(datasetVersionId);
+            List<String> fileCategories = (ArrayList) solrDocument.getFieldValues(SearchFields.FILE_TAG);
+            if (fileCategories != null) {
+                solrSearchResult.setFileCategories(fileCategories);
+            }
+            List<String> tabularDataTags = (ArrayList) solrDocument.getFieldValues(SearchFields.TABDATA_TAG);
+            if (tabularDataTags != null) {
+                Collections.sort(tabularDataTags);
+                solrSearchResult.setTabularDataTags(tabularDataTags);
+            }
+        }
+        /**
+         * @todo store PARENT_ID as a long instead and cast as such
+         */
+        parent.put("id", (String) solrDocument.getFieldValue(SearchFields.PARENT_ID));
+        parent.put("name", (String) solrDocument.getFieldValue(SearchFields.PARENT_NAME));
+        parent.put("citation", (String) solrDocument.getFieldValue(SearchFields.PARENT_CITATION));
+        solrSearchResult.setParent(parent);
+        return solrSearchResult;
+    }
+
     private static String localize(String bundleKey) {
         try {
             String value = JH.localize(bundleKey);
@@ -1,20 +1,23 @@
 package edu.harvard.iq.dataverse.search;
 
+import com.google.common.collect.Lists;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.DatasetVersionServiceBean;
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DataverseRoleServiceBean;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.DvObjectServiceBean;
-import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.RoleAssignment;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -51,6 +54,8 @@ public class SolrIndexServiceBean {
     @EJB
     DatasetServiceBean datasetService;
     @EJB
+    DatasetVersionServiceBean datasetVersionService;
+    @EJB
     DataverseRoleServiceBean rolesSvc;
     @EJB
     IndexServiceBean indexService;
@@ -120,20 +125,6 @@ public class SolrIndexServiceBean {
         return solrDocs;
     }
 
-    private List<DvObjectSolrDoc> determineSolrDocsForFilesFromDataset(Map.Entry<Long, List<Long>> datasetHash) {
-        List<DvObjectSolrDoc> emptyList = new ArrayList<>();
-        List<DvObjectSolrDoc> solrDocs = emptyList;
-        DvObject dvObject = dvObjectService.findDvObject(datasetHash.getKey());
-        if (dvObject == null) {
-            return emptyList;
-        }
-        if (dvObject.isInstanceofDataset()) {
-            Dataset dataset = (Dataset) dvObject;
-            solrDocs.addAll(constructDatafileSolrDocsFromDataset(dataset));
-        }
-        return solrDocs;
-    }
-
     /**
      * @todo should this method return a List? The equivalent methods for
      * datasets and files return lists.
@@ -207,36 +198,6 @@ public class SolrIndexServiceBean {
         return datafileSolrDocs;
     }
 
-    private List<DvObjectSolrDoc> constructDatafileSolrDocsFromDataset(Dataset dataset) {
-        List<DvObjectSolrDoc> datafileSolrDocs = new ArrayList<>();
-        Map<DatasetVersion.VersionState, Boolean> desiredCards = searchPermissionsService.getDesiredCards(dataset);
-        for (DatasetVersion datasetVersionFileIsAttachedTo : datasetVersionsToBuildCardsFor(dataset)) {
-            boolean cardShouldExist = desiredCards.get(datasetVersionFileIsAttachedTo.getVersionState());
-            if (cardShouldExist) {
-                List<String> perms = new ArrayList<>();
-                if (unpublishedDataRelatedToMeModeEnabled) {
-                    if (datasetVersionFileIsAttachedTo.isReleased()) {
-                        perms.add(IndexServiceBean.getPublicGroupString());
-                    } else {
-                        perms = searchPermissionsService.findDatasetVersionPerms(datasetVersionFileIsAttachedTo);
-                    }
-                } else {
-                    perms = searchPermissionsService.findDatasetVersionPerms(datasetVersionFileIsAttachedTo);
-                }
-                for (FileMetadata fileMetadata : datasetVersionFileIsAttachedTo.getFileMetadatas()) {
-                    Long fileId = fileMetadata.getDataFile().getId();
-                    String solrIdStart = IndexServiceBean.solrDocIdentifierFile + fileId;
-                    String solrIdEnd = getDatasetOrDataFileSolrEnding(datasetVersionFileIsAttachedTo.getVersionState());
-                    String solrId = solrIdStart + solrIdEnd;
-                    DvObjectSolrDoc dataFileSolrDoc = new DvObjectSolrDoc(fileId.toString(), solrId, datasetVersionFileIsAttachedTo.getId(), fileMetadata.getLabel(), perms);
-                    logger.fine("adding fileid " + fileId);
-                    datafileSolrDocs.add(dataFileSolrDoc);
-                }
-            }
-        }
-        return datafileSolrDocs;
-    }
-
     private Set<DatasetVersion> datasetVersionsToBuildCardsFor(Dataset dataset) {
         Set<DatasetVersion> datasetVersions = new HashSet<>();
         DatasetVersion latest = dataset.getLatestVersion();
@@ -281,64 +242,19 @@ public class SolrIndexServiceBean {
     }
 
     public IndexResponse indexAllPermissions() {
-        Collection<SolrInputDocument> docs = new ArrayList<>();
-
-        List<DvObjectSolrDoc> definitionPoints = new ArrayList<>();
-        Map<Long, List<Long>> filesPerDataset = new HashMap<>();
-        List<DvObject> allExceptFiles = dvObjectService.findAll();
-        for (DvObject dvObject : allExceptFiles) {
-            logger.info("determining definition points for dvobject id " + dvObject.getId());
-            if (dvObject.isInstanceofDataFile()) {
-                Long dataset = dvObject.getOwner().getId();
-                Long datafile = dvObject.getId();
-
-                List<Long> files = filesPerDataset.get(dataset);
-                if (files == null) {
-                    files = new ArrayList<>();
-                    filesPerDataset.put(dataset, files);
-                }
-                files.add(datafile);
-            } else {
-                definitionPoints.addAll(determineSolrDocs(dvObject));
-            }
-        }
-
-        List<DvObject> all = allExceptFiles;
-        for (Map.Entry<Long, List<Long>> filePerDataset : filesPerDataset.entrySet()) {
-            definitionPoints.addAll(determineSolrDocsForFilesFromDataset(filePerDataset));
-            for (long fileId : filePerDataset.getValue()) {
-                DvObject file = dvObjectService.findDvObject(fileId);
-                if (file != null) {
-                    all.add(file);
-                }
-            }
-        }
-
-        for (DvObjectSolrDoc dvObjectSolrDoc : definitionPoints) {
-            logger.info("creating solr doc in memory for " + dvObjectSolrDoc.getSolrId());
-            SolrInputDocument solrInputDocument = SearchUtil.createSolrDoc(dvObjectSolrDoc);
-            logger.info("adding to list of docs to index " + dvObjectSolrDoc.getSolrId());
-            docs.add(solrInputDocument);
-        }
-        try {
-            persistToSolr(docs);
-            /**
-             * @todo Do we need a separate permissionIndexTime timestamp?
-             * Probably. Update it here.
-             */
-            for (DvObject dvObject : all) {
-                dvObjectService.updatePermissionIndexTime(dvObject);
-            }
-            return new IndexResponse("indexed all permissions");
-        } catch (SolrServerException | IOException ex) {
-            return new IndexResponse("problem indexing");
-        }
-
+        List<Dataverse> dataverses = new ArrayList<>();
+        List<Dataset> datasets = new ArrayList<>();
+        boolean includePermissionRoots = true;
+        Dataverse rootDataverse = dataverseService.findRootDataverse();
+        findSubtree(rootDataverse, includePermissionRoots, dataverses, datasets);
+        IndexResponse indexResponse = indexPermissionsInBulk(rootDataverse, dataverses, datasets);
+        SearchServiceBean.guestSearchCache.invalidateAll();
+        return indexResponse;
     }
 
     public IndexResponse indexPermissionsForOneDvObject(DvObject dvObject) {
         if (dvObject == null) {
-            return new IndexResponse("problem indexing... null DvObject passed in");
+            return new IndexResponse("problem indexing... null DvObject passed in", true);
         }
         long dvObjectId = dvObject.getId();
         Collection<SolrInputDocument> docs = new ArrayList<>();
@@ -351,6 +267,7 @@ public class SolrIndexServiceBean {
         }
         try {
             persistToSolr(docs);
+            SearchServiceBean.guestSearchCache.invalidate(dvObject);
             boolean updatePermissionTimeSuccessful = false;
             if (dvObject != null) {
                 DvObject savedDvObject = dvObjectService.updatePermissionIndexTime(dvObject);
@@ -360,7 +277,7 @@ public class SolrIndexServiceBean {
             }
             return new IndexResponse("attempted to index permissions for DvObject " + dvObjectId + " and updatePermissionTimeSuccessful was " + updatePermissionTimeSuccessful);
         } catch (SolrServerException | IOException ex) {
-            return new IndexResponse("problem indexing");
+            return new IndexResponse("problem indexing: " + ex, true);
         }
 
     }
@@ -382,133 +299,178 @@ public class SolrIndexServiceBean {
     }
 
     /**
-     * We use the database to determine direct children since there is no
-     * inheritance
+     * Reindexes the permission documents of the definition point and of
+     * everything below it that inherits its permissions: child dataverses
+     * (down to the next permission root), datasets and files.
      */
     public IndexResponse indexPermissionsOnSelfAndChildren(DvObject definitionPoint) {
-        List<DvObject> dvObjectsToReindexPermissionsFor = new ArrayList<>();
-        List<DataFile> filesToReindexAsBatch = new ArrayList<>();
-        /**
-         * @todo Re-indexing the definition point itself seems to be necessary
-         * for revoke but not necessarily grant.
-         */
-
-        // We don't create a Solr "primary/content" doc for the root dataverse
-        // so don't create a Solr "permission" doc either.
+        if (definitionPoint.isInstanceofDataFile()) {
+            // Roles on files (e.g. file downloader) don't change who can discover anything else.
+            return indexPermissionsForOneDvObject(definitionPoint);
+        }
+        List<Dataverse> dataverses = new ArrayList<>();
+        List<Dataset> datasets = new ArrayList<>();
         if (definitionPoint.isInstanceofDataverse()) {
-            Dataverse selfDataverse = (Dataverse) definitionPoint;
-            if (!selfDataverse.equals(dataverseService.findRootDataverse())) {
-                dvObjectsToReindexPermissionsFor.add(definitionPoint);
-            }
-            List<Dataset> directChildDatasetsOfDvDefPoint = datasetService.findByOwnerId(selfDataverse.getId());
-            for (Dataset dataset : directChildDatasetsOfDvDefPoint) {
-                dvObjectsToReindexPermissionsFor.add(dataset);
-                for (DataFile datafile : filesToReIndexPermissionsFor(dataset)) {
-                    filesToReindexAsBatch.add(datafile);
-                }
-            }
-        } else if (definitionPoint.isInstanceofDataset()) {
-            // index the dataset itself
-            indexPermissionsForOneDvObject(definitionPoint);
-            // index files
-            Dataset dataset = (Dataset) definitionPoint;
-            for (DataFile datafile : filesToReIndexPermissionsFor(dataset)) {
-                filesToReindexAsBatch.add(datafile);
-            }
+            boolean includePermissionRoots = false;
+            findSubtree((Dataverse) definitionPoint, includePermissionRoots, dataverses, datasets);
         } else {
-            dvObjectsToReindexPermissionsFor.add(definitionPoint);
+            datasets.add((Dataset) definitionPoint);
         }
+        IndexResponse indexResponse = indexPermissionsInBulk(definitionPoint, dataverses, datasets);
+        SearchServiceBean.guestSearchCache.invalidate(definitionPoint);
+        return indexResponse;
+    }
 
-        /**
-         * @todo Error handling? What to do with response?
-         *
-         * @todo Should update timestamps, probably, even thought these are
-         * files, see https://github.com/IQSS/dataverse/issues/2421
-         */
-        String response = reindexFilesInBatches(filesToReindexAsBatch);
-
-        List<String> updatePermissionTimeSuccessStatus = new ArrayList<>();
-        for (DvObject dvObject : dvObjectsToReindexPermissionsFor) {
-            /**
-             * @todo do something with this response
-             */
-            IndexResponse indexResponse = indexPermissionsForOneDvObject(dvObject);
-            DvObject managedDefinitionPoint = dvObjectService.updatePermissionIndexTime(definitionPoint);
-            boolean updatePermissionTimeSuccessful = false;
-            if (managedDefinitionPoint != null) {
-                updatePermissionTimeSuccessful = true;
+    /**
+     * Walks down from {@code top} one level at a time, with a query per level
+     * (per batch of dataverses) rather than per dataverse.
+     *
+     * @param includePermissionRoots Whether to go into dataverses that don't
+     * inherit their permissions from {@code top}.
+     */
+    private void findSubtree(Dataverse top, boolean includePermissionRoots, List<Dataverse> dataverses, List<Dataset> datasets) {
+        int batchSize = systemConfig.getSearchPermissionIndexBatchSize();
+        dataverses.add(top);
+        List<Long> ownerIds = Collections.singletonList(top.getId());
+        while (!ownerIds.isEmpty()) {
+            List<Long> childDataverseIds = new ArrayList<>();
+            for (List<Long> batch : Lists.partition(ownerIds, batchSize)) {
+                datasets.addAll(datasetService.findByOwnerIds(batch));
+                for (Dataverse child : dataverseService.findByOwnerIds(batch)) {
+                    if (includePermissionRoots || !child.isEffectivelyPermissionRoot()) {
+                        dataverses.add(child);
+                        childDataverseIds.add(child.getId());
+                    }
+                }
             }
-            updatePermissionTimeSuccessStatus.add(dvObject + ":" + updatePermissionTimeSuccessful);
+            ownerIds = childDataverseIds;
         }
-        return new IndexResponse("Number of dvObject permissions indexed for " + definitionPoint
-                + " (updatePermissionTimeSuccessful:" + updatePermissionTimeSuccessStatus
-                + "): " + dvObjectsToReindexPermissionsFor.size()
-        );
     }
 
-    private String reindexFilesInBatches(List<DataFile> filesToReindexPermissionsFor) {
+    /**
+     * Loads, with a few set based queries, all the role assignments the
+     * objects of the subtree can inherit: their own and those of the objects
+     * between the definition point and its permission root.
+     */
+    private SubtreePermissions findSubtreePermissions(DvObject definitionPoint, List<Dataverse> dataverses, List<Dataset> datasets) {
+        int batchSize = systemConfig.getSearchPermissionIndexBatchSize();
+        List<Long> definitionPointIds = new ArrayList<>();
+        for (DvObject current = definitionPoint; !current.isEffectivelyPermissionRoot(); ) {
+            current = current.getOwner();
+            definitionPointIds.add(current.getId());
+        }
+        for (Dataverse dataverse : dataverses) {
+            definitionPointIds.add(dataverse.getId());
+        }
+        for (Dataset dataset : datasets) {
+            definitionPointIds.add(dataset.getId());
+        }
+        List<RoleAssignment> roleAssignments = new ArrayList<>();
+        for (List<Long> batch : Lists.partition(definitionPointIds, batchSize)) {
+            roleAssignments.addAll(rolesSvc.directRoleAssignments(batch));
+        }
+        Map<String, String> indexableStrings = searchPermissionsService.findIndexableStrings(SubtreePermissions.findAssigneeIdentifiers(roleAssignments));
+        return new SubtreePermissions(roleAssignments, indexableStrings);
+    }
+
+    /**
+     * Builds the permission documents of the given dataverses, of the cards of
+     * the given datasets and of their files, and sends them to Solr a batch at
+     * a time, with a single commit at the end.
+     */
+    private IndexResponse indexPermissionsInBulk(DvObject definitionPoint, List<Dataverse> dataverses, List<Dataset> datasets) {
+        int batchSize = systemConfig.getSearchPermissionIndexBatchSize();
+        SubtreePermissions subtreePermissions = findSubtreePermissions(definitionPoint, dataverses, datasets);
+        List<Long> indexedIds = new ArrayList<>();
         List<SolrInputDocument> docs = new ArrayList<>();
-        Map<Long, List<Long>> byParentId = new HashMap<>();
-        Map<Long, List<String>> permStringByDatasetVersion = new HashMap<>();
-        for (DataFile file : filesToReindexPermissionsFor) {
-            Dataset dataset = (Dataset) file.getOwner();
-            Map<DatasetVersion.VersionState, Boolean> desiredCards = searchPermissionsService.getDesiredCards(dataset);
-            for (DatasetVersion datasetVersionFileIsAttachedTo : datasetVersionsToBuildCardsFor(dataset)) {
-                boolean cardShouldExist = desiredCards.get(datasetVersionFileIsAttachedTo.getVersionState());
-                if (cardShouldExist) {
-                    List<String> cachedPermission = permStringByDatasetVersion.get(datasetVersionFileIsAttachedTo.getId());
-                    if (cachedPermission == null) {
-                        logger.fine("no cached permission! Looking it up...");
-                        List<DvObjectSolrDoc> fileSolrDocs = constructDatafileSolrDocs((DataFile) file, permStringByDatasetVersion);
-                        for (DvObjectSolrDoc fileSolrDoc : fileSolrDocs) {
-                            Long datasetVersionId = fileSolrDoc.getDatasetVersionId();
-                            if (datasetVersionId != null) {
-                                permStringByDatasetVersion.put(datasetVersionId, fileSolrDoc.getPermissions());
-                                SolrInputDocument solrDoc = SearchUtil.createSolrDoc(fileSolrDoc);
-                                docs.add(solrDoc);
-                            }
-                        }
-                    } else {
-                        logger.fine("cached permission is " + cachedPermission);
-                        List<DvObjectSolrDoc> fileSolrDocsBasedOnCachedPermissions = constructDatafileSolrDocs((DataFile) file, permStringByDatasetVersion);
-                        for (DvObjectSolrDoc fileSolrDoc : fileSolrDocsBasedOnCachedPermissions) {
-                            SolrInputDocument solrDoc = SearchUtil.createSolrDoc(fileSolrDoc);
-                            docs.add(solrDoc);
+        int numSolrDocs = 0;
+        try {
+            for (Dataverse dataverse : dataverses) {
+                // We don't create a Solr "primary/content" doc for the root dataverse
+                // so don't create a Solr "permission" doc either.
+                if (dataverse.getOwner() == null) {
+                    continue;
+                }
+                List<String> perms = findPerms(dataverse, dataverse.isReleased(), subtreePermissions);
+                Long noDatasetVersionForDataverses = null;
+                docs.add(SearchUtil.createSolrDoc(new DvObjectSolrDoc(dataverse.getId().toString(), IndexServiceBean.solrDocIdentifierDataverse + dataverse.getId(), noDatasetVersionForDataverses, dataverse.getName(), perms)));
+                indexedIds.add(dataverse.getId());
+                numSolrDocs += addToSolrIfFull(docs, batchSize);
+            }
+            for (List<Dataset> batch : Lists.partition(datasets, batchSize)) {
+                Map<Long, DatasetVersion> versionsWithCards = new HashMap<>();
+                Map<Long, List<String>> permsByDatasetVersionId = new HashMap<>();
+                for (Dataset dataset : batch) {
+                    Map<DatasetVersion.VersionState, Boolean> desiredCards = searchPermissionsService.getDesiredCards(dataset);
+                    for (DatasetVersion version : datasetVersionsToBuildCardsFor(dataset)) {
+                        boolean cardShouldExist = desiredCards.get(version.getVersionState());
+                        if (cardShouldExist) {
+                            List<String> perms = findPerms(dataset, version.isReleased(), subtreePermissions);
+                            String solrId = IndexServiceBean.solrDocIdentifierDataset + dataset.getId() + getDatasetOrDataFileSolrEnding(version.getVersionState());
+                            docs.add(SearchUtil.createSolrDoc(new DvObjectSolrDoc(dataset.getId().toString(), solrId, version.getId(), version.getTitle(), perms)));
+                            versionsWithCards.put(version.getId(), version);
+                            permsByDatasetVersionId.put(version.getId(), perms);
                         }
                     }
+                    indexedIds.add(dataset.getId());
                 }
+                // files get their permissions from the dataset version they are in
+                for (Object[] fileIdAndLabel : datasetVersionService.findFileIdsAndLabels(versionsWithCards.keySet())) {
+                    DatasetVersion version = versionsWithCards.get((Long) fileIdAndLabel[0]);
+                    Long fileId = (Long) fileIdAndLabel[1];
+                    String solrId = IndexServiceBean.solrDocIdentifierFile + fileId + getDatasetOrDataFileSolrEnding(version.getVersionState());
+                    docs.add(SearchUtil.createSolrDoc(new DvObjectSolrDoc(fileId.toString(), solrId, version.getId(), (String) fileIdAndLabel[2], permsByDatasetVersionId.get(version.getId()))));
+                    indexedIds.add(fileId);
+                    numSolrDocs += addToSolrIfFull(docs, batchSize);
+                }
+                numSolrDocs += addToSolrIfFull(docs, batchSize);
             }
-            Long parent = file.getOwner().getId();
-            List<Long> existingList = byParentId.get(parent);
-            if (existingList == null) {
-                List<Long> empty = new ArrayList<>();
-                byParentId.put(parent, empty);
-            } else {
-                List<Long> updatedList = existingList;
-                updatedList.add(file.getId());
-                byParentId.put(parent, updatedList);
-            }
-        }
-        try {
+            numSolrDocs += docs.size();
             persistToSolr(docs);
-            return " " + filesToReindexPermissionsFor.size() + " files indexed across " + docs.size() + " Solr documents ";
         } catch (SolrServerException | IOException ex) {
-            return " tried to reindex " + filesToReindexPermissionsFor.size() + " files indexed across " + docs.size() + " Solr documents but caught exception: " + ex;
+            logger.info("problem indexing permissions for " + definitionPoint + ": " + ex);
+            return new IndexResponse("problem indexing", true);
         }
+        int numRowsUpdated = 0;
+        for (List<Long> batch : Lists.partition(indexedIds, batchSize)) {
+            numRowsUpdated += dvObjectService.updatePermissionIndexTimes(batch);
+        }
+        return new IndexResponse("Number of dvObject permissions indexed for " + definitionPoint
+                + " (permission index times updated: " + numRowsUpdated + ", Solr documents: " + numSolrDocs
+                + "): " + indexedIds.size()
+        );
     }
 
-    private List<DataFile> filesToReIndexPermissionsFor(Dataset dataset) {
-        List<DataFile> filesToReindexPermissionsFor = new ArrayList<>();
-        Map<DatasetVersion.VersionState, Boolean> desiredCards = searchPermissionsService.getDesiredCards(dataset);
-        for (DatasetVersion version : datasetVersionsToBuildCardsFor(dataset)) {
-            boolean cardShouldExist = desiredCards.get(version.getVersionState());
-            if (cardShouldExist) {
-                for (FileMetadata fileMetadata : version.getFileMetadatas()) {
-                    filesToReindexPermissionsFor.add(fileMetadata.getDataFile());
-                }
+    /**
+     * Same as what {@link #determineSolrDocs(edu.harvard.iq.dataverse.DvObject)}
+     * puts in the docs, but from the assignments loaded up front.
+     */
+    private List<String> findPerms(DvObject dvObject, boolean released, SubtreePermissions subtreePermissions) {
+        List<String> perms = new ArrayList<>();
+        if (released) {
+            perms.add(IndexServiceBean.getPublicGroupString());
+            if (unpublishedDataRelatedToMeModeEnabled) {
+                return perms;
             }
         }
-        return filesToReindexPermissionsFor;
+        perms.addAll(subtreePermissions.findDvObjectPerms(dvObject));
+        return perms;
+    }
+
+    /**
+     * Sends the docs to Solr, without committing, once there are enough of
+     * them.
+     *
+     * @return The number of docs that were sent.
+     */
+    private int addToSolrIfFull(List<SolrInputDocument> docs, int batchSize) throws SolrServerException, IOException {
+        if (docs.size() < batchSize) {
+            return 0;
+        }
+        int numDocs = docs.size();
+        solrServer.add(docs);
+        docs.clear();
+        return numDocs;
     }
 
     public IndexResponse deleteMultipleSolrIds(List<String> solrIdsToDelete) {
@@ -536,6 +498,7 @@ public class SolrIndexServiceBean {
         logger.info("attempting to delete all Solr documents before a complete re-index");
         solrServer.deleteByQuery("*:*");
         solrServer.commit();
+        SearchServiceBean.guestSearchCache.invalidateAll();
         int numRowsAffected = dvObjectService.clearAllIndexTimes();
         response.add(numRowsClearedByClearAllIndexTimes, numRowsAffected);
         response.add(messageString, "Solr index and database index timestamps cleared.");
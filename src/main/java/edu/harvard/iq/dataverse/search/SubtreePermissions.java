@@ -0,0 +1,102 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.RoleAssignment;
+import edu.harvard.iq.dataverse.authorization.Permission;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Works out who can discover the objects of a part of the tree, from role
+ * assignments that were all loaded up front (see
+ * {@link SolrIndexServiceBean#indexPermissionsOnSelfAndChildren(edu.harvard.iq.dataverse.DvObject)}).
+ *
+ * The effective assignments of an object are its own plus those of its owner,
+ * unless it is a permission root. They are computed top-down and remembered,
+ * so each level of the tree is worked out once and reused by everything below
+ * it, instead of walking up to the permission root for every object the way
+ * {@link SearchPermissionsServiceBean#findDvObjectPerms(edu.harvard.iq.dataverse.DvObject)}
+ * does.
+ */
+public class SubtreePermissions {
+
+    private final Map<Long, List<RoleAssignment>> assignmentsByDefinitionPointId = new HashMap<>();
+    private final Map<String, String> indexableStringsByAssigneeIdentifier;
+    private final Map<Long, List<RoleAssignment>> effectiveAssignmentsById = new HashMap<>();
+
+    /**
+     * @param directAssignments The assignments defined on the objects of the
+     * subtree and on the objects above it, up to the permission root.
+     * @param indexableStringsByAssigneeIdentifier The string to index for each
+     * assignee (e.g. "group_user3"); assignees missing from the map (deleted
+     * users, groups without an alias) are left out.
+     */
+    public SubtreePermissions(Collection<RoleAssignment> directAssignments, Map<String, String> indexableStringsByAssigneeIdentifier) {
+        for (RoleAssignment roleAssignment : directAssignments) {
+            Long definitionPointId = roleAssignment.getDefinitionPoint().getId();
+            List<RoleAssignment> assignments = assignmentsByDefinitionPointId.get(definitionPointId);
+            if (assignments == null) {
+                assignments = new ArrayList<>();
+                assignmentsByDefinitionPointId.put(definitionPointId, assignments);
+            }
+            assignments.add(roleAssignment);
+        }
+        this.indexableStringsByAssigneeIdentifier = indexableStringsByAssigneeIdentifier;
+    }
+
+    public static Set<String> findAssigneeIdentifiers(Collection<RoleAssignment> roleAssignments) {
+        Set<String> assigneeIdentifiers = new LinkedHashSet<>();
+        for (RoleAssignment roleAssignment : roleAssignments) {
+            assigneeIdentifiers.add(roleAssignment.getAssigneeIdentifier());
+        }
+        return assigneeIdentifiers;
+    }
+
+    /**
+     * Same as
+     * {@link SearchPermissionsServiceBean#findDvObjectPerms(edu.harvard.iq.dataverse.DvObject)},
+     * without going to the database.
+     */
+    public List<String> findDvObjectPerms(DvObject dvObject) {
+        Permission requiredPermission = SearchPermissionsServiceBean.getRequiredSearchPermission(dvObject);
+        Set<String> permStrings = new LinkedHashSet<>();
+        for (RoleAssignment roleAssignment : findEffectiveAssignments(dvObject)) {
+            if (roleAssignment.getRole().permissions().contains(requiredPermission)) {
+                String indexableUserOrGroupPermissionString = indexableStringsByAssigneeIdentifier.get(roleAssignment.getAssigneeIdentifier());
+                if (indexableUserOrGroupPermissionString != null) {
+                    permStrings.add(indexableUserOrGroupPermissionString);
+                }
+            }
+        }
+        return new ArrayList<>(permStrings);
+    }
+
+    List<RoleAssignment> findEffectiveAssignments(DvObject dvObject) {
+        List<RoleAssignment> effectiveAssignments = effectiveAssignmentsById.get(dvObject.getId());
+        if (effectiveAssignments != null) {
+            return effectiveAssignments;
+        }
+        List<RoleAssignment> direct = assignmentsByDefinitionPointId.get(dvObject.getId());
+        if (dvObject.isEffectivelyPermissionRoot()) {
+            effectiveAssignments = (direct != null) ? direct : Collections.<RoleAssignment>emptyList();
+        } else {
+            List<RoleAssignment> inherited = findEffectiveAssignments(dvObject.getOwner());
+            if (direct == null) {
+                effectiveAssignments = inherited;
+            } else {
+                effectiveAssignments = new ArrayList<>(inherited.size() + direct.size());
+                effectiveAssignments.addAll(direct);
+                effectiveAssignments.addAll(inherited);
+            }
+        }
+        effectiveAssignmentsById.put(dvObject.getId(), effectiveAssignments);
+        return effectiveAssignments;
+    }
+
+}
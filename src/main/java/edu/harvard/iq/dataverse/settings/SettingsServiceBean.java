@@ -221,7 +221,67 @@ public class SettingsServiceBean {
         /*
         Whether to display the publish text for every published version
         */
-        DatasetPublishPopupCustomTextOnAllVersions;
+        DatasetPublishPopupCustomTextOnAllVersions,
+        /*
+        Number of seconds the first page of a guest search (facets included)
+        may be served from memory instead of Solr; 0 (the default) disables
+        the cache
+        */
+        GuestSearchCacheTtlSeconds,
+        /*
+        Number of Solr documents sent at a time (and of objects per database
+        query) when permissions are reindexed for a whole part of the tree
+        */
+        SearchPermissionIndexBatchSize,
+        /*
+        Number of seconds the role assignments of a user are kept in memory
+        for the MyData page; 0 disables the cache
+        */
+        MyDataCacheTtlSeconds,
+        /*
+        Number of milliseconds between two writes of the queued action log
+        records to the database
+        */
+        ActionLogFlushIntervalMillis,
+        /*
+        Number of milliseconds between two saves of the queued download
+        guestbook responses to the database
+        */
+        GuestbookResponseFlushIntervalMillis,
+        /*
+        Number of groups of files a batch import (api/batch) imports at the
+        same time
+        */
+        BatchImportThreads,
+        /*
+        Number of files a batch import imports into the same dataverse in one
+        transaction
+        */
+        BatchImportGroupSize,
+        /*
+        Number of seconds an API token is remembered after it was looked up;
+        0 to look up every token in the database
+        */
+        ApiTokenCacheTimeToLiveSeconds,
+        /*
+        Number of seconds between the runs of the notification mailer; the
+        notifications of a user queued in between are sent in one email
+        */
+        NotificationMailIntervalSeconds,
+        /*
+        Number of notification emails sent per run of the mailer, at most
+        */
+        NotificationMailRateLimit,
+        /*
+        How long the files of a released version are cached for the dataset
+        page, in seconds; 0 disables the cache
+        */
+        ReleasedVersionCacheTtlSeconds,
+        /*
+        Whether SWORD deposits are unpacked as they are received, with type
+        detection and ingest left to run in the background
+        */
+        SwordStreamingDeposit;
         
         @Override
         public String toString() {
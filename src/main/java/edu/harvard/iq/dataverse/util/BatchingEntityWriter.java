@@ -0,0 +1,134 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+/**
+ * The base of the singletons that write entities to the DB in the
+ * background. Entities are put on a bounded in-memory queue, which is
+ * written out every {@link #getFlushIntervalMillis()} milliseconds, in
+ * batches of up to {@code batchSize} entities handed to
+ * {@link #persist(java.util.List)}. The queue is drained when the
+ * application shuts down; after that, and whenever the queue is full,
+ * {@link #enqueue(java.lang.Object)} returns {@code false} and the caller
+ * writes the entity itself.
+ *
+ * Subclasses are {@code @Singleton @Startup} beans with bean managed
+ * concurrency; the timer, the startup and the shutdown are handled here.
+ * The methods run outside of container transactions (a class level
+ * attribute only covers the methods declared in that class, hence the one
+ * here): each {@link #persist(java.util.List)} manages its own.
+ *
+ * @param <T> The type of the entities written.
+ */
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public abstract class BatchingEntityWriter<T> {
+
+    private static final Logger logger = Logger.getLogger(BatchingEntityWriter.class.getCanonicalName());
+
+    @Resource
+    protected TimerService timerService;
+
+    private final String name;
+    private final int batchSize;
+    private final BlockingQueue<T> queue;
+
+    // one flush at a time, so the entities are written in order
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param name What is written, for the logs and the timer.
+     * @param queueCapacity How many entities can be waiting.
+     * @param batchSize The most entities passed to one
+     * {@link #persist(java.util.List)}.
+     */
+    protected BatchingEntityWriter(String name, int queueCapacity, int batchSize) {
+        this.name = name;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * @return How often the queue is written out.
+     */
+    protected abstract long getFlushIntervalMillis();
+
+    /**
+     * Writes one batch. Called by one thread at a time, in the order the
+     * entities were queued. Failures have to be dealt with (retried one by
+     * one, logged) here: the batch is dropped from the queue either way.
+     */
+    protected abstract void persist(List<T> batch);
+
+    @PostConstruct
+    public void init() {
+        long interval = getFlushIntervalMillis();
+        logger.fine("writing " + name + " every " + interval + " ms");
+        timerService.createIntervalTimer(interval, interval, new TimerConfig(name, false));
+    }
+
+    /**
+     * @return {@code false} if the entity could not be queued - the queue is
+     * full, or the writer has shut down - and has to be written by the
+     * caller.
+     */
+    public boolean enqueue(T entity) {
+        if (closed || !queue.offer(entity)) {
+            return false;
+        }
+        if (closed) {
+            // queued while shutting down, possibly after the last flush
+            flush();
+        }
+        return true;
+    }
+
+    @Timeout
+    public void flush(Timer timer) {
+        flush();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        if (timerService != null) {
+            for (Timer timer : timerService.getTimers()) {
+                timer.cancel();
+            }
+        }
+        flush();
+        logger.fine(name + " queue drained");
+    }
+
+    /**
+     * Writes out everything on the queue.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<T> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                persist(batch);
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+}
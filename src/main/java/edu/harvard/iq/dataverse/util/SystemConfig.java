@@ -439,6 +439,11 @@ public class SystemConfig {
         return settingsService.isTrueForKey(SettingsServiceBean.Key.ShowFileLandingPage, safeDefaultIfKeyNotFound);
     }
 
+    public boolean isSwordStreamingDeposit() {
+        boolean safeDefaultIfKeyNotFound = false;
+        return settingsService.isTrueForKey(SettingsServiceBean.Key.SwordStreamingDeposit, safeDefaultIfKeyNotFound);
+    }
+
     public Long getMaxFileUploadSize(){
 
          return settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.MaxFileUploadSizeInBytes);
@@ -456,6 +461,151 @@ public class SystemConfig {
         return null;
     }
     
+    /**
+     * How long the results of a guest search may be cached, in seconds; 0
+     * means no caching at all.
+     */
+    public long getGuestSearchCacheTtlSeconds() {
+        Long ttl = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.GuestSearchCacheTtlSeconds);
+        if (ttl == null || ttl < 0) {
+            return 0;
+        }
+        return ttl;
+    }
+
+    /**
+     * How many permission documents to send to Solr at a time when a role
+     * change is reindexed for a whole subtree.
+     */
+    public int getSearchPermissionIndexBatchSize() {
+        int defaultBatchSize = 1000;
+        Long batchSize = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.SearchPermissionIndexBatchSize);
+        if (batchSize == null || batchSize < 1 || batchSize > Integer.MAX_VALUE) {
+            return defaultBatchSize;
+        }
+        return batchSize.intValue();
+    }
+
+    /**
+     * How long the role assignments looked up for the MyData page of a user
+     * are reused. Assigning or revoking a role drops them right away; the TTL
+     * bounds how long new datasets in a dataverse the user has a role on may
+     * take to show up.
+     */
+    public long getMyDataCacheTtlSeconds() {
+        long defaultTtl = 60;
+        Long ttl = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.MyDataCacheTtlSeconds);
+        if (ttl == null) {
+            return defaultTtl;
+        }
+        if (ttl < 0) {
+            return 0;
+        }
+        return ttl;
+    }
+
+    /**
+     * How often the action log records queued by the ActionLogWriter are
+     * written to the database. Read once, when the application starts.
+     */
+    public long getActionLogFlushIntervalMillis() {
+        long defaultInterval = 2000;
+        Long interval = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.ActionLogFlushIntervalMillis);
+        if (interval == null || interval < 1) {
+            return defaultInterval;
+        }
+        return interval;
+    }
+
+    /**
+     * How often the guestbook responses recorded for downloads are saved to
+     * the database (and added to the download counts). Read once, when the
+     * application starts.
+     */
+    public long getGuestbookResponseFlushIntervalMillis() {
+        long defaultInterval = 2000;
+        Long interval = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.GuestbookResponseFlushIntervalMillis);
+        if (interval == null || interval < 1) {
+            return defaultInterval;
+        }
+        return interval;
+    }
+
+    /**
+     * How many groups of files a batch import imports in parallel.
+     */
+    public int getBatchImportThreads() {
+        int defaultThreads = 4;
+        Long threads = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.BatchImportThreads);
+        if (threads == null || threads < 1) {
+            return defaultThreads;
+        }
+        return threads.intValue();
+    }
+
+    /**
+     * How many files a batch import imports in a single transaction.
+     */
+    public int getBatchImportGroupSize() {
+        int defaultGroupSize = 10;
+        Long groupSize = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.BatchImportGroupSize);
+        if (groupSize == null || groupSize < 1) {
+            return defaultGroupSize;
+        }
+        return groupSize.intValue();
+    }
+
+    /**
+     * How long the user of an API token is remembered. Read once, when the
+     * application starts.
+     */
+    public long getApiTokenCacheTimeToLiveSeconds() {
+        long defaultTimeToLive = 300;
+        Long timeToLive = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.ApiTokenCacheTimeToLiveSeconds);
+        if (timeToLive == null || timeToLive < 0) {
+            return defaultTimeToLive;
+        }
+        return timeToLive;
+    }
+
+    /**
+     * How often queued notifications are emailed. Read once, when the
+     * application starts.
+     */
+    public long getNotificationMailIntervalSeconds() {
+        long defaultInterval = 60;
+        Long interval = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.NotificationMailIntervalSeconds);
+        if (interval == null || interval < 1) {
+            return defaultInterval;
+        }
+        return interval;
+    }
+
+    /**
+     * How many notification emails the mailer sends per run, at most.
+     */
+    public int getNotificationMailRateLimit() {
+        int defaultLimit = 100;
+        Long limit = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.NotificationMailRateLimit);
+        if (limit == null || limit < 1) {
+            return defaultLimit;
+        }
+        return limit.intValue();
+    }
+
+    /**
+     * How long what is read for the files of a released version may be
+     * cached, in seconds; 0 means no caching at all.
+     */
+    public long getReleasedVersionCacheTtlSeconds() {
+        long defaultTtl = 60;
+        Long ttl = settingsService.getValueForKeyAsLong(SettingsServiceBean.Key.ReleasedVersionCacheTtlSeconds);
+        if (ttl == null || ttl < 0) {
+            return defaultTtl;
+        }
+        return ttl;
+    }
+
     public long getTabularIngestSizeLimit() {
         // This method will return the blanket ingestable size limit, if 
         // set on the system. I.e., the universal limit that applies to all 
@@ -0,0 +1,51 @@
+package edu.harvard.iq.dataverse.util;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Helpers for work that has to wait for the current JTA transaction.
+ */
+public class TransactionUtil {
+
+    private TransactionUtil() {
+    }
+
+    /**
+     * Runs {@code action} once the current transaction has committed, or right
+     * away if there is no transaction. Nothing is run if the transaction rolls
+     * back (or is already marked for rollback).
+     *
+     * Meant for evicting in-memory caches: evicting before the commit lets a
+     * concurrent reader put the old state back in the cache, and evicts for
+     * nothing if the transaction is rolled back.
+     *
+     * @param transactionRegistry The container's registry; {@code null}
+     * (outside of the container) runs the action right away.
+     * @param action What to run.
+     */
+    public static void afterCommit(TransactionSynchronizationRegistry transactionRegistry, final Runnable action) {
+        int status = (transactionRegistry != null) ? transactionRegistry.getTransactionStatus() : Status.STATUS_NO_TRANSACTION;
+        if (status == Status.STATUS_NO_TRANSACTION) {
+            action.run();
+            return;
+        }
+        if (status != Status.STATUS_ACTIVE) {
+            return;
+        }
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+}
@@ -15,7 +15,9 @@ import edu.harvard.iq.dataverse.DataverseFacet;
 import edu.harvard.iq.dataverse.authorization.DataverseRole;
 import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinUser;
 import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.FileMetadataSummary;
 import edu.harvard.iq.dataverse.MetadataBlock;
+import edu.harvard.iq.dataverse.PublishedVersionCache;
 import edu.harvard.iq.dataverse.RoleAssignment;
 import edu.harvard.iq.dataverse.api.Util;
 import edu.harvard.iq.dataverse.authorization.Permission;
@@ -205,6 +207,18 @@ public class JsonPrinter {
 	}
 	
 	public static JsonObjectBuilder json( DatasetVersion dsv ) {
+		JsonObjectBuilder bld = jsonWithoutFiles(dsv);
+        
+        bld.add( "files", jsonFileMetadatas(dsv.getFileMetadatas()) );
+		
+		return bld;
+	}
+
+    /**
+     * The JSON of a version, except for the {@code files}, which
+     * {@link JsonStreamPrinter} writes out a page at a time.
+     */
+	public static JsonObjectBuilder jsonWithoutFiles( DatasetVersion dsv ) {
 		JsonObjectBuilder bld = jsonObjectBuilder()
 				.add("id", dsv.getId())
 				.add("versionNumber", dsv.getVersionNumber())
@@ -223,8 +237,6 @@ public class JsonPrinter {
 				;
                 
 		bld.add("metadataBlocks", jsonByBlocks(dsv.getDatasetFields()));
-        
-        bld.add( "files", jsonFileMetadatas(dsv.getFileMetadatas()) );
 		
 		return bld;
 	}
@@ -239,7 +251,7 @@ public class JsonPrinter {
      */
     public static JsonObjectBuilder jsonWithCitation(DatasetVersion dsv) {
         JsonObjectBuilder dsvWithCitation = json(dsv);
-        dsvWithCitation.add("citation", dsv.getCitation());
+        dsvWithCitation.add("citation", PublishedVersionCache.getInstance().getCitation(dsv, false));
         return dsvWithCitation;
     }
 
@@ -393,6 +405,22 @@ public class JsonPrinter {
 				;
 	}
 	
+	public static JsonObjectBuilder json( FileMetadataSummary summary ) {
+		return jsonObjectBuilder()
+				.add("id", summary.getFileMetadataId())
+				.add("label", summary.getLabel())
+				.add("description", summary.getDescription())
+				.add("restricted", summary.isRestricted())
+				.add("categories", asJsonArray(summary.getCategoryNames()))
+				.add("tags", asJsonArray(summary.getTagLabels()))
+				.add("datafile", jsonObjectBuilder()
+						.add("id", summary.getDataFileId())
+						.add("contentType", summary.getContentType())
+						.add("filesize", summary.getFilesize())
+						.add("md5", summary.getMd5()))
+				;
+	}
+	
 	public static String format( Date d ) {
 		return (d==null) ? null : Util.getDateTimeFormat().format(d);
 	}
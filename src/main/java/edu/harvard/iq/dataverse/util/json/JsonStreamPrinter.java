@@ -0,0 +1,98 @@
+package edu.harvard.iq.dataverse.util.json;
+
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.PublishedVersionCache;
+import java.util.List;
+import java.util.Map;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Writes dataset versions and their files straight to a
+ * {@link JsonGenerator}, in the same format as {@link JsonPrinter}, fetching
+ * the file metadata a page at a time, so that the files of a large version
+ * are never all in memory at once.
+ */
+public class JsonStreamPrinter {
+
+    public static final int PAGE_SIZE = 1000;
+
+    /**
+     * Where the file metadata come from, e.g.
+     * {@link edu.harvard.iq.dataverse.DataFileServiceBean#findFileMetadataPage(java.lang.Long, edu.harvard.iq.dataverse.FileMetadataFilter, java.lang.String, java.lang.Long, int)}.
+     */
+    public interface FileMetadataPages {
+
+        /**
+         * @return The files of the version, in the order of
+         * {@link DatasetVersion#getFileMetadatas()}, starting right after
+         * the one with {@code afterLabel} and {@code afterId} (the first
+         * page if {@code afterLabel} is {@code null}); fewer than
+         * {@code maxResults} on the last page.
+         */
+        List<FileMetadata> getPage(Long datasetVersionId, String afterLabel, Long afterId, int maxResults);
+    }
+
+    private final FileMetadataPages pages;
+
+    public JsonStreamPrinter(FileMetadataPages pages) {
+        this.pages = pages;
+    }
+
+    /**
+     * Writes what {@link JsonPrinter#json(DatasetVersion)} would build.
+     *
+     * @param name The name of the version in the enclosing object, or
+     * {@code null} if the enclosing structure is an array.
+     */
+    public void writeDatasetVersion(JsonGenerator generator, String name, DatasetVersion dsv) {
+        if (name == null) {
+            generator.writeStartObject();
+        } else {
+            generator.writeStartObject(name);
+        }
+        for (Map.Entry<String, JsonValue> entry : PublishedVersionCache.getInstance().getJsonWithoutFiles(dsv).entrySet()) {
+            generator.write(entry.getKey(), entry.getValue());
+        }
+        writeFileMetadatas(generator, "files", dsv);
+        generator.writeEnd();
+    }
+
+    /**
+     * Writes what {@link JsonPrinter#jsonFileMetadatas(java.util.Collection)}
+     * would build for the files of the version.
+     *
+     * @param name The name of the array in the enclosing object, or
+     * {@code null} if the enclosing structure is an array (or there is
+     * none).
+     */
+    public void writeFileMetadatas(JsonGenerator generator, String name, DatasetVersion dsv) {
+        if (name == null) {
+            generator.writeStartArray();
+        } else {
+            generator.writeStartArray(name);
+        }
+        if (dsv.getId() == null) {
+            // not saved, so not in the database
+            for (FileMetadata fmd : dsv.getFileMetadatas()) {
+                generator.write(JsonPrinter.json(fmd).build());
+            }
+        } else {
+            FileMetadata last = null;
+            List<FileMetadata> page;
+            do {
+                page = (last == null)
+                        ? pages.getPage(dsv.getId(), null, null, PAGE_SIZE)
+                        : pages.getPage(dsv.getId(), last.getLabel(), last.getId(), PAGE_SIZE);
+                for (FileMetadata fmd : page) {
+                    generator.write(JsonPrinter.json(fmd).build());
+                    last = fmd;
+                }
+                generator.flush();
+            } while (page.size() == PAGE_SIZE);
+        }
+        generator.writeEnd();
+    }
+
+}
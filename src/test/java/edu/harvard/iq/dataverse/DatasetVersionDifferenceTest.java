@@ -0,0 +1,72 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DatasetVersionDifferenceTest {
+
+    DatasetVersion originalVersion;
+    DatasetVersion newVersion;
+    FileMetadata kept;
+    FileMetadata removed;
+    FileMetadata renamedBefore;
+    FileMetadata renamedAfter;
+    FileMetadata added;
+    FileMetadata addedUnsaved;
+
+    @Before
+    public void setUp() {
+        DataFile file1 = dataFile(1l);
+        DataFile file2 = dataFile(2l);
+        DataFile file3 = dataFile(3l);
+        kept = fileMetadata(file1, "kept.txt");
+        removed = fileMetadata(file2, "removed.txt");
+        renamedBefore = fileMetadata(file3, "before.txt");
+        renamedAfter = fileMetadata(file3, "after.txt");
+        added = fileMetadata(dataFile(4l), "added.txt");
+        addedUnsaved = fileMetadata(dataFile(null), "new.txt");
+
+        originalVersion = new DatasetVersion();
+        originalVersion.setFileMetadatas(Arrays.asList(removed, renamedBefore, kept));
+        newVersion = new DatasetVersion();
+        newVersion.setFileMetadatas(Arrays.asList(addedUnsaved, kept, renamedAfter, added));
+    }
+
+    @Test
+    public void testFileDifferences() {
+        DatasetVersionDifference sut = new DatasetVersionDifference(newVersion, originalVersion);
+
+        assertEquals(Arrays.asList(addedUnsaved, added), sut.getAddedFiles());
+        assertEquals(Arrays.asList(removed), sut.getRemovedFiles());
+        assertEquals(Arrays.asList(renamedBefore, renamedAfter), sut.getChangedFileMetadata());
+        assertEquals("Files (Added: 2; Removed: 1; Changed File Metadata: 1)", sut.getFileNote());
+        assertTrue(sut.getDetailDataByBlock().isEmpty());
+        assertTrue(sut.getSummaryDataForNote().isEmpty());
+    }
+
+    @Test
+    public void testNoDifferences() {
+        DatasetVersionDifference sut = new DatasetVersionDifference(originalVersion, originalVersion);
+
+        assertEquals("", sut.getFileNote());
+        assertTrue(sut.getAddedFiles().isEmpty());
+        assertTrue(sut.getRemovedFiles().isEmpty());
+        assertTrue(sut.getChangedFileMetadata().isEmpty());
+    }
+
+    private DataFile dataFile(Long id) {
+        DataFile dataFile = new DataFile();
+        dataFile.setId(id);
+        return dataFile;
+    }
+
+    private FileMetadata fileMetadata(DataFile dataFile, String label) {
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setDataFile(dataFile);
+        fileMetadata.setLabel(label);
+        return fileMetadata;
+    }
+
+}
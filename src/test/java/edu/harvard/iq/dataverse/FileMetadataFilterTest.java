@@ -0,0 +1,36 @@
+package edu.harvard.iq.dataverse;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FileMetadataFilterTest {
+
+    @Test
+    public void testCreate() {
+        FileMetadataFilter filter = FileMetadataFilter.create(" Survey DATA ", "Documentation", "Time Series");
+        assertEquals("survey data", filter.getSearchTerm());
+        assertEquals("Documentation", filter.getCategoryName());
+        assertEquals(DataFileTag.TagType.TimeSeries, filter.getTagType());
+        assertFalse(filter.isEmpty());
+    }
+
+    @Test
+    public void testBlank() {
+        FileMetadataFilter filter = FileMetadataFilter.create("", "  ", null);
+        assertTrue(filter.isEmpty());
+        assertEquals(FileMetadataFilter.NONE, filter);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownTag() {
+        FileMetadataFilter.create(null, null, "NoSuchTag");
+    }
+
+    @Test
+    public void testEquals() {
+        assertEquals(FileMetadataFilter.create("Data", "Code", "Panel"), FileMetadataFilter.create("data", "Code", "Panel"));
+        assertEquals(FileMetadataFilter.create("Data", "Code", "Panel").hashCode(), FileMetadataFilter.create("data", "Code", "Panel").hashCode());
+        assertFalse(FileMetadataFilter.create("data", "Code", null).equals(FileMetadataFilter.create("data", "code", null)));
+    }
+
+}
@@ -0,0 +1,62 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GuestbookResponseServiceBeanTest {
+
+    @Test
+    public void testCountDownloads() {
+        Dataset dataset = new Dataset();
+        dataset.setId(1l);
+        DataFile file2 = new DataFile();
+        file2.setId(2l);
+        DataFile file3 = new DataFile();
+        file3.setId(3l);
+
+        Date morning = date(2016, Calendar.MAY, 2, 9);
+        Date evening = date(2016, Calendar.MAY, 2, 21);
+        Date nextDay = date(2016, Calendar.MAY, 3, 9);
+        List<GuestbookResponse> responses = Arrays.asList(
+                response(dataset, file2, morning),
+                response(dataset, file3, morning),
+                response(dataset, file2, evening),
+                response(dataset, file2, nextDay));
+
+        List<DownloadCount> counts = new ArrayList<>(GuestbookResponseServiceBean.countDownloads(responses));
+        assertEquals(3, counts.size());
+        assertCount(counts.get(0), 2l, date(2016, Calendar.MAY, 2, 0), 2);
+        assertCount(counts.get(1), 3l, date(2016, Calendar.MAY, 2, 0), 1);
+        assertCount(counts.get(2), 2l, date(2016, Calendar.MAY, 3, 0), 1);
+        for (DownloadCount count : counts) {
+            assertEquals(new Long(1), count.getDatasetId());
+        }
+    }
+
+    private void assertCount(DownloadCount count, long dataFileId, Date day, long downloads) {
+        assertEquals(new Long(dataFileId), count.getDataFileId());
+        assertEquals(day, count.getCountDate());
+        assertEquals(downloads, count.getDownloadCount());
+    }
+
+    private GuestbookResponse response(Dataset dataset, DataFile dataFile, Date responseTime) {
+        GuestbookResponse response = new GuestbookResponse();
+        response.setDataset(dataset);
+        response.setDataFile(dataFile);
+        response.setResponseTime(responseTime);
+        return response;
+    }
+
+    private Date date(int year, int month, int day, int hour) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(year, month, day, hour, 0);
+        return cal.getTime();
+    }
+
+}
@@ -0,0 +1,37 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NotificationDigestTest {
+
+    @Test
+    public void testSingleNotification() {
+        NotificationDigest digest = new NotificationDigest("user@example.com");
+        digest.add(new NotificationDigest.Item(1L, "Dataverse: You have been assigned a role", "You are now Curator for the dataverse \"Root\"."));
+
+        assertEquals("user@example.com", digest.getEmailAddress());
+        assertEquals("Dataverse: You have been assigned a role", digest.getSubject());
+        assertEquals("Hello, \nYou are now Curator for the dataverse \"Root\".\n\nThank you,\nThe Dataverse Project", digest.getText());
+        assertEquals(Arrays.asList(1L), digest.getNotificationIds());
+    }
+
+    @Test
+    public void testDigest() {
+        NotificationDigest digest = new NotificationDigest("user@example.com");
+        digest.add(new NotificationDigest.Item(1L, "subject 1", "text 1"));
+        digest.add(new NotificationDigest.Item(2L, "subject 2", "text 2"));
+        digest.add(new NotificationDigest.Item(5L, "subject 5", "text 5"));
+
+        assertEquals("Dataverse: You have 3 new notifications", digest.getSubject());
+        assertEquals("Hello, \nYou have 3 new notifications:\n\n- text 1\n\n- text 2\n\n- text 5\n\nThank you,\nThe Dataverse Project", digest.getText());
+        assertEquals(Arrays.asList(1L, 2L, 5L), digest.getNotificationIds());
+    }
+
+    @Test
+    public void testEmpty() {
+        assertTrue(new NotificationDigest(null).isEmpty());
+    }
+
+}
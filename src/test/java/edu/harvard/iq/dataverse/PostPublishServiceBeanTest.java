@@ -0,0 +1,151 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.search.IndexUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PostPublishServiceBeanTest {
+
+    Dataset dataset;
+    StubPidRegistrar registrar;
+
+    @Before
+    public void setUp() {
+        dataset = new Dataset();
+        dataset.setProtocol("hdl");
+        dataset.setAuthority("10622");
+        dataset.setDoiSeparator("/");
+        dataset.setIdentifier("AAAAAA");
+        registrar = new StubPidRegistrar();
+    }
+
+    @Test
+    public void testRegisterPid() throws Exception {
+        PostPublishServiceBean.registerPid(dataset, registrar);
+        assertEquals(Arrays.asList("AAAAAA"), registrar.created);
+        assertEquals(Arrays.asList("AAAAAA"), registrar.publicized);
+        assertNotNull(dataset.getGlobalIdCreateTime());
+    }
+
+    /**
+     * Once published, the identifier is never replaced.
+     */
+    @Test
+    public void testRegisterPidTaken() {
+        registrar.taken.add("AAAAAA");
+        try {
+            PostPublishServiceBean.registerPid(dataset, registrar);
+            fail("registered a taken identifier");
+        } catch (Exception expected) {
+        }
+        assertEquals("AAAAAA", dataset.getIdentifier());
+        assertEquals(Arrays.asList("AAAAAA"), registrar.created);
+        assertNull(dataset.getGlobalIdCreateTime());
+        assertTrue(registrar.publicized.isEmpty());
+    }
+
+    @Test
+    public void testRegisterPidAlreadyCreated() throws Exception {
+        dataset.setGlobalIdCreateTime(new Date());
+        PostPublishServiceBean.registerPid(dataset, registrar);
+        assertTrue(registrar.created.isEmpty());
+        assertEquals(Arrays.asList("AAAAAA"), registrar.publicized);
+    }
+
+    @Test
+    public void testReservePid() throws Exception {
+        PostPublishServiceBean.reservePid(dataset, registrar);
+        assertEquals(Arrays.asList("AAAAAA"), registrar.created);
+        assertNotNull(dataset.getGlobalIdCreateTime());
+        // made public after publishing
+        assertTrue(registrar.publicized.isEmpty());
+    }
+
+    @Test
+    public void testReservePidTaken() throws Exception {
+        registrar.taken.add("AAAAAA");
+        PostPublishServiceBean.reservePid(dataset, registrar);
+        assertEquals("BBBBBB", dataset.getIdentifier());
+        assertEquals(Arrays.asList("AAAAAA", "BBBBBB"), registrar.created);
+        assertNotNull(dataset.getGlobalIdCreateTime());
+
+        // the stage after publishing registers nothing more
+        PostPublishServiceBean.registerPid(dataset, registrar);
+        assertEquals(2, registrar.created.size());
+        assertEquals(Arrays.asList("BBBBBB"), registrar.publicized);
+    }
+
+    @Test
+    public void testReservePidTakenTwice() {
+        registrar.taken.add("AAAAAA");
+        registrar.taken.add("BBBBBB");
+        try {
+            PostPublishServiceBean.reservePid(dataset, registrar);
+            fail("reserved a taken identifier");
+        } catch (Exception expected) {
+        }
+        assertNull(dataset.getGlobalIdCreateTime());
+    }
+
+    @Test
+    public void testReservePidAlreadyCreated() throws Exception {
+        dataset.setGlobalIdCreateTime(new Date());
+        PostPublishServiceBean.reservePid(dataset, registrar);
+        assertTrue(registrar.created.isEmpty());
+        assertEquals("AAAAAA", dataset.getIdentifier());
+    }
+
+    /**
+     * A Solr failure fails the stage, so that it is tried again.
+     */
+    @Test
+    public void testCheckIndexed() throws Exception {
+        PostPublishServiceBean.checkIndexed("the dataset", "indexed dataset 17 as dataset_17. filesIndexed: []");
+        try {
+            PostPublishServiceBean.checkIndexed("the dataset", "Attempted to index dataset_17. Result: " + IndexUtil.SOLR_UPDATE_FAILED + "java.io.IOException: refused\n");
+            fail("a Solr failure passed");
+        } catch (Exception expected) {
+            assertEquals("Could not index the dataset. " + IndexUtil.SOLR_UPDATE_FAILED + "java.io.IOException: refused", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testRetryDelay() {
+        assertEquals(PostPublishWorker.FIRST_RETRY_DELAY_MILLIS, PostPublishWorker.retryDelayMillis(1));
+        assertEquals(4 * PostPublishWorker.FIRST_RETRY_DELAY_MILLIS, PostPublishWorker.retryDelayMillis(3));
+    }
+
+    /**
+     * Stands in for the identifier services.
+     */
+    static class StubPidRegistrar implements PidRegistrar {
+
+        final Set<String> taken = new HashSet<>();
+        final List<String> created = new ArrayList<>();
+        final List<String> publicized = new ArrayList<>();
+
+        @Override
+        public boolean createIdentifier(Dataset dataset) {
+            created.add(dataset.getIdentifier());
+            return !taken.contains(dataset.getIdentifier());
+        }
+
+        @Override
+        public String generateIdentifier(Dataset dataset) {
+            return "BBBBBB";
+        }
+
+        @Override
+        public void publicizeIdentifier(Dataset dataset) {
+            publicized.add(dataset.getIdentifier());
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package edu.harvard.iq.dataverse;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ProjectionTest {
+
+    @Test
+    public void testWidth() {
+        assertEquals(14, Projection.DATA_FILE.getWidth());
+        assertEquals(2, Projection.DATA_FILE_USERS.getWidth());
+        assertEquals(5, Projection.DATA_TABLE.getWidth());
+        assertEquals(5, Projection.FILE_METADATA.getWidth());
+        assertEquals(11, Projection.DATASET_VERSION.getWidth());
+    }
+
+    @Test
+    public void testMapAtOffset() {
+        Timestamp created = new Timestamp(1000L);
+        Object[] row = new Object[]{
+            // file metadata
+            7, "data.tab", "Survey data", true, 1L,
+            // data file
+            42, created, null, null, null, null, null, false, "text/tab-separated-values", "1522d3a36fd-abc", 1024L, "A", "md5sum", true,
+            // users
+            3L, null,
+            // data table
+            9, "UNF:6:abc", 100L, 12L, "application/x-stata"};
+
+        FileMetadata fileMetadata = Projection.FILE_METADATA.map(row, 0);
+        assertEquals(Long.valueOf(7), fileMetadata.getId());
+        assertEquals("data.tab", fileMetadata.getLabel());
+        assertEquals("Survey data", fileMetadata.getDescription());
+        assertTrue(fileMetadata.isRestricted());
+
+        int offset = Projection.FILE_METADATA.getWidth();
+        DataFile dataFile = Projection.DATA_FILE.map(row, offset);
+        assertEquals(Long.valueOf(42), dataFile.getId());
+        assertEquals(created, dataFile.getCreateDate());
+        assertEquals("text/tab-separated-values", dataFile.getContentType());
+        assertEquals("1522d3a36fd-abc", dataFile.getStorageIdentifier());
+        assertEquals(1024L, dataFile.getFilesize());
+        assertEquals("md5sum", dataFile.getmd5());
+        assertTrue(dataFile.isRestricted());
+
+        offset += Projection.DATA_FILE.getWidth();
+        Long[] userIds = Projection.DATA_FILE_USERS.map(row, offset);
+        assertEquals(Long.valueOf(3), userIds[0]);
+        assertNull(userIds[1]);
+
+        offset += Projection.DATA_FILE_USERS.getWidth();
+        DataTable dataTable = Projection.DATA_TABLE.map(row, offset);
+        assertEquals(Long.valueOf(9), dataTable.getId());
+        assertEquals("UNF:6:abc", dataTable.getUnf());
+        assertEquals(Long.valueOf(100), dataTable.getCaseQuantity());
+        assertEquals("application/x-stata", dataTable.getOriginalFileFormat());
+    }
+
+    @Test
+    public void testMapVersion() {
+        Object[] row = new Object[]{5L, 2L, 1L, "RELEASED", null, null, null, null, null, null, 3L};
+        DatasetVersion version = Projection.DATASET_VERSION.map(row, 0);
+        assertEquals(Long.valueOf(5), version.getId());
+        assertEquals(Long.valueOf(2), version.getVersionNumber());
+        assertEquals(Long.valueOf(1), version.getMinorVersionNumber());
+        assertTrue(version.isReleased());
+    }
+
+    @Test
+    public void testReleasedVersionCache() {
+        ReleasedVersionCache cache = new ReleasedVersionCache(10);
+        long generation = cache.currentGeneration(1L);
+        cache.put(1L, 5L, "files", generation, Collections.singletonList(new Object[]{7}));
+        assertNotNull(cache.get(1L, 5L, "files", 60000));
+        assertNull(cache.get(1L, 5L, "tags", 60000));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.invalidate(1L);
+        assertNull(cache.get(1L, 5L, "files", 60000));
+
+        // read before the invalidation, so not cached
+        cache.put(1L, 5L, "files", generation, Collections.singletonList(new Object[]{7}));
+        assertNull(cache.get(1L, 5L, "files", 60000));
+
+        cache.put(1L, 5L, "files", cache.currentGeneration(1L), Collections.singletonList(new Object[]{7}));
+        cache.invalidateAll();
+        assertNull(cache.get(1L, 5L, "files", 60000));
+    }
+
+}
@@ -0,0 +1,84 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.PublishedVersionCache.Artifact;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PublishedVersionCacheTest {
+
+    private PublishedVersionCache cache;
+    private DatasetVersion version;
+
+    @Before
+    public void setUp() {
+        cache = new PublishedVersionCache(10000);
+        Dataset dataset = new Dataset();
+        dataset.setId(1L);
+        version = new DatasetVersion();
+        version.setId(5L);
+        version.setDataset(dataset);
+        version.setVersionState(DatasetVersion.VersionState.RELEASED);
+        version.setLastUpdateTime(new Date(1000L));
+    }
+
+    @Test
+    public void testIsCacheable() {
+        assertTrue(cache.isCacheable(version));
+        version.setVersionState(DatasetVersion.VersionState.DRAFT);
+        assertFalse(cache.isCacheable(version));
+        version.setVersionState(DatasetVersion.VersionState.DEACCESSIONED);
+        assertTrue(cache.isCacheable(version));
+        assertFalse(new PublishedVersionCache(0).isCacheable(version));
+    }
+
+    @Test
+    public void testGetPut() {
+        assertNull(cache.get(version, Artifact.CITATION));
+        cache.put(version, 0, Artifact.CITATION, "Doe, John, 2016", 30);
+        assertEquals("Doe, John, 2016", cache.get(version, Artifact.CITATION));
+        assertNull(cache.get(version, Artifact.ONLINE_CITATION));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(PublishedVersionCache.ENTRY_OVERHEAD_BYTES + 30, cache.getBytes());
+    }
+
+    @Test
+    public void testChangedVersion() {
+        cache.put(version, 0, Artifact.CITATION, "Doe, John, 2016", 30);
+        version.setLastUpdateTime(new Date(2000L));
+        assertNull(cache.get(version, Artifact.CITATION));
+        assertEquals(0, cache.size());
+
+        cache.put(version, 0, Artifact.CITATION, "Doe, John, 2016", 30);
+        version.setVersionState(DatasetVersion.VersionState.DEACCESSIONED);
+        assertNull(cache.get(version, Artifact.CITATION));
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.put(version, 0, Artifact.CITATION, "Doe, John, 2016", 30);
+        cache.invalidate(1L);
+        assertNull(cache.get(version, Artifact.CITATION));
+        // built before the invalidation, so not kept
+        cache.put(version, 0, Artifact.CITATION, "Doe, John, 2016", 30);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        for (long id = 1; id <= 100; id++) {
+            version.setId(id);
+            cache.put(version, 0, Artifact.JSON, "{}", 800);
+        }
+        assertEquals(10, cache.size());
+        assertTrue(cache.getBytes() <= 10000);
+        version.setId(100L);
+        assertNotNull(cache.get(version, Artifact.JSON));
+        version.setId(1L);
+        assertNull(cache.get(version, Artifact.JSON));
+    }
+
+}
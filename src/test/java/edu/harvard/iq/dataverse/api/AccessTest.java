@@ -0,0 +1,57 @@
+package edu.harvard.iq.dataverse.api;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AccessTest {
+
+    @Test
+    public void testByteRange() {
+        assertArrayEquals(new long[]{0, 100}, Access.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{500, 1}, Access.parseRange("bytes=500-500", 1000));
+        assertArrayEquals(new long[]{10, 20}, Access.parseRange(" bytes= 10-29 ", 1000));
+        // (to the end of the file, at most)
+        assertArrayEquals(new long[]{900, 100}, Access.parseRange("bytes=900-2000", 1000));
+    }
+
+    @Test
+    public void testOpenEndedRange() {
+        assertArrayEquals(new long[]{900, 100}, Access.parseRange("bytes=900-", 1000));
+        assertArrayEquals(new long[]{0, 1000}, Access.parseRange("bytes=0-", 1000));
+        assertArrayEquals(new long[]{999, 1}, Access.parseRange("bytes=999-", 1000));
+    }
+
+    @Test
+    public void testSuffixRange() {
+        assertArrayEquals(new long[]{900, 100}, Access.parseRange("bytes=-100", 1000));
+        // (the whole file, if shorter)
+        assertArrayEquals(new long[]{0, 1000}, Access.parseRange("bytes=-5000", 1000));
+    }
+
+    @Test
+    public void testUnsatisfiableRange() {
+        // the first byte past the end of the file: answered with a 416
+        assertArrayEquals(new long[]{1000, 0}, Access.parseRange("bytes=1000-", 1000));
+        assertArrayEquals(new long[]{2000, 0}, Access.parseRange("bytes=2000-2999", 1000));
+        assertArrayEquals(new long[]{1000, 0}, Access.parseRange("bytes=-0", 1000));
+        assertArrayEquals(new long[]{0, 0}, Access.parseRange("bytes=-100", 0));
+        assertArrayEquals(new long[]{0, 0}, Access.parseRange("bytes=0-", 0));
+    }
+
+    @Test
+    public void testWholeFileServed() {
+        assertNull(Access.parseRange(null, 1000));
+        // reversed
+        assertNull(Access.parseRange("bytes=500-100", 1000));
+        // multiple ranges
+        assertNull(Access.parseRange("bytes=0-99,200-299", 1000));
+        assertNull(Access.parseRange("bytes=-100, -50", 1000));
+        // malformed
+        assertNull(Access.parseRange("bytes=-", 1000));
+        assertNull(Access.parseRange("bytes=abc-def", 1000));
+        assertNull(Access.parseRange("items=0-99", 1000));
+        assertNull(Access.parseRange("bytes=99999999999999999999-", 1000));
+        // (size unknown)
+        assertNull(Access.parseRange("bytes=0-99", -1));
+    }
+}
@@ -0,0 +1,50 @@
+package edu.harvard.iq.dataverse.api;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ApiMetricsTest {
+
+    ApiMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new ApiMetrics();
+    }
+
+    @Test
+    public void testRequestCounts() {
+        metrics.record("Datasets", "getVersion", "GET", 200, 1000000, 512);
+        metrics.record("Datasets", "getVersion", "GET", 200, 1000000, 512);
+        metrics.record("Datasets", "getVersion", "GET", 404, 1000000, 64);
+        String text = metrics.toPrometheusText();
+        assertTrue(text.contains("# TYPE dataverse_api_requests_total counter\n"));
+        assertTrue(text.contains("dataverse_api_requests_total{resource=\"Datasets\",method=\"getVersion\",http_method=\"GET\",status=\"200\"} 2\n"));
+        assertTrue(text.contains("dataverse_api_requests_total{resource=\"Datasets\",method=\"getVersion\",http_method=\"GET\",status=\"404\"} 1\n"));
+        assertTrue(text.contains("dataverse_api_response_bytes_total{resource=\"Datasets\",method=\"getVersion\",http_method=\"GET\"} 1088\n"));
+    }
+
+    @Test
+    public void testHistogram() {
+        // 3 ms, 30 ms and 30 s
+        metrics.record("Access", "datafile", "GET", 200, 3000000L, 0);
+        metrics.record("Access", "datafile", "GET", 200, 30000000L, 0);
+        metrics.record("Access", "datafile", "GET", 200, 30000000000L, 0);
+        String text = metrics.toPrometheusText();
+        String labels = "resource=\"Access\",method=\"datafile\",http_method=\"GET\"";
+        assertTrue(text.contains("dataverse_api_request_duration_seconds_bucket{" + labels + ",le=\"0.005\"} 1\n"));
+        assertTrue(text.contains("dataverse_api_request_duration_seconds_bucket{" + labels + ",le=\"0.025\"} 1\n"));
+        assertTrue(text.contains("dataverse_api_request_duration_seconds_bucket{" + labels + ",le=\"0.05\"} 2\n"));
+        assertTrue(text.contains("dataverse_api_request_duration_seconds_bucket{" + labels + ",le=\"10.0\"} 2\n"));
+        assertTrue(text.contains("dataverse_api_request_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("dataverse_api_request_duration_seconds_count{" + labels + "} 3\n"));
+        assertTrue(text.contains("dataverse_api_request_duration_seconds_sum{" + labels + "} 30.033\n"));
+    }
+
+    @Test
+    public void testEscape() {
+        assertEquals("a\\\"b\\\\c\\n", ApiMetrics.escape("a\"b\\c\n"));
+    }
+
+}
@@ -0,0 +1,176 @@
+package edu.harvard.iq.dataverse.api.datadeposit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * The body of a SWORD deposit, as the ingest of its zip file reads it.
+ */
+public class StreamingDepositInputStreamTest {
+
+    static final String BODY = "hello world";
+    static final String BODY_MD5 = "5eb63bbbe01eeed093cb22bb8f5acdc3";
+
+    TrickleInputStream body;
+
+    @Before
+    public void setUp() {
+        body = new TrickleInputStream(BODY.getBytes(StandardCharsets.UTF_8), 3);
+    }
+
+    @Test
+    public void testPartialReads() throws IOException {
+        StreamingDepositInputStream depositStream = new StreamingDepositInputStream(body, -1);
+        // the underlying stream returns at most 3 bytes at a time
+        byte[] buffer = new byte[16];
+        int offset = 2;
+        int n;
+        while ((n = depositStream.read(buffer, offset, 4)) != -1) {
+            assertTrue(n <= 3);
+            offset += n;
+        }
+        assertEquals(BODY, new String(buffer, 2, offset - 2, StandardCharsets.UTF_8));
+        assertEquals(BODY.length(), depositStream.getBytesRead());
+        assertEquals(BODY_MD5, depositStream.getMd5Hex());
+    }
+
+    @Test
+    public void testSingleBytesSkipAndDrain() throws IOException {
+        StreamingDepositInputStream depositStream = new StreamingDepositInputStream(body, -1);
+        assertEquals('h', depositStream.read());
+        // skipped and drained bytes count in the MD5 all the same
+        assertEquals(4, depositStream.skip(4));
+        depositStream.drain();
+        assertEquals(-1, depositStream.read());
+        assertEquals(BODY.length(), depositStream.getBytesRead());
+        assertEquals(BODY_MD5, depositStream.getMd5Hex());
+    }
+
+    @Test
+    public void testMatchesMd5() throws IOException {
+        StreamingDepositInputStream depositStream = new StreamingDepositInputStream(body, -1);
+        depositStream.drain();
+        assertTrue(depositStream.matchesMd5(null));
+        assertTrue(depositStream.matchesMd5(" "));
+        assertTrue(depositStream.matchesMd5(" " + BODY_MD5.toUpperCase() + " "));
+        assertFalse(depositStream.matchesMd5("d41d8cd98f00b204e9800998ecf8427e"));
+    }
+
+    @Test
+    public void testAtMaxSize() throws IOException {
+        StreamingDepositInputStream depositStream = new StreamingDepositInputStream(body, BODY.length());
+        assertEquals(BODY, readAll(depositStream));
+        assertFalse(depositStream.isMaxBytesExceeded());
+    }
+
+    @Test
+    public void testOverMaxSize() throws IOException {
+        StreamingDepositInputStream depositStream = new StreamingDepositInputStream(body, 4);
+        byte[] buffer = new byte[16];
+        assertEquals(3, depositStream.read(buffer, 0, buffer.length));
+        assertFalse(depositStream.isMaxBytesExceeded());
+        try {
+            depositStream.read(buffer, 0, buffer.length);
+            fail("read past the maximum upload size");
+        } catch (IOException expected) {
+        }
+        assertTrue(depositStream.isMaxBytesExceeded());
+        assertEquals(6, body.position());
+    }
+
+    /**
+     * Once over the maximum size, the deposit is aborted: nothing more is
+     * read from the request, whichever way.
+     */
+    @Test
+    public void testAbortedOverMaxSize() throws IOException {
+        StreamingDepositInputStream depositStream = new StreamingDepositInputStream(body, 1);
+        try {
+            depositStream.drain();
+            fail("drained past the maximum upload size");
+        } catch (IOException expected) {
+        }
+        int position = body.position();
+        try {
+            depositStream.read();
+            fail("read after the maximum upload size was exceeded");
+        } catch (IOException expected) {
+        }
+        try {
+            depositStream.skip(1);
+            fail("skipped after the maximum upload size was exceeded");
+        } catch (IOException expected) {
+        }
+        assertEquals(position, body.position());
+        assertTrue(depositStream.isMaxBytesExceeded());
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        StreamingDepositInputStream depositStream = new StreamingDepositInputStream(body, -1);
+        depositStream.read();
+        depositStream.close();
+        assertTrue(body.closed);
+    }
+
+    @Test
+    public void testNoMarkReset() {
+        StreamingDepositInputStream depositStream = new StreamingDepositInputStream(body, -1);
+        assertFalse(depositStream.markSupported());
+        depositStream.mark(100);
+        try {
+            depositStream.reset();
+            fail("reset a stream that has no mark");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[5];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A request body received a few bytes at a time.
+     */
+    static class TrickleInputStream extends ByteArrayInputStream {
+
+        final int maxRead;
+        boolean closed;
+
+        TrickleInputStream(byte[] content, int maxRead) {
+            super(content);
+            this.maxRead = maxRead;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, maxRead));
+        }
+
+        /**
+         * @return How much of the body has been received.
+         */
+        int position() {
+            return pos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+}
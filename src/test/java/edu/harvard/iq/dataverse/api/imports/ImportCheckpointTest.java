@@ -0,0 +1,61 @@
+package edu.harvard.iq.dataverse.api.imports;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ImportCheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File first;
+    File second;
+
+    @Before
+    public void setUp() throws IOException {
+        first = folder.newFile("study1.xml");
+        second = folder.newFile("study2.xml");
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        ImportCheckpoint checkpoint = ImportCheckpoint.open(folder.getRoot());
+        assertEquals(0, checkpoint.getNumberProcessed());
+        assertFalse(checkpoint.isProcessed(first));
+        assertFalse(new File(folder.getRoot(), ImportCheckpoint.CHECKPOINT_FILE_NAME).exists());
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        ImportCheckpoint checkpoint = ImportCheckpoint.open(folder.getRoot());
+        checkpoint.record(Collections.singletonList(first));
+        assertTrue(checkpoint.isProcessed(first));
+        assertFalse(checkpoint.isProcessed(second));
+
+        // a later run of the same import
+        ImportCheckpoint resumed = ImportCheckpoint.open(folder.getRoot());
+        assertEquals(1, resumed.getNumberProcessed());
+        assertTrue(resumed.isProcessed(first));
+        assertFalse(resumed.isProcessed(second));
+
+        resumed.record(Arrays.asList(second));
+        assertEquals(2, ImportCheckpoint.open(folder.getRoot()).getNumberProcessed());
+    }
+
+    @Test
+    public void testDelete() throws IOException {
+        ImportCheckpoint checkpoint = ImportCheckpoint.open(folder.getRoot());
+        checkpoint.record(Arrays.asList(first, second));
+        checkpoint.delete();
+        assertEquals(0, checkpoint.getNumberProcessed());
+        assertEquals(0, ImportCheckpoint.open(folder.getRoot()).getNumberProcessed());
+    }
+
+}
@@ -0,0 +1,135 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import edu.harvard.iq.dataverse.authorization.users.ApiToken;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.mydata.MyDataCacheTest.TestTransactionRegistry;
+import java.sql.Timestamp;
+import javax.transaction.Status;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ApiTokenCacheTest {
+
+    long now = 1000000;
+    ApiTokenCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ApiTokenCache(60000, 3) {
+            @Override
+            long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        assertNull(cache.get("secret"));
+        cache.put(token("secret", 7L, now + 3600000));
+        assertEquals(Long.valueOf(7), cache.get("secret"));
+        assertNull(cache.get("other"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1.0 / 3, cache.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void testTimeToLive() {
+        cache.put(token("secret", 7L, now + 3600000));
+        now += 59999;
+        assertEquals(Long.valueOf(7), cache.get("secret"));
+        now += 1;
+        assertNull(cache.get("secret"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testTokenExpiresFirst() {
+        cache.put(token("secret", 7L, now + 1000));
+        now += 1000;
+        assertNull(cache.get("secret"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.put(token("first", 7L, now + 3600000));
+        cache.put(token("second", 7L, now + 3600000));
+        cache.put(token("third", 8L, now + 3600000));
+        cache.invalidate("first");
+        assertNull(cache.get("first"));
+        assertEquals(Long.valueOf(7), cache.get("second"));
+
+        cache.invalidateUser(7L);
+        assertNull(cache.get("second"));
+        assertEquals(Long.valueOf(8), cache.get("third"));
+    }
+
+    @Test
+    public void testInvalidateAfterCommit() {
+        cache.put(token("first", 7L, now + 3600000));
+        cache.put(token("second", 8L, now + 3600000));
+        TestTransactionRegistry transaction = new TestTransactionRegistry();
+        cache.invalidateAfterCommit(transaction, "first");
+        cache.invalidateUserAfterCommit(transaction, 8L);
+        // still there until the token change is committed
+        assertEquals(Long.valueOf(7), cache.get("first"));
+        assertEquals(Long.valueOf(8), cache.get("second"));
+
+        transaction.complete(Status.STATUS_COMMITTED);
+        assertNull(cache.get("first"));
+        assertNull(cache.get("second"));
+    }
+
+    @Test
+    public void testNotInvalidatedOnRollback() {
+        cache.put(token("secret", 7L, now + 3600000));
+        TestTransactionRegistry transaction = new TestTransactionRegistry();
+        cache.invalidateUserAfterCommit(transaction, 7L);
+
+        transaction.complete(Status.STATUS_ROLLEDBACK);
+        assertEquals(Long.valueOf(7), cache.get("secret"));
+    }
+
+    @Test
+    public void testMaxSize() {
+        cache.put(token("first", 1L, now + 3600000));
+        cache.put(token("second", 2L, now + 3600000));
+        cache.put(token("third", 3L, now + 1000));
+        cache.put(token("fourth", 4L, now + 3600000));
+        assertNull(cache.get("fourth"));
+
+        // makes room by dropping the expired entries
+        now += 1000;
+        cache.put(token("fourth", 4L, now + 3600000));
+        assertEquals(Long.valueOf(4), cache.get("fourth"));
+        assertEquals(3, cache.getSize());
+    }
+
+    @Test
+    public void testDisabled() {
+        ApiTokenCache off = new ApiTokenCache(0, 10);
+        off.put(token("secret", 7L, System.currentTimeMillis() + 3600000));
+        assertNull(off.get("secret"));
+        assertEquals(0, off.getSize());
+    }
+
+    @Test
+    public void testNoSecretsKept() {
+        String key = ApiTokenCache.hash("secret");
+        assertEquals(64, key.length());
+        assertFalse(key.contains("secret"));
+    }
+
+    private static ApiToken token(String tokenString, Long userId, long expireTime) {
+        AuthenticatedUser user = new AuthenticatedUser();
+        user.setId(userId);
+        ApiToken token = new ApiToken();
+        token.setTokenString(tokenString);
+        token.setAuthenticatedUser(user);
+        token.setExpireTime(new Timestamp(expireTime));
+        return token;
+    }
+
+}
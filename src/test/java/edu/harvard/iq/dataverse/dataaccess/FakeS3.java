@@ -0,0 +1,345 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * A local stand-in for S3, for the tests: the objects are stored as files,
+ * under <root>/<bucket>/<key>; only the calls S3AccessIO makes are
+ * implemented. Counts the GETs and the parts uploaded (or copied).
+ */
+public class FakeS3 extends AbstractAmazonS3 {
+
+    private final Path root;
+    private final Path uploads;
+
+    // (small pages, so that the listings are truncated)
+    private static final int MAX_KEYS = 2;
+
+    public final AtomicInteger getObjectCount = new AtomicInteger();
+    public final AtomicInteger partCount = new AtomicInteger();
+
+    public FakeS3(File root) throws IOException {
+        this.root = root.toPath();
+        this.uploads = this.root.resolve(".uploads");
+        Files.createDirectories(uploads);
+    }
+
+    public Path getObjectPath(String bucketName, String key) {
+        return root.resolve(bucketName).resolve(key);
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+        Path objectPath = existingObject(bucketName, key);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(objectPath.toFile().length());
+        return metadata;
+    }
+
+    @Override
+    public boolean doesObjectExist(String bucketName, String key) {
+        return Files.isRegularFile(getObjectPath(bucketName, key));
+    }
+
+    @Override
+    public S3Object getObject(String bucketName, String key) {
+        return getObject(new GetObjectRequest(bucketName, key));
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        Path objectPath = existingObject(request.getBucketName(), request.getKey());
+        getObjectCount.incrementAndGet();
+
+        byte[] content = read(objectPath);
+        long[] range = request.getRange();
+        if (range != null) {
+            int start = (int) Math.min(range[0], content.length);
+            int end = (int) Math.min(range[1], content.length - 1);
+            content = Arrays.copyOfRange(content, start, Math.max(start, end + 1));
+        }
+
+        S3Object object = new S3Object();
+        object.setBucketName(request.getBucketName());
+        object.setKey(request.getKey());
+        object.getObjectMetadata().setContentLength(content.length);
+        object.setObjectContent(new ByteArrayInputStream(content));
+        return object;
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request) {
+        Path objectPath = getObjectPath(request.getBucketName(), request.getKey());
+        try {
+            Files.createDirectories(objectPath.getParent());
+            if (request.getFile() != null) {
+                Files.copy(request.getFile().toPath(), objectPath, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.copy(request.getInputStream(), objectPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            throw new AmazonClientException(ex.getMessage(), ex);
+        }
+        PutObjectResult result = new PutObjectResult();
+        result.setETag(md5(read(objectPath)));
+        return result;
+    }
+
+    @Override
+    public CopyObjectResult copyObject(String sourceBucketName, String sourceKey, String destinationBucketName, String destinationKey) {
+        Path sourcePath = existingObject(sourceBucketName, sourceKey);
+        Path destinationPath = getObjectPath(destinationBucketName, destinationKey);
+        try {
+            Files.createDirectories(destinationPath.getParent());
+            Files.copy(sourcePath, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            throw new AmazonClientException(ex.getMessage(), ex);
+        }
+        CopyObjectResult result = new CopyObjectResult();
+        result.setETag(md5(read(destinationPath)));
+        return result;
+    }
+
+    @Override
+    public void deleteObject(String bucketName, String key) {
+        // (no error if there is no such object, as with S3)
+        try {
+            Files.deleteIfExists(getObjectPath(bucketName, key));
+        } catch (IOException ex) {
+            throw new AmazonClientException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public ObjectListing listObjects(ListObjectsRequest request) {
+        return list(request.getBucketName(), request.getPrefix(), request.getMarker());
+    }
+
+    @Override
+    public ObjectListing listNextBatchOfObjects(ObjectListing previousListing) {
+        return list(previousListing.getBucketName(), previousListing.getPrefix(), previousListing.getNextMarker());
+    }
+
+    private ObjectListing list(String bucketName, String prefix, String marker) {
+        Path bucket = root.resolve(bucketName);
+        TreeSet<String> keys = new TreeSet<>();
+        if (Files.isDirectory(bucket)) {
+            try (Stream<Path> paths = Files.walk(bucket)) {
+                paths.filter(Files::isRegularFile).forEach(path -> keys.add(bucket.relativize(path).toString().replace(File.separatorChar, '/')));
+            } catch (IOException ex) {
+                throw new AmazonClientException(ex.getMessage(), ex);
+            }
+        }
+
+        ObjectListing listing = new ObjectListing();
+        listing.setBucketName(bucketName);
+        listing.setPrefix(prefix);
+        for (String key : marker == null ? keys : keys.tailSet(marker, false)) {
+            if (prefix != null && !key.startsWith(prefix)) {
+                continue;
+            }
+            if (listing.getObjectSummaries().size() == MAX_KEYS) {
+                listing.setTruncated(true);
+                break;
+            }
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(bucketName);
+            summary.setKey(key);
+            summary.setSize(getObjectPath(bucketName, key).toFile().length());
+            listing.getObjectSummaries().add(summary);
+            listing.setNextMarker(key);
+        }
+        return listing;
+    }
+
+    // Multipart uploads: the parts are kept in .uploads/<upload id>/<part
+    // number>, until the upload is completed (or aborted).
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        String uploadId = UUID.randomUUID().toString();
+        try {
+            Files.createDirectories(uploads.resolve(uploadId));
+        } catch (IOException ex) {
+            throw new AmazonClientException(ex.getMessage(), ex);
+        }
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request) {
+        byte[] content = new byte[(int) request.getPartSize()];
+        try (InputStream in = request.getFile() != null
+                ? Files.newInputStream(request.getFile().toPath())
+                : request.getInputStream()) {
+            long skip = request.getFile() != null ? request.getFileOffset() : 0;
+            while (skip > 0) {
+                skip -= in.skip(skip);
+            }
+            int offset = 0;
+            while (offset < content.length) {
+                int read = in.read(content, offset, content.length - offset);
+                if (read < 0) {
+                    throw new IOException("Premature end of the part");
+                }
+                offset += read;
+            }
+        } catch (IOException ex) {
+            throw new AmazonClientException(ex.getMessage(), ex);
+        }
+
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(savePart(request.getUploadId(), request.getPartNumber(), content));
+        return result;
+    }
+
+    @Override
+    public CopyPartResult copyPart(CopyPartRequest request) {
+        byte[] source = read(existingObject(request.getSourceBucketName(), request.getSourceKey()));
+        byte[] content = Arrays.copyOfRange(source, request.getFirstByte().intValue(), request.getLastByte().intValue() + 1);
+
+        CopyPartResult result = new CopyPartResult();
+        result.setPartNumber(request.getPartNumber());
+        result.setETag(savePart(request.getUploadId(), request.getPartNumber(), content));
+        return result;
+    }
+
+    private String savePart(String uploadId, int partNumber, byte[] content) {
+        partCount.incrementAndGet();
+        try {
+            Files.write(uploads.resolve(uploadId).resolve(Integer.toString(partNumber)), content);
+        } catch (IOException ex) {
+            throw new AmazonClientException(ex.getMessage(), ex);
+        }
+        return md5(content);
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        Path upload = uploads.resolve(request.getUploadId());
+        Path objectPath = getObjectPath(request.getBucketName(), request.getKey());
+        try {
+            Files.createDirectories(objectPath.getParent());
+            Files.deleteIfExists(objectPath);
+            int lastPartNumber = 0;
+            for (PartETag part : request.getPartETags()) {
+                if (part.getPartNumber() <= lastPartNumber) {
+                    throw new AmazonS3Exception("The parts are not in ascending order");
+                }
+                lastPartNumber = part.getPartNumber();
+                byte[] content = Files.readAllBytes(upload.resolve(Integer.toString(part.getPartNumber())));
+                if (!md5(content).equals(part.getETag())) {
+                    throw new AmazonS3Exception("Invalid part " + part.getPartNumber());
+                }
+                Files.write(objectPath, content, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            deleteUpload(upload);
+        } catch (IOException ex) {
+            throw new AmazonClientException(ex.getMessage(), ex);
+        }
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        return result;
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        try {
+            deleteUpload(uploads.resolve(request.getUploadId()));
+        } catch (IOException ex) {
+            throw new AmazonClientException(ex.getMessage(), ex);
+        }
+    }
+
+    public List<String> listUploads() throws IOException {
+        List<String> uploadIds = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(uploads)) {
+            paths.forEach(path -> uploadIds.add(path.getFileName().toString()));
+        }
+        return uploadIds;
+    }
+
+    private void deleteUpload(Path upload) throws IOException {
+        try (Stream<Path> parts = Files.list(upload)) {
+            for (Path part : (Iterable<Path>) parts::iterator) {
+                Files.delete(part);
+            }
+        }
+        Files.delete(upload);
+    }
+
+    private Path existingObject(String bucketName, String key) {
+        Path objectPath = getObjectPath(bucketName, key);
+        if (!Files.isRegularFile(objectPath)) {
+            AmazonS3Exception notFound = new AmazonS3Exception("The specified key does not exist.");
+            notFound.setStatusCode(404);
+            notFound.setErrorCode("NoSuchKey");
+            throw notFound;
+        }
+        return objectPath;
+    }
+
+    private static byte[] read(Path path) {
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException ex) {
+            throw new AmazonClientException(ex.getMessage(), ex);
+        }
+    }
+
+    private static String md5(byte[] content) {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+                sb.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.Dataset;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class FileAccessIOTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    DataFile dataFile;
+    Path datasetDirectory;
+    String filesDirectory;
+    int tempFiles;
+
+    @Before
+    public void setUp() throws IOException {
+        filesDirectory = System.getProperty("dataverse.files.directory");
+        File root = folder.newFolder("files");
+        System.setProperty("dataverse.files.directory", root.getPath());
+
+        Dataset dataset = new Dataset();
+        dataset.setAuthority("10.5072/FK2");
+        dataset.setIdentifier("ABCDEF");
+        datasetDirectory = Files.createDirectories(dataset.getFileSystemDirectory());
+
+        dataFile = new DataFile("text/plain");
+        dataFile.setOwner(dataset);
+        dataFile.setStorageIdentifier("14a5e4abf7d-e7eebfb6474d");
+    }
+
+    @After
+    public void tearDown() {
+        if (filesDirectory == null) {
+            System.clearProperty("dataverse.files.directory");
+        } else {
+            System.setProperty("dataverse.files.directory", filesDirectory);
+        }
+    }
+
+    @Test
+    public void testRangedReads() throws IOException {
+        byte[] content = randomBytes(100);
+        Files.write(datasetDirectory.resolve("14a5e4abf7d-e7eebfb6474d"), content);
+        FileAccessIO dataAccess = new FileAccessIO(dataFile);
+
+        assertArrayEquals(copyOfRange(content, 10, 30), readAll(dataAccess.openRange(10, 20)));
+        assertArrayEquals(copyOfRange(content, 90, 100), readAll(dataAccess.openRange(90, -1)));
+        assertArrayEquals(content, readAll(dataAccess.openRange(0, -1)));
+        // (to the end, at most)
+        assertArrayEquals(copyOfRange(content, 95, 100), readAll(dataAccess.openRange(95, 20)));
+        assertEquals(0, readAll(dataAccess.openRange(50, 0)).length);
+        assertEquals(0, readAll(dataAccess.openRange(100, 10)).length);
+
+        InputStream range = dataAccess.openRange(10, 20);
+        assertEquals(5, range.skip(5));
+        assertEquals(content[15] & 0xFF, range.read());
+        assertArrayEquals(copyOfRange(content, 16, 30), readAll(range));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidOffset() throws IOException {
+        Files.write(datasetDirectory.resolve("14a5e4abf7d-e7eebfb6474d"), new byte[10]);
+        new FileAccessIO(dataFile).openRange(-1, 5);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRangeOfMissingFile() throws IOException {
+        new FileAccessIO(dataFile).openRange(0, 5);
+    }
+
+    @Test
+    public void testAuxObjects() throws IOException {
+        Files.write(datasetDirectory.resolve("14a5e4abf7d-e7eebfb6474d"), "main".getBytes(StandardCharsets.UTF_8));
+        // (another file in the same dataset)
+        Files.write(datasetDirectory.resolve("14a5e4abf7d-0123456789ab.thumb64"), new byte[1]);
+        FileAccessIO dataAccess = new FileAccessIO(dataFile);
+
+        assertTrue(dataAccess.listAuxObjects().isEmpty());
+        assertFalse(dataAccess.isAuxObjectCached("thumb64"));
+
+        dataAccess.savePathAsAux(tempFile("thumbnail".getBytes(StandardCharsets.UTF_8)), "thumb64");
+        assertTrue(dataAccess.isAuxObjectCached("thumb64"));
+        assertEquals(9, dataAccess.getAuxObjectSize("thumb64"));
+        assertEquals("thumbnail", new String(Files.readAllBytes(datasetDirectory.resolve("14a5e4abf7d-e7eebfb6474d.thumb64")), StandardCharsets.UTF_8));
+
+        // (replaces the saved one)
+        dataAccess.savePathAsAux(tempFile("thumb".getBytes(StandardCharsets.UTF_8)), "thumb64");
+        assertEquals(5, dataAccess.getAuxObjectSize("thumb64"));
+
+        dataAccess.savePathAsAux(tempFile(new byte[1]), "RData");
+        dataAccess.savePathAsAux(tempFile(new byte[1]), "img.thumb64");
+
+        List<String> auxItemTags = dataAccess.listAuxObjects();
+        Collections.sort(auxItemTags);
+        assertEquals("[RData, img.thumb64, thumb64]", auxItemTags.toString());
+
+        dataAccess.deleteAuxObject("RData");
+        assertFalse(dataAccess.isAuxObjectCached("RData"));
+        assertEquals(2, dataAccess.listAuxObjects().size());
+        // (but not the file itself)
+        assertTrue(Files.exists(datasetDirectory.resolve("14a5e4abf7d-e7eebfb6474d")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidAuxItemTag() throws IOException {
+        new FileAccessIO(dataFile).savePathAsAux(tempFile(new byte[1]), "");
+    }
+
+    private Path tempFile(byte[] content) throws IOException {
+        File file = folder.newFile("temp" + tempFiles++);
+        Files.write(file.toPath(), content);
+        return file.toPath();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] copyOfRange(byte[] content, int from, int to) {
+        return Arrays.copyOfRange(content, from, to);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class RotatedImageReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File tabfile;
+    File image;
+
+    @Before
+    public void setUp() throws IOException {
+        tabfile = folder.newFile("data.tab");
+        Files.write(tabfile.toPath(), "1\ta\n22\tbb\n333\tccc\n".getBytes(StandardCharsets.UTF_8));
+        image = new File(folder.getRoot(), "data.tab.90d");
+        new TabularFileTransposer().transpose(tabfile, image, 2, 3);
+    }
+
+    @Test
+    public void testColumns() throws IOException {
+        RotatedImageReader reader = RotatedImageReader.acquire(image, 2);
+        try {
+            assertEquals(16, reader.getColumnOffset(0));
+            assertEquals(9, reader.getColumnLength(0));
+            assertEquals("1\n22\n333\n", toString(reader.getColumn(0)));
+            assertEquals("a\nbb\nccc\n", toString(reader.getColumn(1)));
+        } finally {
+            reader.release();
+        }
+    }
+
+    @Test
+    public void testShared() throws IOException {
+        RotatedImageReader first = RotatedImageReader.acquire(image, 2);
+        RotatedImageReader second = RotatedImageReader.acquire(image, 2);
+        try {
+            assertSame(first, second);
+            // each request reads at its own pace
+            ByteBuffer column = first.getColumn(1);
+            column.get();
+            assertEquals("a\nbb\nccc\n", toString(second.getColumn(1)));
+            assertEquals("\nbb\nccc\n", toString(column));
+        } finally {
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void testRegeneratedImage() throws IOException {
+        RotatedImageReader first = RotatedImageReader.acquire(image, 2);
+        ByteBuffer column = first.getColumn(0);
+
+        Files.write(tabfile.toPath(), "4\td\n5\te\n6\tf\n".getBytes(StandardCharsets.UTF_8));
+        new TabularFileTransposer().transpose(tabfile, image, 2, 3);
+        image.setLastModified(image.lastModified() + 2000);
+
+        RotatedImageReader second = RotatedImageReader.acquire(image, 2);
+        try {
+            assertNotSame(first, second);
+            assertEquals("4\n5\n6\n", toString(second.getColumn(0)));
+        } finally {
+            second.release();
+        }
+        first.release();
+        // still readable after the old image was closed
+        assertEquals("1\n22\n333\n", toString(column));
+    }
+
+    @Test(expected = IOException.class)
+    public void testOutOfBounds() throws IOException {
+        RotatedImageReader reader = RotatedImageReader.acquire(image, 2);
+        try {
+            reader.getColumn(2);
+        } finally {
+            reader.release();
+        }
+    }
+
+    private String toString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
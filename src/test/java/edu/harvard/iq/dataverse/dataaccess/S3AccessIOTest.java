@@ -0,0 +1,277 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.Dataset;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class S3AccessIOTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    FakeS3 s3;
+    DataFile dataFile;
+    String key = "10.5072/FK2/ABCDEF/14a5e4abf7d-e7eebfb6474d";
+    int tempFiles;
+
+    @Before
+    public void setUp() throws IOException {
+        s3 = new FakeS3(folder.newFolder("s3"));
+
+        Dataset dataset = new Dataset();
+        dataset.setAuthority("10.5072/FK2");
+        dataset.setIdentifier("ABCDEF");
+
+        dataFile = new DataFile("text/plain");
+        dataFile.setOwner(dataset);
+        dataFile.setStorageIdentifier("s3://dataverse-test:14a5e4abf7d-e7eebfb6474d");
+    }
+
+    @Test
+    public void testSaveAndRead() throws IOException {
+        S3AccessIO dataAccess = new S3AccessIO(dataFile, null, s3);
+        assertFalse(dataAccess.isLocalFile());
+
+        dataAccess.copyPath(tempFile("hello, world\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(13, dataAccess.getSize());
+        assertTrue(Files.exists(s3.getObjectPath("dataverse-test", key)));
+        assertEquals("s3://dataverse-test/" + key, dataAccess.getStorageLocation());
+
+        dataAccess = new S3AccessIO(dataFile, null, s3);
+        dataAccess.open();
+        assertTrue(dataAccess.canRead());
+        assertEquals(13, dataAccess.getSize());
+        assertEquals("hello, world\n", new String(readAll(dataAccess.getInputStream()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testWriteChannel() throws IOException {
+        S3AccessIO dataAccess = new S3AccessIO(dataFile, null, s3);
+        dataAccess.open(DataAccessOption.WRITE_ACCESS);
+        assertTrue(dataAccess.canWrite());
+
+        WritableByteChannel channel = dataAccess.getWriteChannel();
+        channel.write(ByteBuffer.wrap("written".getBytes(StandardCharsets.UTF_8)));
+        // (uploaded on close)
+        assertFalse(Files.exists(s3.getObjectPath("dataverse-test", key)));
+        channel.close();
+
+        assertEquals(7, dataAccess.getSize());
+        assertEquals("written", new String(Files.readAllBytes(s3.getObjectPath("dataverse-test", key)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMultipartUpload() throws IOException {
+        byte[] content = randomBytes(1000);
+
+        // (in the application server, the managed executor service)
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            S3AccessIO dataAccess = new S3AccessIO(dataFile, null, s3, executor);
+            dataAccess.setPartSize(128);
+            dataAccess.setUploadThreads(3);
+            dataAccess.copyPath(tempFile(content));
+
+            assertEquals(8, s3.partCount.get());
+            assertEquals(1000, dataAccess.getSize());
+            assertArrayEquals(content, Files.readAllBytes(s3.getObjectPath("dataverse-test", key)));
+            assertTrue(s3.listUploads().isEmpty());
+            // (the executor is not shut down)
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMultipartUploadWithoutExecutor() throws IOException {
+        byte[] content = randomBytes(1000);
+
+        S3AccessIO dataAccess = new S3AccessIO(dataFile, null, s3);
+        dataAccess.setPartSize(128);
+        dataAccess.copyPath(tempFile(content));
+
+        assertEquals(8, s3.partCount.get());
+        assertArrayEquals(content, Files.readAllBytes(s3.getObjectPath("dataverse-test", key)));
+        assertTrue(s3.listUploads().isEmpty());
+    }
+
+    @Test
+    public void testRangedReads() throws IOException {
+        byte[] content = randomBytes(100);
+        S3AccessIO dataAccess = new S3AccessIO(dataFile, null, s3);
+        dataAccess.copyPath(tempFile(content));
+
+        assertArrayEquals(copyOfRange(content, 10, 30), readAll(dataAccess.openRange(10, 20)));
+        assertArrayEquals(copyOfRange(content, 90, 100), readAll(dataAccess.openRange(90, -1)));
+        assertArrayEquals(content, readAll(dataAccess.openRange(0, -1)));
+        // (to the end, at most)
+        assertArrayEquals(copyOfRange(content, 95, 100), readAll(dataAccess.openRange(95, 20)));
+        assertEquals(0, readAll(dataAccess.openRange(50, 0)).length);
+    }
+
+    @Test
+    public void testLazyInputStream() throws IOException {
+        S3AccessIO dataAccess = new S3AccessIO(dataFile, null, s3);
+        dataAccess.copyPath(tempFile(randomBytes(10)));
+
+        dataAccess.open();
+        // the stream replaced (by a thumbnail, a saved original...) before
+        // it is read: the object is never requested
+        dataAccess.closeInputStream();
+        dataAccess.setInputStream(new ByteArrayInputStream(new byte[1]));
+        assertEquals(0, s3.getObjectCount.get());
+    }
+
+    @Test
+    public void testAuxObjects() throws IOException {
+        S3AccessIO dataAccess = new S3AccessIO(dataFile, null, s3);
+        dataAccess.copyPath(tempFile("main".getBytes(StandardCharsets.UTF_8)));
+
+        assertFalse(dataAccess.isAuxObjectCached("thumb64"));
+
+        dataAccess.savePathAsAux(tempFile("thumbnail".getBytes(StandardCharsets.UTF_8)), "thumb64");
+        assertTrue(dataAccess.isAuxObjectCached("thumb64"));
+        assertEquals(9, dataAccess.getAuxObjectSize("thumb64"));
+        assertEquals("thumbnail", new String(readAll(dataAccess.openAuxInputStream("thumb64")), StandardCharsets.UTF_8));
+
+        WritableByteChannel auxChannel = (WritableByteChannel) dataAccess.openAuxChannel("img", DataAccessOption.WRITE_ACCESS);
+        OutputStream auxStream = Channels.newOutputStream(auxChannel);
+        auxStream.write("map".getBytes(StandardCharsets.UTF_8));
+        auxStream.close();
+
+        ReadableByteChannel readChannel = (ReadableByteChannel) dataAccess.openAuxChannel("img");
+        assertEquals("map", new String(readAll(Channels.newInputStream(readChannel)), StandardCharsets.UTF_8));
+
+        Path local = dataAccess.copyAuxToTempFile("img");
+        try {
+            assertEquals("map", new String(Files.readAllBytes(local), StandardCharsets.UTF_8));
+        } finally {
+            Files.delete(local);
+        }
+
+        dataAccess.savePathAsAux(tempFile(new byte[1]), "RData");
+        dataAccess.savePathAsAux(tempFile(new byte[1]), "img.thumb64");
+
+        // (more than one page of listing)
+        List<String> auxItemTags = dataAccess.listAuxObjects();
+        Collections.sort(auxItemTags);
+        assertEquals("[RData, img, img.thumb64, thumb64]", auxItemTags.toString());
+
+        dataAccess.deleteAuxObject("RData");
+        assertFalse(dataAccess.isAuxObjectCached("RData"));
+
+        dataAccess.deleteAllAuxObjects();
+        assertTrue(dataAccess.listAuxObjects().isEmpty());
+        // (but not the file itself)
+        assertTrue(Files.exists(s3.getObjectPath("dataverse-test", key)));
+    }
+
+    @Test
+    public void testBackupAsAuxAndDelete() throws IOException {
+        S3AccessIO dataAccess = new S3AccessIO(dataFile, null, s3);
+        dataAccess.copyPath(tempFile("original".getBytes(StandardCharsets.UTF_8)));
+
+        dataAccess.backupAsAux("orig");
+        assertFalse(Files.exists(s3.getObjectPath("dataverse-test", key)));
+        assertEquals("original", new String(Files.readAllBytes(s3.getObjectPath("dataverse-test", key + ".orig")), StandardCharsets.UTF_8));
+
+        dataAccess.copyPath(tempFile("tabular".getBytes(StandardCharsets.UTF_8)));
+        dataAccess.delete();
+        assertFalse(Files.exists(s3.getObjectPath("dataverse-test", key)));
+
+        try {
+            new S3AccessIO(dataFile, null, s3).open();
+            fail("opened a missing object");
+        } catch (FileNotFoundException expected) {
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoFileSystemPath() throws IOException {
+        new S3AccessIO(dataFile, null, s3).getFileSystemPath();
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidStorageIdentifier() throws IOException {
+        dataFile.setStorageIdentifier("s3://no-name");
+        new S3AccessIO(dataFile, null, s3).open();
+    }
+
+    @Test
+    public void testDataAccessDrivers() throws IOException {
+        assertEquals("s3", DataAccess.getStorageTag("s3://dataverse-test:14a5e4abf7d-e7eebfb6474d"));
+        assertEquals("file", DataAccess.getStorageTag("14a5e4abf7d-e7eebfb6474d"));
+
+        DataAccessDriver previous = DataAccess.registerDriver(new S3AccessIO.Driver(s3));
+        try {
+            DataFileIO dataAccess = DataAccess.createDataAccessObject(dataFile);
+            assertTrue(dataAccess instanceof S3AccessIO);
+            dataAccess.copyPath(tempFile(new byte[3]));
+            assertTrue(Files.exists(s3.getObjectPath("dataverse-test", key)));
+        } finally {
+            DataAccess.registerDriver(previous);
+        }
+
+        dataFile.setStorageIdentifier("swift://container:14a5e4abf7d-e7eebfb6474d");
+        try {
+            DataAccess.createDataAccessObject(dataFile);
+            fail("created an access object for an unknown storage driver");
+        } catch (IOException expected) {
+        }
+    }
+
+    private Path tempFile(byte[] content) throws IOException {
+        File file = folder.newFile("temp" + tempFiles++);
+        Files.write(file.toPath(), content);
+        return file.toPath();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] copyOfRange(byte[] content, int from, int to) {
+        return Arrays.copyOfRange(content, from, to);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Times {@link TabularFileTransposer} on a wide (many columns) and on a tall
+ * (many rows) generated tab file. Not run as part of the unit tests.
+ *
+ * usage: java edu.harvard.iq.dataverse.dataaccess.TabularFileTransposerBenchmark [memory budget in MB]
+ */
+public class TabularFileTransposerBenchmark {
+
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        long memoryBudget = TabularFileTransposer.DEFAULT_MEMORY_BUDGET;
+        if (args.length > 0) {
+            memoryBudget = Long.parseLong(args[0]) * 1024 * 1024;
+        }
+        run("wide", 3000, 5000, memoryBudget);
+        run("tall", 8, 2000000, memoryBudget);
+    }
+
+    private static void run(String name, int varcount, int casecount, long memoryBudget) throws IOException {
+        File tabfile = File.createTempFile("transposer-" + name, ".tab");
+        File image = new File(tabfile.getAbsolutePath() + ".90d");
+        try {
+            generate(tabfile, varcount, casecount);
+            double megabytes = tabfile.length() / (1024.0 * 1024.0);
+            TabularFileTransposer transposer = new TabularFileTransposer(memoryBudget);
+            // warm up
+            transposer.transpose(tabfile, image, varcount, casecount);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                transposer.transpose(tabfile, image, varcount, casecount);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            double seconds = best / 1e9;
+            System.out.println(String.format("%s: %d columns x %d rows, %.1f MB: best of %d %.3f s, %.1f MB/s",
+                    name, varcount, casecount, megabytes, RUNS, seconds, megabytes / seconds));
+        } finally {
+            tabfile.delete();
+            image.delete();
+        }
+    }
+
+    private static void generate(File tabfile, int varcount, int casecount) throws IOException {
+        Random random = new Random(varcount);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tabfile), StandardCharsets.UTF_8), 1024 * 1024)) {
+            for (int caseindex = 0; caseindex < casecount; caseindex++) {
+                for (int varindex = 0; varindex < varcount; varindex++) {
+                    if (varindex % 4 == 3) {
+                        out.write("\"value " + random.nextInt(1000) + "\"");
+                    } else {
+                        out.write(Double.toString(random.nextDouble() * 1000));
+                    }
+                    out.write(varindex < varcount - 1 ? '\t' : '\n');
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class TabularFileTransposerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private int tabfileCount = 0;
+
+    @Test
+    public void testTranspose() throws IOException {
+        String[][] values = {
+            {"1", "a", "3.5"},
+            {"", "b c", "NA"},
+            {"12345", "été", ""}};
+        assertImage(values, TabularFileTransposer.DEFAULT_MEMORY_BUDGET);
+    }
+
+    @Test
+    public void testSpillSegments() throws IOException {
+        Random random = new Random(1);
+        String[][] values = new String[200][17];
+        for (String[] row : values) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = Integer.toString(random.nextInt(), 36).substring(0, random.nextInt(6) + 1);
+            }
+        }
+        // a budget smaller than a line, and one that spills a few times
+        assertImage(values, 10);
+        assertImage(values, 4000);
+    }
+
+    @Test
+    public void testExtraValuesAndRowsAreIgnored() throws IOException {
+        File tabfile = write("a\tb\tc\nd\te\tf\ng\th\ti\n");
+        File image = folder.newFile("image");
+        new TabularFileTransposer().transpose(tabfile, image, 2, 2);
+        assertArrayEquals(expectedImage(new String[][]{{"a", "b"}, {"d", "e"}}), Files.readAllBytes(image.toPath()));
+    }
+
+    @Test
+    public void testNoNewLineAtTheEnd() throws IOException {
+        File tabfile = write("a\tb\nc\td");
+        File image = folder.newFile("image");
+        new TabularFileTransposer().transpose(tabfile, image, 2, 2);
+        assertArrayEquals(expectedImage(new String[][]{{"a", "b"}, {"c", "d"}}), Files.readAllBytes(image.toPath()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testFewerRows() throws IOException {
+        new TabularFileTransposer().transpose(write("a\tb\n"), new File(folder.getRoot(), "image"), 2, 2);
+    }
+
+    @Test
+    public void testFewerValues() throws IOException {
+        File image = new File(folder.getRoot(), "image");
+        try {
+            new TabularFileTransposer().transpose(write("a\tb\nc\n"), image, 2, 2);
+            fail("the second line is too short");
+        } catch (IOException expected) {
+        }
+        assertFalse(image.exists());
+    }
+
+    private void assertImage(String[][] values, long memoryBudget) throws IOException {
+        StringBuilder tab = new StringBuilder();
+        for (String[] row : values) {
+            for (int j = 0; j < row.length; j++) {
+                tab.append(row[j]).append(j < row.length - 1 ? "\t" : "\n");
+            }
+        }
+        File image = new File(folder.getRoot(), "image" + memoryBudget);
+        new TabularFileTransposer(memoryBudget).transpose(write(tab.toString()), image, values[0].length, values.length);
+        assertArrayEquals(expectedImage(values), Files.readAllBytes(image.toPath()));
+    }
+
+    private byte[] expectedImage(String[][] values) throws IOException {
+        int varcount = values[0].length;
+        ByteArrayOutputStream columns = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(varcount * 8);
+        for (int j = 0; j < varcount; j++) {
+            for (String[] row : values) {
+                columns.write((row[j] + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            header.putLong(varcount * 8 + columns.size());
+        }
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        image.write(header.array());
+        columns.writeTo(image);
+        return image.toByteArray();
+    }
+
+    private File write(String content) throws IOException {
+        File file = folder.newFile("tabfile" + (tabfileCount++) + ".tab");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+}
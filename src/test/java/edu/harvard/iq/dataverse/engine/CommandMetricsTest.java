@@ -0,0 +1,103 @@
+package edu.harvard.iq.dataverse.engine;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CommandMetricsTest {
+
+    CommandMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new CommandMetrics();
+    }
+
+    @Test
+    public void testRecord() {
+        metrics.record("CreateDatasetCommand", false, 1, 2000000, true, 30000000, false);
+        metrics.record("CreateDatasetCommand", false, 1, 4000000, true, 70000000, false);
+        metrics.record("CreateDatasetCommand", false, 1, 3000000, false, 0, true);
+
+        JsonObject stats = metrics.toJson().build().getJsonObject(0);
+        assertEquals("CreateDatasetCommand", stats.getString("command"));
+        assertEquals(3, stats.getInt("count"));
+        assertEquals(1, stats.getInt("failures"));
+        assertEquals(3, stats.getInt("permissionChecks"));
+        assertEquals(109, stats.getInt("totalMillis"));
+
+        JsonObject permission = stats.getJsonObject("permission");
+        assertEquals(3, permission.getInt("count"));
+        assertEquals(0, permission.getJsonObject("histogram").getInt("le1ms"));
+        assertEquals(3, permission.getJsonObject("histogram").getInt("le5ms"));
+
+        JsonObject execute = stats.getJsonObject("execute");
+        assertEquals(2, execute.getInt("count"));
+        assertEquals(100, execute.getInt("totalMillis"));
+        assertEquals(50.0, execute.getJsonNumber("meanMillis").doubleValue(), 0.001);
+        assertEquals(70.0, execute.getJsonNumber("maxMillis").doubleValue(), 0.001);
+        assertEquals(1, execute.getJsonObject("histogram").getInt("le50ms"));
+        assertEquals(2, execute.getJsonObject("histogram").getInt("le100ms"));
+    }
+
+    @Test
+    public void testNested() {
+        metrics.recordNestedSubmit("PublishDatasetCommand");
+        metrics.record("UpdateDatasetCommand", true, 1, 0, true, 1000000, false);
+        metrics.record("PublishDatasetCommand", false, 1, 0, true, 5000000, false);
+
+        JsonArray json = metrics.toJson().build();
+        // the most costly first
+        JsonObject publish = json.getJsonObject(0);
+        assertEquals("PublishDatasetCommand", publish.getString("command"));
+        assertEquals(1, publish.getInt("nestedSubmits"));
+        assertEquals(0, publish.getInt("nestedCount"));
+        JsonObject update = json.getJsonObject(1);
+        assertEquals(0, update.getInt("nestedSubmits"));
+        assertEquals(1, update.getInt("nestedCount"));
+    }
+
+    @Test
+    public void testClear() {
+        metrics.record("CreateDatasetCommand", false, 1, 0, true, 0, false);
+        metrics.clear();
+        assertTrue(metrics.toJson().build().isEmpty());
+    }
+
+    /**
+     * The metrics are read while the commands keep being recorded, and
+     * cleared.
+     */
+    @Test
+    public void testToJsonWhileRecording() throws InterruptedException {
+        final int commands = 50;
+        for (int i = 0; i < commands; i++) {
+            metrics.record("Command" + i, false, 1, 0, true, i, false);
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread recorder = new Thread() {
+            @Override
+            public void run() {
+                for (int n = 0; !done.get(); n++) {
+                    metrics.record("Command" + (n % commands), false, 1, 0, true, (n * 7919) % 1000, false);
+                    if (n % 10000 == 0) {
+                        metrics.clear();
+                    }
+                }
+            }
+        };
+        recorder.start();
+        try {
+            for (int i = 0; i < 200; i++) {
+                assertTrue(metrics.toJson().build().size() <= commands);
+            }
+        } finally {
+            done.set(true);
+            recorder.join();
+        }
+    }
+
+}
@@ -168,5 +168,10 @@ public class TestCommandContext implements CommandContext {
     public UserNotificationServiceBean notifications() {
         return null;
     }     
+
+    @Override
+    public PostPublishServiceBean postPublish() {
+        return null;
+    }
 	
 }
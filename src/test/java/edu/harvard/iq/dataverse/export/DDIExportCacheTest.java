@@ -0,0 +1,110 @@
+package edu.harvard.iq.dataverse.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class DDIExportCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File datasetDirectory;
+    Date lastUpdate = new Date(1466000000000L);
+    CountingWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        datasetDirectory = folder.newFolder("ABCDEF");
+        writer = new CountingWriter("<codeBook/>");
+    }
+
+    @Test
+    public void testExportName() {
+        assertEquals("export_ddi.doi_10.5072_FK2_ABCDEF.v12.1466000000000.xml",
+                DDIExportCache.getExportName("doi:10.5072/FK2/ABCDEF", 12L, lastUpdate));
+    }
+
+    @Test
+    public void testMissThenHit() throws IOException {
+        DDIExportCache exportCache = new DDIExportCache(datasetDirectory, "doi:10.5072/FK2/ABCDEF", 12L, lastUpdate);
+        assertNull(exportCache.find());
+
+        assertEquals("<codeBook/>", export(exportCache));
+        assertEquals(1, writer.count);
+        assertNotNull(exportCache.find());
+        // (no temporary file left behind)
+        assertEquals(1, datasetDirectory.list().length);
+
+        assertEquals("<codeBook/>", export(new DDIExportCache(datasetDirectory, "doi:10.5072/FK2/ABCDEF", 12L, lastUpdate)));
+        assertEquals(1, writer.count);
+    }
+
+    /**
+     * The invalidation: a new name, the older exports removed.
+     */
+    @Test
+    public void testNewVersionOrIdentifier() throws IOException {
+        export(new DDIExportCache(datasetDirectory, "doi:10.5072/FK2/ABCDEF", 12L, lastUpdate));
+
+        // the released version updated
+        DDIExportCache updated = new DDIExportCache(datasetDirectory, "doi:10.5072/FK2/ABCDEF", 12L, new Date(lastUpdate.getTime() + 1));
+        assertNull(updated.find());
+        writer.content = "<codeBook>updated</codeBook>";
+        assertEquals("<codeBook>updated</codeBook>", export(updated));
+        assertEquals(2, writer.count);
+
+        // a new identifier for the same version
+        DDIExportCache reidentified = new DDIExportCache(datasetDirectory, "doi:10.5072/FK2/GHIJKL", 12L, new Date(lastUpdate.getTime() + 1));
+        assertNull(reidentified.find());
+        writer.content = "<codeBook>GHIJKL</codeBook>";
+        assertEquals("<codeBook>GHIJKL</codeBook>", export(reidentified));
+        assertEquals(3, writer.count);
+
+        // only the latest is kept
+        assertEquals(Arrays.asList("export_ddi.doi_10.5072_FK2_GHIJKL.v12.1466000000001.xml"), Arrays.asList(datasetDirectory.list()));
+    }
+
+    @Test
+    public void testCannotSave() throws IOException {
+        // a file where the dataset directory should be
+        File notADirectory = folder.newFile("GHIJKL");
+        DDIExportCache exportCache = new DDIExportCache(notADirectory, "doi:10.5072/FK2/GHIJKL", 12L, lastUpdate);
+
+        assertEquals("<codeBook/>", export(exportCache));
+        assertEquals(1, writer.count);
+        assertNull(exportCache.find());
+    }
+
+    private String export(DDIExportCache exportCache) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        exportCache.export(writer, os);
+        return new String(os.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    static class CountingWriter implements DDIExportCache.ExportWriter {
+
+        String content;
+        int count;
+
+        CountingWriter(String content) {
+            this.content = content;
+        }
+
+        @Override
+        public void write(OutputStream os) throws IOException {
+            count++;
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+}
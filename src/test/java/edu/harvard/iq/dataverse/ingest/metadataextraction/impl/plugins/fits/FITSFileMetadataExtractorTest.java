@@ -0,0 +1,208 @@
+package edu.harvard.iq.dataverse.ingest.metadataextraction.impl.plugins.fits;
+
+import edu.harvard.iq.dataverse.ingest.metadataextraction.FileMetadataIngest;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the extraction of the FITS metadata from the headers, with the data
+ * units skipped.
+ */
+public class FITSFileMetadataExtractorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String[] PRIMARY_HEADER = {
+        "SIMPLE  =                    T",
+        "BITPIX  =                  -32",
+        "NAXIS   =                    2",
+        "NAXIS1  =                  100",
+        "NAXIS2  =                   50",
+        "TELESCOP= 'HST     '",
+        "INSTRUME= 'WFPC2   '",
+        "OBJECT  = 'NGC 6543'",
+        "DATE-OBS= '2014-05-07T14:52:01'",
+        "EXPTIME =                 30.0",
+        "CRVAL1  =                 10.5",
+        "CRVAL2  =                -20.0",
+        "FILTER  = 'F555W   '"
+    };
+
+    private static final String[] TABLE_HEADER = {
+        "XTENSION= 'BINTABLE'",
+        "BITPIX  =                    8",
+        "NAXIS   =                    2",
+        "NAXIS1  =                    8",
+        "NAXIS2  =                   10",
+        "PCOUNT  =                    0",
+        "GCOUNT  =                    1",
+        "TFIELDS =                    1",
+        "TTYPE1  = 'FLUX    '",
+        "TFORM1  = 'D       '",
+        "DATE-OBS= '2014-05-08T00:00:00'"
+    };
+
+    @Test
+    public void testIngestFile() throws IOException {
+        File fits = folder.newFile("image.fits");
+        try (OutputStream out = new FileOutputStream(fits)) {
+            writeHdu(out, PRIMARY_HEADER, 100 * 50 * 4);
+            writeHdu(out, TABLE_HEADER, 8 * 10);
+        }
+
+        assertMetadata(new FITSFileMetadataExtractor().ingest(fits));
+        try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(fits))) {
+            assertMetadata(new FITSFileMetadataExtractor().ingest(stream));
+        }
+    }
+
+    @Test
+    public void testIngestGzippedFile() throws IOException {
+        File fits = folder.newFile("image.fits.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(fits))) {
+            writeHdu(out, PRIMARY_HEADER, 100 * 50 * 4);
+            writeHdu(out, TABLE_HEADER, 8 * 10);
+        }
+
+        assertMetadata(new FITSFileMetadataExtractor().ingest(fits));
+        try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(fits))) {
+            assertMetadata(new FITSFileMetadataExtractor().ingest(stream));
+        }
+    }
+
+    /**
+     * A (sparse) file with a 4 GB data cube in the primary HDU; the header
+     * of the extension after it is found by seeking past the cube.
+     */
+    @Test
+    public void testDataUnitIsSkipped() throws IOException {
+        File fits = folder.newFile("cube.fits");
+        long cubeSize = 1024L * 1024L * 1024L * 4;
+        try (RandomAccessFile file = new RandomAccessFile(fits, "rw")) {
+            file.write(headerBlocks(
+                    "SIMPLE  =                    T",
+                    "BITPIX  =                  -32",
+                    "NAXIS   =                    3",
+                    "NAXIS1  =                 1024",
+                    "NAXIS2  =                 1024",
+                    "NAXIS3  =                 1024",
+                    "TELESCOP= 'ALMA    '"));
+            file.seek(file.length() + paddedSize(cubeSize));
+            file.write(headerBlocks(
+                    "XTENSION= 'IMAGE   '",
+                    "BITPIX  =                   16",
+                    "NAXIS   =                    0",
+                    "PCOUNT  =                    0",
+                    "GCOUNT  =                    1",
+                    "INSTRUME= 'BAND 3  '"));
+        }
+
+        long start = System.currentTimeMillis();
+        FileMetadataIngest ingest = new FITSFileMetadataExtractor().ingest(fits);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+
+        Map<String, Set<String>> metadata = ingest.getMetadataMap();
+        assertEquals(set("ALMA"), metadata.get("astroFacility"));
+        assertEquals(set("BAND 3"), metadata.get("astroInstrument"));
+        assertEquals(set("Cube"), metadata.get("astroType"));
+    }
+
+    @Test
+    public void testTruncatedDataUnit() throws IOException {
+        File fits = folder.newFile("truncated.fits");
+        try (OutputStream out = new FileOutputStream(fits)) {
+            writeHdu(out, PRIMARY_HEADER, 100 * 50 * 4);
+            out.write(headerBlocks(TABLE_HEADER));
+            // (and only half of the table)
+            out.write(new byte[40]);
+        }
+
+        FITSHeaderScanner scanner = new FITSHeaderScanner(fits);
+        try {
+            assertNotNull(scanner.nextHeader());
+            assertEquals(100 * 50 * 4, scanner.getDataSize());
+            assertNotNull(scanner.nextHeader());
+            assertEquals(80, scanner.getDataSize());
+            scanner.nextHeader();
+            fail("The data unit of the table is incomplete.");
+        } catch (IOException expected) {
+        } finally {
+            scanner.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotFits() throws IOException {
+        File notFits = folder.newFile("notfits.txt");
+        try (OutputStream out = new FileOutputStream(notFits)) {
+            out.write(new byte[FITSHeaderScanner.BLOCK_SIZE * 2]);
+        }
+        new FITSFileMetadataExtractor().ingest(notFits);
+    }
+
+    private static void assertMetadata(FileMetadataIngest ingest) {
+        Map<String, Set<String>> metadata = ingest.getMetadataMap();
+        assertEquals("astrophysics", ingest.getMetadataBlockName());
+        assertEquals(set("Image"), metadata.get("astroType"));
+        assertEquals(set("HST"), metadata.get("astroFacility"));
+        assertEquals(set("WFPC2"), metadata.get("astroInstrument"));
+        assertEquals(set("NGC 6543"), metadata.get("astroObject"));
+        assertEquals(set("F555W"), metadata.get("coverage.Spectral.Bandpass"));
+        assertEquals(set("(10.5 -20.0)"), metadata.get("coverage.Spatial"));
+        assertEquals(set("2014-05-07T14:52:01"), metadata.get("coverage.Temporal.StartTime"));
+        assertEquals(set("2014-05-08T00:00:00"), metadata.get("coverage.Temporal.StopTime"));
+        assertTrue(ingest.getMetadataSummary().contains("2 HDUs total"));
+        assertTrue(ingest.getMetadataSummary().contains("TELESCOP"));
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static long paddedSize(long dataSize) {
+        long blocks = (dataSize + FITSHeaderScanner.BLOCK_SIZE - 1) / FITSHeaderScanner.BLOCK_SIZE;
+        return blocks * FITSHeaderScanner.BLOCK_SIZE;
+    }
+
+    private static void writeHdu(OutputStream out, String[] cards, int dataSize) throws IOException {
+        out.write(headerBlocks(cards));
+        out.write(new byte[(int) paddedSize(dataSize)]);
+    }
+
+    /**
+     * The cards, with an END card, padded with spaces to fill 2880 byte blocks.
+     */
+    private static byte[] headerBlocks(String... cards) {
+        StringBuilder header = new StringBuilder();
+        for (String card : cards) {
+            header.append(pad(card, FITSHeaderScanner.CARD_SIZE));
+        }
+        header.append(pad("END", FITSHeaderScanner.CARD_SIZE));
+        int blocks = (header.length() + FITSHeaderScanner.BLOCK_SIZE - 1) / FITSHeaderScanner.BLOCK_SIZE;
+        return pad(header.toString(), blocks * FITSHeaderScanner.BLOCK_SIZE).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String pad(String s, int length) {
+        StringBuilder padded = new StringBuilder(s);
+        while (padded.length() < length) {
+            padded.append(' ');
+        }
+        return padded.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.rdata;
+
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import static edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.rdata.RDataFileGenerator.*;
+
+/**
+ * Times the reading, in Java, of a generated workspace, with a data frame
+ * of numeric, integer, logical, factor and character columns. Not run as
+ * part of the unit tests.
+ *
+ * usage: java edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.rdata.RDATAFileReaderBenchmark [rows] [gzip|bzip2|xz|none]
+ */
+public class RDATAFileReaderBenchmark {
+
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int rows = 1000000;
+        String compression = "gzip";
+        if (args.length > 0) {
+            rows = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            compression = args[1];
+        }
+
+        File rData = File.createTempFile("benchmark-", ".RData");
+        try {
+            generate(rData, rows, compression);
+            double megabytes = rData.length() / (1024.0 * 1024.0);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                System.gc();
+                long start = System.nanoTime();
+                RDATAFileReader reader = new RDATAFileReader(new RDATAFileReaderSpi());
+                TabularDataIngest ingest = reader.read(new BufferedInputStream(new FileInputStream(rData)), null);
+                best = Math.min(best, System.nanoTime() - start);
+                ingest.getTabDelimitedFile().delete();
+            }
+            double seconds = best / 1e9;
+            System.out.println(String.format("%d rows x 5 columns, %s, %.1f MB: best of %d %.3f s, %.0f rows/s",
+                    rows, compression, megabytes, RUNS, seconds, rows / seconds));
+        } finally {
+            rData.delete();
+        }
+    }
+
+    private static void generate(File rData, int rows, String compression) throws IOException {
+        Random random = new Random(rows);
+        double[] numbers = new double[rows];
+        int[] integers = new int[rows];
+        int[] logicals = new int[rows];
+        int[] codes = new int[rows];
+        String[] strings = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            numbers[i] = random.nextDouble() * 1000;
+            integers[i] = random.nextInt(100000);
+            logicals[i] = random.nextInt(2);
+            codes[i] = 1 + random.nextInt(3);
+            strings[i] = "label " + i;
+        }
+        Map<String, Value> objects = new LinkedHashMap<>();
+        objects.put("df", dataFrame(new String[]{"num", "int", "lgl", "fct", "chr"},
+                real(numbers), integer(integers), logical(logicals),
+                factor(codes, false, "a", "b", "c"), string(strings)));
+        writeWorkspace(rData, compression, 2, objects);
+    }
+
+}
@@ -0,0 +1,150 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.rdata;
+
+import edu.harvard.iq.dataverse.DataTable;
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.rdata.RDataFileGenerator.*;
+
+/**
+ * Tests the reading of RData files in Java; none of these need Rserve.
+ */
+public class RDATAFileReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    int workspaces;
+
+    @Test
+    public void testRead() throws IOException {
+        Value dataFrame = dataFrame(
+                new String[]{"num", "int", "lgl", "chr", "fct", "day", "time", "localtime"},
+                real(1.5, NA_REAL, Double.NaN, Double.NEGATIVE_INFINITY),
+                integer(1, NA_INTEGER, -3, 4),
+                logical(1, 0, NA_INTEGER, 1),
+                string("a \"b\"", null, "", "tab\there"),
+                factor(new int[]{2, 1, NA_INTEGER, 3}, true, "low", "mid", "high"),
+                date(15803, 0, NA_REAL, -1),
+                posixct(null, 1365426863, 1365426863.25, NA_REAL, 0),
+                posixct("America/New_York", 1365426863, 1365426863.5, NA_REAL, 0));
+        Map<String, Value> objects = new LinkedHashMap<>();
+        objects.put("df", dataFrame);
+
+        DataTable dataTable = assertTabFile(workspace(2, "gzip", objects),
+                "1.5\t1\t1\t\"a \\\"b\\\"\"\t\"mid\"\t2013-04-08\t2013-04-08 13:14:23 UTC\t2013-04-08 09:14:23 America/New_York",
+                "\t\t0\t\t\"low\"\t1970-01-01\t2013-04-08 13:14:23.250 UTC\t2013-04-08 09:14:23.500 America/New_York",
+                "NaN\t-3\t\t\"\"\t\t\t\t",
+                "-Inf\t4\t1\t\"tab\\there\"\t\"high\"\t1969-12-31\t1970-01-01 00:00:00 UTC\t1969-12-31 19:00:00 America/New_York");
+
+        List<DataVariable> variables = dataTable.getDataVariables();
+        assertEquals("num", variables.get(0).getName());
+        assertTrue(variables.get(0).isTypeNumeric() && variables.get(0).isIntervalContinuous());
+        assertTrue(variables.get(1).isTypeNumeric() && variables.get(1).isIntervalDiscrete());
+        assertTrue(variables.get(2).isTypeNumeric());
+        assertEquals("Boolean", variables.get(2).getFormatCategory());
+        assertEquals(2, variables.get(2).getCategories().size());
+        assertTrue(variables.get(3).isTypeCharacter());
+
+        DataVariable factor = variables.get(4);
+        assertTrue(factor.isTypeCharacter());
+        assertTrue(factor.isOrderedCategorical());
+        assertEquals(3, factor.getCategories().size());
+        assertEquals("low", factor.getCategories().get(0).getValue());
+        assertEquals(3, factor.getCategories().get(2).getOrder());
+
+        assertEquals("date", variables.get(5).getFormatCategory());
+        assertEquals("yyyy-MM-dd", variables.get(5).getFormat());
+        assertEquals("time", variables.get(6).getFormatCategory());
+        assertEquals("yyyy-MM-dd HH:mm:ss.SSS z", variables.get(7).getFormat());
+    }
+
+    /**
+     * The first data frame by name is the one ingested; the hidden ones,
+     * and the other objects, are skipped.
+     */
+    @Test
+    public void testWorkspaceOfSeveralObjects() throws IOException {
+        Map<String, Value> objects = new LinkedHashMap<>();
+        objects.put("f", function());
+        objects.put("zeta", dataFrame(new String[]{"z"}, integer(9)));
+        objects.put(".hidden", dataFrame(new String[]{"h"}, integer(8)));
+        objects.put("g", function());
+        objects.put("Beta", dataFrame(new String[]{"id", "name"}, compactIntegerSequence(3), string("x", "y", "z")));
+        objects.put("list", list(real(1), string("a")).attribute("names", string("one", "two")));
+
+        for (String compression : new String[]{"none", "gzip", "bzip2", "xz"}) {
+            DataTable dataTable = assertTabFile(workspace(3, compression, objects),
+                    "1\t\"x\"",
+                    "2\t\"y\"",
+                    "3\t\"z\"");
+            assertEquals("id", dataTable.getDataVariables().get(0).getName());
+        }
+    }
+
+    @Test
+    public void testReadRds() throws IOException {
+        File rds = folder.newFile("data.rds");
+        writeRds(rds, "gzip", 3, dataFrame(new String[]{"\u00e9t\u00e9"}, real(0.25)));
+        DataTable dataTable = assertTabFile(rds, "0.25");
+        assertEquals("\u00e9t\u00e9", dataTable.getDataVariables().get(0).getName());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNoDataFrame() throws IOException {
+        Map<String, Value> objects = new LinkedHashMap<>();
+        objects.put("x", real(1, 2, 3));
+        assertTabFile(workspace(2, "gzip", objects));
+    }
+
+    /**
+     * The columns that cannot be read in Java are reported as such, for the
+     * file to be sent to Rserve instead.
+     */
+    @Test
+    public void testUnsupportedColumn() throws IOException {
+        Map<String, Value> objects = new LinkedHashMap<>();
+        objects.put("df", dataFrame(new String[]{"n", "z"}, real(1), complex(1, 2)));
+        File workspace = workspace(2, "gzip", objects);
+
+        RDataParser parser = new RDataParser(null);
+        try (InputStream in = new FileInputStream(workspace)) {
+            new RDataFrame(parser.readDataFrame(in));
+            fail("A complex column is not supported.");
+        } catch (UnsupportedRDataException ex) {
+            assertTrue(parser.isWorkspace());
+        }
+    }
+
+    private File workspace(int version, String compression, Map<String, Value> objects) throws IOException {
+        File file = folder.newFile("workspace" + workspaces++ + ".RData");
+        writeWorkspace(file, compression, version, objects);
+        return file;
+    }
+
+    private DataTable assertTabFile(File rDataFile, String... expectedLines) throws IOException {
+        RDATAFileReader reader = new RDATAFileReader(new RDATAFileReaderSpi());
+        TabularDataIngest ingest = reader.read(new BufferedInputStream(new FileInputStream(rDataFile)), null);
+
+        DataTable dataTable = ingest.getDataTable();
+        assertEquals(expectedLines.length, dataTable.getCaseQuantity().intValue());
+        List<String> lines = Files.readAllLines(ingest.getTabDelimitedFile().toPath(), StandardCharsets.UTF_8);
+        assertArrayEquals(expectedLines, lines.toArray());
+        ingest.getTabDelimitedFile().delete();
+        return dataTable;
+    }
+
+}
@@ -0,0 +1,334 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.rdata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+
+/**
+ * Writes R data files - workspaces, as save() does, and single objects, as
+ * saveRDS() does - in the XDR format, for the tests of the RData ingest.
+ * The objects are built with the static methods, e.g.
+ * {@code dataFrame(new String[]{"x"}, real(1.5, NA_REAL))}.
+ */
+public class RDataFileGenerator {
+
+    public static final int NA_INTEGER = Integer.MIN_VALUE;
+    public static final double NA_REAL = Double.longBitsToDouble(0x7FF00000000007A2L);
+
+    private static final int REFSXP = 255;
+    private static final int NILVALUE_SXP = 254;
+    private static final int GLOBALENV_SXP = 253;
+    private static final int MISSINGARG_SXP = 251;
+    private static final int ALTREP_SXP = 238;
+    // (not an R type: the compact integer sequences, written as ALTREP)
+    private static final int ALTREP_COMPACT_INTSEQ = -1;
+
+    private static final int UTF8_MASK = 1 << 3;
+
+    /**
+     * An R object to be written; its type, its data (an int[], double[],
+     * String[] or Value[]), and its attributes.
+     */
+    public static class Value {
+
+        final int type;
+        final Object data;
+        final Map<String, Value> attributes = new LinkedHashMap<>();
+
+        Value(int type, Object data) {
+            this.type = type;
+            this.data = data;
+        }
+
+        public Value attribute(String name, Value value) {
+            attributes.put(name, value);
+            return this;
+        }
+    }
+
+    public static Value real(double... values) {
+        return new Value(RObject.REALSXP, values);
+    }
+
+    public static Value integer(int... values) {
+        return new Value(RObject.INTSXP, values);
+    }
+
+    public static Value logical(int... values) {
+        return new Value(RObject.LGLSXP, values);
+    }
+
+    public static Value string(String... values) {
+        return new Value(RObject.STRSXP, values);
+    }
+
+    public static Value complex(double... realsAndImaginaries) {
+        return new Value(RObject.CPLXSXP, realsAndImaginaries);
+    }
+
+    public static Value list(Value... elements) {
+        return new Value(RObject.VECSXP, elements);
+    }
+
+    public static Value factor(int[] codes, boolean ordered, String... levels) {
+        return integer(codes).attribute("levels", string(levels))
+                .attribute("class", ordered ? string("ordered", "factor") : string("factor"));
+    }
+
+    public static Value date(double... days) {
+        return real(days).attribute("class", string("Date"));
+    }
+
+    public static Value posixct(String timeZone, double... seconds) {
+        Value value = real(seconds);
+        if (timeZone != null) {
+            value.attribute("tzone", string(timeZone));
+        }
+        return value.attribute("class", string("POSIXct", "POSIXt"));
+    }
+
+    /**
+     * 1:n, as R 3.5 and later store it: as a compact sequence (an ALTREP
+     * object); for version 3 files only.
+     */
+    public static Value compactIntegerSequence(int n) {
+        return new Value(ALTREP_COMPACT_INTSEQ, new double[]{n, 1, 1});
+    }
+
+    /**
+     * A function(x) x + 1, with an environment of its own.
+     */
+    public static Value function() {
+        return new Value(RObject.CLOSXP, null);
+    }
+
+    public static Value dataFrame(String[] names, Value... columns) {
+        int rows = columns.length == 0 ? 0 : length(columns[0]);
+        return list(columns).attribute("names", string(names))
+                .attribute("row.names", integer(NA_INTEGER, -rows))
+                .attribute("class", string("data.frame"));
+    }
+
+    /**
+     * @param compression "gzip", "bzip2", "xz" or "none".
+     */
+    public static void writeWorkspace(File file, String compression, int version, Map<String, Value> objects) throws IOException {
+        try (DataOutputStream out = open(file, compression)) {
+            out.write(("RDX" + version + "\n").getBytes(StandardCharsets.US_ASCII));
+            RDataFileGenerator generator = new RDataFileGenerator(out);
+            generator.writeHeader(version);
+            for (Map.Entry<String, Value> object : objects.entrySet()) {
+                generator.startCell(object.getKey());
+                generator.write(object.getValue());
+            }
+            out.writeInt(NILVALUE_SXP);
+        }
+    }
+
+    public static void writeRds(File file, String compression, int version, Value value) throws IOException {
+        try (DataOutputStream out = open(file, compression)) {
+            RDataFileGenerator generator = new RDataFileGenerator(out);
+            generator.writeHeader(version);
+            generator.write(value);
+        }
+    }
+
+    private final DataOutputStream out;
+    // the reference table: symbols and environments, by name
+    private final Map<String, Integer> references = new HashMap<>();
+
+    private RDataFileGenerator(DataOutputStream out) {
+        this.out = out;
+    }
+
+    private static DataOutputStream open(File file, String compression) throws IOException {
+        OutputStream stream = new BufferedOutputStream(new FileOutputStream(file));
+        switch (compression) {
+            case "gzip":
+                stream = new GZIPOutputStream(stream);
+                break;
+            case "bzip2":
+                stream = new BZip2CompressorOutputStream(stream);
+                break;
+            case "xz":
+                stream = new XZCompressorOutputStream(stream);
+                break;
+        }
+        return new DataOutputStream(stream);
+    }
+
+    private void writeHeader(int version) throws IOException {
+        out.write("X\n".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(version);
+        // written by R 3.5.0, readable by R 2.3.0 (version 2) or 3.5.0
+        out.writeInt(0x030500);
+        out.writeInt(version == 2 ? 0x020300 : 0x030500);
+        if (version == 3) {
+            byte[] encoding = "UTF-8".getBytes(StandardCharsets.US_ASCII);
+            out.writeInt(encoding.length);
+            out.write(encoding);
+        }
+    }
+
+    private void write(Value value) throws IOException {
+        if (value.type == ALTREP_COMPACT_INTSEQ) {
+            out.writeInt(ALTREP_SXP);
+            // the ALTREP class: pairlist(compact_intseq, base, INTSXP);
+            // the state: c(length, first, increment); no attributes
+            startCell(null);
+            writeSymbol("compact_intseq");
+            startCell(null);
+            writeSymbol("base");
+            startCell(null);
+            write(integer(RObject.INTSXP));
+            out.writeInt(NILVALUE_SXP);
+            write(real((double[]) value.data));
+            out.writeInt(NILVALUE_SXP);
+            return;
+        }
+        if (value.type == RObject.CLOSXP) {
+            writeFunction();
+            return;
+        }
+
+        boolean hasAttributes = !value.attributes.isEmpty();
+        int objectFlag = value.attributes.containsKey("class") ? 1 << 8 : 0;
+        out.writeInt(flags(value.type, hasAttributes, false) | objectFlag);
+        switch (value.type) {
+            case RObject.LGLSXP:
+            case RObject.INTSXP:
+                int[] ints = (int[]) value.data;
+                out.writeInt(ints.length);
+                for (int i : ints) {
+                    out.writeInt(i);
+                }
+                break;
+            case RObject.REALSXP:
+            case RObject.CPLXSXP:
+                double[] doubles = (double[]) value.data;
+                out.writeInt(value.type == RObject.CPLXSXP ? doubles.length / 2 : doubles.length);
+                for (double d : doubles) {
+                    // (raw: writeDouble() would turn NA_REAL into a plain NaN)
+                    out.writeLong(Double.doubleToRawLongBits(d));
+                }
+                break;
+            case RObject.STRSXP:
+                String[] strings = (String[]) value.data;
+                out.writeInt(strings.length);
+                for (String s : strings) {
+                    writeString(s);
+                }
+                break;
+            case RObject.VECSXP:
+                Value[] elements = (Value[]) value.data;
+                out.writeInt(elements.length);
+                for (Value element : elements) {
+                    write(element);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Type " + value.type);
+        }
+        if (hasAttributes) {
+            for (Map.Entry<String, Value> attribute : value.attributes.entrySet()) {
+                startCell(attribute.getKey());
+                write(attribute.getValue());
+            }
+            out.writeInt(NILVALUE_SXP);
+        }
+    }
+
+    /**
+     * function(x) x + 1, as a closure is serialized: its environment (as the
+     * tag), its formals, and its body. All the functions share one
+     * environment (with a y = 2 in it), which is written out the first
+     * time only, and referenced after that.
+     */
+    private void writeFunction() throws IOException {
+        out.writeInt(flags(RObject.CLOSXP, false, true));
+        Integer environment = references.get("<environment>");
+        if (environment != null) {
+            out.writeInt((environment << 8) | REFSXP);
+        } else {
+            out.writeInt(RObject.ENVSXP);
+            // not locked
+            out.writeInt(0);
+            references.put("<environment>", references.size() + 1);
+            // the enclosure, the frame, the hash table and the attributes
+            out.writeInt(GLOBALENV_SXP);
+            startCell("y");
+            write(real(2));
+            out.writeInt(NILVALUE_SXP);
+            out.writeInt(NILVALUE_SXP);
+            out.writeInt(NILVALUE_SXP);
+        }
+        // the formals: pairlist(x = <missing argument>)
+        startCell("x");
+        out.writeInt(MISSINGARG_SXP);
+        out.writeInt(NILVALUE_SXP);
+        // the body: `+`(x, 1)
+        out.writeInt(RObject.LANGSXP);
+        writeSymbol("+");
+        startCell(null);
+        writeSymbol("x");
+        startCell(null);
+        write(real(1));
+        out.writeInt(NILVALUE_SXP);
+    }
+
+    private void startCell(String tag) throws IOException {
+        out.writeInt(flags(RObject.LISTSXP, false, tag != null));
+        if (tag != null) {
+            writeSymbol(tag);
+        }
+    }
+
+    private void writeSymbol(String name) throws IOException {
+        Integer reference = references.get(name);
+        if (reference != null) {
+            out.writeInt((reference << 8) | REFSXP);
+            return;
+        }
+        out.writeInt(RObject.SYMSXP);
+        writeString(name);
+        references.put(name, references.size() + 1);
+    }
+
+    private void writeString(String s) throws IOException {
+        if (s == null) {
+            out.writeInt(RObject.CHARSXP);
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(RObject.CHARSXP | (UTF8_MASK << 12));
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int flags(int type, boolean hasAttributes, boolean hasTag) {
+        return type | (hasAttributes ? 1 << 9 : 0) | (hasTag ? 1 << 10 : 0);
+    }
+
+    private static int length(Value value) {
+        if (value.type == ALTREP_COMPACT_INTSEQ) {
+            return (int) ((double[]) value.data)[0];
+        } else if (value.data instanceof int[]) {
+            return ((int[]) value.data).length;
+        } else if (value.data instanceof double[]) {
+            return ((double[]) value.data).length / (value.type == RObject.CPLXSXP ? 2 : 1);
+        }
+        return ((Object[]) value.data).length;
+    }
+
+}
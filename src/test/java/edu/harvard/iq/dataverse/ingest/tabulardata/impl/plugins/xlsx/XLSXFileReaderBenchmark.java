@@ -0,0 +1,94 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.xlsx;
+
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Times {@link XLSXFileReader} on generated workbooks: one with a unique
+ * string in every row (i.e. as many shared strings as rows), and one of
+ * numbers only. Not run as part of the unit tests.
+ *
+ * usage: java edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.xlsx.XLSXFileReaderBenchmark [rows] [shared strings memory budget in MB]
+ */
+public class XLSXFileReaderBenchmark {
+
+    private static final int RUNS = 3;
+    private static final int COLUMNS = 6;
+
+    public static void main(String[] args) throws IOException {
+        int rows = 1000000;
+        long memoryBudget = SharedStringsStore.DEFAULT_MEMORY_BUDGET;
+        if (args.length > 0) {
+            rows = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            memoryBudget = Long.parseLong(args[1]) * 1024 * 1024;
+        }
+        run("unique strings", rows, true, memoryBudget);
+        run("numbers", rows, false, memoryBudget);
+    }
+
+    private static void run(String name, int rows, boolean uniqueStrings, long memoryBudget) throws IOException {
+        File xlsx = File.createTempFile("benchmark-", ".xlsx");
+        try {
+            generate(xlsx, rows, uniqueStrings);
+            double megabytes = xlsx.length() / (1024.0 * 1024.0);
+            XLSXFileReader reader = new XLSXFileReader(new XLSXFileReaderSpi());
+            reader.setSharedStringsMemoryBudget(memoryBudget);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                System.gc();
+                long start = System.nanoTime();
+                TabularDataIngest ingest = reader.read(new BufferedInputStream(new FileInputStream(xlsx)), null);
+                best = Math.min(best, System.nanoTime() - start);
+                ingest.getTabDelimitedFile().delete();
+            }
+            double seconds = best / 1e9;
+            Runtime runtime = Runtime.getRuntime();
+            System.out.println(String.format("%s: %d rows x %d columns, %.1f MB: best of %d %.3f s, %.0f rows/s (heap in use %d MB)",
+                    name, rows, COLUMNS, megabytes, RUNS, seconds, rows / seconds,
+                    (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024)));
+        } finally {
+            xlsx.delete();
+        }
+    }
+
+    private static void generate(File xlsx, int rows, boolean uniqueStrings) throws IOException {
+        Random random = new Random(rows);
+        try (ZipOutputStream zip = XLSXWorkbookGenerator.start(xlsx)) {
+            Writer sheet = XLSXWorkbookGenerator.startSheet(zip);
+            XLSXWorkbookGenerator.startRow(sheet, 0, COLUMNS);
+            for (int c = 0; c < COLUMNS; c++) {
+                XLSXWorkbookGenerator.inlineStringCell(sheet, c, 0, "var" + c);
+            }
+            XLSXWorkbookGenerator.endRow(sheet);
+            for (int r = 1; r <= rows; r++) {
+                XLSXWorkbookGenerator.startRow(sheet, r, COLUMNS);
+                for (int c = 0; c < COLUMNS; c++) {
+                    if (uniqueStrings && c == 0) {
+                        // shared string r - 1, "label <r - 1>"
+                        XLSXWorkbookGenerator.sharedStringCell(sheet, c, r, r - 1);
+                    } else {
+                        XLSXWorkbookGenerator.numberCell(sheet, c, r, Double.toString(random.nextDouble() * 1000));
+                    }
+                }
+                XLSXWorkbookGenerator.endRow(sheet);
+            }
+            XLSXWorkbookGenerator.endSheet(sheet, zip);
+
+            int count = uniqueStrings ? rows : 0;
+            Writer sst = XLSXWorkbookGenerator.startSharedStrings(zip, count);
+            for (int i = 0; i < count; i++) {
+                XLSXWorkbookGenerator.sharedString(sst, "label " + i);
+            }
+            XLSXWorkbookGenerator.endSharedStrings(sst, zip);
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.xlsx;
+
+import edu.harvard.iq.dataverse.DataTable;
+import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class XLSXFileReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    int workbooks;
+
+    @Test
+    public void testRead() throws IOException {
+        Object[][] rows = {
+            {"id", "name", "score"},
+            {1, "alpha", 3.5},
+            {2, "be\"ta", "NA"},
+            {3, null, 7}};
+        assertTabFile(rows, false, SharedStringsStore.DEFAULT_MEMORY_BUDGET,
+                "1.0\t\"alpha\"\t3.5",
+                "2.0\t\"be\\\"ta\"\t",
+                "3.0\t\"\"\t7.0");
+    }
+
+    @Test
+    public void testTypeChangeAfterNumericValuesWereWritten() throws IOException {
+        // the "code" column only turns out to be a string one on the 3rd row
+        Object[][] rows = {
+            {"code", "n"},
+            {"007", 1},
+            {"12", 2},
+            {"x1", 3}};
+        DataTable dataTable = assertTabFile(rows, false, SharedStringsStore.DEFAULT_MEMORY_BUDGET,
+                "\"007\"\t1.0",
+                "\"12\"\t2.0",
+                "\"x1\"\t3.0");
+        assertTrue(dataTable.getDataVariables().get(0).isTypeCharacter());
+        assertTrue(dataTable.getDataVariables().get(1).isTypeNumeric());
+    }
+
+    @Test
+    public void testSpilledSharedStringsAndInlineStrings() throws IOException {
+        Object[][] rows = {
+            {"a", "b"},
+            {"x\ty", "z"},
+            {"\"quoted\"", "w"}};
+        String[] expected = {
+            "\"x\\ty\"\t\"z\"",
+            "\"quoted\"\t\"w\""};
+        // a budget of 0 spills every shared string to disk
+        assertTabFile(rows, false, 0, expected);
+        assertTabFile(rows, true, SharedStringsStore.DEFAULT_MEMORY_BUDGET, expected);
+    }
+
+    @Test
+    public void testBackslashes() throws IOException {
+        // a literal back slash is escaped, so it is not read back as a tab
+        Object[][] rows = {
+            {"path", "n"},
+            {"C:\\temp", 1},
+            {"a\\tb\tc", 2}};
+        assertTabFile(rows, false, SharedStringsStore.DEFAULT_MEMORY_BUDGET,
+                "\"C:\\\\temp\"\t1.0",
+                "\"a\\\\tb\\tc\"\t2.0");
+    }
+
+    @Test(expected = IOException.class)
+    public void testHeaderOnly() throws IOException {
+        assertTabFile(new Object[][]{{"a", "b"}}, false, SharedStringsStore.DEFAULT_MEMORY_BUDGET);
+    }
+
+    @Test
+    public void testSharedStringsStore() throws Exception {
+        String xml = "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+                + "<si><t>plain</t></si>"
+                + "<si><r><t>rich </t></r><r><t>text</t></r><rPh><t>phonetic</t></rPh></si>"
+                + "<si><t>line_x000D_break</t></si>"
+                + "<si><t>\u00e9t\u00e9</t></si>"
+                + "</sst>";
+        for (long budget : new long[]{SharedStringsStore.DEFAULT_MEMORY_BUDGET, 0}) {
+            try (SharedStringsStore store = SharedStringsStore.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), budget)) {
+                assertEquals(4, store.size());
+                assertEquals(budget == 0, store.isSpilled());
+                assertEquals("rich text", store.get(1));
+                assertEquals("plain", store.get(0));
+                assertEquals("line\rbreak", store.get(2));
+                assertEquals("\u00e9t\u00e9", store.get(3));
+                // again, from the cache of the recently used ones
+                assertEquals("rich text", store.get(1));
+            }
+        }
+    }
+
+    private DataTable assertTabFile(Object[][] rows, boolean inlineStrings, long sharedStringsMemoryBudget, String... expectedLines) throws IOException {
+        File xlsx = folder.newFile("workbook" + workbooks++ + ".xlsx");
+        XLSXWorkbookGenerator.write(xlsx, rows, inlineStrings);
+
+        XLSXFileReader reader = new XLSXFileReader(new XLSXFileReaderSpi());
+        reader.setSharedStringsMemoryBudget(sharedStringsMemoryBudget);
+        TabularDataIngest ingest = reader.read(new BufferedInputStream(new FileInputStream(xlsx)), null);
+
+        DataTable dataTable = ingest.getDataTable();
+        assertEquals(rows[0].length, dataTable.getVarQuantity().intValue());
+        assertEquals(rows.length - 1, dataTable.getCaseQuantity().intValue());
+        List<String> lines = Files.readAllLines(ingest.getTabDelimitedFile().toPath(), Charset.defaultCharset());
+        assertArrayEquals(expectedLines, lines.toArray());
+        ingest.getTabDelimitedFile().delete();
+        return dataTable;
+    }
+
+}
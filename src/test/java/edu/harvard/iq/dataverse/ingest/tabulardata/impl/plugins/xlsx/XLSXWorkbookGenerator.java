@@ -0,0 +1,156 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.xlsx;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes minimal, one sheet XLSX workbooks, for the tests and the benchmark
+ * of {@link XLSXFileReader}.
+ */
+public class XLSXWorkbookGenerator {
+
+    /**
+     * @param rows The cells of the sheet, the first row being the header:
+     * {@link Number}s are written as numeric cells, {@link String}s as shared
+     * (or inline) strings; {@code null}s are left out.
+     */
+    public static void write(File file, Object[][] rows, boolean inlineStrings) throws IOException {
+        List<String> sharedStrings = new ArrayList<>();
+        try (ZipOutputStream zip = start(file)) {
+            Writer sheet = startSheet(zip);
+            for (int r = 0; r < rows.length; r++) {
+                startRow(sheet, r, rows[0].length);
+                for (int c = 0; c < rows[r].length; c++) {
+                    Object value = rows[r][c];
+                    if (value instanceof Number) {
+                        numberCell(sheet, c, r, value.toString());
+                    } else if (value != null && inlineStrings) {
+                        inlineStringCell(sheet, c, r, (String) value);
+                    } else if (value != null) {
+                        sharedStringCell(sheet, c, r, sharedStrings.size());
+                        sharedStrings.add((String) value);
+                    }
+                }
+                endRow(sheet);
+            }
+            endSheet(sheet, zip);
+
+            Writer sst = startSharedStrings(zip, sharedStrings.size());
+            for (String string : sharedStrings) {
+                sharedString(sst, string);
+            }
+            endSharedStrings(sst, zip);
+        }
+    }
+
+    /**
+     * @return The workbook, with all its parts but the sheet and the shared
+     * strings written.
+     */
+    public static ZipOutputStream start(File file) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        entry(zip, "[Content_Types].xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                + "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                + "<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml\"/>"
+                + "</Types>");
+        entry(zip, "_rels/.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                + "</Relationships>");
+        entry(zip, "xl/workbook.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+                + "<sheets><sheet name=\"Sheet1\" sheetId=\"1\" r:id=\"rId1\"/></sheets>"
+                + "</workbook>");
+        entry(zip, "xl/_rels/workbook.xml.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+                + "<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings\" Target=\"sharedStrings.xml\"/>"
+                + "</Relationships>");
+        return zip;
+    }
+
+    public static Writer startSheet(ZipOutputStream zip) throws IOException {
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+        Writer sheet = writer(zip);
+        sheet.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+        return sheet;
+    }
+
+    public static void startRow(Writer sheet, int row, int columnCount) throws IOException {
+        sheet.write("<row r=\"" + (row + 1) + "\" spans=\"1:" + columnCount + "\">");
+    }
+
+    public static void numberCell(Writer sheet, int column, int row, String value) throws IOException {
+        sheet.write("<c r=\"" + reference(column, row) + "\"><v>" + value + "</v></c>");
+    }
+
+    public static void sharedStringCell(Writer sheet, int column, int row, int index) throws IOException {
+        sheet.write("<c r=\"" + reference(column, row) + "\" t=\"s\"><v>" + index + "</v></c>");
+    }
+
+    public static void inlineStringCell(Writer sheet, int column, int row, String value) throws IOException {
+        sheet.write("<c r=\"" + reference(column, row) + "\" t=\"inlineStr\"><is><t>" + escape(value) + "</t></is></c>");
+    }
+
+    public static void endRow(Writer sheet) throws IOException {
+        sheet.write("</row>");
+    }
+
+    public static void endSheet(Writer sheet, ZipOutputStream zip) throws IOException {
+        sheet.write("</sheetData></worksheet>");
+        sheet.flush();
+        zip.closeEntry();
+    }
+
+    public static Writer startSharedStrings(ZipOutputStream zip, int count) throws IOException {
+        zip.putNextEntry(new ZipEntry("xl/sharedStrings.xml"));
+        Writer sst = writer(zip);
+        sst.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"" + count + "\" uniqueCount=\"" + count + "\">");
+        return sst;
+    }
+
+    public static void sharedString(Writer sst, String value) throws IOException {
+        sst.write("<si><t>" + escape(value) + "</t></si>");
+    }
+
+    public static void endSharedStrings(Writer sst, ZipOutputStream zip) throws IOException {
+        sst.write("</sst>");
+        sst.flush();
+        zip.closeEntry();
+    }
+
+    private static String reference(int column, int row) {
+        return (char) ('A' + column) + Integer.toString(row + 1);
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static Writer writer(ZipOutputStream zip) {
+        // (not closed: closing it would close the zip)
+        return new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    private static void entry(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+}
@@ -0,0 +1,163 @@
+package edu.harvard.iq.dataverse.mydata;
+
+import edu.harvard.iq.dataverse.DvObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MyDataCacheTest {
+
+    MyDataCache cache;
+    MyDataAssignments assignments;
+
+    @Before
+    public void setUp() {
+        cache = new MyDataCache(10);
+        List<Object[]> roleAssignments = new ArrayList<>();
+        roleAssignments.add(new Object[]{1, 6});
+        roleAssignments.add(new Object[]{2l, 7l});
+        List<Object[]> dvObjectInfo = new ArrayList<>();
+        dvObjectInfo.add(new Object[]{1, DvObject.DATAVERSE_DTYPE_STRING, null});
+        dvObjectInfo.add(new Object[]{2, DvObject.DATASET_DTYPE_STRING, 1});
+        List<Object[]> childInfo = Arrays.asList(
+                new Object[]{3, DvObject.DATAVERSE_DTYPE_STRING, 1},
+                new Object[]{4, DvObject.DATASET_DTYPE_STRING, 1});
+        assignments = new MyDataAssignments(roleAssignments, dvObjectInfo, childInfo);
+    }
+
+    @Test
+    public void testAssignments() {
+        assertEquals(2, assignments.getNumRoleAssignments());
+        assertEquals(2l, assignments.getDefinitionPointId(1));
+        assertEquals(7l, assignments.getRoleId(1));
+        assertEquals(DvObject.DATASET_DTYPE_STRING, assignments.getDtype(2l));
+        assertNull(assignments.getParentId(1l));
+        assertEquals(new Long(1), assignments.getParentId(2l));
+        assertNull(assignments.getDtype(99l));
+        assertEquals(1, assignments.getNumChildDatasets());
+        assertEquals(4l, assignments.getChildDatasetId(0));
+        assertEquals(1l, assignments.getChildDatasetParentId(0));
+    }
+
+    @Test
+    public void testGetPut() {
+        assertNull(cache.get("@alice", 60000));
+        cache.put("@alice", cache.currentGeneration(), assignments);
+        assertSame(assignments, cache.get("@alice", 60000));
+        assertNull(cache.get("@bob", 60000));
+    }
+
+    @Test
+    public void testExpired() throws InterruptedException {
+        cache.put("@alice", cache.currentGeneration(), assignments);
+        Thread.sleep(5);
+        assertNull(cache.get("@alice", 1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNotCachedIfRolesChangedWhileLoading() {
+        long generation = cache.currentGeneration();
+        cache.invalidate("@bob");
+        cache.put("@alice", generation, assignments);
+        assertNull(cache.get("@alice", 60000));
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.put("@alice", cache.currentGeneration(), assignments);
+        cache.put("@bob", cache.currentGeneration(), assignments);
+        cache.invalidate("@alice");
+        assertNull(cache.get("@alice", 60000));
+        assertNotNull(cache.get("@bob", 60000));
+
+        // a group: all its members are affected
+        cache.invalidate("&explicit/1-curators");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidateAfterCommit() {
+        cache.put("@alice", cache.currentGeneration(), assignments);
+        TestTransactionRegistry transaction = new TestTransactionRegistry();
+        cache.invalidateAfterCommit(transaction, "@alice");
+        // still there until the role change is committed
+        assertNotNull(cache.get("@alice", 60000));
+
+        transaction.complete(Status.STATUS_COMMITTED);
+        assertNull(cache.get("@alice", 60000));
+    }
+
+    @Test
+    public void testNotInvalidatedOnRollback() {
+        cache.put("@alice", cache.currentGeneration(), assignments);
+        TestTransactionRegistry transaction = new TestTransactionRegistry();
+        cache.invalidateAllAfterCommit(transaction);
+
+        transaction.complete(Status.STATUS_ROLLEDBACK);
+        assertNotNull(cache.get("@alice", 60000));
+    }
+
+    @Test
+    public void testInvalidateWithoutTransaction() {
+        cache.put("@alice", cache.currentGeneration(), assignments);
+        cache.invalidateAllAfterCommit(null);
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * An active transaction, completed by the test.
+     */
+    public static class TestTransactionRegistry implements TransactionSynchronizationRegistry {
+
+        final List<Synchronization> synchronizations = new ArrayList<>();
+
+        public void complete(int status) {
+            for (Synchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(status);
+            }
+        }
+
+        @Override
+        public Object getTransactionKey() {
+            return this;
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            synchronizations.add(sync);
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return Status.STATUS_ACTIVE;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+    }
+
+}
@@ -50,4 +50,14 @@ public class IndexUtilTest {
 
     }
 
+    @Test
+    public void testFindFailure() {
+        assertNull(IndexUtil.findFailure(null));
+        assertNull(IndexUtil.findFailure("Desired state for existence of cards: {RELEASED=true}\nAttempted to index dataset_17. Result: indexed dataset 17 as dataset_17.\n"));
+        assertEquals(IndexUtil.SOLR_UPDATE_FAILED + "java.io.IOException: refused",
+                IndexUtil.findFailure("Desired state for existence of cards: {RELEASED=true}\nAttempted to index dataset_17. Result: " + IndexUtil.SOLR_UPDATE_FAILED + "java.io.IOException: refused\ndebug:\n"));
+        assertEquals(IndexUtil.SOLR_UPDATE_FAILED + "java.io.IOException: refused",
+                IndexUtil.findFailure(IndexUtil.SOLR_UPDATE_FAILED + "java.io.IOException: refused"));
+    }
+
 }
@@ -0,0 +1,99 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.Dataverse;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SearchResultCacheTest {
+
+    SearchResultCache sut;
+    Dataverse root;
+    Dataverse child;
+    Dataverse sibling;
+    Dataset dataset;
+
+    @Before
+    public void setUp() {
+        sut = new SearchResultCache(10);
+        root = new Dataverse();
+        root.setId(1l);
+        child = new Dataverse();
+        child.setId(2l);
+        child.setOwner(root);
+        sibling = new Dataverse();
+        sibling.setId(3l);
+        sibling.setOwner(root);
+        dataset = new Dataset();
+        dataset.setId(4l);
+        dataset.setOwner(child);
+    }
+
+    @Test
+    public void testKeyIgnoresFilterQueryOrder() {
+        SolrQuery one = new SolrQuery("*");
+        one.addFilterQuery("dvObjectType:datasets", "subtree:\"/2\"");
+        SolrQuery two = new SolrQuery("*");
+        two.addFilterQuery("subtree:\"/2\"", "dvObjectType:datasets");
+        assertEquals(SearchResultCache.createKey(2l, one), SearchResultCache.createKey(2l, two));
+
+        SolrQuery three = new SolrQuery("foo");
+        three.addFilterQuery("subtree:\"/2\"", "dvObjectType:datasets");
+        assertFalse(SearchResultCache.createKey(2l, one).equals(SearchResultCache.createKey(2l, three)));
+        assertFalse(SearchResultCache.createKey(2l, one).equals(SearchResultCache.createKey(3l, one)));
+    }
+
+    @Test
+    public void testGetPut() {
+        QueryResponse response = new QueryResponse();
+        sut.put("key", child.getId(), sut.currentGeneration(child.getId()), response);
+        assertSame(response, sut.get("key", 60000));
+        assertNull(sut.get("other", 60000));
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        sut.put("key", child.getId(), sut.currentGeneration(child.getId()), new QueryResponse());
+        Thread.sleep(5);
+        assertNull(sut.get("key", 1));
+        assertEquals(0, sut.size());
+    }
+
+    @Test
+    public void testInvalidateSubtree() {
+        sut.put("root", root.getId(), sut.currentGeneration(root.getId()), new QueryResponse());
+        sut.put("child", child.getId(), sut.currentGeneration(child.getId()), new QueryResponse());
+        sut.put("sibling", sibling.getId(), sut.currentGeneration(sibling.getId()), new QueryResponse());
+        sut.put("everything", null, sut.currentGeneration(null), new QueryResponse());
+
+        sut.invalidate(dataset);
+
+        assertNull(sut.get("root", 60000));
+        assertNull(sut.get("child", 60000));
+        assertNull(sut.get("everything", 60000));
+        assertNotNull(sut.get("sibling", 60000));
+    }
+
+    @Test
+    public void testStalePutIsNotServed() {
+        long generation = sut.currentGeneration(child.getId());
+        // the index changes while the query is running
+        sut.invalidate(dataset);
+        sut.put("child", child.getId(), generation, new QueryResponse());
+        assertNull(sut.get("child", 60000));
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        long generation = sut.currentGeneration(sibling.getId());
+        sut.put("sibling", sibling.getId(), generation, new QueryResponse());
+        sut.invalidateAll();
+        assertNull(sut.get("sibling", 60000));
+        sut.put("sibling", sibling.getId(), generation, new QueryResponse());
+        assertNull(sut.get("sibling", 60000));
+    }
+
+}
@@ -0,0 +1,31 @@
+package edu.harvard.iq.dataverse.search;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SearchServiceBeanTest {
+
+    @Test
+    public void testCursorRoundTrip() {
+        String cursor = SearchServiceBean.encodeCursor("datafile_42_draft");
+        assertFalse(cursor.contains("datafile"));
+        assertEquals("datafile_42_draft", SearchServiceBean.decodeCursor(cursor));
+    }
+
+    @Test
+    public void testFirstCursor() {
+        assertNull(SearchServiceBean.decodeCursor(SearchServiceBean.CURSOR_START));
+        assertNull(SearchServiceBean.decodeCursor(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGarbageCursor() {
+        SearchServiceBean.decodeCursor("not a cursor!");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCursorCanNotInjectQuerySyntax() {
+        SearchServiceBean.decodeCursor(SearchServiceBean.encodeCursor("x\" OR id:*"));
+    }
+
+}
@@ -0,0 +1,134 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.RoleAssignment;
+import edu.harvard.iq.dataverse.authorization.DataverseRole;
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SubtreePermissionsTest {
+
+    Dataverse root;
+    Dataverse child;
+    Dataverse permissionRoot;
+    Dataset dataset;
+    Dataset datasetInPermissionRoot;
+    DataverseRole curator;
+    DataverseRole viewDatasetsOnly;
+    Map<String, String> indexableStrings;
+
+    @Before
+    public void setUp() {
+        root = new Dataverse();
+        root.setId(1l);
+        child = new Dataverse();
+        child.setId(2l);
+        child.setOwner(root);
+        permissionRoot = new Dataverse();
+        permissionRoot.setId(3l);
+        permissionRoot.setOwner(child);
+        permissionRoot.setPermissionRoot(true);
+        dataset = new Dataset();
+        dataset.setId(4l);
+        dataset.setOwner(child);
+        datasetInPermissionRoot = new Dataset();
+        datasetInPermissionRoot.setId(5l);
+        datasetInPermissionRoot.setOwner(permissionRoot);
+
+        curator = new DataverseRole();
+        curator.setAlias("curator");
+        curator.addPermissions(Arrays.asList(Permission.ViewUnpublishedDataverse, Permission.ViewUnpublishedDataset));
+        viewDatasetsOnly = new DataverseRole();
+        viewDatasetsOnly.setAlias("viewer");
+        viewDatasetsOnly.addPermission(Permission.ViewUnpublishedDataset);
+
+        indexableStrings = new HashMap<>();
+        indexableStrings.put("@alice", IndexServiceBean.getGroupPerUserPrefix() + 10);
+        indexableStrings.put("@bob", IndexServiceBean.getGroupPerUserPrefix() + 11);
+        indexableStrings.put("@carol", IndexServiceBean.getGroupPerUserPrefix() + 12);
+    }
+
+    @Test
+    public void testInheritedTopDown() {
+        SubtreePermissions sut = new SubtreePermissions(Arrays.asList(
+                assign(curator, "@alice", root),
+                assign(viewDatasetsOnly, "@bob", child),
+                assign(curator, "@carol", dataset)), indexableStrings);
+
+        assertEquals(Arrays.asList("group_user10"), sut.findDvObjectPerms(child));
+        assertEquals(Arrays.asList("group_user12", "group_user11", "group_user10"), sut.findDvObjectPerms(dataset));
+    }
+
+    @Test
+    public void testPermissionRootStopsInheritance() {
+        SubtreePermissions sut = new SubtreePermissions(Arrays.asList(
+                assign(curator, "@alice", root),
+                assign(curator, "@bob", permissionRoot)), indexableStrings);
+
+        assertEquals(Arrays.asList("group_user11"), sut.findDvObjectPerms(permissionRoot));
+        assertEquals(Arrays.asList("group_user11"), sut.findDvObjectPerms(datasetInPermissionRoot));
+    }
+
+    @Test
+    public void testDuplicatesAndUnknownAssignees() {
+        SubtreePermissions sut = new SubtreePermissions(Arrays.asList(
+                assign(curator, "@alice", root),
+                assign(viewDatasetsOnly, "@alice", dataset),
+                assign(curator, "@deleted", dataset)), indexableStrings);
+
+        assertEquals(Arrays.asList("group_user10"), sut.findDvObjectPerms(dataset));
+        assertTrue(SubtreePermissions.findAssigneeIdentifiers(Arrays.asList(
+                assign(curator, "@alice", root),
+                assign(curator, "@alice", child))).size() == 1);
+    }
+
+    @Test
+    public void testSameAsWalkingUp() {
+        List<RoleAssignment> assignments = Arrays.asList(
+                assign(curator, "@alice", root),
+                assign(viewDatasetsOnly, "@bob", child),
+                assign(curator, "@carol", permissionRoot));
+        SubtreePermissions sut = new SubtreePermissions(assignments, indexableStrings);
+        for (DvObject dvObject : Arrays.<DvObject>asList(child, permissionRoot, dataset, datasetInPermissionRoot)) {
+            assertEquals(dvObject.toString(), walkUp(dvObject, assignments).size(), sut.findEffectiveAssignments(dvObject).size());
+            assertTrue(walkUp(dvObject, assignments).containsAll(sut.findEffectiveAssignments(dvObject)));
+        }
+    }
+
+    /**
+     * What DataverseRoleServiceBean.rolesAssignments() does, one level at a
+     * time.
+     */
+    private List<RoleAssignment> walkUp(DvObject dvObject, List<RoleAssignment> assignments) {
+        List<RoleAssignment> found = new ArrayList<>();
+        DvObject current = dvObject;
+        while (true) {
+            for (RoleAssignment roleAssignment : assignments) {
+                if (roleAssignment.getDefinitionPoint().equals(current)) {
+                    found.add(roleAssignment);
+                }
+            }
+            if (current.isEffectivelyPermissionRoot()) {
+                return found;
+            }
+            current = current.getOwner();
+        }
+    }
+
+    private RoleAssignment assign(DataverseRole role, String assigneeIdentifier, DvObject definitionPoint) {
+        AuthenticatedUser user = new AuthenticatedUser();
+        user.setUserIdentifier(assigneeIdentifier.substring(1));
+        return new RoleAssignment(role, user, definitionPoint);
+    }
+
+}
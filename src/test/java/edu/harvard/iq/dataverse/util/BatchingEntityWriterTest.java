@@ -0,0 +1,75 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BatchingEntityWriterTest {
+
+    TestWriter writer;
+
+    @Before
+    public void setUp() {
+        writer = new TestWriter(3, 2);
+    }
+
+    @Test
+    public void testFlushInBatches() {
+        assertTrue(writer.enqueue("a"));
+        assertTrue(writer.enqueue("b"));
+        assertTrue(writer.enqueue("c"));
+        assertTrue(writer.batches.isEmpty());
+
+        writer.flush();
+        assertEquals("[[a, b], [c]]", writer.batches.toString());
+
+        writer.flush();
+        assertEquals(2, writer.batches.size());
+    }
+
+    @Test
+    public void testQueueFull() {
+        assertTrue(writer.enqueue("a"));
+        assertTrue(writer.enqueue("b"));
+        assertTrue(writer.enqueue("c"));
+        // the caller writes it itself
+        assertFalse(writer.enqueue("d"));
+
+        writer.flush();
+        assertTrue(writer.enqueue("d"));
+    }
+
+    @Test
+    public void testShutdown() {
+        writer.enqueue("a");
+        writer.shutdown();
+        assertEquals("[[a]]", writer.batches.toString());
+
+        assertFalse(writer.enqueue("b"));
+        assertEquals(1, writer.batches.size());
+    }
+
+    static class TestWriter extends BatchingEntityWriter<String> {
+
+        final List<List<String>> batches = new ArrayList<>();
+
+        TestWriter(int queueCapacity, int batchSize) {
+            super("test entities", queueCapacity, batchSize);
+        }
+
+        @Override
+        protected long getFlushIntervalMillis() {
+            return 1000;
+        }
+
+        @Override
+        protected void persist(List<String> batch) {
+            // (the list is reused)
+            batches.add(new ArrayList<>(batch));
+        }
+    }
+
+}
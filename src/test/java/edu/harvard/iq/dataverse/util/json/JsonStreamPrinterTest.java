@@ -0,0 +1,102 @@
+package edu.harvard.iq.dataverse.util.json;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.FileMetadata;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class JsonStreamPrinterTest {
+
+    DatasetVersion dsv;
+    int pagesFetched;
+    JsonStreamPrinter printer;
+
+    @Before
+    public void setUp() {
+        dsv = new DatasetVersion();
+        dsv.setId(42L);
+        dsv.setVersionState(DatasetVersion.VersionState.DRAFT);
+        dsv.setVersionNote("a note");
+        // more than two pages
+        List<FileMetadata> fileMetadatas = new ArrayList<>();
+        for (int i = 0; i < 2 * JsonStreamPrinter.PAGE_SIZE + 5; i++) {
+            DataFile df = new DataFile("text/plain");
+            df.setId((long) i);
+            FileMetadata fmd = new FileMetadata();
+            fmd.setId((long) i);
+            fmd.setLabel(String.format("file%05d.txt", i));
+            fmd.setDataFile(df);
+            fmd.setDatasetVersion(dsv);
+            df.setFileMetadatas(Collections.singletonList(fmd));
+            fileMetadatas.add(fmd);
+        }
+        dsv.setFileMetadatas(fileMetadatas);
+
+        pagesFetched = 0;
+        printer = new JsonStreamPrinter(new JsonStreamPrinter.FileMetadataPages() {
+            @Override
+            public List<FileMetadata> getPage(Long datasetVersionId, String afterLabel, Long afterId, int maxResults) {
+                assertEquals(Long.valueOf(42), datasetVersionId);
+                pagesFetched++;
+                List<FileMetadata> page = new ArrayList<>();
+                for (FileMetadata fmd : dsv.getFileMetadatas()) {
+                    if (page.size() == maxResults) {
+                        break;
+                    }
+                    int cmp = (afterLabel == null) ? 1 : fmd.getLabel().compareTo(afterLabel);
+                    if (cmp > 0 || (cmp == 0 && fmd.getId() > afterId)) {
+                        page.add(fmd);
+                    }
+                }
+                return page;
+            }
+        });
+    }
+
+    @Test
+    public void testDatasetVersion() {
+        StringWriter out = new StringWriter();
+        JsonGenerator generator = Json.createGenerator(out);
+        printer.writeDatasetVersion(generator, null, dsv);
+        generator.close();
+
+        assertEquals(JsonPrinter.json(dsv).build().toString(), out.toString());
+        assertEquals(3, pagesFetched);
+    }
+
+    @Test
+    public void testFileMetadatas() {
+        StringWriter out = new StringWriter();
+        JsonGenerator generator = Json.createGenerator(out);
+        generator.writeStartObject();
+        printer.writeFileMetadatas(generator, "data", dsv);
+        generator.writeEnd();
+        generator.close();
+
+        String expected = Json.createObjectBuilder()
+                .add("data", JsonPrinter.jsonFileMetadatas(dsv.getFileMetadatas()))
+                .build().toString();
+        assertEquals(expected, out.toString());
+    }
+
+    @Test
+    public void testUnsavedVersion() {
+        dsv.setId(null);
+        StringWriter out = new StringWriter();
+        JsonGenerator generator = Json.createGenerator(out);
+        printer.writeFileMetadatas(generator, null, dsv);
+        generator.close();
+
+        assertEquals(JsonPrinter.jsonFileMetadatas(dsv.getFileMetadatas()).build().toString(), out.toString());
+        assertEquals(0, pagesFetched);
+    }
+
+}